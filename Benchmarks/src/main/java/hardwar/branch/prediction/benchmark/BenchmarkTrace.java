@@ -0,0 +1,169 @@
+package hardwar.branch.prediction.benchmark;
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.BranchInstructionTable;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.trace.TraceReader;
+import hardwar.branch.prediction.trace.Traces;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/*
+ * a branch trace which is decoded into memory before a benchmark starts
+ *
+ * the trace is either synthetic or recorded:
+ * "loops"  - a few hundred static branches, each of them is a loop branch (taken n-1 times out of n)
+ *            or a biased branch. the branch sites are visited in a fixed order, like a program would.
+ * "random" - uniformly random addresses and results. the worst case of the predictor tables.
+ * any other name is read as a raw or compact trace file.
+ */
+public final class BenchmarkTrace {
+    private static final long SEED = 0x5EED;
+
+    private final long[] addresses;
+    private final boolean[] taken;
+
+    private BenchmarkTrace(long[] addresses, boolean[] taken) {
+        this.addresses = addresses;
+        this.taken = taken;
+    }
+
+    /**
+     * @param name        "loops", "random" or the path of a trace file
+     * @param maxBranches maximum number of branches which is loaded
+     * @return the loaded trace
+     * @throws IOException if the trace file can not be read
+     */
+    public static BenchmarkTrace load(String name, int maxBranches) throws IOException {
+        switch (name) {
+            case "loops":
+                return loops(maxBranches);
+            case "random":
+                return random(maxBranches);
+            default:
+                return read(name, maxBranches);
+        }
+    }
+
+    private static BenchmarkTrace loops(int length) {
+        Random random = new Random(SEED);
+        int sites = 256;
+        long[] siteAddress = new long[sites];
+        int[] tripCount = new int[sites]; // 0 means a biased branch
+        double[] bias = new double[sites];
+        for (int i = 0; i < sites; i++) {
+            siteAddress[i] = 0x400000L + 4L * random.nextInt(1 << 16);
+            if (random.nextBoolean()) tripCount[i] = 2 + random.nextInt(15);
+            else bias[i] = random.nextDouble() < 0.5 ? 0.05 : 0.95;
+        }
+
+        long[] addresses = new long[length];
+        boolean[] taken = new boolean[length];
+        int[] iteration = new int[sites];
+        int i = 0;
+        while (i < length) {
+            int site = random.nextInt(sites);
+            // a loop branch is replayed until it exits, a biased branch only once
+            do {
+                addresses[i] = siteAddress[site];
+                if (tripCount[site] == 0) {
+                    taken[i] = random.nextDouble() < bias[site];
+                } else {
+                    iteration[site] = (iteration[site] + 1) % tripCount[site];
+                    taken[i] = iteration[site] != 0;
+                }
+            } while (taken[i++] && tripCount[site] != 0 && i < length);
+        }
+        return new BenchmarkTrace(addresses, taken);
+    }
+
+    private static BenchmarkTrace random(int length) {
+        Random random = new Random(SEED);
+        long[] addresses = new long[length];
+        boolean[] taken = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            addresses[i] = random.nextLong();
+            taken[i] = random.nextBoolean();
+        }
+        return new BenchmarkTrace(addresses, taken);
+    }
+
+    private static BenchmarkTrace read(String path, int maxBranches) throws IOException {
+        try (TraceReader reader = Traces.open(Paths.get(path))) {
+            int length = (int) Math.min(maxBranches, reader.getBranchCount());
+            long[] addresses = new long[length];
+            boolean[] taken = new boolean[length];
+            int i = 0;
+            while (i < length && reader.next()) {
+                addresses[i] = reader.getInstructionAddress();
+                taken[i] = reader.isTaken();
+                i++;
+            }
+            return new BenchmarkTrace(Arrays.copyOf(addresses, i), Arrays.copyOf(taken, i));
+        }
+    }
+
+    /**
+     * @return number of branches of the trace
+     */
+    public int length() {
+        return addresses.length;
+    }
+
+    /**
+     * @param addressWidth number of least significant address bits which are kept
+     * @return the branches of the trace as instructions
+     */
+    public BranchInstruction[] instructions(int addressWidth) {
+        BranchInstruction[] instructions = new BranchInstruction[addresses.length];
+        Bit[] noBits = new Bit[0];
+        for (int i = 0; i < addresses.length; i++) {
+            Bit[] address = BitVector.of(addresses[i], addressWidth).toBits();
+            instructions[i] = new BranchInstruction(noBits, address, noBits);
+        }
+        return instructions;
+    }
+
+    /**
+     * @param addressWidth number of least significant address bits which are kept
+     * @param hashSize     number of bits of the precomputed address hashes
+     * @return the branches of the trace as interned packed instructions
+     */
+    public BranchInstruction[] packedInstructions(int addressWidth, int hashSize) {
+        BranchInstructionTable table = new BranchInstructionTable(addressWidth, hashSize);
+        BranchInstruction[] instructions = new BranchInstruction[addresses.length];
+        for (int i = 0; i < addresses.length; i++) instructions[i] = table.intern(addresses[i], 0L, 0);
+        return instructions;
+    }
+
+    /**
+     * @return a copy of the instruction addresses of the branches
+     */
+    public long[] addresses() {
+        return addresses.clone();
+    }
+
+    /**
+     * @return the results of the branches, bit i is set if branch i is taken
+     */
+    public BitSet outcomes() {
+        BitSet outcomes = new BitSet(taken.length);
+        for (int i = 0; i < taken.length; i++) outcomes.set(i, taken[i]);
+        return outcomes;
+    }
+
+    /**
+     * @return the actual results of the branches of the trace
+     */
+    public BranchResult[] results() {
+        BranchResult[] results = new BranchResult[taken.length];
+        for (int i = 0; i < taken.length; i++) results[i] = BranchResult.of(taken[i]);
+        return results;
+    }
+}
@@ -0,0 +1,217 @@
+package hardwar.branch.prediction.benchmark;
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.core.devices.DensePageHistoryTable;
+import hardwar.branch.prediction.core.devices.DenseRegisterBank;
+import hardwar.branch.prediction.core.devices.FlatPerAddressPredictionHistoryTable;
+import hardwar.branch.prediction.core.devices.PackedLogic;
+import hardwar.branch.prediction.core.devices.PackedRegisterBank;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.devices.Cache;
+import hardwar.branch.prediction.shared.devices.CombinationalLogic;
+import hardwar.branch.prediction.shared.devices.PageHistoryTable;
+import hardwar.branch.prediction.shared.devices.PerAddressPredictionHistoryTable;
+import hardwar.branch.prediction.shared.devices.RegisterBank;
+import hardwar.branch.prediction.shared.devices.SIPORegister;
+import hardwar.branch.prediction.shared.devices.ShiftRegister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * throughput and latency of the shared devices
+ *
+ * the tables and the register bank are measured with the same access pattern as the predictors use them
+ * (setDefault on predict and put on update). the `implementation` parameter selects the original map based
+ * device or its dense replacement, so both can be compared in one run. run with -prof gc to also report
+ * the allocation rate.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceBenchmark {
+    private static final int ACCESSES = 4096; // number of precomputed random accesses
+
+    @State(Scope.Thread)
+    public static class Tables {
+        @Param({"map", "dense"})
+        public String implementation;
+
+        @Param({"4", "8"})
+        public int BHRSize;
+
+        @Param({"2", "3"})
+        public int SCSize;
+
+        @Param({"8", "16"})
+        public int addressWidth;
+
+        Cache<Bit[], Bit[]> PHT;
+        Cache<Bit[], Bit[]> PAPHT;
+        RegisterBank bank; // the map based register bank, null if the dense one is measured
+        PackedRegisterBank denseBank; // the dense register bank, null if the map based one is measured
+        Bit[][] PHTEntries;
+        Bit[][] PAPHTEntries;
+        Bit[][] selectors;
+        Bit[][] blocks;
+        Bit[] defaultBlock;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            boolean dense = implementation.equals("dense");
+            int rows = 1 << BHRSize;
+            PHT = dense ? new DensePageHistoryTable(rows, SCSize) : new PageHistoryTable(rows, SCSize);
+            PAPHT = dense ? new FlatPerAddressPredictionHistoryTable(addressWidth, rows, SCSize)
+                    : new PerAddressPredictionHistoryTable(addressWidth, rows, SCSize);
+            bank = dense ? null : new RegisterBank(addressWidth, BHRSize);
+            denseBank = dense ? new DenseRegisterBank(addressWidth, BHRSize) : null;
+
+            Random random = new Random(ACCESSES);
+            PHTEntries = new Bit[ACCESSES][];
+            PAPHTEntries = new Bit[ACCESSES][];
+            selectors = new Bit[ACCESSES][];
+            blocks = new Bit[ACCESSES][];
+            for (int i = 0; i < ACCESSES; i++) {
+                BitVector address = BitVector.of(random.nextLong(), addressWidth);
+                BitVector history = BitVector.of(random.nextLong(), BHRSize);
+                PHTEntries[i] = history.toBits();
+                PAPHTEntries[i] = address.concat(history).toBits();
+                selectors[i] = address.toBits();
+                blocks[i] = BitVector.of(random.nextLong(), SCSize).toBits();
+            }
+            defaultBlock = BitVector.zeros(SCSize).toBits();
+            cursor = 0;
+        }
+
+        int next() {
+            int i = cursor;
+            cursor = (i + 1) & (ACCESSES - 1);
+            return i;
+        }
+
+        ShiftRegister readRegister(Bit[] selector) {
+            return bank != null ? bank.read(selector) : denseBank.read(selector);
+        }
+
+        void writeRegister(Bit[] selector, Bit[] value) {
+            if (bank != null) bank.write(selector, value);
+            else denseBank.write(selector, value);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Logic {
+        @Param({"2", "3"})
+        public int SCSize;
+
+        @Param({"8", "16"})
+        public int addressWidth;
+
+        @Param({"4"})
+        public int KSize;
+
+        SIPORegister register;
+        Bit[][] counters;
+        Bit[][] addresses;
+        long[] packedAddresses;
+        boolean[] taken;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            register = new SIPORegister("BHR", addressWidth, null);
+            Random random = new Random(ACCESSES);
+            counters = new Bit[ACCESSES][];
+            addresses = new Bit[ACCESSES][];
+            packedAddresses = new long[ACCESSES];
+            taken = new boolean[ACCESSES];
+            for (int i = 0; i < ACCESSES; i++) {
+                counters[i] = BitVector.of(random.nextLong(), SCSize).toBits();
+                packedAddresses[i] = random.nextLong() & BitVector.mask(addressWidth);
+                addresses[i] = BitVector.of(packedAddresses[i], addressWidth).toBits();
+                taken[i] = random.nextBoolean();
+            }
+            cursor = 0;
+        }
+
+        int next() {
+            int i = cursor;
+            cursor = (i + 1) & (ACCESSES - 1);
+            return i;
+        }
+    }
+
+    @Benchmark
+    public Bit[] PHTPredictUpdate(Tables state) {
+        int i = state.next();
+        Bit[] block = state.PHT.setDefault(state.PHTEntries[i], state.defaultBlock);
+        state.PHT.put(state.PHTEntries[i], state.blocks[i]);
+        return block;
+    }
+
+    @Benchmark
+    public Bit[] PAPHTPredictUpdate(Tables state) {
+        int i = state.next();
+        Bit[] block = state.PAPHT.setDefault(state.PAPHTEntries[i], state.defaultBlock);
+        state.PAPHT.put(state.PAPHTEntries[i], state.blocks[i]);
+        return block;
+    }
+
+    @Benchmark
+    public ShiftRegister registerBankShiftIn(Tables state) {
+        int i = state.next();
+        ShiftRegister history = state.readRegister(state.selectors[i]);
+        history.insert(Bit.of((i & 1) != 0));
+        state.writeRegister(state.selectors[i], history.read());
+        return history;
+    }
+
+    @Benchmark
+    public ShiftRegister SIPOInsert(Logic state) {
+        int i = state.next();
+        state.register.insert(Bit.of(state.taken[i]));
+        return state.register;
+    }
+
+    @Benchmark
+    public Bit[] countBits(Logic state) {
+        int i = state.next();
+        return CombinationalLogic.count(state.counters[i], state.taken[i], CountMode.SATURATING);
+    }
+
+    @Benchmark
+    public int countNumber(Logic state) {
+        int i = state.next();
+        return PackedLogic.count(i & ((1 << state.SCSize) - 1), state.SCSize, state.taken[i], CountMode.SATURATING);
+    }
+
+    @Benchmark
+    public Bit[] hashBits(Logic state) {
+        int i = state.next();
+        return CombinationalLogic.hash(state.addresses[i], state.KSize, HashMode.XOR);
+    }
+
+    @Benchmark
+    public long hashNumber(Logic state) {
+        int i = state.next();
+        return PackedLogic.hash(state.packedAddresses[i], state.addressWidth, state.KSize, HashFunction.XOR);
+    }
+}
@@ -0,0 +1,118 @@
+package hardwar.branch.prediction.benchmark;
+
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.sweep.PredictorConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * predict + update throughput and latency of the judged predictors
+ *
+ * one operation is the prediction and the update of one branch of the trace, either with separate
+ * predict and update calls, with the fused predictAndUpdate or with the batch simulate on blocks of
+ * BLOCK branches. the trace is decoded into instructions before the measurement, so only the predictor
+ * is measured. the instructions are either BranchInstructions with Bit arrays or interned
+ * PackedBranchInstructions. run with -prof gc to also report the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredictorBenchmark {
+    private static final int BLOCK = 1024; // number of branches of a batch simulation
+
+    @Param({"GAg", "GAp", "GAs", "PAg", "PAp", "PAs", "SAg", "SAp", "SAs"})
+    public String predictor;
+
+    @Param({"4", "8"})
+    public int BHRSize;
+
+    @Param({"2", "3"})
+    public int SCSize;
+
+    @Param({"4"})
+    public int KSize;
+
+    @Param({"8", "16"})
+    public int addressWidth;
+
+    @Param({"loops"})
+    public String trace;
+
+    @Param({"bits", "packed"})
+    public String instructionType;
+
+    @Param({"65536"})
+    public int maxBranches;
+
+    private Predictor branchPredictor;
+    private BranchInstruction[] instructions;
+    private BranchResult[] results;
+    private long[] pcs;
+    private BitSet outcomes;
+    private int cursor;
+    private int blockCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkTrace branches = BenchmarkTrace.load(trace, maxBranches);
+        if (branches.length() == 0) throw new IllegalArgumentException("trace " + trace + " is empty");
+        instructions = instructionType.equals("packed") ? branches.packedInstructions(addressWidth, KSize)
+                : branches.instructions(addressWidth);
+        results = branches.results();
+        pcs = branches.addresses();
+        outcomes = branches.outcomes();
+        if (pcs.length < BLOCK) throw new IllegalArgumentException("trace " + trace + " is shorter than a block");
+        branchPredictor = new PredictorConfiguration(predictor, BHRSize, SCSize, KSize, addressWidth, HashFunction.XOR)
+                .create();
+        cursor = 0;
+        blockCursor = 0;
+    }
+
+    @Benchmark
+    public BranchResult predictAndUpdate() {
+        int i = cursor;
+        cursor = i + 1 == instructions.length ? 0 : i + 1;
+
+        BranchResult prediction = branchPredictor.predict(instructions[i]);
+        branchPredictor.update(instructions[i], results[i]);
+        return prediction;
+    }
+
+    @Benchmark
+    public BranchResult fusedPredictAndUpdate() {
+        int i = cursor;
+        cursor = i + 1 == instructions.length ? 0 : i + 1;
+
+        return branchPredictor.predictAndUpdate(instructions[i], results[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public long simulateBlock() {
+        int from = blockCursor;
+        blockCursor = from + 2 * BLOCK > pcs.length ? 0 : from + BLOCK;
+
+        return branchPredictor.simulate(pcs, null, outcomes, from, from + BLOCK);
+    }
+}
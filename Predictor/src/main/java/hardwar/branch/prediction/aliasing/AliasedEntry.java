@@ -0,0 +1,112 @@
+package hardwar.branch.prediction.aliasing;
+
+/*
+ * the aliasing information of one entry of an analyzed device (see AliasingAnalyzer)
+ *
+ * the taken and not-taken branches are the heaviest taken-biased and not-taken-biased PCs of the entry. if both
+ * of them exist they are the worst PC pair of the entry.
+ */
+
+public final class AliasedEntry {
+    private final long index;
+    private final long writes;
+    private final int distinctPCs;
+    private final long conflicts;
+    private final Branch taken;
+    private final Branch notTaken;
+
+    AliasedEntry(long index, long writes, int distinctPCs, long conflicts, Branch taken, Branch notTaken) {
+        this.index = index;
+        this.writes = writes;
+        this.distinctPCs = distinctPCs;
+        this.conflicts = conflicts;
+        this.taken = taken;
+        this.notTaken = notTaken;
+    }
+
+    /**
+     * @return the numeric index of the entry (folded if the analyzer folds the indexes)
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    /**
+     * @return estimated number of distinct PCs which write the entry
+     */
+    public int getDistinctPCs() {
+        return distinctPCs;
+    }
+
+    /**
+     * @return number of writes which disagree with the direction of the other PCs of the entry
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return the heaviest taken-biased PC of the entry, or null
+     */
+    public Branch getTaken() {
+        return taken;
+    }
+
+    /**
+     * @return the heaviest not-taken-biased PC of the entry, or null
+     */
+    public Branch getNotTaken() {
+        return notTaken;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("entry %d: writes=%d pcs~%d conflicts=%d", index, writes, distinctPCs, conflicts));
+        if (taken != null && notTaken != null) sb.append(" pair ").append(taken).append(" vs ").append(notTaken);
+        else if (taken != null) sb.append(" taken ").append(taken);
+        else if (notTaken != null) sb.append(" not-taken ").append(notTaken);
+        return sb.toString();
+    }
+
+    /**
+     * a static branch which writes the entry
+     */
+    public static final class Branch {
+        private final long pc;
+        private final long writes; // estimated writes of the branch
+        private final long taken; // taken writes since the branch is tracked
+        private final long seen; // writes since the branch is tracked
+
+        Branch(long pc, long writes, long taken, long seen) {
+            this.pc = pc;
+            this.writes = writes;
+            this.taken = taken;
+            this.seen = seen;
+        }
+
+        public long getPc() {
+            return pc;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        /**
+         * @return the fraction of the tracked writes which are taken
+         */
+        public double getTakenRate() {
+            return seen == 0 ? 0 : (double) taken / seen;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("0x%x (%d writes, %.0f%% taken)", pc, writes, 100 * getTakenRate());
+        }
+    }
+}
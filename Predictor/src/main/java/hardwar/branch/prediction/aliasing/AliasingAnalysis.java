@@ -0,0 +1,155 @@
+package hardwar.branch.prediction.aliasing;
+
+/*
+ * a predictor which analyzes the aliasing of the tables and register banks of another predictor
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) an AliasingAnalyzer listens to each device of the predictor (Predictor.getDevices()) which reports
+ * its written entries. single registers (e.g. the BHR of the GA* predictors) are not analyzed.
+ *
+ * 2) the predictor updates its devices while it is updated, so the address and the result of the branch are
+ * given to the analyzers before the predictor is updated. predictions and the state of the predictor are the same
+ * as running the predictor without the analysis.
+ *
+ * 3) the analysis wraps the predictor, so it can be replayed by TraceReplay or used in any other runner. the batch
+ * simulation predicts and updates the branches one after another, so each branch is analyzed.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.InstructionAddress;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.core.stats.AccessReporter;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.trace.TraceReader;
+import hardwar.branch.prediction.trace.TraceReplay;
+import hardwar.branch.prediction.trace.Traces;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class AliasingAnalysis implements Predictor {
+    private final Predictor predictor;
+    private final List<AccessReporter> devices = new ArrayList<>(); // the analyzed devices
+    private final List<AliasingAnalyzer> analyzers = new ArrayList<>(); // analyzer of each analyzed device
+
+    public AliasingAnalysis(Predictor predictor) {
+        this(predictor, AliasingAnalyzer.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param predictor  the analyzed predictor
+     * @param maxEntries maximum number of entries which are kept for each device
+     */
+    public AliasingAnalysis(Predictor predictor, int maxEntries) {
+        this.predictor = predictor;
+        for (Map.Entry<String, Snapshottable> device : predictor.getDevices().entrySet()) {
+            if (!(device.getValue() instanceof AccessReporter)) continue;
+            AccessReporter reporter = (AccessReporter) device.getValue();
+            AliasingAnalyzer analyzer = new AliasingAnalyzer(device.getKey(), maxEntries);
+            reporter.setAccessListener(analyzer);
+            devices.add(reporter);
+            analyzers.add(analyzer);
+        }
+    }
+
+    /**
+     * @return the analyzer of each analyzed device
+     */
+    public List<AliasingAnalyzer> getAnalyzers() {
+        return Collections.unmodifiableList(analyzers);
+    }
+
+    /**
+     * stop listening to the devices of the predictor
+     */
+    public void detach() {
+        for (AccessReporter device : devices) device.setAccessListener(null);
+    }
+
+    private void setBranch(BranchInstruction instruction, BranchResult actual) {
+        long pc = InstructionAddress.valueOf(instruction, Math.min(InstructionAddress.sizeOf(instruction), Long.SIZE));
+        boolean taken = actual == BranchResult.TAKEN;
+        for (AliasingAnalyzer analyzer : analyzers) analyzer.setBranch(pc, taken);
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction instruction) {
+        return predictor.predict(instruction);
+    }
+
+    @Override
+    public void update(BranchInstruction instruction, BranchResult actual) {
+        setBranch(instruction, actual);
+        predictor.update(instruction, actual);
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        setBranch(instruction, actual);
+        return predictor.predictAndUpdate(instruction, actual);
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return predictor.getBranchInstructionSize();
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        return predictor.getDevices();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        predictor.snapshot(visitor);
+    }
+
+    @Override
+    public String monitor() {
+        return predictor.monitor();
+    }
+
+    /**
+     * @param top number of the worst entries which are reported for each device
+     * @return the summary and the worst aliased entries of each analyzed device
+     */
+    public String report(int top) {
+        StringBuilder sb = new StringBuilder();
+        for (AliasingAnalyzer analyzer : analyzers) {
+            sb.append(analyzer.getName()).append(": ").append(analyzer.summary());
+            if (analyzer.isFolded()) sb.append(" (indexes are folded)");
+            sb.append('\n');
+            for (AliasedEntry entry : analyzer.worst(top)) sb.append("  ").append(entry).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * replay a raw or compact trace on a predictor which has a default constructor and report its aliasing
+     * <p>
+     * usage: AliasingAnalysis trace-file predictor-class [address-size] [hash-size] [top]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: AliasingAnalysis trace-file predictor-class [address-size] [hash-size] [top]");
+            System.exit(1);
+        }
+        Predictor predictor = (Predictor) Class.forName(args[1]).getConstructor().newInstance();
+        int addressSize = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int hashSize = args.length > 3 ? Integer.parseInt(args[3]) : TraceReplay.DEFAULT_HASH_SIZE;
+        int top = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        AliasingAnalysis analysis = new AliasingAnalysis(predictor);
+        try (TraceReader reader = Traces.open(Paths.get(args[0]))) {
+            System.out.println(new TraceReplay(addressSize, hashSize).replay(reader, analysis));
+        }
+        System.out.print(analysis.report(top));
+    }
+}
@@ -0,0 +1,279 @@
+package hardwar.branch.prediction.aliasing;
+
+/*
+ * records which static branches (PCs) write each entry of a table or a register bank
+ * read below assumptions about the aliasing analyzer
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the analyzer listens to the writes of a device (see AccessReporter#setAccessListener). the branch which causes
+ * the write is set with setBranch before the predictor is updated.
+ *
+ * 2) each entry keeps at most SLOTS PCs with their direction. when the slots are full a new PC takes the slot
+ * of the least used PC only if the count-min sketch estimates that it wrote the entry more often. so the slots
+ * keep the heavy PCs of the entry while the memory stays bounded.
+ *
+ * 3) the number of distinct PCs of an entry is estimated with a 64-bit linear counting bitmap, so it is
+ * accurate for a few PCs and saturates at about 266.
+ *
+ * 4) a PC is taken-biased if it was taken more often than not, and not-taken-biased if it was not taken more often.
+ * the conflicts of an entry are min(taken-biased writes, not-taken-biased writes), i.e. the writes which pull the
+ * entry in the opposite direction of the other PCs.
+ *
+ * 5) the entries are allocated when they are written. indexes which are not smaller than maxEntries are folded
+ * into maxEntries entries, so a huge table is analyzed with bounded memory (folded entries are reported together).
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.stats.AccessListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class AliasingAnalyzer implements AccessListener {
+    public static final int SLOTS = 4; // number of PCs which are kept for each entry
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 18;
+
+    private static final Comparator<AliasedEntry> SEVERITY = Comparator
+            .comparingLong(AliasedEntry::getConflicts)
+            .thenComparingInt(AliasedEntry::getDistinctPCs)
+            .thenComparingLong(AliasedEntry::getWrites);
+
+    private final String name;
+    private final int maxEntries; // power of two
+    private final CountMinSketch sketch = new CountMinSketch(4, 16); // writes of each (entry, PC) pair
+    private boolean folded; // true if an index is folded into maxEntries entries
+
+    private long[] writes = new long[0]; // number of writes of each entry
+    private long[] bitmaps = new long[0]; // linear counting bitmap of the PCs of each entry
+    private long[] pcs = new long[0]; // SLOTS PCs of each entry
+    private int[] counts = new int[0]; // estimated writes of the PC of each slot, 0 if the slot is free
+    private int[] seen = new int[0]; // writes of the PC of each slot since it took the slot
+    private int[] takenCounts = new int[0]; // taken writes of the PC of each slot since it took the slot
+
+    private long pc; // PC of the current branch
+    private boolean currentTaken; // actual result of the current branch
+
+    public AliasingAnalyzer(String name) {
+        this(name, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param name       name of the analyzed device
+     * @param maxEntries maximum number of entries which are kept (rounded up to a power of two)
+     */
+    public AliasingAnalyzer(String name, int maxEntries) {
+        if (maxEntries <= 0 || maxEntries > 1 << 30)
+            throw new IllegalArgumentException("number of entries must be between 1 and 2^30");
+        this.name = name;
+        this.maxEntries = maxEntries == 1 ? 1 : Integer.highestOneBit(maxEntries - 1) << 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param pc    address of the branch which updates the predictor
+     * @param taken the actual result of the branch
+     */
+    public void setBranch(long pc, boolean taken) {
+        this.pc = pc;
+        this.currentTaken = taken;
+    }
+
+    @Override
+    public void written(long index) {
+        record(index, pc, currentTaken);
+    }
+
+    /**
+     * @param index the numeric index of the entry
+     * @param pc    address of the branch which writes the entry
+     * @param taken the actual result of the branch
+     */
+    public void record(long index, long pc, boolean taken) {
+        int entry = entry(index);
+        writes[entry]++;
+        bitmaps[entry] |= 1L << (mix(pc) >>> 58);
+        int estimate = sketch.add(mix(entry * 0x9E3779B97F4A7C15L ^ pc));
+
+        int base = entry * SLOTS;
+        int free = -1;
+        int least = -1;
+        for (int s = base; s < base + SLOTS; s++) {
+            if (counts[s] == 0) {
+                if (free < 0) free = s;
+            } else if (pcs[s] == pc) {
+                if (counts[s] != Integer.MAX_VALUE) counts[s]++;
+                seen[s]++;
+                if (taken) takenCounts[s]++;
+                return;
+            } else if (least < 0 || counts[s] < counts[least]) {
+                least = s;
+            }
+        }
+
+        int slot = free >= 0 ? free : (estimate > counts[least] ? least : -1);
+        if (slot < 0) return;
+        pcs[slot] = pc;
+        counts[slot] = estimate;
+        seen[slot] = 1;
+        takenCounts[slot] = taken ? 1 : 0;
+    }
+
+    private int entry(long index) {
+        if (index < 0) throw new IndexOutOfBoundsException("invalid entry " + index);
+        if (index >= maxEntries) {
+            folded = true;
+            index &= maxEntries - 1;
+        }
+        int entry = (int) index;
+        if (entry >= writes.length) grow(entry + 1);
+        return entry;
+    }
+
+    private void grow(int minLength) {
+        int length = Math.max(writes.length, 64);
+        while (length < minLength) length <<= 1;
+        length = Math.min(length, maxEntries);
+        writes = Arrays.copyOf(writes, length);
+        bitmaps = Arrays.copyOf(bitmaps, length);
+        pcs = Arrays.copyOf(pcs, length * SLOTS);
+        counts = Arrays.copyOf(counts, length * SLOTS);
+        seen = Arrays.copyOf(seen, length * SLOTS);
+        takenCounts = Arrays.copyOf(takenCounts, length * SLOTS);
+    }
+
+    /**
+     * @return true if some indexes are folded because they are not smaller than maxEntries
+     */
+    public boolean isFolded() {
+        return folded;
+    }
+
+    /**
+     * @param entry the entry (index of the arrays)
+     * @return the aliasing information of the entry
+     */
+    private AliasedEntry analyze(int entry) {
+        int base = entry * SLOTS;
+        int slots = 0;
+        long takenWrites = 0;
+        long notTakenWrites = 0;
+        int takenSlot = -1;
+        int notTakenSlot = -1;
+        for (int s = base; s < base + SLOTS; s++) {
+            if (counts[s] == 0) continue;
+            slots++;
+            if (2L * takenCounts[s] > seen[s]) {
+                takenWrites += counts[s];
+                if (takenSlot < 0 || counts[s] > counts[takenSlot]) takenSlot = s;
+            } else if (2L * takenCounts[s] < seen[s]) {
+                notTakenWrites += counts[s];
+                if (notTakenSlot < 0 || counts[s] > counts[notTakenSlot]) notTakenSlot = s;
+            }
+        }
+
+        int zeros = Long.SIZE - Long.bitCount(bitmaps[entry]);
+        int distinct = zeros == 0 ? (int) Math.round(Long.SIZE * Math.log(Long.SIZE))
+                : (int) Math.round(-Long.SIZE * Math.log((double) zeros / Long.SIZE));
+        return new AliasedEntry(entry, writes[entry], Math.max(distinct, slots), Math.min(takenWrites, notTakenWrites),
+                branch(takenSlot), branch(notTakenSlot));
+    }
+
+    private AliasedEntry.Branch branch(int slot) {
+        return slot < 0 ? null : new AliasedEntry.Branch(pcs[slot], counts[slot], takenCounts[slot], seen[slot]);
+    }
+
+    /**
+     * @param n maximum number of entries
+     * @return the n worst aliased entries, most conflicts first (then most distinct PCs and most writes).
+     * only the entries which are written by more than one PC are reported.
+     */
+    public List<AliasedEntry> worst(int n) {
+        PriorityQueue<AliasedEntry> top = new PriorityQueue<>(SEVERITY);
+        for (int entry = 0; entry < writes.length; entry++) {
+            if (writes[entry] == 0) continue;
+            AliasedEntry aliased = analyze(entry);
+            if (aliased.getDistinctPCs() < 2) continue;
+            top.add(aliased);
+            if (top.size() > n) top.poll();
+        }
+        List<AliasedEntry> result = new ArrayList<>(top);
+        result.sort(SEVERITY.reversed());
+        return result;
+    }
+
+    /**
+     * @return the summary of all the entries: number of written and aliased entries and number of writes and
+     * conflicting writes
+     */
+    public Summary summary() {
+        long written = 0, aliased = 0, total = 0, aliasedWrites = 0, conflicts = 0;
+        for (int entry = 0; entry < writes.length; entry++) {
+            if (writes[entry] == 0) continue;
+            AliasedEntry e = analyze(entry);
+            written++;
+            total += e.getWrites();
+            conflicts += e.getConflicts();
+            if (e.getDistinctPCs() > 1) {
+                aliased++;
+                aliasedWrites += e.getWrites();
+            }
+        }
+        return new Summary(written, aliased, total, aliasedWrites, conflicts);
+    }
+
+    /**
+     * forget all the recorded writes
+     */
+    public void clear() {
+        writes = new long[0];
+        bitmaps = new long[0];
+        pcs = new long[0];
+        counts = new int[0];
+        seen = new int[0];
+        takenCounts = new int[0];
+        sketch.clear();
+        folded = false;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * totals of an analyzed device
+     */
+    public static final class Summary {
+        public final long writtenEntries; // entries which are written at least once
+        public final long aliasedEntries; // entries which are written by more than one PC
+        public final long writes; // writes of all the entries
+        public final long aliasedWrites; // writes of the aliased entries
+        public final long conflicts; // writes which disagree with the direction of other PCs of the entry
+
+        Summary(long writtenEntries, long aliasedEntries, long writes, long aliasedWrites, long conflicts) {
+            this.writtenEntries = writtenEntries;
+            this.aliasedEntries = aliasedEntries;
+            this.writes = writes;
+            this.aliasedWrites = aliasedWrites;
+            this.conflicts = conflicts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("entries=%d aliased=%d (%.1f%%) writes=%d aliasedWrites=%.1f%% conflicts=%.1f%%",
+                    writtenEntries, aliasedEntries, percent(aliasedEntries, writtenEntries), writes,
+                    percent(aliasedWrites, writes), percent(conflicts, writes));
+        }
+
+        private static double percent(long part, long whole) {
+            return whole == 0 ? 0 : 100.0 * part / whole;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package hardwar.branch.prediction.aliasing;
+
+/*
+ * a count-min sketch of long keys
+ *
+ * the estimate of a key is never smaller than its real count. it is larger than the real count by at most
+ * e * total / width with probability 1 - e^-depth, where total is the number of counted keys.
+ */
+
+import java.util.Arrays;
+
+public final class CountMinSketch {
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+            0xD6E8FEB86659FD93L, 0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x94D049BB133111EBL};
+
+    private final int depth; // number of rows
+    private final int widthBits; // log2 of the number of counters in a row
+    private final int[] counters; // depth rows of 2^widthBits counters
+
+    /**
+     * @param depth     number of hash functions (1 to 8)
+     * @param widthBits log2 of the number of counters of each hash function (1 to 24)
+     */
+    public CountMinSketch(int depth, int widthBits) {
+        if (depth < 1 || depth > SEEDS.length) throw new IllegalArgumentException("depth must be between 1 and 8");
+        if (widthBits < 1 || widthBits > 24) throw new IllegalArgumentException("width must be between 2^1 and 2^24");
+        this.depth = depth;
+        this.widthBits = widthBits;
+        this.counters = new int[depth << widthBits];
+    }
+
+    /**
+     * count the key once
+     *
+     * @param key the key
+     * @return the estimated count of the key after it is counted
+     */
+    public int add(long key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int slot = slot(row, key);
+            if (counters[slot] != Integer.MAX_VALUE) counters[slot]++;
+            estimate = Math.min(estimate, counters[slot]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @param key the key
+     * @return the estimated count of the key
+     */
+    public int estimate(long key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) estimate = Math.min(estimate, counters[slot(row, key)]);
+        return estimate;
+    }
+
+    public void clear() {
+        Arrays.fill(counters, 0);
+    }
+
+    private int slot(int row, long key) {
+        long h = (key ^ SEEDS[row]) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 31)) * 0x94D049BB133111EBL;
+        return (row << widthBits) | (int) (h >>> (Long.SIZE - widthBits));
+    }
+}
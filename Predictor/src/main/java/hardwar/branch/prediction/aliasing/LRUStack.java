@@ -0,0 +1,81 @@
+package hardwar.branch.prediction.aliasing;
+
+/*
+ * the LRU stack distance of every access of a key stream
+ *
+ * the stack distance of an access is the number of distinct keys which are accessed since the last access of the
+ * same key, so the access hits a fully associative LRU cache of n blocks if and only if its distance is less
+ * than n. the distance is computed in O(log n) with a Fenwick tree over the access times, which holds a one
+ * at the time of the last access of every key. the times are renumbered when the tree is full, so the tree holds
+ * at most about twice the number of distinct keys whatever the length of the stream.
+ */
+
+import java.util.Arrays;
+
+final class LRUStack {
+    private static final int MIN_LENGTH = 1 << 12;
+
+    private final LongIntHashMap lastAccess = new LongIntHashMap(); // time of the last access of each key
+    private int[] tree = new int[MIN_LENGTH]; // Fenwick tree of the last access times (index 0 is not used)
+    private int time; // time of the last access, the first access is at time 1
+
+    /**
+     * @param key the accessed key
+     * @return the stack distance of the access, or -1 if the key is accessed for the first time
+     */
+    long access(long key) {
+        if (time + 1 >= tree.length) compact();
+        int now = ++time;
+        int last = lastAccess.put(key, now);
+        long distance = -1;
+        if (last != 0) {
+            distance = prefix(now - 1) - prefix(last);
+            add(last, -1);
+        }
+        add(now, 1);
+        return distance;
+    }
+
+    /**
+     * @return number of distinct keys which are accessed
+     */
+    int size() {
+        return lastAccess.size();
+    }
+
+    void clear() {
+        lastAccess.clear();
+        tree = new int[MIN_LENGTH];
+        time = 0;
+    }
+
+    /**
+     * renumber the last access times to 1..n in the same order and rebuild the tree with free room for n accesses
+     */
+    private void compact() {
+        int[] times = lastAccess.values();
+        Arrays.sort(times);
+        lastAccess.replaceValues(t -> Arrays.binarySearch(times, t) + 1);
+        int n = times.length;
+
+        int length = MIN_LENGTH;
+        while (length < 2 * (n + 1)) length <<= 1;
+        tree = new int[length];
+        for (int i = 1; i < length; i++) {
+            if (i <= n) tree[i]++;
+            int parent = i + (i & -i);
+            if (parent < length) tree[parent] += tree[i];
+        }
+        time = n;
+    }
+
+    private void add(int index, int delta) {
+        for (int i = index; i < tree.length; i += i & -i) tree[i] += delta;
+    }
+
+    private int prefix(int index) {
+        int sum = 0;
+        for (int i = index; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+}
@@ -0,0 +1,100 @@
+package hardwar.branch.prediction.aliasing;
+
+/*
+ * an open-addressing map of long keys to positive int values
+ *
+ * the keys and values are kept in two primitive arrays with linear probing, so a lookup does not allocate.
+ * a value of 0 marks a free slot, therefore the values must be positive. the map only grows (there is no
+ * remove), which is all the shadow tables of the MissClassifier need.
+ */
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+final class LongIntHashMap {
+    private long[] keys;
+    private int[] values; // 0 if the slot is free
+    private int size;
+
+    LongIntHashMap() {
+        keys = new long[1 << 10];
+        values = new int[1 << 10];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value of the key, or 0 if the key is not in the map
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            if (values[slot] == 0) return 0;
+            if (keys[slot] == key) return values[slot];
+        }
+    }
+
+    /**
+     * @param key   the key
+     * @param value the new value of the key, must be positive
+     * @return the previous value of the key, or 0 if the key was not in the map
+     */
+    int put(long key, int value) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (keys.length >>> 1) + (keys.length >>> 2)) grow();
+        return 0;
+    }
+
+    /**
+     * replace every value with the result of the function (the values must stay positive)
+     */
+    void replaceValues(IntUnaryOperator function) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != 0) values[slot] = function.applyAsInt(values[slot]);
+        }
+    }
+
+    /**
+     * @return the values of the map in no particular order
+     */
+    int[] values() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int value : values) if (value != 0) result[n++] = value;
+        return result;
+    }
+
+    void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new int[oldValues.length << 1];
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldValues[slot] != 0) put(oldKeys[slot], oldValues[slot]);
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
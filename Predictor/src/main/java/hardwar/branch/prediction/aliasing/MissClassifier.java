@@ -0,0 +1,211 @@
+package hardwar.branch.prediction.aliasing;
+
+/*
+ * classifies the misses of a cache as compulsory, capacity or conflict misses (the 3C model)
+ * read below assumptions about the miss classifier
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the classifier wraps a counter table and forwards every access to it. an access (get, read, setDefault,
+ * putIfAbsent, put, write) is a miss if its entry is not in the table before the access (see contains).
+ *
+ * 2) every access is also replayed on two shadow tables: an infinite table and a fully associative LRU cache of
+ * the given capacity. a miss is compulsory if the infinite table has never seen the entry, a capacity miss if
+ * the fully associative cache misses too, and a conflict miss if the fully associative cache would hit, i.e. the
+ * miss is caused by the mapping of the entries to sets (or by the partial tags).
+ *
+ * 3) the shadow tables are kept together in an LRUStack: an entry hits the fully associative LRU cache of n blocks
+ * if and only if less than n distinct entries were accessed since its last access. the stack is made of
+ * primitive arrays (an open-addressing map and a Fenwick tree), so an access costs O(log n) and does not allocate.
+ *
+ * 4) the entry is read as a number (the first bit is the most significant bit), so it must not be longer than
+ * 64 bits. a direct-mapped table without tags never evicts, so all its misses are compulsory. the classifier is
+ * meaningful for bounded caches such as SetAssociativeCache: many capacity misses call for more rows, many
+ * conflict misses call for more ways or a better hash of the index.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.devices.CounterTable;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.stats.AccessListener;
+import hardwar.branch.prediction.core.stats.AccessReporter;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.IOException;
+
+public class MissClassifier implements CounterTable, Instrumented, AccessReporter {
+    private final CounterTable cache;
+    private final long capacity; // number of blocks of the fully associative shadow cache
+    private final LRUStack stack = new LRUStack(); // the infinite and the fully associative shadow tables
+    private AccessListener listener; // called for every written entry, null if there is no listener
+
+    private long accesses;
+    private long compulsoryMisses;
+    private long capacityMisses;
+    private long conflictMisses;
+
+    /**
+     * @param cache    the classified cache
+     * @param capacity number of blocks of the cache (e.g. sets * ways)
+     */
+    public MissClassifier(CounterTable cache, long capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.cache = cache;
+        this.capacity = capacity;
+    }
+
+    public CounterTable getDelegate() {
+        return cache;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getAccesses() {
+        return accesses;
+    }
+
+    public long getMisses() {
+        return compulsoryMisses + capacityMisses + conflictMisses;
+    }
+
+    public long getCompulsoryMisses() {
+        return compulsoryMisses;
+    }
+
+    public long getCapacityMisses() {
+        return capacityMisses;
+    }
+
+    public long getConflictMisses() {
+        return conflictMisses;
+    }
+
+    /**
+     * reset the counters and forget the shadow tables. the wrapped cache is not changed.
+     */
+    public void reset() {
+        stack.clear();
+        accesses = 0;
+        compulsoryMisses = 0;
+        capacityMisses = 0;
+        conflictMisses = 0;
+    }
+
+    /**
+     * replay the access on the shadow tables and classify it
+     *
+     * @param index the accessed entry
+     * @param hit   true if the entry is in the wrapped cache
+     */
+    private void classify(long index, boolean hit) {
+        accesses++;
+        long distance = stack.access(index);
+        if (hit) return;
+        if (distance < 0) compulsoryMisses++;
+        else if (distance >= capacity) capacityMisses++;
+        else conflictMisses++;
+    }
+
+    private boolean isPresent(Bit[] entry) {
+        return cache.contains(BitVector.of(entry).toLong());
+    }
+
+    @Override
+    public int getBlockSize() {
+        return cache.getBlockSize();
+    }
+
+    /**
+     * contains is not an access, so it is not classified
+     */
+    @Override
+    public boolean contains(long index) {
+        return cache.contains(index);
+    }
+
+    @Override
+    public long read(long index) {
+        classify(index, cache.contains(index));
+        return cache.read(index);
+    }
+
+    @Override
+    public void write(long index, long value) {
+        classify(index, cache.contains(index));
+        cache.write(index, value);
+        if (listener != null) listener.written(index);
+    }
+
+    @Override
+    public long setDefault(long index, long defaultValue) {
+        classify(index, cache.contains(index));
+        return cache.setDefault(index, defaultValue);
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        classify(BitVector.of(entry).toLong(), isPresent(entry));
+        return cache.get(entry);
+    }
+
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        long index = BitVector.of(entry).toLong();
+        classify(index, isPresent(entry));
+        cache.put(entry, value);
+        if (listener != null) listener.written(index);
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        classify(BitVector.of(entry).toLong(), isPresent(entry));
+        cache.putIfAbsent(entry, value);
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        classify(BitVector.of(entry).toLong(), isPresent(entry));
+        return cache.setDefault(entry, defaultValue);
+    }
+
+    /**
+     * clear the wrapped cache. the counters and the shadow tables are kept, so the entries which are accessed
+     * again are not compulsory misses (use reset to forget them)
+     */
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return cache instanceof Instrumented ? ((Instrumented) cache).getCounters() : null;
+    }
+
+    @Override
+    public void setAccessListener(AccessListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public String monitor() {
+        return cache.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        cache.snapshot(visitor);
+    }
+
+    @Override
+    public String toString() {
+        long misses = getMisses();
+        return String.format("accesses=%d misses=%d (%.2f%%): compulsory=%d capacity=%d conflict=%d",
+                accesses, misses, accesses == 0 ? 0 : 100.0 * misses / accesses,
+                compulsoryMisses, capacityMisses, conflictMisses);
+    }
+}
@@ -0,0 +1,143 @@
+package hardwar.branch.prediction.concurrent;
+
+/*
+ * a PAs predictor which can be shared between threads (e.g. replay threads which model the SMT cores of a core)
+ * read below assumptions about the concurrent PAs
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it predicts the same as the judged PAs when it is used by one thread. the per address histories are kept in a
+ * ConcurrentRegisterBank and the counters in a ConcurrentPerAddressPredictionHistoryTable.
+ *
+ * 2) the predictor has no state besides its devices. there is no SC register and no cached lookup of the last
+ * prediction, so predict never writes and the threads never share scratch state.
+ *
+ * 3) the counter is counted with one compare-and-set loop (ConcurrentPerAddressPredictionHistoryTable.update) and
+ * the result is inserted into the history with another one, so no update of another thread is lost. the history
+ * may change between the two accesses (relaxed but race-free); a branch is then counted in the row of the history
+ * which it read.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.ConcurrentPerAddressPredictionHistoryTable;
+import hardwar.branch.prediction.core.devices.ConcurrentRegisterBank;
+import hardwar.branch.prediction.core.devices.PackedLogic;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.*;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongUnaryOperator;
+
+public class ConcurrentPAs implements Predictor {
+
+    private final int branchInstructionSize;
+    private final int KSize;
+    private final int SCSize;
+    private final HashFunction hashMode;
+    private final ConcurrentRegisterBank PABHR; // per address Branch History Register
+    private final ConcurrentPerAddressPredictionHistoryTable PSPHT; // Per Set Predication History Table
+    private final LongUnaryOperator countUp; // saturating count of a taken branch
+    private final LongUnaryOperator countDown; // saturating count of a not taken branch
+
+    public ConcurrentPAs() {
+        this(4, 2, 8, 4, HashFunction.XOR);
+    }
+
+    public ConcurrentPAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashFunction hashMode) {
+        if (hashMode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        this.branchInstructionSize = branchInstructionSize;
+        this.KSize = KSize;
+        this.SCSize = SCSize;
+        this.hashMode = hashMode;
+        this.PABHR = new ConcurrentRegisterBank(branchInstructionSize, BHRSize);
+        this.PSPHT = new ConcurrentPerAddressPredictionHistoryTable(KSize, (1 << BHRSize), SCSize);
+        this.countUp = counter -> PackedLogic.count((int) counter, SCSize, true, CountMode.SATURATING);
+        this.countDown = counter -> PackedLogic.count((int) counter, SCSize, false, CountMode.SATURATING);
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction branchInstruction) {
+        long selector = getSelector(branchInstruction);
+        return getPrediction(PSPHT.read(getIndex(branchInstruction, selector)));
+    }
+
+    @Override
+    public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        predictAndUpdate(branchInstruction, actual);
+    }
+
+    /**
+     * predicts the branch with the counter before the update and updates it, so a prediction and its update see
+     * the same counter
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        long selector = getSelector(branchInstruction);
+        long index = getIndex(branchInstruction, selector);
+        boolean taken = BranchResult.isTaken(actual);
+        long counter = PSPHT.update(index, 0L, taken ? countUp : countDown);
+        PABHR.shiftIn(selector, Bit.of(taken));
+        return getPrediction(counter);
+    }
+
+    /**
+     * @param instruction the branch instruction
+     * @return the PABHR selector of the branch address
+     */
+    private long getSelector(BranchInstruction instruction) {
+        if (InstructionAddress.sizeOf(instruction) != branchInstructionSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+        return InstructionAddress.valueOf(instruction, branchInstructionSize);
+    }
+
+    /**
+     * concat the hash of the branch address and the BHR of the branch address
+     *
+     * @param instruction the branch instruction
+     * @param selector    the PABHR selector of the branch address
+     * @return the PSPHT index
+     */
+    private long getIndex(BranchInstruction instruction, long selector) {
+        long hashKSize = InstructionAddress.hashOf(instruction, KSize, hashMode);
+        return (hashKSize << PSPHT.getRowBits()) | PABHR.readHistory(selector);
+    }
+
+    /**
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
+     */
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SCSize - 1)) != 0);
+    }
+
+    @Override
+    public String monitor() {
+        return "ConcurrentPAs predictor snapshot: \n" + PABHR.monitor() + PSPHT.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "ConcurrentPAs");
+        PABHR.snapshot(visitor);
+        PSPHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("PABHR", PABHR);
+        devices.put("PSPHT", PSPHT);
+        return devices;
+    }
+}
@@ -0,0 +1,289 @@
+package hardwar.branch.prediction.core;
+
+/*
+ * our packed bit vector model
+ * read below assumptions about BitVector
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) a BitVector is an immutable value. every operation returns a new vector and never changes the
+ * receiver, so a vector can be shared between registers, caches and predictors without copying.
+ *
+ * 2) the bit ordering is the same as Bit arrays: index 0 is the most significant bit. therefore
+ * BitVector.of(array).toNumber() == Bit.toNumber(array) and toString() == Bit.arrayToString(array)
+ *
+ * 3) vectors of up to 64 bits are kept in a single long, wider vectors are kept in a long array
+ * (least significant word first). the single long path is the hot path of the predictors.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.Bit;
+import java.util.Arrays;
+
+public final class BitVector {
+    private static final int WORD_SIZE = Long.SIZE;
+    private static final long[] NO_WORDS = new long[0];
+    private static final BitVector EMPTY = new BitVector(0, 0L, NO_WORDS);
+
+    private final int length; // number of bits
+    private final long bits; // value of the vector if length <= 64
+    private final long[] words; // value of the vector if length > 64 (least significant word first)
+
+    private BitVector(int length, long bits, long[] words) {
+        this.length = length;
+        this.bits = bits;
+        this.words = words;
+    }
+
+    /**
+     * @param value  the numeric value of the vector. only the `length` least significant bits are used
+     * @param length number of bits of the vector (at most 64)
+     * @return a vector holding the given value
+     */
+    public static BitVector of(long value, int length) {
+        if (length < 0 || length > WORD_SIZE)
+            throw new IllegalArgumentException("invalid bit vector length: " + length);
+        if (length == 0) return EMPTY;
+        return new BitVector(length, value & mask(length), NO_WORDS);
+    }
+
+    /**
+     * @param array bits of the vector, array[0] is the most significant bit
+     * @return a vector holding the same bits as the array
+     */
+    public static BitVector of(Bit[] array) {
+        int len = array.length;
+        if (len <= WORD_SIZE) {
+            long value = 0;
+            for (Bit bit : array) value = (value << 1) | (bit == Bit.ONE ? 1 : 0);
+            return of(value, len);
+        }
+
+        long[] words = new long[wordCount(len)];
+        for (int i = 0; i < len; i++) {
+            if (array[i] == Bit.ONE) setBit(words, len - 1 - i);
+        }
+        return new BitVector(len, 0L, words);
+    }
+
+    /**
+     * @param text the bits of the vector as '0' and '1' characters, the first character is the most significant bit
+     * @return a vector holding the bits of the text (same as {@link Bit#arrayToString(Bit[])} in reverse)
+     * @throws IllegalArgumentException if the text has any other character
+     */
+    public static BitVector parse(CharSequence text) {
+        int len = text.length();
+        if (len <= WORD_SIZE) {
+            long value = 0;
+            for (int i = 0; i < len; i++) value = (value << 1) | digit(text, i);
+            return of(value, len);
+        }
+
+        long[] words = new long[wordCount(len)];
+        for (int i = 0; i < len; i++) {
+            if (digit(text, i) == 1) setBit(words, len - 1 - i);
+        }
+        return new BitVector(len, 0L, words);
+    }
+
+    private static int digit(CharSequence text, int index) {
+        char c = text.charAt(index);
+        if (c != '0' && c != '1') throw new IllegalArgumentException("invalid bit '" + c + "' in " + text);
+        return c - '0';
+    }
+
+    /**
+     * @param length number of bits
+     * @return a zero filled vector
+     */
+    public static BitVector zeros(int length) {
+        if (length <= WORD_SIZE) return of(0L, length);
+        return new BitVector(length, 0L, new long[wordCount(length)]);
+    }
+
+    /**
+     * @return number of bits of the vector
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @param index the bit index, 0 is the most significant bit
+     * @return the bit at the given index
+     */
+    public Bit get(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("bit index: " + index);
+        return Bit.of(bitAt(length - 1 - index));
+    }
+
+    /**
+     * Converts the vector to an integer the same way as {@link Bit#toNumber(Bit[])} does. Only the
+     * 32 least significant bits are kept.
+     *
+     * @return the integer value of the vector
+     */
+    public int toNumber() {
+        return (int) toLong();
+    }
+
+    /**
+     * @return the 64 least significant bits of the vector as a long
+     */
+    public long toLong() {
+        if (length <= WORD_SIZE) return bits;
+        return words[0];
+    }
+
+    /**
+     * Concatenates two vectors. The bits of this vector become the most significant bits of the result
+     * (same as copying both arrays one after another).
+     *
+     * @param other the vector placed after this one
+     * @return the concatenated vector
+     */
+    public BitVector concat(BitVector other) {
+        int total = length + other.length;
+        if (total <= WORD_SIZE) {
+            return of(shiftLeft(bits, other.length) | other.bits, total);
+        }
+
+        long[] result = new long[wordCount(total)];
+        for (int p = 0; p < other.length; p++) {
+            if (other.bitAt(p)) setBit(result, p);
+        }
+        for (int p = 0; p < length; p++) {
+            if (bitAt(p)) setBit(result, p + other.length);
+        }
+        return new BitVector(total, 0L, result);
+    }
+
+    /**
+     * @param from first bit index (inclusive), 0 is the most significant bit
+     * @param to   last bit index (exclusive)
+     * @return the bits in [from, to) as a new vector
+     */
+    public BitVector slice(int from, int to) {
+        if (from < 0 || to > length || from > to)
+            throw new IndexOutOfBoundsException("invalid slice [" + from + ", " + to + ") of " + length + " bits");
+        int len = to - from;
+        if (len <= WORD_SIZE) return of(sliceBits(from, to), len);
+
+        int low = length - to; // position of the least significant bit of the slice
+        long[] result = new long[wordCount(len)];
+        for (int p = 0; p < len; p++) {
+            if (bitAt(low + p)) setBit(result, p);
+        }
+        return new BitVector(len, 0L, result);
+    }
+
+    /**
+     * XOR folds the vector into `outLength` bits. Bit i of the vector is folded into bit (i % outLength)
+     * of the result, which is the same as the XOR mode of {@link hardwar.branch.prediction.shared.devices.CombinationalLogic#hash}.
+     *
+     * @param outLength number of output bits (at most 64)
+     * @return the folded vector
+     */
+    public BitVector fold(int outLength) {
+        if (outLength <= 0 || outLength > WORD_SIZE)
+            throw new IllegalArgumentException("invalid fold length: " + outLength);
+
+        long result = 0;
+        for (int from = 0; from < length; from += outLength) {
+            int to = Math.min(length, from + outLength);
+            // a short last chunk is aligned with the most significant bits of the result
+            result ^= shiftLeft(sliceBits(from, to), outLength - (to - from));
+        }
+        return of(result, outLength);
+    }
+
+    /**
+     * Shifts all the bits one position to the right and puts the given bit in the first (most significant)
+     * position, the same way as {@link hardwar.branch.prediction.shared.devices.SIPORegister#insert(Bit)}.
+     *
+     * @param bit the new bit
+     * @return the shifted vector
+     */
+    public BitVector shiftIn(Bit bit) {
+        if (length == 0) return this;
+        if (length <= WORD_SIZE) {
+            return of((bits >>> 1) | (bit == Bit.ONE ? 1L << (length - 1) : 0L), length);
+        }
+
+        long[] result = new long[words.length];
+        for (int p = 0; p < length - 1; p++) {
+            if (bitAt(p + 1)) setBit(result, p);
+        }
+        if (bit == Bit.ONE) setBit(result, length - 1);
+        return new BitVector(length, 0L, result);
+    }
+
+    /**
+     * @return the vector as a new bit array, array[0] is the most significant bit
+     */
+    public Bit[] toBits() {
+        Bit[] array = new Bit[length];
+        for (int i = 0; i < length; i++) array[i] = Bit.of(bitAt(length - 1 - i));
+        return array;
+    }
+
+    /**
+     * @return the value of the bits in [from, to) which must not be wider than 64 bits
+     */
+    private long sliceBits(int from, int to) {
+        int low = length - to;
+        if (length <= WORD_SIZE) return shiftRight(bits, low) & mask(to - from);
+
+        long value = 0;
+        for (int p = to - from - 1; p >= 0; p--) value = (value << 1) | (bitAt(low + p) ? 1 : 0);
+        return value;
+    }
+
+    private boolean bitAt(int position) {
+        if (length <= WORD_SIZE) return ((bits >>> position) & 1L) != 0;
+        return ((words[position / WORD_SIZE] >>> (position % WORD_SIZE)) & 1L) != 0;
+    }
+
+    private static void setBit(long[] words, int position) {
+        words[position / WORD_SIZE] |= 1L << (position % WORD_SIZE);
+    }
+
+    private static int wordCount(int length) {
+        return (length + WORD_SIZE - 1) / WORD_SIZE;
+    }
+
+    /**
+     * @param length number of bits
+     * @return a mask with `length` least significant bits set
+     */
+    public static long mask(int length) {
+        return length >= WORD_SIZE ? -1L : (1L << length) - 1;
+    }
+
+    private static long shiftLeft(long value, int n) {
+        return n >= WORD_SIZE ? 0L : value << n;
+    }
+
+    private static long shiftRight(long value, int n) {
+        return n >= WORD_SIZE ? 0L : value >>> n;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BitVector)) return false;
+        BitVector other = (BitVector) o;
+        return length == other.length && bits == other.bits && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * length + Long.hashCode(bits)) + Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        for (int p = length - 1; p >= 0; p--) sb.append(bitAt(p) ? '1' : '0');
+        return sb.toString();
+    }
+}
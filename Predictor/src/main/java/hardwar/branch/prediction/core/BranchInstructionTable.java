@@ -0,0 +1,106 @@
+package hardwar.branch.prediction.core;
+
+/*
+ * an interning table of packed branch instructions
+ *
+ * a trace has a few thousand static branches which are executed millions of times. the table hands out
+ * one shared PackedBranchInstruction for each (instruction address, jump address, opcode), so replaying
+ * a trace does not allocate an instruction for each dynamic branch. the table is an open addressing hash
+ * table and it is not thread safe.
+ */
+public class BranchInstructionTable {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int addressSize;
+    private final int hashSize;
+    private PackedBranchInstruction[] slots;
+    private int size;
+
+    /**
+     * @param addressSize number of bits of the addresses of the instructions
+     * @param hashSize    number of bits of the precomputed address hashes of the instructions
+     */
+    public BranchInstructionTable(int addressSize, int hashSize) {
+        if (addressSize <= 0 || addressSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        if (hashSize <= 0 || hashSize > Long.SIZE)
+            throw new IllegalArgumentException("hash size must be between 1 and 64 bits");
+        this.addressSize = addressSize;
+        this.hashSize = hashSize;
+        this.slots = new PackedBranchInstruction[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param instructionAddress the instruction address
+     * @param jumpAddress        the jump address
+     * @param opcode             the opcode
+     * @return the shared instruction with the given fields
+     */
+    public PackedBranchInstruction intern(long instructionAddress, long jumpAddress, int opcode) {
+        long mask = BitVector.mask(addressSize);
+        instructionAddress &= mask;
+        jumpAddress &= mask;
+
+        int slot = find(slots, instructionAddress, jumpAddress, opcode);
+        PackedBranchInstruction instruction = slots[slot];
+        if (instruction != null) return instruction;
+
+        instruction = new PackedBranchInstruction(instructionAddress, jumpAddress, opcode, addressSize, hashSize);
+        slots[slot] = instruction;
+        if (++size * 2 > slots.length) grow();
+        return instruction;
+    }
+
+    /**
+     * @return number of interned instructions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * remove all the interned instructions
+     */
+    public void clear() {
+        slots = new PackedBranchInstruction[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * @return the slot of the instruction, or the empty slot where it must be inserted
+     */
+    private static int find(PackedBranchInstruction[] slots, long instructionAddress, long jumpAddress, int opcode) {
+        int mask = slots.length - 1;
+        int slot = spread(instructionAddress, jumpAddress, opcode) & mask;
+        while (true) {
+            PackedBranchInstruction instruction = slots[slot];
+            if (instruction == null) return slot;
+            if (instruction.getInstructionAddressValue() == instructionAddress
+                    && instruction.getJumpAddressValue() == jumpAddress && instruction.getOpcodeValue() == opcode)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        PackedBranchInstruction[] larger = new PackedBranchInstruction[slots.length * 2];
+        for (PackedBranchInstruction instruction : slots) {
+            if (instruction == null) continue;
+            larger[find(larger, instruction.getInstructionAddressValue(), instruction.getJumpAddressValue(),
+                    instruction.getOpcodeValue())] = instruction;
+        }
+        slots = larger;
+    }
+
+    private static int spread(long instructionAddress, long jumpAddress, int opcode) {
+        // the finalizer of the 64 bit murmur hash, so nearby addresses land in different slots
+        long h = instructionAddress * 31 + jumpAddress;
+        h = h * 31 + opcode;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,22 @@
+package hardwar.branch.prediction.core;
+
+public enum BranchKind {
+    CONDITIONAL, // a conditional direct branch, the target is in the instruction
+    JUMP, // an unconditional direct jump
+    CALL, // a call, the return address is pushed on the return address stack
+    RETURN, // a return, the target is popped from the return address stack
+    INDIRECT; // an indirect jump, the target is in a register
+
+    private static final BranchKind[] KINDS = values();
+
+    /**
+     * the default opcode classes of the traces: the opcode is the ordinal of its kind, and any other opcode
+     * (e.g. a branch without opcode) is a conditional branch
+     *
+     * @param opcode the numeric opcode
+     * @return the kind of the branch
+     */
+    public static BranchKind of(int opcode) {
+        return opcode >= 0 && opcode < KINDS.length ? KINDS[opcode] : CONDITIONAL;
+    }
+}
@@ -0,0 +1,26 @@
+package hardwar.branch.prediction.core;
+
+import hardwar.branch.prediction.shared.HashMode;
+
+public enum HashFunction {
+    XOR, // using xor method for hashing
+    SIMPLE_CUT, // using first K bit as key value
+    GSHARE, // xor of the address and the history (needs a history, see PackedLogic.hash)
+    FOLDED_XOR, // xor of the K bit chunks of the value starting from the least significant bit
+    MULTIPLICATIVE; // the K most significant bits of the value multiplied by the golden ratio
+
+    /**
+     * @param mode a hash mode of the shared package
+     * @return the hash function of the mode
+     */
+    public static HashFunction of(HashMode mode) {
+        switch (mode) {
+            case XOR:
+                return XOR;
+            case SIMPLE_CUT:
+                return SIMPLE_CUT;
+            default:
+                throw new IllegalArgumentException("unknown hash mode: " + mode);
+        }
+    }
+}
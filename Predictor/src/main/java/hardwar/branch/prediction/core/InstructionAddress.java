@@ -0,0 +1,57 @@
+package hardwar.branch.prediction.core;
+
+import hardwar.branch.prediction.core.devices.PackedLogic;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BranchInstruction;
+
+/*
+ * the numeric instruction address of a branch instruction
+ *
+ * a PackedBranchInstruction answers from its packed address and precomputed hashes. any other BranchInstruction
+ * is read from its Bit array, without allocating.
+ */
+public final class InstructionAddress {
+    private InstructionAddress() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * @param instruction the branch instruction
+     * @return number of bits of the instruction address
+     */
+    public static int sizeOf(BranchInstruction instruction) {
+        if (instruction instanceof PackedBranchInstruction)
+            return ((PackedBranchInstruction) instruction).getAddressSize();
+        return instruction.getInstructionAddress().length;
+    }
+
+    /**
+     * @param instruction the branch instruction
+     * @param bits        number of bits (at most 64)
+     * @return the numeric value of the first `bits` bits of the instruction address
+     */
+    public static long valueOf(BranchInstruction instruction, int bits) {
+        if (instruction instanceof PackedBranchInstruction)
+            return ((PackedBranchInstruction) instruction).getAddressValue(bits);
+        if (bits > Long.SIZE) throw new IllegalArgumentException("address size must be at most 64 bits");
+        Bit[] address = instruction.getInstructionAddress();
+        if (bits < 0 || bits > address.length)
+            throw new IndexOutOfBoundsException("invalid slice [0, " + bits + ") of " + address.length + " bits");
+        long value = 0;
+        for (int i = 0; i < bits; i++) value = (value << 1) | (address[i] == Bit.ONE ? 1L : 0L);
+        return value;
+    }
+
+    /**
+     * @param instruction the branch instruction
+     * @param outBits     number of bits of the hash
+     * @param mode        the hash function
+     * @return hash of the whole instruction address, which must be at most 64 bits
+     */
+    public static long hashOf(BranchInstruction instruction, int outBits, HashFunction mode) {
+        if (instruction instanceof PackedBranchInstruction)
+            return ((PackedBranchInstruction) instruction).getAddressHash(outBits, mode);
+        int size = instruction.getInstructionAddress().length;
+        return PackedLogic.hash(valueOf(instruction, size), size, outBits, mode);
+    }
+}
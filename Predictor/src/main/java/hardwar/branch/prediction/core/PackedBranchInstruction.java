@@ -0,0 +1,159 @@
+package hardwar.branch.prediction.core;
+
+/*
+ * our packed branch instruction model
+ * read below assumptions about the packed branch instruction
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it is a BranchInstruction whose addresses are kept as longs and whose opcode is kept as an int.
+ * the Bit arrays of the BranchInstruction are built the first time they are read, so the instruction
+ * can be passed to any predictor but the predictors which use the numeric getters never build them.
+ *
+ * 2) the instruction is immutable and is shared by all the dynamic instances of a static branch
+ * (see BranchInstructionTable). the arrays returned by the getters must not be changed.
+ *
+ * 3) the hash of the instruction address is computed for every HashFunction (except GSHARE which needs a
+ * history) with `hashSize` output bits when the instruction is created. other hash sizes are computed
+ * on demand.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.devices.PackedLogic;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BranchInstruction;
+
+public final class PackedBranchInstruction extends BranchInstruction {
+    public static final int OPCODE_SIZE = Integer.SIZE; // number of bits of the opcode array
+
+    private final long instructionAddress;
+    private final long jumpAddress;
+    private final int opcode;
+    private final int addressSize;
+    private final int hashSize;
+    private final long[] hashes; // hash of the instruction address for each HashFunction ordinal
+    private volatile Bit[] opcodeBits; // built on the first read
+    private volatile Bit[] instructionAddressBits; // built on the first read
+    private volatile Bit[] jumpAddressBits; // built on the first read
+
+    /**
+     * @param instructionAddress the instruction address. only the `addressSize` least significant bits are used
+     * @param jumpAddress        the jump address. only the `addressSize` least significant bits are used
+     * @param opcode             the opcode
+     * @param addressSize        number of bits of the addresses
+     * @param hashSize           number of bits of the precomputed hashes of the instruction address
+     */
+    public PackedBranchInstruction(long instructionAddress, long jumpAddress, int opcode, int addressSize, int hashSize) {
+        super(null, null, null);
+        if (addressSize <= 0 || addressSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        if (hashSize <= 0 || hashSize > Long.SIZE)
+            throw new IllegalArgumentException("hash size must be between 1 and 64 bits");
+
+        this.instructionAddress = instructionAddress & BitVector.mask(addressSize);
+        this.jumpAddress = jumpAddress & BitVector.mask(addressSize);
+        this.opcode = opcode;
+        this.addressSize = addressSize;
+        this.hashSize = hashSize;
+        this.hashes = new long[HashFunction.values().length];
+        for (HashFunction mode : HashFunction.values()) {
+            if (mode == HashFunction.GSHARE) continue; // not an address hash, see getAddressHash
+            hashes[mode.ordinal()] = PackedLogic.hash(this.instructionAddress, addressSize, hashSize, mode);
+        }
+    }
+
+    @Override
+    public Bit[] getOpcode() {
+        Bit[] bits = opcodeBits;
+        if (bits == null) {
+            bits = BitVector.of(opcode & 0xFFFFFFFFL, OPCODE_SIZE).toBits();
+            opcodeBits = bits;
+        }
+        return bits;
+    }
+
+    @Override
+    public Bit[] getInstructionAddress() {
+        Bit[] bits = instructionAddressBits;
+        if (bits == null) {
+            bits = BitVector.of(instructionAddress, addressSize).toBits();
+            instructionAddressBits = bits;
+        }
+        return bits;
+    }
+
+    @Override
+    public Bit[] getJumpAddress() {
+        Bit[] bits = jumpAddressBits;
+        if (bits == null) {
+            bits = BitVector.of(jumpAddress, addressSize).toBits();
+            jumpAddressBits = bits;
+        }
+        return bits;
+    }
+
+    /**
+     * @return the numeric instruction address
+     */
+    public long getInstructionAddressValue() {
+        return instructionAddress;
+    }
+
+    /**
+     * @return the numeric jump address
+     */
+    public long getJumpAddressValue() {
+        return jumpAddress;
+    }
+
+    /**
+     * @return the numeric opcode
+     */
+    public int getOpcodeValue() {
+        return opcode;
+    }
+
+    /**
+     * @return number of bits of the precomputed hashes
+     */
+    public int getHashSize() {
+        return hashSize;
+    }
+
+    /**
+     * @return number of bits of the instruction address
+     */
+    public int getAddressSize() {
+        return addressSize;
+    }
+
+    /**
+     * @param bits number of bits
+     * @return the numeric value of the first `bits` bits of the instruction address
+     */
+    public long getAddressValue(int bits) {
+        if (bits == addressSize) return instructionAddress;
+        if (bits < 0 || bits > addressSize)
+            throw new IndexOutOfBoundsException("invalid slice [0, " + bits + ") of " + addressSize + " bits");
+        return bits == 0 ? 0 : instructionAddress >>> (addressSize - bits);
+    }
+
+    /**
+     * @param outBits number of bits of the hash
+     * @param mode    the hash function, GSHARE is not an address hash
+     * @return hash of the whole instruction address
+     */
+    public long getAddressHash(int outBits, HashFunction mode) {
+        if (mode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+        if (outBits == hashSize) return hashes[mode.ordinal()];
+        return PackedLogic.hash(instructionAddress, addressSize, outBits, mode);
+    }
+
+    @Override
+    public String toString() {
+        return "BranchInstruction{" +
+                "opcode=" + Bit.arrayToString(getOpcode()) +
+                ", sourceAddress=" + Bit.arrayToString(getInstructionAddress()) +
+                ", targetAddress=" + Bit.arrayToString(getJumpAddress()) +
+                '}';
+    }
+}
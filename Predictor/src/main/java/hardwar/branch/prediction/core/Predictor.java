@@ -0,0 +1,89 @@
+package hardwar.branch.prediction.core;
+
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+
+/*
+ * a BranchPredictor which can be replayed, snapshotted and inspected by the tools of this module (trace replay,
+ * sweeps, statistics, checkpoints and aliasing analysis)
+ */
+public interface Predictor extends BranchPredictor, Snapshottable {
+    /**
+     * Predict the branch and then update the predictor with the actual result. It returns the same
+     * prediction and leaves the predictor in the same state as calling predict and update one after another,
+     * but a predictor may override it to compute the table index only once.
+     *
+     * @param instruction the branch instruction
+     * @param result      the actual result of branch (taken or not)
+     * @return predicted result of branch
+     */
+    default BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult result) {
+        BranchResult prediction = predict(instruction);
+        update(instruction, result);
+        return prediction;
+    }
+
+    /**
+     * Predict and update a block of branches one after another, the same as calling predictAndUpdate for
+     * each of them. The instruction address of a branch is the `branch instruction size` least significant
+     * bits of its pc.
+     *
+     * @param pcs      the instruction address of each branch
+     * @param targets  the jump address of each branch, or null if the predictor does not need them
+     * @param outcomes bit i is set if branch i is taken
+     * @param from     index of the first branch (inclusive)
+     * @param to       index of the last branch (exclusive)
+     * @return number of wrong predictions
+     */
+    default long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to) {
+        return simulate(pcs, targets, outcomes, from, to, null);
+    }
+
+    /**
+     * @return number of bits of the instruction address which the predictor reads, or 0 if it does not read the
+     * address
+     */
+    int getBranchInstructionSize();
+
+    /**
+     * Predict and update a block of branches one after another and save the predictions. By default each branch
+     * is given to predictAndUpdate as a new PackedBranchInstruction, a predictor may override it to run the block
+     * without allocating.
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     the jump address of each branch, or null if the predictor does not need them
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    default long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        int addressSize = getBranchInstructionSize() == 0 ? Long.SIZE : getBranchInstructionSize();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            BranchInstruction instruction = new PackedBranchInstruction(pcs[i], targets == null ? 0L : targets[i], 0,
+                    addressSize, addressSize);
+            boolean taken = outcomes.get(i);
+            boolean predicted = BranchResult.isTaken(predictAndUpdate(instruction, BranchResult.of(taken)));
+            if (predicted != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, predicted);
+        }
+        return mispredictions;
+    }
+
+    /**
+     * @return the registers and tables of the predictor by their names (used for the device statistics)
+     */
+    default Map<String, Snapshottable> getDevices() {
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,8 @@
+package hardwar.branch.prediction.core;
+
+public enum ReplacementMode {
+    LRU, // evict the least recently used way
+    TREE_PLRU, // evict the way which the bits of a binary tree point to (pseudo LRU, ways must be a power of two)
+    RANDOM, // evict a random way
+    SRRIP // evict a way with the distant re-reference prediction value (static RRIP with 2-bit values)
+}
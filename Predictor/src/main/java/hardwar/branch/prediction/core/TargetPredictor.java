@@ -0,0 +1,55 @@
+package hardwar.branch.prediction.core;
+
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.util.Collections;
+import java.util.Map;
+
+/*
+ * predicts the target (jump address) of a branch, next to a BranchPredictor which predicts its direction
+ *
+ * a target predictor does not depend on the direction predictor, so any target predictor can be combined with any
+ * BranchPredictor (see TraceReplay.replay with a target predictor). the addresses are numeric, cut to the address
+ * size of the predictor, and NO_TARGET means that there is no prediction.
+ */
+public interface TargetPredictor extends Snapshottable {
+    long NO_TARGET = -1L;
+
+    /**
+     * @param instruction the branch instruction
+     * @return the predicted target of the branch, or NO_TARGET if the target is unknown
+     */
+    long predictTarget(BranchInstruction instruction);
+
+    /**
+     * update the predictor with the jump address of the branch instruction
+     *
+     * @param instruction the branch instruction
+     * @param result      the actual result of branch (taken or not)
+     */
+    void updateTarget(BranchInstruction instruction, BranchResult result);
+
+    /**
+     * Predict the target and then update the predictor with the actual result. It returns the same target and
+     * leaves the predictor in the same state as calling predictTarget and updateTarget one after another, but a
+     * predictor may override it to look up its tables only once.
+     *
+     * @param instruction the branch instruction
+     * @param result      the actual result of branch (taken or not)
+     * @return the predicted target of the branch, or NO_TARGET if the target is unknown
+     */
+    default long predictAndUpdateTarget(BranchInstruction instruction, BranchResult result) {
+        long target = predictTarget(instruction);
+        updateTarget(instruction, result);
+        return target;
+    }
+
+    /**
+     * @return the registers and tables of the predictor by their names (used for the device statistics)
+     */
+    default Map<String, Snapshottable> getDevices() {
+        return Collections.emptyMap();
+    }
+}
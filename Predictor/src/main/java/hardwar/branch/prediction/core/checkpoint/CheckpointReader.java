@@ -0,0 +1,153 @@
+package hardwar.branch.prediction.core.checkpoint;
+
+/*
+ * reads the fields of a checkpoint (see CheckpointWriter) from a memory mapped file
+ *
+ * the file is mapped in windows of at most 1 GiB, so a checkpoint of any size can be read. the long arrays are
+ * copied from the mapped window into the arrays of the devices with one bulk copy per window and the file is
+ * never read into an intermediate heap buffer.
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class CheckpointReader implements Closeable {
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size; // size of the file
+    private MappedByteBuffer window; // the mapped part of the file
+    private long windowStart; // position of the window in the file
+
+    /**
+     * @param path the checkpoint file
+     * @throws IOException if the file can not be opened or it is not a checkpoint
+     */
+    public CheckpointReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            map(0);
+            if (size < 2 * Integer.BYTES || readInt() != CheckpointWriter.MAGIC)
+                throw new IOException(path + " is not a checkpoint");
+            int version = readInt();
+            if (version != CheckpointWriter.VERSION)
+                throw new IOException("unsupported checkpoint version " + version);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int readInt() throws IOException {
+        ensure(Integer.BYTES);
+        return window.getInt();
+    }
+
+    public long readLong() throws IOException {
+        ensure(Long.BYTES);
+        return window.getLong();
+    }
+
+    public String readString() throws IOException {
+        byte[] bytes = new byte[readLength()];
+        for (int from = 0; from < bytes.length; ) {
+            ensure(1);
+            int n = Math.min(bytes.length - from, window.remaining());
+            window.get(bytes, from, n);
+            from += n;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param words the array which is filled. its length must be the same as the length of the saved array.
+     * @throws IOException if the lengths are not the same
+     */
+    public void readLongs(long[] words) throws IOException {
+        expect(words.length, "array length");
+        copy(words);
+    }
+
+    /**
+     * @return a new array which holds the saved array
+     */
+    public long[] readLongs() throws IOException {
+        int length = readLength();
+        long[] words = new long[length];
+        copy(words);
+        return words;
+    }
+
+    private void copy(long[] words) throws IOException {
+        for (int from = 0; from < words.length; ) {
+            ensure(Long.BYTES);
+            int n = Math.min(words.length - from, window.remaining() / Long.BYTES);
+            window.asLongBuffer().get(words, from, n);
+            window.position(window.position() + n * Long.BYTES);
+            from += n;
+        }
+    }
+
+    public BitVector readVector() throws IOException {
+        int length = readLength();
+        if (length <= Long.SIZE) {
+            if (length == 0) return BitVector.zeros(0);
+            return BitVector.of(readLong() >>> (Long.SIZE - length), length);
+        }
+
+        Bit[] bits = new Bit[length];
+        for (int from = 0; from < length; from += Long.SIZE) {
+            long word = readLong();
+            int to = Math.min(from + Long.SIZE, length);
+            for (int i = from; i < to; i++) bits[i] = Bit.of((word << (i - from)) < 0);
+        }
+        return BitVector.of(bits);
+    }
+
+    /**
+     * read an int and check that it is the same as the value of the device
+     *
+     * @param value the value of the device
+     * @param field name of the field for the error message
+     * @throws IOException if the saved value is not the same as the value of the device
+     */
+    public void expect(int value, String field) throws IOException {
+        int saved = readInt();
+        if (saved != value)
+            throw new IOException("checkpoint " + field + " is " + saved + " but the device " + field + " is " + value);
+    }
+
+    private int readLength() throws IOException {
+        int length = readInt();
+        if (length < 0) throw new IOException("invalid length " + length);
+        return length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() >= bytes) return;
+        long position = windowStart + window.position();
+        if (size - position < bytes) throw new IOException("the checkpoint ends unexpectedly");
+        map(position);
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
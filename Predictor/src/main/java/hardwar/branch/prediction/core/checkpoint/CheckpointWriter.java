@@ -0,0 +1,123 @@
+package hardwar.branch.prediction.core.checkpoint;
+
+/*
+ * writes the primitive fields of a checkpoint to a file through a FileChannel
+ * read below assumptions about the checkpoint layout
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the file starts with MAGIC and VERSION. all the numbers are little endian, so the long arrays can be
+ * copied out of a mapped file by the CheckpointReader without converting each word on the common platforms.
+ *
+ * 2) the fields are not tagged. a device reads its fields in the same order as it writes them, and writes its
+ * geometry first so a checkpoint of another configuration is detected (see CheckpointReader.expect).
+ *
+ * 3) an array is its length (int) followed by its words, and a string is its length (int) followed by its
+ * UTF-8 bytes. a vector is its length (int) followed by ceil(length / 64) words, the first bit of the vector
+ * is the most significant bit of the first word.
+ *
+ * 4) the fields are buffered in a direct buffer and written when the buffer is full, so large arrays are
+ * written in chunks without copying them into a second heap array.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class CheckpointWriter implements Closeable {
+    public static final int MAGIC = 0x43505354; // "CPST"
+    public static final int VERSION = 3;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer; // fields which are not written to the channel yet
+
+    /**
+     * @param path the checkpoint file. it is created or truncated.
+     * @throws IOException if the file can not be opened
+     */
+    public CheckpointWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        writeInt(MAGIC);
+        writeInt(VERSION);
+    }
+
+    public void writeInt(int value) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    public void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        for (int from = 0; from < bytes.length; ) {
+            ensure(1);
+            int n = Math.min(bytes.length - from, buffer.remaining());
+            buffer.put(bytes, from, n);
+            from += n;
+        }
+    }
+
+    /**
+     * @param words the array which is written with its length
+     */
+    public void writeLongs(long[] words) throws IOException {
+        writeInt(words.length);
+        for (int from = 0; from < words.length; ) {
+            ensure(Long.BYTES);
+            int n = Math.min(words.length - from, buffer.remaining() / Long.BYTES);
+            buffer.asLongBuffer().put(words, from, n);
+            buffer.position(buffer.position() + n * Long.BYTES);
+            from += n;
+        }
+    }
+
+    public void writeVector(BitVector vector) throws IOException {
+        int length = vector.length();
+        writeInt(length);
+        for (int from = 0; from < length; from += Long.SIZE) {
+            int to = Math.min(from + Long.SIZE, length);
+            long word = 0;
+            for (int i = from; i < to; i++) word = (word << 1) | (vector.get(i) == Bit.ONE ? 1 : 0);
+            writeLong(word << (Long.SIZE - (to - from)));
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * write the buffered fields and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
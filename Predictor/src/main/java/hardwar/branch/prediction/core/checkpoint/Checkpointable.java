@@ -0,0 +1,26 @@
+package hardwar.branch.prediction.core.checkpoint;
+
+/*
+ * a device which can save its complete state into a checkpoint and load it back (see Checkpoints)
+ */
+
+import java.io.IOException;
+
+public interface Checkpointable {
+    /**
+     * write the geometry and the state of the device
+     *
+     * @param out the checkpoint
+     * @throws IOException if the checkpoint can not be written
+     */
+    void checkpoint(CheckpointWriter out) throws IOException;
+
+    /**
+     * replace the state of the device with the state which is read from the checkpoint. the accesses are not
+     * counted and the access listener is not called.
+     *
+     * @param in the checkpoint
+     * @throws IOException if the checkpoint can not be read or its geometry does not match the device
+     */
+    void restore(CheckpointReader in) throws IOException;
+}
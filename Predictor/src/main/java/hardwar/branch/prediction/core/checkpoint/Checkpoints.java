@@ -0,0 +1,89 @@
+package hardwar.branch.prediction.core.checkpoint;
+
+/*
+ * saves the complete state of a predictor into a binary file and restores it for warm starts
+ * read below assumptions about the predictor checkpoints
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the state of a predictor is the state of its devices (Predictor.getDevices()). every device must
+ * implement Checkpointable, otherwise the predictor can not be checkpointed.
+ *
+ * 2) after the header the file holds the class name of the predictor, the number of devices and for each
+ * device its name followed by the fields of the device. a checkpoint is restored only into a predictor of the
+ * same class with the same devices and the same geometry, so one checkpoint can warm up many instances.
+ *
+ * 3) a predictor must be restored between an update and the next predict, because the predictors keep the
+ * lookup of the last prediction for the next update.
+ *
+ * 4) the counters and the access listeners of the devices do not see the restored entries.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class Checkpoints {
+    private Checkpoints() {
+    }
+
+    /**
+     * @param predictor the predictor which is saved
+     * @param path      the checkpoint file. it is created or truncated.
+     * @throws UnsupportedOperationException if a device of the predictor can not be checkpointed
+     * @throws IOException                   if the file can not be written
+     */
+    public static void save(Predictor predictor, Path path) throws IOException {
+        Map<String, Checkpointable> devices = devices(predictor);
+        try (CheckpointWriter out = new CheckpointWriter(path)) {
+            out.writeString(predictor.getClass().getName());
+            out.writeInt(devices.size());
+            for (Map.Entry<String, Checkpointable> device : devices.entrySet()) {
+                out.writeString(device.getKey());
+                device.getValue().checkpoint(out);
+            }
+        }
+    }
+
+    /**
+     * @param predictor the predictor which is restored. its state is replaced with the saved state.
+     * @param path      the checkpoint file
+     * @throws UnsupportedOperationException if a device of the predictor can not be checkpointed
+     * @throws IOException                   if the file can not be read or it is the checkpoint of another
+     *                                       predictor or configuration
+     */
+    public static void restore(Predictor predictor, Path path) throws IOException {
+        Map<String, Checkpointable> devices = devices(predictor);
+        try (CheckpointReader in = new CheckpointReader(path)) {
+            String name = in.readString();
+            if (!name.equals(predictor.getClass().getName()))
+                throw new IOException("the checkpoint of " + name + " can not be restored into "
+                        + predictor.getClass().getName());
+            in.expect(devices.size(), "number of devices");
+            for (Map.Entry<String, Checkpointable> device : devices.entrySet()) {
+                String saved = in.readString();
+                if (!saved.equals(device.getKey()))
+                    throw new IOException("checkpoint device " + saved + " is not " + device.getKey());
+                device.getValue().restore(in);
+            }
+        }
+    }
+
+    private static Map<String, Checkpointable> devices(Predictor predictor) {
+        Map<String, Snapshottable> devices = predictor.getDevices();
+        if (devices.isEmpty())
+            throw new UnsupportedOperationException(predictor.getClass().getName() + " does not expose its devices");
+
+        Map<String, Checkpointable> checkpointable = new LinkedHashMap<>();
+        for (Map.Entry<String, Snapshottable> device : devices.entrySet()) {
+            if (!(device.getValue() instanceof Checkpointable))
+                throw new UnsupportedOperationException("device " + device.getKey() + " can not be checkpointed");
+            checkpointable.put(device.getKey(), (Checkpointable) device.getValue());
+        }
+        return checkpointable;
+    }
+}
@@ -0,0 +1,294 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a Page History Table which can be shared between threads
+ * read below assumptions about the concurrent PHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it behaves the same as the DensePageHistoryTable when it is used by one thread. all the nRows blocks are
+ * allocated when the table is created and the entry is used as the index of the block.
+ *
+ * 2) blocks are packed into the words of an AtomicLongArray. each block takes a power of two slot which also
+ * holds the valid bit of the block (a 2-bit counter takes 4 bits), so a block and its valid bit always change
+ * together with one compare-and-set of their word.
+ *
+ * 3) every access of a block is atomic: read, write, setDefault and update never lose a write of another
+ * thread, and setDefault fills the default value only once. the order of the accesses of different threads
+ * is not defined (relaxed but race-free), the same as the blocks of a real table which is shared by SMT cores.
+ *
+ * 4) update applies a function to a block in a compare-and-set loop, so a saturating counter can be counted
+ * by several threads without a lock. the function may be called more than once and must not have side effects.
+ *
+ * 5) clear and snapshot are not atomic as a whole. they see each block atomically but may see the writes of
+ * other threads to some of the blocks only.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongUnaryOperator;
+
+public class ConcurrentPageHistoryTable implements CounterTable, Instrumented, Checkpointable {
+
+    private final int nRows; // number of PHT entries
+    private final int nColumns; // number of bits in a block
+    private final int rowBits; // number of bits which is needed to address a row
+    private final int slotShift; // log2 of the bits reserved for each block and its valid bit
+    private final int blocksPerWordShift; // log2 of the blocks packed into a word
+    private final long blockMask; // mask of a block in its slot
+    private final long validBit; // the valid bit of a block in its slot
+    private final AtomicLongArray blocks; // packed slots
+    private final DeviceCounters counters; // access counters, null if they are disabled
+
+
+    public ConcurrentPageHistoryTable(int nRows, int nColumns) {
+        if (nRows <= 0) throw new IllegalArgumentException("number of rows must be positive");
+        if (nColumns <= 0 || nColumns >= Long.SIZE)
+            throw new IllegalArgumentException("number of bits in a block must be between 1 and 63");
+
+        this.nRows = nRows;
+        this.nColumns = nColumns;
+        this.rowBits = Long.SIZE - Long.numberOfLeadingZeros(nRows - 1L);
+        this.slotShift = 32 - Integer.numberOfLeadingZeros(nColumns); // ceil(log2(nColumns + 1))
+        this.blocksPerWordShift = 6 - slotShift;
+        this.blockMask = BitVector.mask(nColumns);
+        this.validBit = 1L << nColumns;
+        this.blocks = new AtomicLongArray((int) ((nRows + (1L << blocksPerWordShift) - 1) >>> blocksPerWordShift));
+        this.counters = DeviceCounters.ENABLED ? new DeviceCounters(nRows, this::occupancy) : null;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return nColumns;
+    }
+
+    @Override
+    public boolean contains(long index) {
+        return (slot(checkRow(index)) & validBit) != 0;
+    }
+
+    @Override
+    public long read(long index) {
+        int row = checkRow(index);
+        if (DeviceCounters.ENABLED) counters.read();
+        return slot(row) & blockMask;
+    }
+
+    @Override
+    public void write(long index, long value) {
+        int row = checkRow(index);
+        long previous = exchange(row, validBit | (value & blockMask));
+        if (DeviceCounters.ENABLED) {
+            counters.write();
+            if ((previous & validBit) == 0) counters.touch();
+        }
+    }
+
+    @Override
+    public long setDefault(long index, long defaultValue) {
+        int row = checkRow(index);
+        if (DeviceCounters.ENABLED) counters.read();
+        return fill(row, defaultValue);
+    }
+
+    /**
+     * atomically replace the block of the index with the result of the function
+     *
+     * @param index        the numeric address
+     * @param defaultValue the block which is given to the function if the address is not associated to any block
+     * @param function     computes the new block from the current block
+     * @return the block before the update (the default value if the address was not associated to any block)
+     */
+    public long update(long index, long defaultValue, LongUnaryOperator function) {
+        int row = checkRow(index);
+        int word = row >>> blocksPerWordShift;
+        int shift = shift(row);
+        long slotMask = (validBit | blockMask) << shift;
+        while (true) {
+            long current = blocks.get(word);
+            long slot = (current >>> shift) & (validBit | blockMask);
+            long block = (slot & validBit) != 0 ? slot & blockMask : defaultValue & blockMask;
+            long next = validBit | (function.applyAsLong(block) & blockMask);
+            if (blocks.compareAndSet(word, current, (current & ~slotMask) | (next << shift))) {
+                if (DeviceCounters.ENABLED) {
+                    counters.read();
+                    counters.write();
+                    if ((slot & validBit) == 0) countDefaultFill();
+                }
+                return block;
+            }
+        }
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        int row = checkRow(BitVector.of(entry).toLong());
+        if (DeviceCounters.ENABLED) counters.read();
+        long slot = slot(row);
+        return (slot & validBit) != 0 ? BitVector.of(slot & blockMask, nColumns).toBits() : null;
+    }
+
+    /**
+     * @param entry the key to insert into the cache
+     * @param value the value to associate with the key
+     * @throws RuntimeException if the length of the block is not equal to nColumns
+     */
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        write(BitVector.of(entry).toLong(), BitVector.of(value).toLong());
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        int row = checkRow(BitVector.of(entry).toLong());
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        fill(row, BitVector.of(value).toLong());
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+        if (defaultValue.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        return BitVector.of(setDefault(BitVector.of(entry).toLong(), BitVector.of(defaultValue).toLong()), nColumns)
+                .toBits();
+    }
+
+    private int shift(int row) {
+        return (row & ((1 << blocksPerWordShift) - 1)) << slotShift;
+    }
+
+    /**
+     * @return the block of the row with its valid bit
+     */
+    private long slot(int row) {
+        return (blocks.get(row >>> blocksPerWordShift) >>> shift(row)) & (validBit | blockMask);
+    }
+
+    /**
+     * @return the previous slot of the row
+     */
+    private long exchange(int row, long slot) {
+        int word = row >>> blocksPerWordShift;
+        int shift = shift(row);
+        long slotMask = (validBit | blockMask) << shift;
+        while (true) {
+            long current = blocks.get(word);
+            if (blocks.compareAndSet(word, current, (current & ~slotMask) | (slot << shift)))
+                return (current >>> shift) & (validBit | blockMask);
+        }
+    }
+
+    /**
+     * @return the block of the row, which is the default value if the row was not associated
+     */
+    private long fill(int row, long defaultValue) {
+        int word = row >>> blocksPerWordShift;
+        int shift = shift(row);
+        long filled = (validBit | (defaultValue & blockMask)) << shift;
+        while (true) {
+            long current = blocks.get(word);
+            if ((current & (validBit << shift)) != 0) return (current >>> shift) & blockMask;
+            if (blocks.compareAndSet(word, current, current | filled)) {
+                if (DeviceCounters.ENABLED) countDefaultFill();
+                return defaultValue & blockMask;
+            }
+        }
+    }
+
+    private void countDefaultFill() {
+        counters.defaultFill();
+        counters.touch();
+    }
+
+    /**
+     * @return number of blocks which are associated
+     */
+    private long occupancy() {
+        long count = 0;
+        for (int row = 0; row < nRows; row++) if ((slot(row) & validBit) != 0) count++;
+        return count;
+    }
+
+    /**
+     * Clear all entries from the cache.
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < blocks.length(); i++) blocks.set(i, 0L);
+    }
+
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeInt(nRows);
+        out.writeInt(nColumns);
+        out.writeLongs(toArray(blocks));
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nRows, "number of rows");
+        in.expect(nColumns, "block size");
+        long[] words = new long[blocks.length()];
+        in.readLongs(words);
+        for (int i = 0; i < words.length; i++) blocks.set(i, words[i]);
+    }
+
+    /**
+     * @return a copy of the words of the array (used by the checkpoints of the concurrent devices)
+     */
+    static long[] toArray(AtomicLongArray array) {
+        long[] words = new long[array.length()];
+        for (int i = 0; i < words.length; i++) words[i] = array.get(i);
+        return words;
+    }
+
+    private int checkRow(long index) {
+        if (index < 0 || index >= nRows)
+            throw new IndexOutOfBoundsException("PHT entry " + index + " is out of " + nRows + " rows");
+        return (int) index;
+    }
+
+    /**
+     * Returns a string representation of the current state of the PHT in the same format as the PageHistoryTable.
+     *
+     * @return a table with the address and block data for each associated entry in the PHT
+     */
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PHT, "PHT");
+        for (int row = 0; row < nRows; row++) {
+            long slot = slot(row);
+            if ((slot & validBit) == 0) continue;
+            visitor.entry(BitVector.of(row, rowBits), BitVector.of(slot & blockMask, nColumns));
+        }
+        visitor.endDevice();
+    }
+}
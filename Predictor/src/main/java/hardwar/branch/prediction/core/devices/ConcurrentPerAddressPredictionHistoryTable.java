@@ -0,0 +1,363 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a Per Address Predication History Table which can be shared between threads
+ * read below assumptions about the concurrent PAPHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it behaves the same as the FlatPerAddressPredictionHistoryTable when it is used by one thread. the blocks
+ * of all the PHTs are addressed by one number: (selector << rowBits) | row.
+ *
+ * 2) each PHT is a page of packed slots in an AtomicLongArray. a slot holds a block and its valid bit, so every
+ * access of a block is one atomic read or one compare-and-set loop, the same as the ConcurrentPageHistoryTable.
+ *
+ * 3) a page is allocated the first time a block of it is set (putIfAbsent, setDefault or update). the page is
+ * published through an AtomicReferenceArray and allocated under one of STRIPES locks, so two threads which
+ * touch a new PHT at the same time share one page, and the threads which find the page never take a lock.
+ *
+ * 4) writing a block of a PHT which is not allocated yet throws an exception, the same as the
+ * PerAddressPredictionHistoryTable.
+ *
+ * 5) the order of the accesses of different threads is not defined (relaxed but race-free). clear and snapshot
+ * are not atomic as a whole.
+ * ------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongUnaryOperator;
+
+public class ConcurrentPerAddressPredictionHistoryTable implements CounterTable, Instrumented, Checkpointable {
+    private static final int STRIPES = 64; // number of locks which allocate the pages
+
+    private final int nPCSelector; // number of bits from pc which determine which PHT in PAPHT must be used.
+    private final int nRowsPerPHT; // number of rows per PHT
+    private final int nColumnsPerBlock; // number of columns per block in a PHT
+    private final int rowBits; // number of bits which is needed to address a row of a PHT
+    private final int slotShift; // log2 of the bits reserved for each block and its valid bit
+    private final int blocksPerWordShift; // log2 of the blocks packed into a word
+    private final long blockMask; // mask of a block in its slot
+    private final long validBit; // the valid bit of a block in its slot
+    private final int pageLength; // number of words in a page
+    private final AtomicReferenceArray<AtomicLongArray> pages; // one page of packed slots for each selector
+    private final Object[] locks; // the lock of a selector is locks[selector % STRIPES]
+    private final DeviceCounters counters; // access counters, null if they are disabled
+
+
+    public ConcurrentPerAddressPredictionHistoryTable(int nPCSelector, int nRowsPerPHT, int nColumnsPerBlock) {
+        if (nPCSelector < 0 || nPCSelector > 30)
+            throw new IllegalArgumentException("number of selector bits must be between 0 and 30");
+        if (nRowsPerPHT <= 0) throw new IllegalArgumentException("number of rows must be positive");
+        if (nColumnsPerBlock <= 0 || nColumnsPerBlock >= Long.SIZE)
+            throw new IllegalArgumentException("number of bits in a block must be between 1 and 63");
+
+        this.nPCSelector = nPCSelector;
+        this.nRowsPerPHT = nRowsPerPHT;
+        this.nColumnsPerBlock = nColumnsPerBlock;
+        this.rowBits = Long.SIZE - Long.numberOfLeadingZeros(nRowsPerPHT - 1L);
+        this.slotShift = 32 - Integer.numberOfLeadingZeros(nColumnsPerBlock); // ceil(log2(nColumns + 1))
+        this.blocksPerWordShift = 6 - slotShift;
+        this.blockMask = BitVector.mask(nColumnsPerBlock);
+        this.validBit = 1L << nColumnsPerBlock;
+        this.pageLength = (int) ((nRowsPerPHT + (1L << blocksPerWordShift) - 1) >>> blocksPerWordShift);
+        this.pages = new AtomicReferenceArray<>(1 << nPCSelector);
+        this.locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+        this.counters = DeviceCounters.ENABLED
+                ? new DeviceCounters((long) pages.length() * nRowsPerPHT, this::occupancy) : null;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return number of blocks of all the PHTs which are associated
+     */
+    private long occupancy() {
+        long count = 0;
+        for (int selector = 0; selector < pages.length(); selector++) {
+            AtomicLongArray page = pages.get(selector);
+            if (page == null) continue;
+            for (int row = 0; row < nRowsPerPHT; row++) if ((slot(page, row) & validBit) != 0) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of bits which is used for addressing a row of a PHT in the numeric index
+     */
+    public int getRowBits() {
+        return rowBits;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return nColumnsPerBlock;
+    }
+
+    @Override
+    public boolean contains(long index) {
+        AtomicLongArray page = pages.get(selector(index));
+        return page != null && (slot(page, row(index)) & validBit) != 0;
+    }
+
+    @Override
+    public long read(long index) {
+        AtomicLongArray page = pages.get(selector(index));
+        int row = row(index);
+        if (DeviceCounters.ENABLED) counters.read();
+        return page == null ? 0 : slot(page, row) & blockMask;
+    }
+
+    @Override
+    public void write(long index, long value) {
+        AtomicLongArray page = pages.get(selector(index));
+        if (page == null) throw new RuntimeException("The PHT is not associated to the PAPHT");
+        int row = row(index);
+        int word = row >>> blocksPerWordShift;
+        int shift = shift(row);
+        long slotMask = (validBit | blockMask) << shift;
+        long slot = (validBit | (value & blockMask)) << shift;
+        long current;
+        do {
+            current = page.get(word);
+        } while (!page.compareAndSet(word, current, (current & ~slotMask) | slot));
+        if (DeviceCounters.ENABLED) {
+            counters.write();
+            if ((current & (validBit << shift)) == 0) counters.touch();
+        }
+    }
+
+    @Override
+    public long setDefault(long index, long defaultValue) {
+        long value = fill(index, defaultValue);
+        if (DeviceCounters.ENABLED) counters.read();
+        return value;
+    }
+
+    /**
+     * same as setDefault without counting a read
+     */
+    private long fill(long index, long defaultValue) {
+        AtomicLongArray page = page(selector(index));
+        int row = row(index);
+        int word = row >>> blocksPerWordShift;
+        int shift = shift(row);
+        long filled = (validBit | (defaultValue & blockMask)) << shift;
+        while (true) {
+            long current = page.get(word);
+            if ((current & (validBit << shift)) != 0) return (current >>> shift) & blockMask;
+            if (page.compareAndSet(word, current, current | filled)) {
+                if (DeviceCounters.ENABLED) countDefaultFill();
+                return defaultValue & blockMask;
+            }
+        }
+    }
+
+    /**
+     * atomically replace the block of the index with the result of the function. the PHT is allocated if it is
+     * not allocated yet.
+     *
+     * @param index        the numeric address
+     * @param defaultValue the block which is given to the function if the address is not associated to any block
+     * @param function     computes the new block from the current block. it may be called more than once.
+     * @return the block before the update (the default value if the address was not associated to any block)
+     */
+    public long update(long index, long defaultValue, LongUnaryOperator function) {
+        AtomicLongArray page = page(selector(index));
+        int row = row(index);
+        int word = row >>> blocksPerWordShift;
+        int shift = shift(row);
+        long slotMask = (validBit | blockMask) << shift;
+        while (true) {
+            long current = page.get(word);
+            long slot = (current >>> shift) & (validBit | blockMask);
+            long block = (slot & validBit) != 0 ? slot & blockMask : defaultValue & blockMask;
+            long next = validBit | (function.applyAsLong(block) & blockMask);
+            if (page.compareAndSet(word, current, (current & ~slotMask) | (next << shift))) {
+                if (DeviceCounters.ENABLED) {
+                    counters.read();
+                    counters.write();
+                    if ((slot & validBit) == 0) countDefaultFill();
+                }
+                return block;
+            }
+        }
+    }
+
+    /**
+     * @return the page of the selector. it is allocated if it is not allocated yet.
+     */
+    private AtomicLongArray page(int selector) {
+        AtomicLongArray page = pages.get(selector);
+        if (page != null) return page;
+        synchronized (locks[selector % STRIPES]) {
+            page = pages.get(selector);
+            if (page == null) {
+                page = new AtomicLongArray(pageLength);
+                pages.set(selector, page);
+            }
+            return page;
+        }
+    }
+
+    private int shift(int row) {
+        return (row & ((1 << blocksPerWordShift) - 1)) << slotShift;
+    }
+
+    /**
+     * @return the block of the row with its valid bit
+     */
+    private long slot(AtomicLongArray page, int row) {
+        return (page.get(row >>> blocksPerWordShift) >>> shift(row)) & (validBit | blockMask);
+    }
+
+    private void countDefaultFill() {
+        counters.defaultFill();
+        counters.touch();
+    }
+
+    private int selector(long index) {
+        long selector = index >>> rowBits;
+        if (index < 0 || selector >= pages.length())
+            throw new IndexOutOfBoundsException("PAPHT entry " + index + " has an invalid PHT selector");
+        return (int) selector;
+    }
+
+    private int row(long index) {
+        long row = index & BitVector.mask(rowBits);
+        if (row >= nRowsPerPHT)
+            throw new IndexOutOfBoundsException("PAPHT entry " + index + " is out of " + nRowsPerPHT + " rows");
+        return (int) row;
+    }
+
+    /**
+     * @param entry the bits of the entry. First nPCSelector bits select the PHT and next bits select the block.
+     * @return the numeric index of the entry
+     */
+    private long getIndex(Bit[] entry) {
+        BitVector bits = BitVector.of(entry);
+        long selector = bits.slice(0, nPCSelector).toLong();
+        long row = bits.slice(nPCSelector, bits.length()).toLong();
+        if (row >= nRowsPerPHT)
+            throw new IndexOutOfBoundsException("PAPHT block selector " + row + " is out of " + nRowsPerPHT + " rows");
+        return (selector << rowBits) | row;
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        long index = getIndex(entry);
+        AtomicLongArray page = pages.get(selector(index));
+        if (DeviceCounters.ENABLED) counters.read();
+        if (page == null) return null;
+        long slot = slot(page, row(index));
+        return (slot & validBit) != 0 ? BitVector.of(slot & blockMask, nColumnsPerBlock).toBits() : null;
+    }
+
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        write(getIndex(entry), BitVector.of(value).toLong());
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        if (value.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        fill(getIndex(entry), BitVector.of(value).toLong());
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        if (defaultValue.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        return BitVector.of(setDefault(getIndex(entry), BitVector.of(defaultValue).toLong()), nColumnsPerBlock).toBits();
+    }
+
+    /**
+     * Clear all the caches.
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < pages.length(); i++) pages.set(i, null);
+    }
+
+    /**
+     * the allocated pages are saved with their selectors, so the PHTs which are never used are not saved
+     */
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeInt(nPCSelector);
+        out.writeInt(nRowsPerPHT);
+        out.writeInt(nColumnsPerBlock);
+        int allocated = 0;
+        for (int selector = 0; selector < pages.length(); selector++) if (pages.get(selector) != null) allocated++;
+        out.writeInt(allocated);
+        for (int selector = 0; selector < pages.length() && allocated > 0; selector++) {
+            AtomicLongArray page = pages.get(selector);
+            if (page == null) continue;
+            out.writeInt(selector);
+            out.writeLongs(ConcurrentPageHistoryTable.toArray(page));
+            allocated--;
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nPCSelector, "number of selector bits");
+        in.expect(nRowsPerPHT, "number of rows");
+        in.expect(nColumnsPerBlock, "block size");
+        int allocated = in.readInt();
+        clear();
+        long[] words = new long[pageLength];
+        for (int i = 0; i < allocated; i++) {
+            int selector = in.readInt();
+            if (selector < 0 || selector >= pages.length()) throw new IOException("invalid PHT selector " + selector);
+            in.readLongs(words);
+            pages.set(selector, new AtomicLongArray(words));
+        }
+    }
+
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PAPHT, "PAPHT");
+        for (int selector = 0; selector < pages.length(); selector++) {
+            AtomicLongArray page = pages.get(selector);
+            if (page == null) continue;
+            visitor.beginGroup(BitVector.of(selector, nPCSelector));
+            for (int row = 0; row < nRowsPerPHT; row++) {
+                long slot = slot(page, row);
+                if ((slot & validBit) == 0) continue;
+                visitor.entry(BitVector.of(row, rowBits), BitVector.of(slot & blockMask, nColumnsPerBlock));
+            }
+            visitor.endGroup();
+        }
+        visitor.endDevice();
+    }
+}
@@ -0,0 +1,411 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a Register Bank which can be shared between threads
+ * read below assumptions about the concurrent Register Bank
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it behaves the same as the DenseRegisterBank when it is used by one thread. the registers are longs in pages
+ * of 64 registers (an AtomicLongArray which also holds the used bits of its registers). the page of a selector is
+ * its numeric value without the low 6 bits.
+ *
+ * 2) a page is allocated the first time one of its registers is used, under one of STRIPES locks, the same as the
+ * pages of the ConcurrentPerAddressPredictionHistoryTable. up to DIRECT_SELECTOR_BITS selector bits the pages are
+ * published through an AtomicReferenceArray which is indexed by the page. wider selectors (up to 64 bits) look
+ * their pages up in the open addressing directory of their stripe, which is replaced by a bigger copy when it is
+ * half full. the threads which find the page never take a lock.
+ *
+ * 3) shiftIn is a compare-and-set loop on the register, so the bits which several threads insert into the same
+ * register at the same time are never lost. their order is the order in which the CAS operations succeed.
+ *
+ * 4) a register which is read and then shifted is not locked between the two accesses, so another thread may
+ * insert a bit in between (relaxed but race-free, the same as the history of a real shared BHR).
+ *
+ * 5) a register is marked as used the first time it is read or written. the used bits only change from zero to
+ * one, so they are set with compare-and-set without a lock.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.devices.SIPORegister;
+import hardwar.branch.prediction.shared.devices.ShiftRegister;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ConcurrentRegisterBank implements PackedRegisterBank {
+    public static final int DIRECT_SELECTOR_BITS = 16; // widest selector whose pages are indexed directly
+    private static final int STRIPES = 64; // number of locks which allocate the pages
+    private static final int PAGE_BITS = 6; // a page holds 2^PAGE_BITS registers
+    private static final int USED = 1 << PAGE_BITS; // index of the used bits of the registers in a page
+    private static final int INITIAL_DIRECTORY_CAPACITY = 16;
+
+    private final int registerSize;
+    private final int selectorSize;
+    private final long msb; // the bit which is set when ONE is inserted into a register
+    private final long registerMask; // mask of the bits of a register
+    private final boolean direct; // true if the pages are indexed by their page number
+    private final AtomicReferenceArray<AtomicLongArray> pages; // pages by page number, null if the selectors are wide
+    private final AtomicReferenceArray<Directory> directories; // directory of each stripe, null if the pages are direct
+    private final Object[] locks; // the lock of a page is locks[stripe(page)]
+    private final DeviceCounters counters; // access counters, null if they are disabled
+
+    /**
+     * an open addressing map from page number to page. it is only changed under the lock of its stripe, and the
+     * page of a slot is published after its page number, so it can be read without a lock.
+     */
+    private static final class Directory {
+        private final long[] numbers; // page number of each slot
+        private final AtomicReferenceArray<AtomicLongArray> pages; // page of each slot, null if the slot is free
+        private int size; // number of pages
+
+        private Directory(int capacity) {
+            numbers = new long[capacity];
+            pages = new AtomicReferenceArray<>(capacity);
+        }
+
+        private AtomicLongArray get(long number) {
+            int mask = numbers.length - 1;
+            AtomicLongArray page;
+            for (int slot = spread(number) >>> 6 & mask; (page = pages.get(slot)) != null; slot = (slot + 1) & mask) {
+                if (numbers[slot] == number) return page;
+            }
+            return null;
+        }
+
+        private void put(long number, AtomicLongArray page) {
+            int mask = numbers.length - 1;
+            int slot = spread(number) >>> 6 & mask;
+            while (pages.get(slot) != null) slot = (slot + 1) & mask;
+            numbers[slot] = number;
+            pages.set(slot, page);
+            size++;
+        }
+
+        private Directory grow() {
+            Directory bigger = new Directory(numbers.length * 2);
+            for (int slot = 0; slot < numbers.length; slot++) {
+                AtomicLongArray page = pages.get(slot);
+                if (page != null) bigger.put(numbers[slot], page);
+            }
+            return bigger;
+        }
+    }
+
+    /**
+     * @param selectorSize number of bits which is needed for selecting a register from register bank
+     * @param registerSize number of bits which is used for each register in register bank
+     */
+    public ConcurrentRegisterBank(int selectorSize, int registerSize) {
+        if (selectorSize < 0 || selectorSize > Long.SIZE)
+            throw new IllegalArgumentException("register bank selector must be between 0 and 64 bits");
+        if (registerSize <= 0 || registerSize > Long.SIZE)
+            throw new IllegalArgumentException("register size must be between 1 and 64 bits");
+
+        this.registerSize = registerSize;
+        this.selectorSize = selectorSize;
+        this.msb = 1L << (registerSize - 1);
+        this.registerMask = BitVector.mask(registerSize);
+        this.direct = selectorSize <= DIRECT_SELECTOR_BITS;
+        this.pages = direct ? new AtomicReferenceArray<>(1 << Math.max(selectorSize - PAGE_BITS, 0)) : null;
+        this.directories = direct ? null : new AtomicReferenceArray<>(STRIPES);
+        if (!direct) for (int i = 0; i < STRIPES; i++) directories.set(i, new Directory(INITIAL_DIRECTORY_CAPACITY));
+        this.locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+        this.counters = DeviceCounters.ENABLED
+                ? new DeviceCounters(selectorSize < Long.SIZE - 1 ? 1L << selectorSize : Long.MAX_VALUE, this::occupancy)
+                : null;
+    }
+
+    @Override
+    public int getSelectorSize() {
+        return selectorSize;
+    }
+
+    @Override
+    public int getRegisterSize() {
+        return registerSize;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @param selector the numeric value of the selector
+     * @return the value of the register associated to the selector
+     */
+    @Override
+    public long readHistory(long selector) {
+        AtomicLongArray page = allocate(checkSelector(selector) >>> PAGE_BITS);
+        int index = (int) selector & (USED - 1);
+        boolean first = markUsed(page, index);
+        if (DeviceCounters.ENABLED) count(first, true, false);
+        return page.get(index);
+    }
+
+    /**
+     * @param selector the numeric value of the selector
+     * @param value    the value which is written on the register
+     */
+    @Override
+    public void writeHistory(long selector, long value) {
+        AtomicLongArray page = allocate(checkSelector(selector) >>> PAGE_BITS);
+        int index = (int) selector & (USED - 1);
+        boolean first = markUsed(page, index);
+        if (DeviceCounters.ENABLED) count(first, false, true);
+        page.set(index, value & registerMask);
+    }
+
+    /**
+     * atomically insert a bit into the register associated to the selector
+     *
+     * @param selector the numeric value of the selector
+     * @param bit      the bit which is inserted into the register
+     * @return the new value of the register
+     */
+    @Override
+    public long shiftIn(long selector, Bit bit) {
+        AtomicLongArray page = allocate(checkSelector(selector) >>> PAGE_BITS);
+        int index = (int) selector & (USED - 1);
+        boolean first = markUsed(page, index);
+        if (DeviceCounters.ENABLED) count(first, true, true);
+        long inserted = bit == Bit.ONE ? msb : 0L;
+        while (true) {
+            long current = page.get(index);
+            long history = (current >>> 1) | inserted;
+            if (page.compareAndSet(index, current, history)) return history;
+        }
+    }
+
+    @Override
+    public ShiftRegister read(Bit[] selector) {
+        if (selector.length != selectorSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        return new SIPORegister("r", registerSize, BitVector.of(readHistory(BitVector.of(selector).toLong()), registerSize).toBits());
+    }
+
+    @Override
+    public void write(Bit[] selector, Bit[] registerValue) {
+        if (selector.length != selectorSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length != this.registerSize)
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        writeHistory(BitVector.of(selector).toLong(), BitVector.of(registerValue).toLong());
+    }
+
+    /**
+     * reset all the registers to zero by dropping their pages. it is not atomic as a whole.
+     */
+    @Override
+    public void clear() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            synchronized (locks[stripe]) {
+                if (direct) {
+                    for (int number = stripe; number < pages.length(); number += STRIPES) pages.set(number, null);
+                } else {
+                    directories.set(stripe, new Directory(INITIAL_DIRECTORY_CAPACITY));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param number the page number of a selector
+     * @return the page, or null if it is not allocated
+     */
+    private AtomicLongArray page(long number) {
+        return direct ? pages.get((int) number) : directories.get(stripe(number)).get(number);
+    }
+
+    /**
+     * @param number the page number of a selector
+     * @return the page, which is allocated under the lock of its stripe if it is not allocated yet
+     */
+    private AtomicLongArray allocate(long number) {
+        AtomicLongArray page = page(number);
+        if (page != null) return page;
+        int stripe = stripe(number);
+        synchronized (locks[stripe]) {
+            page = page(number);
+            if (page != null) return page;
+            page = new AtomicLongArray(USED + 1);
+            if (direct) {
+                pages.set((int) number, page);
+            } else {
+                Directory directory = directories.get(stripe);
+                if ((directory.size + 1) * 2 > directory.numbers.length) {
+                    directory = directory.grow();
+                    directories.set(stripe, directory);
+                }
+                directory.put(number, page);
+            }
+        }
+        return page;
+    }
+
+    private int stripe(long number) {
+        return direct ? (int) number & (STRIPES - 1) : spread(number) & (STRIPES - 1);
+    }
+
+    private static int spread(long number) {
+        // the finalizer of the 64 bit murmur hash, so nearby pages land in different stripes and slots
+        long h = number;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * @return the page numbers of the allocated pages in increasing order
+     */
+    private long[] allocatedPages() {
+        long[] result = new long[16];
+        int n = 0;
+        if (direct) {
+            for (int number = 0; number < pages.length(); number++) {
+                if (pages.get(number) == null) continue;
+                if (n == result.length) result = Arrays.copyOf(result, n * 2);
+                result[n++] = number;
+            }
+            return Arrays.copyOf(result, n);
+        }
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            Directory directory = directories.get(stripe);
+            for (int slot = 0; slot < directory.numbers.length; slot++) {
+                if (directory.pages.get(slot) == null) continue;
+                if (n == result.length) result = Arrays.copyOf(result, n * 2);
+                result[n++] = directory.numbers[slot];
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        // sort in unsigned order, the page of a 64 bit selector can be above 2^57
+        for (int i = 0; i < n; i++) result[i] ^= Long.MIN_VALUE;
+        Arrays.sort(result);
+        for (int i = 0; i < n; i++) result[i] ^= Long.MIN_VALUE;
+        return result;
+    }
+
+    /**
+     * @return true if the register was not used before
+     */
+    private static boolean markUsed(AtomicLongArray page, int index) {
+        long bit = 1L << index;
+        while (true) {
+            long current = page.get(USED);
+            if ((current & bit) != 0) return false;
+            if (page.compareAndSet(USED, current, current | bit)) return true;
+        }
+    }
+
+    private long occupancy() {
+        long count = 0;
+        for (long number : allocatedPages()) {
+            AtomicLongArray page = page(number);
+            if (page != null) count += Long.bitCount(page.get(USED));
+        }
+        return count;
+    }
+
+    /**
+     * count an access to a register. reading a register which was not used is a default fill, the same as the
+     * RegisterBank.
+     */
+    private void count(boolean first, boolean read, boolean write) {
+        if (read) counters.read();
+        if (write) counters.write();
+        if (first) {
+            if (read) counters.defaultFill();
+            counters.touch();
+        }
+    }
+
+    private long checkSelector(long selector) {
+        if (selectorSize < Long.SIZE && selector >>> selectorSize != 0)
+            throw new IllegalArgumentException("register bank selector is not valid");
+        return selector;
+    }
+
+    /**
+     * the used registers are saved with their selectors, in the same layout as the DenseRegisterBank
+     */
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeInt(selectorSize);
+        out.writeInt(registerSize);
+        long[] selectors = new long[16];
+        long[] values = new long[16];
+        int n = 0;
+        for (long number : allocatedPages()) {
+            AtomicLongArray page = page(number);
+            if (page == null) continue;
+            long used = page.get(USED);
+            for (int index = 0; index < USED; index++) {
+                if ((used & (1L << index)) == 0) continue;
+                if (n == selectors.length) {
+                    selectors = Arrays.copyOf(selectors, n * 2);
+                    values = Arrays.copyOf(values, n * 2);
+                }
+                selectors[n] = (number << PAGE_BITS) | index;
+                values[n++] = page.get(index);
+            }
+        }
+        out.writeLongs(Arrays.copyOf(selectors, n));
+        out.writeLongs(Arrays.copyOf(values, n));
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(selectorSize, "selector size");
+        in.expect(registerSize, "register size");
+        long[] selectors = in.readLongs();
+        long[] values = new long[selectors.length];
+        in.readLongs(values);
+        clear();
+        for (int i = 0; i < selectors.length; i++) {
+            long selector = selectors[i];
+            if (selectorSize < Long.SIZE && selector >>> selectorSize != 0)
+                throw new IOException("invalid register selector " + selector);
+            AtomicLongArray page = allocate(selector >>> PAGE_BITS);
+            int index = (int) selector & (USED - 1);
+            if (!markUsed(page, index)) throw new IOException("invalid register selector " + selector);
+            page.set(index, values[i] & registerMask);
+        }
+    }
+
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.REGISTER_BANK, "RB");
+        for (long number : allocatedPages()) {
+            AtomicLongArray page = page(number);
+            if (page == null) continue;
+            long used = page.get(USED);
+            for (int index = 0; index < USED; index++) {
+                if ((used & (1L << index)) == 0) continue;
+                long selector = (number << PAGE_BITS) | index;
+                visitor.entry(BitVector.of(selector, selectorSize), BitVector.of(page.get(index), registerSize));
+            }
+        }
+        visitor.endDevice();
+    }
+}
@@ -0,0 +1,45 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a Cache of counters which can also be addressed by numbers
+ *
+ * the entry and the block of a counter table are the numeric values of the Bit arrays
+ * (the first bit of the array is the most significant bit). i.e. the entry {ONE, ZERO, ONE} is the
+ * index 5 and reading it with a Bit array or with the number returns the same block
+ */
+
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.devices.Cache;
+
+public interface CounterTable extends Cache<Bit[], Bit[]>, Snapshottable {
+    /**
+     * @return number of bits in a block
+     */
+    int getBlockSize();
+
+    /**
+     * @param index the numeric address
+     * @return true if a block is associated to the address
+     */
+    boolean contains(long index);
+
+    /**
+     * @param index the numeric address
+     * @return the block which is saved in the address or 0 if the address is not associated to any block
+     */
+    long read(long index);
+
+    /**
+     * @param index the numeric address
+     * @param value the block which is saved in the address
+     */
+    void write(long index, long value);
+
+    /**
+     * @param index        the numeric address
+     * @param defaultValue the block which is saved in the address if the address is not associated to any block
+     * @return the block which is saved in the address
+     */
+    long setDefault(long index, long defaultValue);
+}
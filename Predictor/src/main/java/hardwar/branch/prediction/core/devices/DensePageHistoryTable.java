@@ -0,0 +1,241 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * our dense Page History Table model
+ * read below assumptions about the dense PHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it behaves the same as the PageHistoryTable. the only difference is the memory layout.
+ *
+ * 2) all the nRows blocks are allocated when the table is created. the entry is used as the index of the
+ * block, therefore the entry must be smaller than nRows.
+ *
+ * 3) blocks are packed into long words. each block takes a power of two slot (a 2-bit counter takes 2 bits
+ * and a 3-bit counter takes 4 bits) so 32 2-bit counters fit in one word.
+ *
+ * 4) a block is "absent" until it is written by put, putIfAbsent or setDefault. a valid bit per block
+ * keeps this information, so setDefault fills the default value only on the first touch.
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.stats.AccessListener;
+import hardwar.branch.prediction.core.stats.AccessReporter;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class DensePageHistoryTable implements CounterTable, Instrumented, AccessReporter, Checkpointable {
+
+    private final int nRows; // number of PHT entries
+    private final int nColumns; // number of bits in a block
+    private final int rowBits; // number of bits which is needed to address a row
+    private final int slotShift; // log2 of the bits reserved for each block
+    private final int blocksPerWordShift; // log2 of the blocks packed into a word
+    private final long blockMask; // mask of a block in its slot
+    private final long[] blocks; // packed blocks
+    private final long[] valid; // one bit for each block. set if the block is associated
+    private final DeviceCounters counters; // access counters, null if they are disabled
+    private AccessListener listener; // called for every written block, null if there is no listener
+
+
+    public DensePageHistoryTable(int nRows, int nColumns) {
+        if (nRows <= 0) throw new IllegalArgumentException("number of rows must be positive");
+        if (nColumns <= 0 || nColumns > Long.SIZE)
+            throw new IllegalArgumentException("number of bits in a block must be between 1 and 64");
+
+        this.nRows = nRows;
+        this.nColumns = nColumns;
+        this.rowBits = Long.SIZE - Long.numberOfLeadingZeros(nRows - 1L);
+        this.slotShift = 32 - Integer.numberOfLeadingZeros(nColumns - 1); // ceil(log2(nColumns))
+        this.blocksPerWordShift = 6 - slotShift;
+        this.blockMask = BitVector.mask(nColumns);
+        this.blocks = new long[(int) ((nRows + (1L << blocksPerWordShift) - 1) >>> blocksPerWordShift)];
+        this.valid = new long[(nRows + Long.SIZE - 1) / Long.SIZE];
+        this.counters = DeviceCounters.ENABLED ? new DeviceCounters(nRows, this::occupancy) : null;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    @Override
+    public void setAccessListener(AccessListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return nColumns;
+    }
+
+    @Override
+    public boolean contains(long index) {
+        return isValid(checkRow(index));
+    }
+
+    @Override
+    public long read(long index) {
+        int row = checkRow(index);
+        if (DeviceCounters.ENABLED) counters.read();
+        return load(row);
+    }
+
+    @Override
+    public void write(long index, long value) {
+        int row = checkRow(index);
+        if (DeviceCounters.ENABLED) {
+            counters.write();
+            if (!isValid(row)) counters.touch();
+        }
+        store(row, value);
+        if (listener != null) listener.written(index);
+    }
+
+    @Override
+    public long setDefault(long index, long defaultValue) {
+        int row = checkRow(index);
+        if (DeviceCounters.ENABLED) counters.read();
+        if (!isValid(row)) {
+            if (DeviceCounters.ENABLED) countDefaultFill();
+            store(row, defaultValue);
+            return defaultValue & blockMask;
+        }
+        return load(row);
+    }
+
+    /**
+     * @param entry the key to look up in the cache
+     * @return a copy of the block associated with the key, or null if the key is not found
+     */
+    @Override
+    public Bit[] get(Bit[] entry) {
+        int row = checkRow(BitVector.of(entry).toLong());
+        if (DeviceCounters.ENABLED) counters.read();
+        return isValid(row) ? BitVector.of(load(row), nColumns).toBits() : null;
+    }
+
+    /**
+     * @param entry the key to insert into the cache
+     * @param value the value to associate with the key
+     * @throws RuntimeException if the length of the block is not equal to nColumns
+     */
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        write(BitVector.of(entry).toLong(), BitVector.of(value).toLong());
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        int row = checkRow(BitVector.of(entry).toLong());
+        if (isValid(row)) return;
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        if (DeviceCounters.ENABLED) countDefaultFill();
+        store(row, BitVector.of(value).toLong());
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        if (DeviceCounters.ENABLED) counters.read();
+        putIfAbsent(entry, defaultValue);
+        return BitVector.of(load(checkRow(BitVector.of(entry).toLong())), nColumns).toBits();
+    }
+
+    private boolean isValid(int row) {
+        return (valid[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private long load(int row) {
+        int shift = (row & ((1 << blocksPerWordShift) - 1)) << slotShift;
+        return (blocks[row >>> blocksPerWordShift] >>> shift) & blockMask;
+    }
+
+    private void store(int row, long value) {
+        int word = row >>> blocksPerWordShift;
+        int shift = (row & ((1 << blocksPerWordShift) - 1)) << slotShift;
+        blocks[word] = (blocks[word] & ~(blockMask << shift)) | ((value & blockMask) << shift);
+        valid[row >>> 6] |= 1L << row;
+    }
+
+    private void countDefaultFill() {
+        counters.defaultFill();
+        counters.touch();
+    }
+
+    /**
+     * @return number of blocks which are associated
+     */
+    private long occupancy() {
+        long count = 0;
+        for (long word : valid) count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * Clear all entries from the cache.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(blocks, 0L);
+        Arrays.fill(valid, 0L);
+    }
+
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeInt(nRows);
+        out.writeInt(nColumns);
+        out.writeLongs(blocks);
+        out.writeLongs(valid);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nRows, "number of rows");
+        in.expect(nColumns, "block size");
+        in.readLongs(blocks);
+        in.readLongs(valid);
+    }
+
+    private int checkRow(long index) {
+        if (index < 0 || index >= nRows)
+            throw new IndexOutOfBoundsException("PHT entry " + index + " is out of " + nRows + " rows");
+        return (int) index;
+    }
+
+    /**
+     * Returns a string representation of the current state of the PHT in the same format as the PageHistoryTable.
+     *
+     * @return a table with the address and block data for each associated entry in the PHT
+     */
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PHT, "PHT");
+        for (int row = 0; row < nRows; row++) {
+            if (!isValid(row)) continue;
+            visitor.entry(BitVector.of(row, rowBits), BitVector.of(load(row), nColumns));
+        }
+        visitor.endDevice();
+    }
+}
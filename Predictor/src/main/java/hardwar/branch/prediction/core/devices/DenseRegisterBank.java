@@ -0,0 +1,320 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * Our dense Register Bank Model
+ * read below assumptions about the dense Register Bank
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it is a PackedRegisterBank which behaves the same as the RegisterBank. read still returns a copy of the
+ * register, but the readHistory, writeHistory and shiftIn functions work on the register value directly.
+ *
+ * 2) every register is a long, so a register can not be wider than 64 bits. up to DIRECT_SELECTOR_BITS selector
+ * bits the registers are in one array which is indexed by the numeric value of the selector. wider selectors
+ * (e.g. a whole branch address, up to 64 bits) look their registers up in an open addressing directory which
+ * only holds the used registers.
+ *
+ * 3) the value of a register is the numeric value of its bits (the first bit is the most significant bit).
+ * inserting a bit shifts the value one bit to the right and sets the most significant bit, the same as
+ * the SIPORegister.
+ *
+ * 4) a register is marked as used the first time it is read or written, so monitor shows the same
+ * registers as the RegisterBank.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.stats.AccessListener;
+import hardwar.branch.prediction.core.stats.AccessReporter;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.devices.SIPORegister;
+import hardwar.branch.prediction.shared.devices.ShiftRegister;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class DenseRegisterBank implements PackedRegisterBank, AccessReporter {
+    public static final int DIRECT_SELECTOR_BITS = 16; // widest selector whose registers are indexed directly
+    private static final int INITIAL_DIRECTORY_CAPACITY = 64;
+
+    private final int registerSize;
+    private final int selectorSize;
+    private final long msb; // the bit which is set when ONE is inserted into a register
+    private final boolean direct; // true if the registers are indexed by their selector
+    private long[] histories; // value of the registers, by selector or by directory slot
+    private long[] used; // one bit for each register (or slot). set if the register is read or written
+    private long[] selectors; // selector of each directory slot, null if the registers are indexed by selector
+    private int size; // number of used registers in the directory
+    private final DeviceCounters counters; // access counters, null if they are disabled
+    private AccessListener listener; // called for every written register, null if there is no listener
+
+    /**
+     * @param selectorSize number of bits which is needed for selecting a register from register bank
+     * @param registerSize number of bits which is used for each register in register bank
+     */
+    public DenseRegisterBank(int selectorSize, int registerSize) {
+        if (selectorSize < 0 || selectorSize > Long.SIZE)
+            throw new IllegalArgumentException("register bank selector must be between 0 and 64 bits");
+        if (registerSize <= 0 || registerSize > Long.SIZE)
+            throw new IllegalArgumentException("register size must be between 1 and 64 bits");
+
+        this.registerSize = registerSize;
+        this.selectorSize = selectorSize;
+        this.msb = 1L << (registerSize - 1);
+        this.direct = selectorSize <= DIRECT_SELECTOR_BITS;
+        allocate(direct ? 1 << selectorSize : INITIAL_DIRECTORY_CAPACITY);
+        this.counters = DeviceCounters.ENABLED
+                ? new DeviceCounters(selectorSize < Long.SIZE - 1 ? 1L << selectorSize : Long.MAX_VALUE, this::occupancy)
+                : null;
+    }
+
+    private void allocate(int capacity) {
+        histories = new long[capacity];
+        used = new long[(capacity + Long.SIZE - 1) / Long.SIZE];
+        selectors = direct ? null : new long[capacity];
+        size = 0;
+    }
+
+    @Override
+    public int getSelectorSize() {
+        return selectorSize;
+    }
+
+    @Override
+    public int getRegisterSize() {
+        return registerSize;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @param selector the numeric value of the selector
+     * @return the value of the register associated to the selector
+     */
+    @Override
+    public long readHistory(long selector) {
+        int slot = slot(selector);
+        if (DeviceCounters.ENABLED) count(slot, true, false);
+        slot = use(selector, slot);
+        return histories[slot];
+    }
+
+    /**
+     * @param selector the numeric value of the selector
+     * @param value    the value which is written on the register
+     */
+    @Override
+    public void writeHistory(long selector, long value) {
+        int slot = slot(selector);
+        if (DeviceCounters.ENABLED) count(slot, false, true);
+        slot = use(selector, slot);
+        histories[slot] = value & BitVector.mask(registerSize);
+        if (listener != null) listener.written(selector);
+    }
+
+    /**
+     * insert a bit into the register associated to the selector in place
+     *
+     * @param selector the numeric value of the selector
+     * @param bit      the bit which is inserted into the register
+     * @return the new value of the register
+     */
+    @Override
+    public long shiftIn(long selector, Bit bit) {
+        int slot = slot(selector);
+        if (DeviceCounters.ENABLED) count(slot, true, true);
+        slot = use(selector, slot);
+        long history = (histories[slot] >>> 1) | (bit == Bit.ONE ? msb : 0L);
+        histories[slot] = history;
+        if (listener != null) listener.written(selector);
+        return history;
+    }
+
+    @Override
+    public void setAccessListener(AccessListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public ShiftRegister read(Bit[] selector) {
+        if (selector.length != selectorSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        return new SIPORegister("r", registerSize, BitVector.of(readHistory(BitVector.of(selector).toLong()), registerSize).toBits());
+    }
+
+    @Override
+    public void write(Bit[] selector, Bit[] registerValue) {
+        if (selector.length != selectorSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length != this.registerSize)
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        writeHistory(BitVector.of(selector).toLong(), BitVector.of(registerValue).toLong());
+    }
+
+    /**
+     * reset all the registers to zero
+     */
+    @Override
+    public void clear() {
+        if (direct) {
+            Arrays.fill(histories, 0L);
+            Arrays.fill(used, 0L);
+        } else {
+            allocate(INITIAL_DIRECTORY_CAPACITY);
+        }
+    }
+
+    private long occupancy() {
+        if (!direct) return size;
+        long count = 0;
+        for (long word : used) count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * count an access to a register before it is marked as used. reading a register which is not used yet is
+     * a default fill, the same as the RegisterBank.
+     */
+    private void count(int slot, boolean read, boolean write) {
+        if (read) counters.read();
+        if (write) counters.write();
+        if (!isUsed(slot)) {
+            if (read) counters.defaultFill();
+            counters.touch();
+        }
+    }
+
+    private boolean isUsed(int slot) {
+        return (used[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param selector the numeric value of the selector
+     * @return the slot of the register, or the free slot where it is inserted if the register is not used yet
+     */
+    private int slot(long selector) {
+        if (selectorSize < Long.SIZE && selector >>> selectorSize != 0)
+            throw new IllegalArgumentException("register bank selector is not valid");
+        if (direct) return (int) selector;
+        int mask = histories.length - 1;
+        int slot = spread(selector) & mask;
+        while (isUsed(slot) && selectors[slot] != selector) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * mark the register of the slot as used
+     *
+     * @return the slot of the register, which is moved if the directory grows
+     */
+    private int use(long selector, int slot) {
+        if (isUsed(slot)) return slot;
+        if (!direct && (size + 1) * 2 > histories.length) {
+            grow();
+            slot = slot(selector);
+        }
+        used[slot >>> 6] |= 1L << slot;
+        if (!direct) {
+            selectors[slot] = selector;
+            size++;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldHistories = histories;
+        long[] oldUsed = used;
+        long[] oldSelectors = selectors;
+        allocate(oldHistories.length * 2);
+        for (int i = 0; i < oldHistories.length; i++) {
+            if ((oldUsed[i >>> 6] & (1L << i)) == 0) continue;
+            int slot = use(oldSelectors[i], slot(oldSelectors[i]));
+            histories[slot] = oldHistories[i];
+        }
+    }
+
+    private static int spread(long selector) {
+        // the finalizer of the 64 bit murmur hash, so nearby selectors land in different slots
+        long h = selector;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * @return the selectors of the used registers in increasing order
+     */
+    private long[] usedSelectors() {
+        long[] result = new long[(int) occupancy()];
+        int n = 0;
+        for (int slot = 0; slot < histories.length; slot++) {
+            if (isUsed(slot)) result[n++] = direct ? slot : selectors[slot];
+        }
+        if (direct) return result;
+        // sort in unsigned order, a 64 bit selector can be negative
+        for (int i = 0; i < n; i++) result[i] ^= Long.MIN_VALUE;
+        Arrays.sort(result);
+        for (int i = 0; i < n; i++) result[i] ^= Long.MIN_VALUE;
+        return result;
+    }
+
+    /**
+     * the used registers are saved with their selectors, so the registers which are never used are not saved
+     */
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeInt(selectorSize);
+        out.writeInt(registerSize);
+        long[] usedSelectors = usedSelectors();
+        long[] values = new long[usedSelectors.length];
+        for (int i = 0; i < values.length; i++) values[i] = histories[slot(usedSelectors[i])];
+        out.writeLongs(usedSelectors);
+        out.writeLongs(values);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(selectorSize, "selector size");
+        in.expect(registerSize, "register size");
+        long[] usedSelectors = in.readLongs();
+        long[] values = new long[usedSelectors.length];
+        in.readLongs(values);
+        clear();
+        for (int i = 0; i < usedSelectors.length; i++) {
+            long selector = usedSelectors[i];
+            if (selectorSize < Long.SIZE && selector >>> selectorSize != 0)
+                throw new IOException("invalid register selector " + selector);
+            int slot = slot(selector);
+            if (isUsed(slot)) throw new IOException("invalid register selector " + selector);
+            slot = use(selector, slot);
+            histories[slot] = values[i] & BitVector.mask(registerSize);
+        }
+    }
+
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.REGISTER_BANK, "RB");
+        for (long selector : usedSelectors()) {
+            visitor.entry(BitVector.of(selector, selectorSize), BitVector.of(histories[slot(selector)], registerSize));
+        }
+        visitor.endDevice();
+    }
+}
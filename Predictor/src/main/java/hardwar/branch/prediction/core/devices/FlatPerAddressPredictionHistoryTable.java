@@ -0,0 +1,467 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * Our flat Per Address Predication History Table
+ * read below assumptions about the flat PAPHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it behaves the same as the PerAddressPredictionHistoryTable. the first nPCSelector bits of the entry
+ * select the PHT and the other bits select the block of that PHT.
+ *
+ * 2) a block is addressed by its selector and its row, or by one number: (selector << rowBits) | row, where
+ * rowBits is the number of bits needed to address nRowsPerPHT rows. the one number index only reaches the
+ * selectors below 2^(63 - rowBits), so the tables with wider selectors are addressed by (selector, row). the
+ * access listener always gets the one number index, cut to 64 bits.
+ *
+ * 3) each PHT is a page of packed blocks followed by the valid bits of the blocks. a page is allocated the first
+ * time a block of it is set (putIfAbsent or setDefault). up to DIRECT_SELECTOR_BITS selector bits the pages are
+ * indexed by their selector, so unused selectors cost only a null reference. wider selectors (e.g. a whole
+ * branch address) look their pages up in an open addressing directory which only holds the allocated pages.
+ *
+ * 4) writing a block of a PHT which is not allocated yet throws an exception, the same as the
+ * PerAddressPredictionHistoryTable.
+ * ------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.stats.AccessListener;
+import hardwar.branch.prediction.core.stats.AccessReporter;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class FlatPerAddressPredictionHistoryTable implements CounterTable, Instrumented, AccessReporter, Checkpointable {
+    public static final int DIRECT_SELECTOR_BITS = 16; // widest selector whose pages are indexed directly
+    private static final int INITIAL_DIRECTORY_CAPACITY = 64;
+
+    private final int nPCSelector; // number of bits from pc which determine which PHT in PAPHT must be used.
+    private final int nRowsPerPHT; // number of rows per PHT
+    private final int nColumnsPerBlock; // number of columns per block in a PHT
+    private final int rowBits; // number of bits which is needed to address a row of a PHT
+    private final int slotShift; // log2 of the bits reserved for each block
+    private final int blocksPerWordShift; // log2 of the blocks packed into a word
+    private final long blockMask; // mask of a block in its slot
+    private final int validOffset; // index of the first valid word in a page
+    private final boolean direct; // true if the pages are indexed by their selector
+    private long[][] pages; // pages by selector, or by directory slot if the selectors are wide
+    private long[] selectors; // selector of each directory slot, null if the pages are indexed by selector
+    private int allocated; // number of allocated pages
+    private final DeviceCounters counters; // access counters, null if they are disabled
+    private AccessListener listener; // called for every written block, null if there is no listener
+
+
+    public FlatPerAddressPredictionHistoryTable(int nPCSelector, int nRowsPerPHT, int nColumnsPerBlock) {
+        if (nPCSelector < 0 || nPCSelector > Long.SIZE)
+            throw new IllegalArgumentException("number of selector bits must be between 0 and 64");
+        if (nRowsPerPHT <= 0) throw new IllegalArgumentException("number of rows must be positive");
+        if (nColumnsPerBlock <= 0 || nColumnsPerBlock > Long.SIZE)
+            throw new IllegalArgumentException("number of bits in a block must be between 1 and 64");
+
+        this.nPCSelector = nPCSelector;
+        this.nRowsPerPHT = nRowsPerPHT;
+        this.nColumnsPerBlock = nColumnsPerBlock;
+        this.rowBits = Long.SIZE - Long.numberOfLeadingZeros(nRowsPerPHT - 1L);
+        this.slotShift = 32 - Integer.numberOfLeadingZeros(nColumnsPerBlock - 1); // ceil(log2(nColumns))
+        this.blocksPerWordShift = 6 - slotShift;
+        this.blockMask = BitVector.mask(nColumnsPerBlock);
+        this.validOffset = (int) ((nRowsPerPHT + (1L << blocksPerWordShift) - 1) >>> blocksPerWordShift);
+        this.direct = nPCSelector <= DIRECT_SELECTOR_BITS;
+        this.pages = new long[direct ? 1 << nPCSelector : INITIAL_DIRECTORY_CAPACITY][];
+        this.selectors = direct ? null : new long[INITIAL_DIRECTORY_CAPACITY];
+        this.counters = DeviceCounters.ENABLED
+                ? new DeviceCounters(nPCSelector + rowBits < Long.SIZE - 1 ? (1L << nPCSelector) * nRowsPerPHT
+                : Long.MAX_VALUE, this::occupancy) : null;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    @Override
+    public void setAccessListener(AccessListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return number of blocks of all the PHTs which are associated
+     */
+    private long occupancy() {
+        long count = 0;
+        for (long[] page : pages) {
+            if (page == null) continue;
+            for (int i = validOffset; i < page.length; i++) count += Long.bitCount(page[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of bits which is used for addressing a row of a PHT in the numeric index
+     */
+    public int getRowBits() {
+        return rowBits;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return nColumnsPerBlock;
+    }
+
+    /**
+     * @param selector the PHT selector
+     * @return the page of the PHT, or null if it is not allocated
+     */
+    private long[] page(long selector) {
+        if (direct) return pages[(int) selector];
+        int mask = pages.length - 1;
+        for (int slot = spread(selector) & mask; pages[slot] != null; slot = (slot + 1) & mask) {
+            if (selectors[slot] == selector) return pages[slot];
+        }
+        return null;
+    }
+
+    /**
+     * @param selector the PHT selector
+     * @return the page of the PHT, which is allocated if it is not allocated yet
+     */
+    private long[] allocate(long selector) {
+        long[] page = page(selector);
+        if (page != null) return page;
+        page = new long[validOffset + (nRowsPerPHT + Long.SIZE - 1) / Long.SIZE];
+        insert(selector, page);
+        return page;
+    }
+
+    private void insert(long selector, long[] page) {
+        allocated++;
+        if (direct) {
+            pages[(int) selector] = page;
+            return;
+        }
+        if (allocated * 2 > pages.length) grow();
+        int mask = pages.length - 1;
+        int slot = spread(selector) & mask;
+        while (pages[slot] != null) slot = (slot + 1) & mask;
+        pages[slot] = page;
+        selectors[slot] = selector;
+    }
+
+    private void grow() {
+        long[][] oldPages = pages;
+        long[] oldSelectors = selectors;
+        pages = new long[oldPages.length * 2][];
+        selectors = new long[oldPages.length * 2];
+        int mask = pages.length - 1;
+        for (int i = 0; i < oldPages.length; i++) {
+            if (oldPages[i] == null) continue;
+            int slot = spread(oldSelectors[i]) & mask;
+            while (pages[slot] != null) slot = (slot + 1) & mask;
+            pages[slot] = oldPages[i];
+            selectors[slot] = oldSelectors[i];
+        }
+    }
+
+    private static int spread(long selector) {
+        // the finalizer of the 64 bit murmur hash, so nearby selectors land in different slots
+        long h = selector;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * @return the selectors of the allocated pages in increasing order
+     */
+    private long[] allocatedSelectors() {
+        long[] result = new long[allocated];
+        int n = 0;
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] != null) result[n++] = direct ? i : selectors[i];
+        }
+        if (direct) return result;
+        // sort in unsigned order, a 64 bit selector can be negative
+        for (int i = 0; i < n; i++) result[i] ^= Long.MIN_VALUE;
+        Arrays.sort(result);
+        for (int i = 0; i < n; i++) result[i] ^= Long.MIN_VALUE;
+        return result;
+    }
+
+    @Override
+    public boolean contains(long index) {
+        return contains(selector(index), row(index));
+    }
+
+    /**
+     * @param selector the PHT selector
+     * @param row      the row of the PHT
+     * @return true if the block is associated
+     */
+    public boolean contains(long selector, int row) {
+        long[] page = page(checkSelector(selector));
+        if (page == null) return false;
+        checkRow(row);
+        return (page[validOffset + (row >>> 6)] & (1L << row)) != 0;
+    }
+
+    @Override
+    public long read(long index) {
+        return read(selector(index), row(index));
+    }
+
+    /**
+     * @param selector the PHT selector
+     * @param row      the row of the PHT
+     * @return the block, or 0 if it is not associated
+     */
+    public long read(long selector, int row) {
+        long value = load(checkSelector(selector), checkRow(row));
+        if (DeviceCounters.ENABLED) counters.read();
+        return value;
+    }
+
+    private long load(long selector, int row) {
+        long[] page = page(selector);
+        if (page == null) return 0;
+        int shift = (row & ((1 << blocksPerWordShift) - 1)) << slotShift;
+        return (page[row >>> blocksPerWordShift] >>> shift) & blockMask;
+    }
+
+    @Override
+    public void write(long index, long value) {
+        write(selector(index), row(index), value);
+    }
+
+    /**
+     * @param selector the PHT selector
+     * @param row      the row of the PHT
+     * @param value    the block
+     * @throws RuntimeException if the PHT is not associated
+     */
+    public void write(long selector, int row, long value) {
+        long[] page = page(checkSelector(selector));
+        if (page == null) throw new RuntimeException("The PHT is not associated to the PAPHT");
+        checkRow(row);
+        if (DeviceCounters.ENABLED) {
+            counters.write();
+            if ((page[validOffset + (row >>> 6)] & (1L << row)) == 0) counters.touch();
+        }
+        write(page, row, value);
+        if (listener != null) listener.written((selector << rowBits) | row);
+    }
+
+    @Override
+    public long setDefault(long index, long defaultValue) {
+        return setDefault(selector(index), row(index), defaultValue);
+    }
+
+    /**
+     * @param selector     the PHT selector
+     * @param row          the row of the PHT
+     * @param defaultValue the block which is associated if the block is not associated yet
+     * @return the block
+     */
+    public long setDefault(long selector, int row, long defaultValue) {
+        long value = fill(checkSelector(selector), checkRow(row), defaultValue);
+        if (DeviceCounters.ENABLED) counters.read();
+        return value;
+    }
+
+    /**
+     * same as setDefault without counting a read
+     */
+    private long fill(long selector, int row, long defaultValue) {
+        long[] page = allocate(selector);
+
+        if ((page[validOffset + (row >>> 6)] & (1L << row)) == 0) {
+            if (DeviceCounters.ENABLED) {
+                counters.defaultFill();
+                counters.touch();
+            }
+            write(page, row, defaultValue);
+            return defaultValue & blockMask;
+        }
+        int shift = (row & ((1 << blocksPerWordShift) - 1)) << slotShift;
+        return (page[row >>> blocksPerWordShift] >>> shift) & blockMask;
+    }
+
+    private void write(long[] page, int row, long value) {
+        int word = row >>> blocksPerWordShift;
+        int shift = (row & ((1 << blocksPerWordShift) - 1)) << slotShift;
+        page[word] = (page[word] & ~(blockMask << shift)) | ((value & blockMask) << shift);
+        page[validOffset + (row >>> 6)] |= 1L << row;
+    }
+
+    private long selector(long index) {
+        if (index < 0) throw new IndexOutOfBoundsException("PAPHT entry " + index + " has an invalid PHT selector");
+        return index >>> rowBits;
+    }
+
+    private int row(long index) {
+        return (int) (index & BitVector.mask(rowBits));
+    }
+
+    private long checkSelector(long selector) {
+        if (nPCSelector < Long.SIZE && selector >>> nPCSelector != 0)
+            throw new IndexOutOfBoundsException("PHT selector " + selector + " is wider than " + nPCSelector + " bits");
+        return selector;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= nRowsPerPHT)
+            throw new IndexOutOfBoundsException("PAPHT block selector " + row + " is out of " + nRowsPerPHT + " rows");
+        return row;
+    }
+
+    /**
+     * @param entry the bits of the entry. First nPCSelector bits select the PHT
+     * @return the PHT selector of the entry
+     */
+    private long getSelector(Bit[] entry) {
+        return BitVector.of(entry).slice(0, nPCSelector).toLong();
+    }
+
+    /**
+     * @param entry the bits of the entry. the bits after the first nPCSelector bits select the block
+     * @return the row of the entry
+     */
+    private int getRow(Bit[] entry) {
+        long row = BitVector.of(entry).slice(nPCSelector, entry.length).toLong();
+        if (row >= nRowsPerPHT)
+            throw new IndexOutOfBoundsException("PAPHT block selector " + row + " is out of " + nRowsPerPHT + " rows");
+        return (int) row;
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        long selector = getSelector(entry);
+        int row = getRow(entry);
+        if (DeviceCounters.ENABLED) counters.read();
+        return contains(selector, row) ? BitVector.of(load(selector, row), nColumnsPerBlock).toBits() : null;
+    }
+
+    /**
+     * Map the value to the entry.
+     * if the associated cache is not defined then exception will be thrown
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key)
+     */
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        write(getSelector(entry), getRow(entry), BitVector.of(value).toLong());
+    }
+
+    /**
+     * If the cache is not associated yet or no block is mapped to the PHT then map the default value
+     * to the PAPHT
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key) if the key is not mapped to any not-null data
+     */
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        if (value.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        fill(getSelector(entry), getRow(entry), BitVector.of(value).toLong());
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        if (defaultValue.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        long value = setDefault(getSelector(entry), getRow(entry), BitVector.of(defaultValue).toLong());
+        return BitVector.of(value, nColumnsPerBlock).toBits();
+    }
+
+    /**
+     * Clear all the caches.
+     */
+    @Override
+    public void clear() {
+        if (direct) {
+            Arrays.fill(pages, null);
+        } else {
+            pages = new long[INITIAL_DIRECTORY_CAPACITY][];
+            selectors = new long[INITIAL_DIRECTORY_CAPACITY];
+        }
+        allocated = 0;
+    }
+
+    /**
+     * the allocated pages are saved with their selectors, so the PHTs which are never used are not saved
+     */
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeInt(nPCSelector);
+        out.writeInt(nRowsPerPHT);
+        out.writeInt(nColumnsPerBlock);
+        out.writeInt(allocated);
+        for (long selector : allocatedSelectors()) {
+            out.writeLong(selector);
+            out.writeLongs(page(selector));
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nPCSelector, "number of selector bits");
+        in.expect(nRowsPerPHT, "number of rows");
+        in.expect(nColumnsPerBlock, "block size");
+        int count = in.readInt();
+        clear();
+        for (int i = 0; i < count; i++) {
+            long selector = in.readLong();
+            if ((nPCSelector < Long.SIZE && selector >>> nPCSelector != 0) || page(selector) != null)
+                throw new IOException("invalid PHT selector " + selector);
+            long[] page = new long[validOffset + (nRowsPerPHT + Long.SIZE - 1) / Long.SIZE];
+            in.readLongs(page);
+            insert(selector, page);
+        }
+    }
+
+    /**
+     * Returns a string representing the current state of the PAPHT in the same format as the
+     * PerAddressPredictionHistoryTable.
+     *
+     * @return a string representing the current state of the Per Address Prediction History Table
+     */
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PAPHT, "PAPHT");
+        for (long selector : allocatedSelectors()) {
+            visitor.beginGroup(BitVector.of(selector, nPCSelector));
+            for (int row = 0; row < nRowsPerPHT; row++) {
+                if (!contains(selector, row)) continue;
+                visitor.entry(BitVector.of(row, rowBits), BitVector.of(load(selector, row), nColumnsPerBlock));
+            }
+            visitor.endGroup();
+        }
+        visitor.endDevice();
+    }
+}
@@ -0,0 +1,256 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a long global history register with folded views
+ * read below assumptions about the history register
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it behaves the same as the SIPORegister: insert puts the new bit in the first position and the last bit
+ * falls off. the first bit is the most recent branch.
+ *
+ * 2) the bits are kept in a ring of long words, so an insert costs O(1) whatever the length of the register
+ * (a history of hundreds of bits is not shifted).
+ *
+ * 3) a fold of length L and width W is the xor of the L most recent bits, where the bit of age a (0 is the most
+ * recent bit) is at position a % W. it is updated in O(1) on every insert with the bit which enters and the bit
+ * which leaves the fold (a circular shift register, as in the TAGE predictor), so a table can be indexed by a
+ * long history with a few instructions.
+ *
+ * 4) the folds are not part of the state: they are computed again when the register is loaded or restored.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.devices.ShiftRegister;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class HistoryRegister implements ShiftRegister, Snapshottable, Instrumented, Checkpointable {
+    private final String name;
+    private final int size; // number of bits of the register
+    private final long[] ring; // the bits, the bit of time t is bit (t & ringMask) of the ring
+    private final int ringMask; // number of bits of the ring - 1, the ring holds a power of two bits
+    private int time; // time of the most recent bit
+    private final DeviceCounters counters; // access counters, null if they are disabled
+
+    private int[] foldLengths = new int[0]; // number of history bits of each fold
+    private int[] foldWidths = new int[0]; // number of bits of each fold
+    private int[] foldShifts = new int[0]; // position of the bit which leaves each fold (length % width)
+    private long[] folds = new long[0]; // value of each fold
+
+    /**
+     * @param name the register name
+     * @param size the size of the register
+     */
+    public HistoryRegister(String name, int size) {
+        if (size <= 0 || size > 1 << 24) throw new IllegalArgumentException("register size must be between 1 and 2^24");
+        this.name = name;
+        this.size = size;
+        int ringBits = Math.max(Long.SIZE, Integer.highestOneBit(size - 1) << 1);
+        this.ring = new long[ringBits / Long.SIZE];
+        this.ringMask = ringBits - 1;
+        this.counters = DeviceCounters.ENABLED ? new DeviceCounters(1, () -> 1) : null;
+        if (counters != null) counters.touch();
+    }
+
+    /**
+     * add a fold of the history, which is kept up to date by every insert
+     *
+     * @param length number of most recent bits which are folded (1 to the register size)
+     * @param width  number of bits of the fold (1 to 63)
+     * @return the number of the fold (see getFold)
+     */
+    public int addFold(int length, int width) {
+        if (length <= 0 || length > size)
+            throw new IllegalArgumentException("fold length must be between 1 and " + size);
+        if (width <= 0 || width >= Long.SIZE) throw new IllegalArgumentException("fold width must be between 1 and 63");
+        int fold = folds.length;
+        foldLengths = Arrays.copyOf(foldLengths, fold + 1);
+        foldWidths = Arrays.copyOf(foldWidths, fold + 1);
+        foldShifts = Arrays.copyOf(foldShifts, fold + 1);
+        folds = Arrays.copyOf(folds, fold + 1);
+        foldLengths[fold] = length;
+        foldWidths[fold] = width;
+        foldShifts[fold] = length % width;
+        folds[fold] = computeFold(fold);
+        return fold;
+    }
+
+    /**
+     * @param fold the number of the fold
+     * @return the value of the fold
+     */
+    public long getFold(int fold) {
+        return folds[fold];
+    }
+
+    /**
+     * @param age age of the bit, 0 is the most recent bit
+     * @return true if the bit is one
+     */
+    public boolean get(int age) {
+        int position = (time - age) & ringMask;
+        return (ring[position >>> 6] & (1L << position)) != 0;
+    }
+
+    /**
+     * @param bits number of most recent bits (at most 64)
+     * @return the numeric value of the most recent bits, the most recent bit is the most significant bit
+     */
+    public long read(int bits) {
+        if (DeviceCounters.ENABLED && counters != null) counters.read();
+        long value = 0;
+        for (int age = 0; age < bits; age++) value = (value << 1) | (get(age) ? 1 : 0);
+        return value;
+    }
+
+    /**
+     * copy the register into words in the order of age: bit j of word k is the bit of age 64 * k + j. the bits
+     * after the end of the register are zero.
+     *
+     * @param words at least ceil(size / 64) words
+     */
+    public void readWords(long[] words) {
+        if (DeviceCounters.ENABLED && counters != null) counters.read();
+        int wordMask = ring.length - 1;
+        for (int k = 0, age = 0; age < size; k++, age += Long.SIZE) {
+            // the ring holds the bits in the order of time, so the 64 bits of the word are reversed
+            int start = (time - age - (Long.SIZE - 1)) & ringMask;
+            int word = start >>> 6;
+            int offset = start & (Long.SIZE - 1);
+            long bits = offset == 0 ? ring[word]
+                    : (ring[word] >>> offset) | (ring[(word + 1) & wordMask] << (Long.SIZE - offset));
+            bits = Long.reverse(bits);
+            words[k] = size - age >= Long.SIZE ? bits : bits & BitVector.mask(size - age);
+        }
+    }
+
+    /**
+     * insert a bit and update the folds without allocating any object
+     *
+     * @param taken the inserted bit
+     */
+    public void shiftIn(boolean taken) {
+        if (DeviceCounters.ENABLED && counters != null) counters.write();
+        long in = taken ? 1 : 0;
+        long[] ring = this.ring;
+        long[] folds = this.folds;
+        int last = time + 1; // time of the bit which leaves a fold of length 1
+        for (int fold = 0; fold < folds.length; fold++) {
+            int width = foldWidths[fold];
+            int position = (last - foldLengths[fold]) & ringMask;
+            long out = (ring[position >>> 6] >>> position) & 1; // the bit which leaves the fold
+            long value = (folds[fold] << 1) | in;
+            value ^= out << foldShifts[fold];
+            value ^= value >>> width;
+            folds[fold] = value & ((1L << width) - 1);
+        }
+        int position = ++time & ringMask;
+        if (taken) ring[position >>> 6] |= 1L << position;
+        else ring[position >>> 6] &= ~(1L << position);
+    }
+
+    @Override
+    public void insert(Bit bit) {
+        shiftIn(bit == Bit.ONE);
+    }
+
+    @Override
+    public Bit[] read() {
+        if (DeviceCounters.ENABLED && counters != null) counters.read();
+        Bit[] bits = new Bit[size];
+        for (int age = 0; age < size; age++) bits[age] = Bit.of(get(age));
+        return bits;
+    }
+
+    @Override
+    public void load(Bit[] bits) {
+        if (DeviceCounters.ENABLED && counters != null) counters.write();
+        for (int age = 0; age < size; age++) set(age, bits[age] == Bit.ONE);
+        computeFolds();
+    }
+
+    /**
+     * @param bits packed data to be load in register
+     */
+    public void load(BitVector bits) {
+        if (DeviceCounters.ENABLED && counters != null) counters.write();
+        for (int age = 0; age < size; age++) set(age, bits.get(age) == Bit.ONE);
+        computeFolds();
+    }
+
+    private void set(int age, boolean value) {
+        int position = (time - age) & ringMask;
+        if (value) ring[position >>> 6] |= 1L << position;
+        else ring[position >>> 6] &= ~(1L << position);
+    }
+
+    private void computeFolds() {
+        for (int fold = 0; fold < folds.length; fold++) folds[fold] = computeFold(fold);
+    }
+
+    private long computeFold(int fold) {
+        int width = foldWidths[fold];
+        long value = 0;
+        for (int age = 0; age < foldLengths[fold]; age++) if (get(age)) value ^= 1L << (age % width);
+        return value;
+    }
+
+    @Override
+    public int getLength() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(ring, 0L);
+        Arrays.fill(folds, 0L);
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    private BitVector toVector() {
+        Bit[] bits = new Bit[size];
+        for (int age = 0; age < size; age++) bits[age] = Bit.of(get(age));
+        return BitVector.of(bits);
+    }
+
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.REGISTER, name);
+        visitor.entry(BitVector.zeros(0), toVector());
+        visitor.endDevice();
+    }
+
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeVector(toVector());
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        BitVector bits = in.readVector();
+        if (bits.length() != size)
+            throw new IOException("checkpoint register size is " + bits.length() + " but the register size is " + size);
+        for (int age = 0; age < size; age++) set(age, bits.get(age) == Bit.ONE);
+        computeFolds();
+    }
+}
@@ -0,0 +1,155 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * the combinational logic of the packed devices
+ * read below assumptions about the packed logic
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it does the same as the CombinationalLogic, but on the numeric value of the bits instead of Bit arrays,
+ * so a predictor can count and hash without allocating any object.
+ *
+ * 2) the first bit is the most significant bit of a value, same as the Bit arrays.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.shared.CountMode;
+
+public final class PackedLogic {
+    // counters up to this width use the precomputed next state tables
+    private static final int MAX_TABLE_WIDTH = 8;
+
+    // NEXT_STATE[mode][width][(state << 1) | up] is the next state of a counter
+    private static final int[][][] NEXT_STATE = new int[CountMode.values().length][MAX_TABLE_WIDTH + 1][];
+
+    static {
+        for (CountMode mode : CountMode.values()) {
+            for (int width = 1; width <= MAX_TABLE_WIDTH; width++) {
+                int[] table = new int[2 << width];
+                for (int state = 0; state < (1 << width); state++) {
+                    table[state << 1] = nextState(state, width, false, mode);
+                    table[(state << 1) | 1] = nextState(state, width, true, mode);
+                }
+                NEXT_STATE[mode.ordinal()][width] = table;
+            }
+        }
+    }
+
+    private PackedLogic() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * Counts the counter one step up or down without allocating any object.
+     * <ul>
+     * <li>SATURATING: counts up to 2^width - 1 and down to 0 and stays there</li>
+     * <li>UP_DOWN: counts up and down and wraps around on overflow and underflow</li>
+     * <li>JOHNSON: a twisted ring counter. counting up shifts the bits to the right and inserts the inverted
+     * last bit as the first bit, counting down does the reverse</li>
+     * </ul>
+     * The first bit is the most significant bit of the state, same as the Bit arrays.
+     *
+     * @param state the current value of the counter
+     * @param width number of bits of the counter (1 to 31)
+     * @param up    the counter direction
+     * @param mode  the counter type
+     * @return the next value of the counter
+     */
+    public static int count(int state, int width, boolean up, CountMode mode) {
+        if (width <= MAX_TABLE_WIDTH && width > 0) {
+            return NEXT_STATE[mode.ordinal()][width][((state & ((1 << width) - 1)) << 1) | (up ? 1 : 0)];
+        }
+        return nextState(state, width, up, mode);
+    }
+
+    private static int nextState(int state, int width, boolean up, CountMode mode) {
+        if (width <= 0 || width > 31) throw new IllegalArgumentException("invalid counter width: " + width);
+        int max = (1 << width) - 1;
+        state &= max;
+
+        switch (mode) {
+            case SATURATING:
+                if (up) return state == max ? state : state + 1;
+                return state == 0 ? state : state - 1;
+            case UP_DOWN:
+                return (up ? state + 1 : state - 1) & max;
+            case JOHNSON:
+                if (up) return (state >>> 1) | ((~state & 1) << (width - 1));
+                return ((state << 1) & max) | (~(state >>> (width - 1)) & 1);
+            default:
+                throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * hash a value of at most 64 bits without allocating any object
+     *
+     * @param input        the value. the first bit is the most significant bit, same as the Bit arrays
+     * @param inBitNumber  number of input bits
+     * @param outBitNumber number of output bits
+     * @param mode         hash mode. GSHARE needs a history and is rejected here
+     * @return hashed value of input based on the specified mode
+     */
+    public static long hash(long input, int inBitNumber, int outBitNumber, HashFunction mode) {
+        if (inBitNumber < 0 || inBitNumber > Long.SIZE || outBitNumber <= 0 || outBitNumber > Long.SIZE)
+            throw new IllegalArgumentException("invalid number of hash bits");
+        long outMask = BitVector.mask(outBitNumber);
+        input &= BitVector.mask(inBitNumber);
+
+        switch (mode) {
+            case XOR: {
+                // bit i of the input goes to bit (i % out), a short last chunk is aligned with the first bits
+                long hash = 0;
+                for (int from = 0; from < inBitNumber; from += outBitNumber) {
+                    int to = Math.min(inBitNumber, from + outBitNumber);
+                    long chunk = (input >>> (inBitNumber - to)) & BitVector.mask(to - from);
+                    hash ^= chunk << (outBitNumber - (to - from));
+                }
+                return hash;
+            }
+            case SIMPLE_CUT:
+                if (inBitNumber >= outBitNumber) return input >>> (inBitNumber - outBitNumber);
+                return input << (outBitNumber - inBitNumber);
+            case FOLDED_XOR: {
+                long hash = 0;
+                for (long rest = input; rest != 0; rest = outBitNumber == Long.SIZE ? 0 : rest >>> outBitNumber) {
+                    hash ^= rest & outMask;
+                }
+                return hash;
+            }
+            case MULTIPLICATIVE:
+                // fibonacci hashing: the most significant bits of the product are the best mixed ones
+                return (input * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - outBitNumber);
+            case GSHARE:
+                throw new IllegalArgumentException("GSHARE is not an address hash");
+            default:
+                throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * hash a branch address together with a history. GSHARE xors the address with the history,
+     * other modes hash the concatenation of the address and the history (address bits first).
+     *
+     * @param address          the branch address
+     * @param addressBitNumber number of address bits
+     * @param history          the branch history
+     * @param historyBitNumber number of history bits
+     * @param outBitNumber     number of output bits
+     * @param mode             hash mode
+     * @return hashed value of the address and the history
+     */
+    public static long hash(long address, int addressBitNumber, long history, int historyBitNumber,
+                            int outBitNumber, HashFunction mode) {
+        if (mode == HashFunction.GSHARE) {
+            return (address ^ history) & BitVector.mask(outBitNumber);
+        }
+        if (addressBitNumber + historyBitNumber > Long.SIZE)
+            throw new IllegalArgumentException("address and history can not be wider than 64 bits");
+
+        long input = historyBitNumber == Long.SIZE ? history
+                : (address << historyBitNumber) | (history & BitVector.mask(historyBitNumber));
+        return hash(input, addressBitNumber + historyBitNumber, outBitNumber, mode);
+    }
+}
@@ -0,0 +1,125 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a serial in parallel out register which is kept as a number
+ * read below assumptions about the packed register
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) it behaves the same as the SIPORegister: insert puts the new bit in the first position and the last bit
+ * falls off. the value of the register is the numeric value of its bits (the first bit is the most significant
+ * bit), so inserting a bit shifts the value one bit to the right and sets the most significant bit.
+ *
+ * 2) the register is at most 64 bits, so it is one long and readValue and loadValue never allocate.
+ *
+ * 3) the register starts with all the bits zero.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.devices.ShiftRegister;
+
+import java.io.IOException;
+
+public class PackedRegister implements ShiftRegister, Snapshottable, Instrumented, Checkpointable {
+    private final String name;
+    private final int size; // number of bits of the register
+    private final long mask; // mask of the bits of the register
+    private final long msb; // the bit which is set when ONE is inserted
+    private long value; // the bits of the register, the first bit is the most significant bit
+    private final DeviceCounters counters; // access counters, null if they are disabled
+
+    /**
+     * @param name the register name
+     * @param size the size of the register (1 to 64)
+     */
+    public PackedRegister(String name, int size) {
+        if (size <= 0 || size > Long.SIZE) throw new IllegalArgumentException("register size must be between 1 and 64 bits");
+        this.name = name;
+        this.size = size;
+        this.mask = BitVector.mask(size);
+        this.msb = 1L << (size - 1);
+        this.counters = DeviceCounters.ENABLED ? new DeviceCounters(1, () -> 1) : null;
+        if (counters != null) counters.touch();
+    }
+
+    /**
+     * @return the numeric value of the register
+     */
+    public long readValue() {
+        if (DeviceCounters.ENABLED) counters.read();
+        return value;
+    }
+
+    /**
+     * @param value the value which is loaded into the register, it is cut to the register size
+     */
+    public void loadValue(long value) {
+        if (DeviceCounters.ENABLED) counters.write();
+        this.value = value & mask;
+    }
+
+    @Override
+    public Bit[] read() {
+        return BitVector.of(readValue(), size).toBits();
+    }
+
+    @Override
+    public void load(Bit[] bits) {
+        loadValue(BitVector.of(bits).slice(0, size).toLong());
+    }
+
+    @Override
+    public void insert(Bit bit) {
+        if (DeviceCounters.ENABLED) counters.write();
+        value = (value >>> 1) | (bit == Bit.ONE ? msb : 0L);
+    }
+
+    @Override
+    public int getLength() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        value = 0;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.REGISTER, name);
+        visitor.entry(BitVector.zeros(0), BitVector.of(value, size));
+        visitor.endDevice();
+    }
+
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeVector(BitVector.of(value, size));
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        BitVector bits = in.readVector();
+        if (bits.length() != size)
+            throw new IOException("checkpoint register size is " + bits.length() + " but the register size is " + size);
+        value = bits.toLong();
+    }
+}
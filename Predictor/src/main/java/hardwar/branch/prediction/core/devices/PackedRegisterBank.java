@@ -0,0 +1,76 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a Register Bank whose registers are kept as numbers
+ * read below assumptions about the packed Register Bank
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) a register is at most 64 bits and it is selected by the numeric value of the selector. the value of a
+ * register is the numeric value of its bits (the first bit is the most significant bit).
+ *
+ * 2) read and write behave the same as the RegisterBank, read returns a copy of the register. the numeric
+ * functions work on the register value directly.
+ *
+ * 3) inserting a bit shifts the value one bit to the right and sets the most significant bit, the same as
+ * the SIPORegister.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.devices.ShiftRegister;
+
+public interface PackedRegisterBank extends Snapshottable, Instrumented, Checkpointable {
+    /**
+     * @return number of bits which is needed for selecting a register
+     */
+    int getSelectorSize();
+
+    /**
+     * @return number of bits of each register
+     */
+    int getRegisterSize();
+
+    /**
+     * @param selector the value which is used for reading from the register bank
+     * @return a copy of the register associated to the selector
+     * @throws IllegalArgumentException if the selector is not in legal bound
+     */
+    ShiftRegister read(Bit[] selector);
+
+    /**
+     * @param selector      the value which is used for reading from the register bank
+     * @param registerValue the value which is written on the register
+     * @throws IllegalArgumentException if the selector is not in legal bound or the registerValue size is not as
+     *                                  same as register size
+     */
+    void write(Bit[] selector, Bit[] registerValue);
+
+    /**
+     * @param selector the numeric value of the selector
+     * @return the value of the register associated to the selector
+     */
+    long readHistory(long selector);
+
+    /**
+     * @param selector the numeric value of the selector
+     * @param value    the value which is written on the register, it is cut to the register size
+     */
+    void writeHistory(long selector, long value);
+
+    /**
+     * insert a bit into the register associated to the selector in place
+     *
+     * @param selector the numeric value of the selector
+     * @param bit      the bit which is inserted into the register
+     * @return the new value of the register
+     */
+    long shiftIn(long selector, Bit bit);
+
+    /**
+     * reset all the registers to zero
+     */
+    void clear();
+}
@@ -0,0 +1,147 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a return address stack
+ * read below assumptions about the return address stack
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the stack holds at most `depth` addresses in a ring of longs. a push on a full stack overwrites the oldest
+ * address, so a deep recursion loses its first return addresses and not the last ones, the same as hardware.
+ *
+ * 2) a pop on an empty stack does nothing, and peek on an empty stack is not allowed (see isEmpty).
+ *
+ * 3) the snapshot entries are the positions of the addresses from the top of the stack (0 is the top).
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class ReturnAddressStack implements Snapshottable, Instrumented, Checkpointable {
+    private final int depth; // maximum number of addresses
+    private final int addressSize; // number of bits of an address
+    private final long[] addresses; // the ring of addresses
+    private int top; // position of the top address in the ring
+    private int size; // number of addresses in the stack
+    private final DeviceCounters counters; // access counters, null if they are disabled
+
+    /**
+     * @param depth       maximum number of addresses
+     * @param addressSize number of bits of an address (1 to 64)
+     */
+    public ReturnAddressStack(int depth, int addressSize) {
+        if (depth <= 0) throw new IllegalArgumentException("stack depth must be positive");
+        if (addressSize <= 0 || addressSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+
+        this.depth = depth;
+        this.addressSize = addressSize;
+        this.addresses = new long[depth];
+        this.top = depth - 1;
+        this.counters = DeviceCounters.ENABLED ? new DeviceCounters(depth, () -> size) : null;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @param address the return address, it is cut to the address size
+     */
+    public void push(long address) {
+        if (DeviceCounters.ENABLED) {
+            counters.write();
+            if (size < depth) counters.touch();
+        }
+        top = top + 1 == depth ? 0 : top + 1;
+        addresses[top] = address & BitVector.mask(addressSize);
+        if (size < depth) size++;
+    }
+
+    /**
+     * @return the address on the top of the stack
+     */
+    public long peek() {
+        if (size == 0) throw new IllegalStateException("the return address stack is empty");
+        if (DeviceCounters.ENABLED) counters.read();
+        return addresses[top];
+    }
+
+    /**
+     * remove the address on the top of the stack, if there is one
+     */
+    public void pop() {
+        if (size == 0) return;
+        if (DeviceCounters.ENABLED) counters.write();
+        top = top == 0 ? depth - 1 : top - 1;
+        size--;
+    }
+
+    public void clear() {
+        Arrays.fill(addresses, 0L);
+        top = depth - 1;
+        size = 0;
+    }
+
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeInt(depth);
+        out.writeInt(addressSize);
+        out.writeInt(size);
+        long[] stack = new long[size]; // from the top to the bottom
+        for (int i = 0; i < size; i++) stack[i] = addresses[(top - i + depth) % depth];
+        out.writeLongs(stack);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(depth, "stack depth");
+        in.expect(addressSize, "address size");
+        int size = in.readInt();
+        if (size < 0 || size > depth) throw new IOException("checkpoint stack size " + size + " is out of range");
+        long[] stack = new long[size];
+        in.readLongs(stack);
+        clear();
+        for (int i = 0; i < size; i++) addresses[size - 1 - i] = stack[i] & BitVector.mask(addressSize);
+        this.top = size == 0 ? depth - 1 : size - 1;
+        this.size = size;
+    }
+
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.REGISTER_BANK, "RAS");
+        int positionBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(depth - 1));
+        for (int i = 0; i < size; i++) {
+            visitor.entry(BitVector.of(i, positionBits), BitVector.of(addresses[(top - i + depth) % depth], addressSize));
+        }
+        visitor.endDevice();
+    }
+}
@@ -0,0 +1,344 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a bounded set-associative cache of blocks with partial tags
+ * read below assumptions about the set-associative cache
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the entry is split into a set index (the setBits least significant bits) and a tag (the other bits). only
+ * the tagBits least significant bits of the tag are kept, so two entries with the same set and partial tag
+ * share a block (a false hit), the same as the tagged tables of real predictors. tagBits = 64 keeps full tags.
+ *
+ * 2) the cache holds at most nSets * nWays blocks. a put, putIfAbsent or setDefault of an entry which is not in
+ * the cache fills a free way of its set, or evicts a way chosen by the replacement policy if the set is full.
+ *
+ * 3) the tags, blocks and valid bits are kept in primitive arrays and the replacement state is kept by the
+ * policy (see ReplacementPolicy), so the memory of the cache does not depend on the length of the trace.
+ *
+ * 4) a lookup (get, read, setDefault, putIfAbsent, put) is a hit if the entry is in the cache and a miss
+ * otherwise. an eviction is counted when a valid block is replaced. contains does not count and does not
+ * change the replacement state.
+ *
+ * 5) a missing entry reads as null (get) or 0 (read), the same as the other counter tables.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.ReplacementMode;
+import hardwar.branch.prediction.core.devices.replacement.LRUReplacement;
+import hardwar.branch.prediction.core.devices.replacement.RandomReplacement;
+import hardwar.branch.prediction.core.devices.replacement.ReplacementPolicy;
+import hardwar.branch.prediction.core.devices.replacement.SRRIPReplacement;
+import hardwar.branch.prediction.core.devices.replacement.TreePLRUReplacement;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class SetAssociativeCache implements CounterTable, Instrumented {
+    private final int nSets; // number of sets, a power of two
+    private final int nWays; // number of blocks in a set
+    private final int setBits; // number of bits of the set index
+    private final int tagBits; // number of bits of the partial tag
+    private final int blockSize; // number of bits in a block
+    private final long tagMask; // mask of the partial tag
+    private final long blockMask; // mask of a block
+    private final long[] tags; // partial tag of each way of each set
+    private final long[] blocks; // block of each way of each set
+    private final long[] valid; // one bit for each way of each set. set if the way holds a block
+    private final ReplacementPolicy policy;
+    private final DeviceCounters counters; // access counters, null if they are disabled
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param nSets     number of sets, a power of two
+     * @param nWays     number of ways of each set
+     * @param tagBits   number of bits of the partial tag (0 to 64)
+     * @param blockSize number of bits in a block (1 to 64)
+     * @param mode      the replacement policy
+     */
+    public SetAssociativeCache(int nSets, int nWays, int tagBits, int blockSize, ReplacementMode mode) {
+        this(nSets, nWays, tagBits, blockSize, createPolicy(mode, nSets, nWays));
+    }
+
+    /**
+     * @param policy the replacement state of nSets sets of nWays ways
+     */
+    public SetAssociativeCache(int nSets, int nWays, int tagBits, int blockSize, ReplacementPolicy policy) {
+        if (nSets <= 0 || Integer.bitCount(nSets) != 1)
+            throw new IllegalArgumentException("number of sets must be a power of two");
+        if (nWays <= 0) throw new IllegalArgumentException("number of ways must be positive");
+        if ((long) nSets * nWays > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("number of blocks must be less than 2^31");
+        if (tagBits < 0 || tagBits > Long.SIZE)
+            throw new IllegalArgumentException("number of tag bits must be between 0 and 64");
+        if (blockSize <= 0 || blockSize > Long.SIZE)
+            throw new IllegalArgumentException("number of bits in a block must be between 1 and 64");
+
+        this.nSets = nSets;
+        this.nWays = nWays;
+        this.setBits = Integer.numberOfTrailingZeros(nSets);
+        this.tagBits = tagBits;
+        this.blockSize = blockSize;
+        this.tagMask = BitVector.mask(tagBits);
+        this.blockMask = BitVector.mask(blockSize);
+        this.tags = new long[nSets * nWays];
+        this.blocks = new long[nSets * nWays];
+        this.valid = new long[(nSets * nWays + Long.SIZE - 1) / Long.SIZE];
+        this.policy = policy;
+        this.counters = DeviceCounters.ENABLED ? new DeviceCounters((long) nSets * nWays, this::occupancy) : null;
+    }
+
+    private static ReplacementPolicy createPolicy(ReplacementMode mode, int nSets, int nWays) {
+        switch (mode) {
+            case LRU:
+                return new LRUReplacement(nSets, nWays);
+            case TREE_PLRU:
+                return new TreePLRUReplacement(nSets, nWays);
+            case RANDOM:
+                return new RandomReplacement(nSets, nWays);
+            case SRRIP:
+                return new SRRIPReplacement(nSets, nWays);
+            default:
+                throw new IllegalArgumentException("unknown replacement mode " + mode);
+        }
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * reset the hit, miss and eviction counters
+     */
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public boolean contains(long index) {
+        return find(set(index), tag(index)) >= 0;
+    }
+
+    @Override
+    public long read(long index) {
+        if (DeviceCounters.ENABLED) counters.read();
+        int slot = lookup(index);
+        return slot < 0 ? 0 : blocks[slot];
+    }
+
+    /**
+     * a lookup which tells a miss apart from a block of 0 and does not fill the cache on a miss
+     *
+     * @param index        the entry
+     * @param defaultValue the value which is returned on a miss
+     * @return the block of the entry, or the default value on a miss
+     */
+    public long readOrDefault(long index, long defaultValue) {
+        if (DeviceCounters.ENABLED) counters.read();
+        int slot = lookup(index);
+        return slot < 0 ? defaultValue : blocks[slot];
+    }
+
+    @Override
+    public void write(long index, long value) {
+        if (DeviceCounters.ENABLED) counters.write();
+        int slot = lookup(index);
+        if (slot < 0) slot = allocate(index);
+        blocks[slot] = value & blockMask;
+    }
+
+    @Override
+    public long setDefault(long index, long defaultValue) {
+        if (DeviceCounters.ENABLED) counters.read();
+        int slot = lookup(index);
+        if (slot >= 0) return blocks[slot];
+        if (DeviceCounters.ENABLED) counters.defaultFill();
+        slot = allocate(index);
+        blocks[slot] = defaultValue & blockMask;
+        return blocks[slot];
+    }
+
+    /**
+     * @return the slot of the entry, or -1 on a miss. the hit or the miss is counted.
+     */
+    private int lookup(long index) {
+        int set = set(index);
+        int way = find(set, tag(index));
+        if (way < 0) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        policy.hit(set, way);
+        return set * nWays + way;
+    }
+
+    /**
+     * @return the way of the set which holds the tag, or -1
+     */
+    private int find(int set, long tag) {
+        int base = set * nWays;
+        for (int way = 0; way < nWays; way++) {
+            int slot = base + way;
+            if (tags[slot] == tag && isValid(slot)) return way;
+        }
+        return -1;
+    }
+
+    /**
+     * fill a free way of the set of the entry, or evict a way if the set is full
+     *
+     * @return the slot of the entry
+     */
+    private int allocate(long index) {
+        int set = set(index);
+        int base = set * nWays;
+        int way = -1;
+        for (int w = 0; w < nWays; w++) {
+            if (!isValid(base + w)) {
+                way = w;
+                break;
+            }
+        }
+        if (way < 0) {
+            way = policy.victim(set);
+            evictions++;
+        } else if (DeviceCounters.ENABLED) {
+            counters.touch();
+        }
+
+        int slot = base + way;
+        tags[slot] = tag(index);
+        valid[slot >>> 6] |= 1L << slot;
+        policy.fill(set, way);
+        return slot;
+    }
+
+    private boolean isValid(int slot) {
+        return (valid[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private int set(long index) {
+        return (int) (index & (nSets - 1));
+    }
+
+    private long tag(long index) {
+        return (index >>> setBits) & tagMask;
+    }
+
+    /**
+     * @return number of ways which hold a block
+     */
+    private long occupancy() {
+        long count = 0;
+        for (long word : valid) count += Long.bitCount(word);
+        return count;
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        if (DeviceCounters.ENABLED) counters.read();
+        int slot = lookup(BitVector.of(entry).toLong());
+        return slot < 0 ? null : BitVector.of(blocks[slot], blockSize).toBits();
+    }
+
+    /**
+     * @throws RuntimeException if the length of the block is not equal to the block size
+     */
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        if (value.length != blockSize) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        write(BitVector.of(entry).toLong(), BitVector.of(value).toLong());
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        if (value.length != blockSize) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        setDefault(BitVector.of(entry).toLong(), BitVector.of(value).toLong());
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        if (defaultValue.length != blockSize) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        return BitVector.of(setDefault(BitVector.of(entry).toLong(), BitVector.of(defaultValue).toLong()), blockSize)
+                .toBits();
+    }
+
+    /**
+     * remove all the blocks and reset the replacement state. the hit, miss and eviction counters are kept.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(tags, 0L);
+        Arrays.fill(blocks, 0L);
+        Arrays.fill(valid, 0L);
+        policy.clear();
+    }
+
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    /**
+     * the key of a block is its partial tag followed by its set index
+     */
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PHT, "Cache");
+        int keyBits = Math.min(tagBits + setBits, Long.SIZE);
+        for (int set = 0; set < nSets; set++) {
+            for (int way = 0; way < nWays; way++) {
+                int slot = set * nWays + way;
+                if (!isValid(slot)) continue;
+                long key = (tags[slot] << setBits) | set;
+                visitor.entry(BitVector.of(key, keyBits), BitVector.of(blocks[slot], blockSize));
+            }
+        }
+        visitor.endDevice();
+    }
+
+    @Override
+    public String toString() {
+        long lookups = hits + misses;
+        return String.format("%d sets x %d ways: hits=%d misses=%d (%.2f%%) evictions=%d", nSets, nWays, hits, misses,
+                lookups == 0 ? 0 : 100.0 * misses / lookups, evictions);
+    }
+}
@@ -0,0 +1,219 @@
+package hardwar.branch.prediction.core.devices;
+
+/*
+ * a table of perceptron weights
+ * read below assumptions about the weight table
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) every row holds a bias weight and one weight for each bit of the history. a weight is a signed byte which
+ * saturates at -127 and 127, and all the rows are kept in one byte array.
+ *
+ * 2) the history is given as words in the order of age (see HistoryRegister.readWords). a set bit (taken) is +1
+ * and a clear bit is -1, so the output of a row is the bias plus the dot product of the weights and the history.
+ *
+ * 3) the dot product and the training are loops over the byte array without branches: a weight is negated with
+ * a mask instead of a condition and the saturation is a min and a max, so the JIT can unroll them.
+ *
+ * 4) a row is "used" once it is trained, so monitor and the device counters show the trained rows only.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.core.checkpoint.Checkpointable;
+import hardwar.branch.prediction.core.snapshot.AsciiSnapshotRenderer;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.Instrumented;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class WeightTable implements Snapshottable, Instrumented, Checkpointable {
+    public static final int MAX_WEIGHT = 127;
+    public static final int WEIGHT_BITS = 8;
+
+    private final int nRows; // number of rows
+    private final int historySize; // number of history weights of a row
+    private final int rowSize; // bias and history weights of a row
+    private final byte[] weights; // the weights of all the rows, row by row
+    private final long[] used; // one bit for each row. set if the row is trained
+    private final DeviceCounters counters; // access counters, null if they are disabled
+
+    /**
+     * @param nRows       number of rows
+     * @param historySize number of history bits of a row
+     */
+    public WeightTable(int nRows, int historySize) {
+        if (nRows <= 0) throw new IllegalArgumentException("number of rows must be positive");
+        if (historySize <= 0) throw new IllegalArgumentException("history size must be positive");
+        if ((long) nRows * (historySize + 1) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("number of weights must be less than 2^31");
+
+        this.nRows = nRows;
+        this.historySize = historySize;
+        this.rowSize = historySize + 1;
+        this.weights = new byte[nRows * rowSize];
+        this.used = new long[(nRows + Long.SIZE - 1) / Long.SIZE];
+        this.counters = DeviceCounters.ENABLED ? new DeviceCounters(nRows, this::occupancy) : null;
+    }
+
+    public int getRows() {
+        return nRows;
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    @Override
+    public DeviceCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @param row     the row
+     * @param history the history in the order of age (see HistoryRegister.readWords)
+     * @return the bias plus the dot product of the weights of the row and the history
+     */
+    public int output(int row, long[] history) {
+        int base = checkRow(row) * rowSize;
+        if (DeviceCounters.ENABLED) counters.read();
+        byte[] weights = this.weights;
+        int sum = weights[base];
+        for (int k = 0, column = base + 1; column <= base + historySize; k++, column += Long.SIZE) {
+            long word = history[k];
+            int n = Math.min(Long.SIZE, base + rowSize - column);
+            for (int j = 0; j < n; j++) {
+                int negate = (int) ((word >>> j) & 1) - 1; // 0 if the bit is set, -1 if it is clear
+                sum += (weights[column + j] ^ negate) - negate;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * move the weights of the row one step towards the result: the bias towards the result and each weight
+     * towards agreement of its history bit with the result
+     *
+     * @param row     the row
+     * @param history the history in the order of age (see HistoryRegister.readWords)
+     * @param taken   the actual result of the branch
+     */
+    public void train(int row, long[] history, boolean taken) {
+        int base = checkRow(row) * rowSize;
+        if (DeviceCounters.ENABLED) {
+            counters.write();
+            if ((used[row >>> 6] & (1L << row)) == 0) counters.touch();
+        }
+        used[row >>> 6] |= 1L << row;
+        byte[] weights = this.weights;
+        long result = taken ? -1L : 0L; // all ones if taken
+        weights[base] = saturate(weights[base] + (taken ? 1 : -1));
+        for (int k = 0, column = base + 1; column <= base + historySize; k++, column += Long.SIZE) {
+            long agree = ~(history[k] ^ result); // bit j is set if the history bit is the same as the result
+            int n = Math.min(Long.SIZE, base + rowSize - column);
+            for (int j = 0; j < n; j++) {
+                int step = ((int) (agree >>> j) & 1) * 2 - 1; // +1 if they agree, -1 if not
+                weights[column + j] = saturate(weights[column + j] + step);
+            }
+        }
+    }
+
+    private static byte saturate(int weight) {
+        return (byte) Math.max(-MAX_WEIGHT, Math.min(MAX_WEIGHT, weight));
+    }
+
+    /**
+     * @param row    the row
+     * @param column 0 for the bias, i + 1 for the weight of the history bit of age i
+     * @return the weight
+     */
+    public int getWeight(int row, int column) {
+        if (column < 0 || column >= rowSize)
+            throw new IndexOutOfBoundsException("column " + column + " is out of " + rowSize + " columns");
+        return weights[checkRow(row) * rowSize + column];
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= nRows)
+            throw new IndexOutOfBoundsException("row " + row + " is out of " + nRows + " rows");
+        return row;
+    }
+
+    /**
+     * @return number of rows which are trained
+     */
+    private long occupancy() {
+        long count = 0;
+        for (long word : used) count += Long.bitCount(word);
+        return count;
+    }
+
+    public void clear() {
+        Arrays.fill(weights, (byte) 0);
+        Arrays.fill(used, 0L);
+    }
+
+    @Override
+    public void checkpoint(CheckpointWriter out) throws IOException {
+        out.writeInt(nRows);
+        out.writeInt(historySize);
+        out.writeLongs(used);
+        long[] words = new long[(rowSize + 7) / 8]; // 8 weights in a word
+        for (int row = 0; row < nRows; row++) {
+            if ((used[row >>> 6] & (1L << row)) == 0) continue;
+            int base = row * rowSize;
+            Arrays.fill(words, 0L);
+            for (int column = 0; column < rowSize; column++) {
+                words[column >>> 3] |= (weights[base + column] & 0xFFL) << ((column & 7) * WEIGHT_BITS);
+            }
+            out.writeLongs(words);
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nRows, "number of rows");
+        in.expect(historySize, "history size");
+        clear();
+        in.readLongs(used);
+        long[] words = new long[(rowSize + 7) / 8]; // 8 weights in a word
+        for (int row = 0; row < nRows; row++) {
+            if ((used[row >>> 6] & (1L << row)) == 0) continue;
+            in.readLongs(words);
+            int base = row * rowSize;
+            for (int column = 0; column < rowSize; column++) {
+                byte weight = (byte) (words[column >>> 3] >>> ((column & 7) * WEIGHT_BITS));
+                if (weight < -MAX_WEIGHT) throw new IOException("checkpoint weight is out of range");
+                weights[base + column] = weight;
+            }
+        }
+    }
+
+    @Override
+    public String monitor() {
+        return AsciiSnapshotRenderer.render(this);
+    }
+
+    /**
+     * the key of a weight is its row followed by its column (0 is the bias), only the trained rows are visited
+     */
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PHT, "Weights");
+        int rowBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(nRows - 1));
+        int columnBits = 32 - Integer.numberOfLeadingZeros(rowSize - 1);
+        for (int row = 0; row < nRows; row++) {
+            if ((used[row >>> 6] & (1L << row)) == 0) continue;
+            for (int column = 0; column < rowSize; column++) {
+                long key = ((long) row << columnBits) | column;
+                visitor.entry(BitVector.of(key, rowBits + columnBits),
+                        BitVector.of(weights[row * rowSize + column], WEIGHT_BITS));
+            }
+        }
+        visitor.endDevice();
+    }
+}
@@ -0,0 +1,45 @@
+package hardwar.branch.prediction.core.devices.replacement;
+
+/*
+ * true least recently used replacement
+ *
+ * every way keeps the time of its last use (a counter which is incremented on every hit and fill) and the
+ * victim is the way with the oldest time.
+ */
+
+import java.util.Arrays;
+
+public final class LRUReplacement implements ReplacementPolicy {
+    private final int ways;
+    private final long[] lastUse; // time of the last use of each way of each set
+    private long clock; // time of the last use
+
+    public LRUReplacement(int sets, int ways) {
+        this.ways = ways;
+        this.lastUse = new long[sets * ways];
+    }
+
+    @Override
+    public void hit(int set, int way) {
+        lastUse[set * ways + way] = ++clock;
+    }
+
+    @Override
+    public void fill(int set, int way) {
+        lastUse[set * ways + way] = ++clock;
+    }
+
+    @Override
+    public int victim(int set) {
+        int base = set * ways;
+        int victim = 0;
+        for (int way = 1; way < ways; way++) if (lastUse[base + way] < lastUse[base + victim]) victim = way;
+        return victim;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(lastUse, 0L);
+        clock = 0;
+    }
+}
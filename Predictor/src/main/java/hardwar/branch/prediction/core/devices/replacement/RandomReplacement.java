@@ -0,0 +1,39 @@
+package hardwar.branch.prediction.core.devices.replacement;
+
+/*
+ * random replacement
+ *
+ * the victim is drawn from a xorshift generator with a fixed seed, so a replay evicts the same ways every time.
+ */
+
+public final class RandomReplacement implements ReplacementPolicy {
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private final int ways;
+    private long state = SEED; // xorshift state, never zero
+
+    public RandomReplacement(int sets, int ways) {
+        this.ways = ways;
+    }
+
+    @Override
+    public void hit(int set, int way) {
+    }
+
+    @Override
+    public void fill(int set, int way) {
+    }
+
+    @Override
+    public int victim(int set) {
+        state ^= state << 13;
+        state ^= state >>> 7;
+        state ^= state << 17;
+        return (int) ((state >>> 1) % ways);
+    }
+
+    @Override
+    public void clear() {
+        state = SEED;
+    }
+}
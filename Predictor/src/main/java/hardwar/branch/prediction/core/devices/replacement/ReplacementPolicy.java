@@ -0,0 +1,33 @@
+package hardwar.branch.prediction.core.devices.replacement;
+
+/*
+ * the replacement state of all the sets of a set-associative cache
+ *
+ * the cache tells the policy about every hit and every fill of a way, and asks it for a victim when a set
+ * has no free way. the state is kept in primitive arrays which are indexed by the set.
+ */
+
+public interface ReplacementPolicy {
+    /**
+     * @param set the set
+     * @param way the way which is hit
+     */
+    void hit(int set, int way);
+
+    /**
+     * @param set the set
+     * @param way the way which is filled with a new block
+     */
+    void fill(int set, int way);
+
+    /**
+     * @param set the set which has no free way
+     * @return the way which is evicted
+     */
+    int victim(int set);
+
+    /**
+     * reset the state of all the sets
+     */
+    void clear();
+}
@@ -0,0 +1,51 @@
+package hardwar.branch.prediction.core.devices.replacement;
+
+/*
+ * static re-reference interval prediction (SRRIP, hit priority)
+ *
+ * every way has a 2-bit re-reference prediction value (RRPV). a new block is filled with a long re-reference
+ * interval (MAX - 1) and a hit predicts a near re-reference (0). the victim is the first way with a distant
+ * re-reference (MAX); if there is none all the values of the set are aged until one reaches MAX. so the
+ * blocks which are used only once leave the set before the blocks which are reused.
+ */
+
+import java.util.Arrays;
+
+public final class SRRIPReplacement implements ReplacementPolicy {
+    private static final byte MAX = 3; // distant re-reference of 2-bit values
+
+    private final int ways;
+    private final byte[] rrpv; // re-reference prediction value of each way of each set
+
+    public SRRIPReplacement(int sets, int ways) {
+        this.ways = ways;
+        this.rrpv = new byte[sets * ways];
+        Arrays.fill(rrpv, MAX);
+    }
+
+    @Override
+    public void hit(int set, int way) {
+        rrpv[set * ways + way] = 0;
+    }
+
+    @Override
+    public void fill(int set, int way) {
+        rrpv[set * ways + way] = MAX - 1;
+    }
+
+    @Override
+    public int victim(int set) {
+        int base = set * ways;
+        int oldest = 0;
+        for (int way = 1; way < ways; way++) if (rrpv[base + way] > rrpv[base + oldest]) oldest = way;
+        // age the set until the oldest way reaches MAX, the same as repeating the search after each aging step
+        int age = MAX - rrpv[base + oldest];
+        if (age > 0) for (int way = 0; way < ways; way++) rrpv[base + way] += age;
+        return oldest;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(rrpv, MAX);
+    }
+}
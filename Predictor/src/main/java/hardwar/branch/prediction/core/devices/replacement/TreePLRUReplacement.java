@@ -0,0 +1,68 @@
+package hardwar.branch.prediction.core.devices.replacement;
+
+/*
+ * tree pseudo LRU replacement
+ *
+ * the ways of a set are the leaves of a binary tree and every inner node has one bit which points to the half
+ * which was used less recently (0 = left, 1 = right). a use flips the bits on the path of the way to point away
+ * from it, and the victim is found by following the bits from the root. a set of n ways needs n - 1 bits, which
+ * are kept in one long (node i has the children 2i + 1 and 2i + 2).
+ */
+
+import java.util.Arrays;
+
+public final class TreePLRUReplacement implements ReplacementPolicy {
+    private final int ways;
+    private final long[] trees; // the bits of the tree of each set
+
+    /**
+     * @param ways number of ways, a power of two between 1 and 64
+     */
+    public TreePLRUReplacement(int sets, int ways) {
+        if (ways <= 0 || ways > Long.SIZE || Integer.bitCount(ways) != 1)
+            throw new IllegalArgumentException("tree PLRU needs a power of two number of ways up to 64");
+        this.ways = ways;
+        this.trees = new long[sets];
+    }
+
+    @Override
+    public void hit(int set, int way) {
+        touch(set, way);
+    }
+
+    @Override
+    public void fill(int set, int way) {
+        touch(set, way);
+    }
+
+    private void touch(int set, int way) {
+        long tree = trees[set];
+        int node = 0;
+        for (int half = ways >>> 1; half > 0; half >>>= 1) {
+            boolean right = (way & half) != 0;
+            // point to the other half
+            if (right) tree &= ~(1L << node);
+            else tree |= 1L << node;
+            node = 2 * node + (right ? 2 : 1);
+        }
+        trees[set] = tree;
+    }
+
+    @Override
+    public int victim(int set) {
+        long tree = trees[set];
+        int node = 0;
+        int way = 0;
+        for (int half = ways >>> 1; half > 0; half >>>= 1) {
+            boolean right = (tree & (1L << node)) != 0;
+            if (right) way |= half;
+            node = 2 * node + (right ? 2 : 1);
+        }
+        return way;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(trees, 0L);
+    }
+}
@@ -0,0 +1,140 @@
+package hardwar.branch.prediction.core.snapshot;
+
+/*
+ * renders a snapshot as the ASCII tables of the monitor functions
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the rows are appended to the Appendable as soon as they are visited, so a large table is never kept
+ * in memory. wrap a Writer in a BufferedWriter when rendering a big snapshot to a file.
+ *
+ * 2) the output is the same as the old String.format based monitor tables: addresses longer than 16 bits
+ * are cut to 16 bits and "...", blocks are padded to 10 characters.
+ *
+ * 3) a predictor is rendered as "<name> predictor snapshot: " followed by its devices.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+public class AsciiSnapshotRenderer implements SnapshotVisitor {
+    private static final String BORDER = "+----------------------------------+\n";
+    private static final String SEPARATOR = "|---------------------|------------|\n";
+
+    private final Appendable out;
+    private final Deque<Kind> kinds = new ArrayDeque<>(); // kinds of the devices which are not ended yet
+    private final Deque<String> names = new ArrayDeque<>(); // names of the devices which are not ended yet
+
+    public AsciiSnapshotRenderer(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * @param device the device
+     * @return the ASCII tables of the device
+     */
+    public static String render(Snapshottable device) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            device.snapshot(new AsciiSnapshotRenderer(sb));
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void beginDevice(Kind kind, String name) throws IOException {
+        kinds.push(kind);
+        names.push(name);
+        switch (kind) {
+            case PREDICTOR:
+                out.append(name).append(" predictor snapshot: \n");
+                break;
+            case PHT:
+                header("Address", "Block");
+                break;
+            case REGISTER_BANK:
+                header("Register Number", "Value");
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void beginGroup(BitVector selector) throws IOException {
+        out.append("PHT for selector: ").append(selector.toString()).append('\n');
+        header("Address", "Block");
+    }
+
+    @Override
+    public void entry(BitVector key, BitVector value) throws IOException {
+        if (kinds.peek() == Kind.REGISTER) {
+            register(names.peek(), value);
+            return;
+        }
+
+        String address = key.toString();
+        out.append("| ");
+        if (address.length() > 16) {
+            pad(address.substring(0, 16), 16);
+            out.append("...");
+        } else {
+            pad(address, 19);
+        }
+        out.append(" | ");
+        pad(value.toString(), 10);
+        out.append(" |\n");
+        out.append(BORDER);
+    }
+
+    @Override
+    public void endGroup() throws IOException {
+        out.append('\n');
+    }
+
+    @Override
+    public void endDevice() {
+        kinds.pop();
+        names.pop();
+    }
+
+    private void header(String address, String block) throws IOException {
+        out.append(BORDER);
+        out.append("| ");
+        pad(address, 19);
+        out.append(" | ");
+        pad(block, 10);
+        out.append(" |\n");
+        out.append(SEPARATOR);
+    }
+
+    private void register(String name, BitVector value) throws IOException {
+        // each bit takes 4 characters, the name and the borders are added to the width of the box
+        int width = value.length() * 4 + name.length() + 2;
+        line(width);
+        out.append('|').append(name).append(' ');
+        for (int i = 0; i < value.length(); i++) {
+            out.append(" | ").append(value.get(i).toString());
+        }
+        out.append(" |\n");
+        line(width);
+    }
+
+    private void line(int width) throws IOException {
+        out.append('+');
+        for (int i = 0; i < width; i++) out.append('-');
+        out.append("+\n");
+    }
+
+    private void pad(String text, int width) throws IOException {
+        out.append(text);
+        for (int i = text.length(); i < width; i++) out.append(' ');
+    }
+}
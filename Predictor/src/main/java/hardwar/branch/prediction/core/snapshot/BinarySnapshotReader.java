@@ -0,0 +1,83 @@
+package hardwar.branch.prediction.core.snapshot;
+
+/*
+ * replays a binary snapshot (see BinarySnapshotWriter) into a visitor
+ *
+ * the records are decoded one by one, so a large snapshot can be rendered or filtered without loading it.
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.shared.Bit;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class BinarySnapshotReader {
+    private static final SnapshotVisitor.Kind[] KINDS = SnapshotVisitor.Kind.values();
+
+    private BinarySnapshotReader() {
+    }
+
+    /**
+     * @param source  the stream which holds the snapshot. it is not closed.
+     * @param visitor the visitor which receives the records
+     * @throws IOException if the stream is not a binary snapshot or it ends before the END record
+     */
+    public static void replay(InputStream source, SnapshotVisitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source, 1 << 16));
+        if (in.readInt() != BinarySnapshotWriter.MAGIC) throw new IOException("the stream is not a binary snapshot");
+        int version = in.readInt();
+        if (version != BinarySnapshotWriter.VERSION) throw new IOException("unsupported snapshot version " + version);
+
+        while (true) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case BinarySnapshotWriter.END:
+                    return;
+                case BinarySnapshotWriter.BEGIN_DEVICE:
+                    int kind = in.readUnsignedByte();
+                    if (kind >= KINDS.length) throw new IOException("invalid device kind " + kind);
+                    visitor.beginDevice(KINDS[kind], in.readUTF());
+                    break;
+                case BinarySnapshotWriter.BEGIN_GROUP:
+                    visitor.beginGroup(readVector(in));
+                    break;
+                case BinarySnapshotWriter.ENTRY:
+                    BitVector key = readVector(in);
+                    visitor.entry(key, readVector(in));
+                    break;
+                case BinarySnapshotWriter.END_GROUP:
+                    visitor.endGroup();
+                    break;
+                case BinarySnapshotWriter.END_DEVICE:
+                    visitor.endDevice();
+                    break;
+                default:
+                    throw new IOException("invalid snapshot record " + tag);
+            }
+        }
+    }
+
+    private static BitVector readVector(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        int bytes = (length + 7) / 8;
+        if (length <= Long.SIZE) {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) value = (value << 8) | in.readUnsignedByte();
+            return BitVector.of(value, length);
+        }
+
+        Bit[] bits = new Bit[length];
+        for (int i = bytes - 1; i >= 0; i--) {
+            int b = in.readUnsignedByte();
+            int to = length - i * 8;
+            for (int p = to - 1; p >= Math.max(0, to - 8); p--) {
+                bits[p] = Bit.of((b & 1) != 0);
+                b >>>= 1;
+            }
+        }
+        return BitVector.of(bits);
+    }
+}
@@ -0,0 +1,113 @@
+package hardwar.branch.prediction.core.snapshot;
+
+/*
+ * writes a snapshot to a binary sink
+ * read below assumptions about the binary snapshot format
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the stream starts with MAGIC and VERSION (ints) and then holds one record for each event of the visitor.
+ * a record is a tag byte followed by its fields:
+ *      BEGIN_DEVICE    kind (byte, ordinal of the Kind), name (modified UTF-8)
+ *      BEGIN_GROUP     selector (vector)
+ *      ENTRY           key (vector), value (vector)
+ *      END_GROUP
+ *      END_DEVICE
+ *      END             written when the writer is closed
+ *
+ * 2) a vector is its length (unsigned short) followed by ceil(length / 8) bytes, most significant byte first.
+ * a 2-bit block takes 3 bytes and a 16-bit address takes 4 bytes.
+ *
+ * 3) the records are buffered and written as soon as the buffer is full, so the snapshot is never kept
+ * in memory. use the BinarySnapshotReader to replay the snapshot into any other visitor.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class BinarySnapshotWriter implements SnapshotVisitor, Closeable {
+    public static final int MAGIC = 0x534E4150; // "SNAP"
+    public static final int VERSION = 1;
+
+    static final int END = 0;
+    static final int BEGIN_DEVICE = 1;
+    static final int BEGIN_GROUP = 2;
+    static final int ENTRY = 3;
+    static final int END_GROUP = 4;
+    static final int END_DEVICE = 5;
+
+    private final DataOutputStream out;
+
+    /**
+     * @param sink the stream which the snapshot is written to. it is closed when the writer is closed.
+     * @throws IOException if the header can not be written
+     */
+    public BinarySnapshotWriter(OutputStream sink) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(sink, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    @Override
+    public void beginDevice(Kind kind, String name) throws IOException {
+        out.writeByte(BEGIN_DEVICE);
+        out.writeByte(kind.ordinal());
+        out.writeUTF(name);
+    }
+
+    @Override
+    public void beginGroup(BitVector selector) throws IOException {
+        out.writeByte(BEGIN_GROUP);
+        writeVector(selector);
+    }
+
+    @Override
+    public void entry(BitVector key, BitVector value) throws IOException {
+        out.writeByte(ENTRY);
+        writeVector(key);
+        writeVector(value);
+    }
+
+    @Override
+    public void endGroup() throws IOException {
+        out.writeByte(END_GROUP);
+    }
+
+    @Override
+    public void endDevice() throws IOException {
+        out.writeByte(END_DEVICE);
+    }
+
+    private void writeVector(BitVector vector) throws IOException {
+        int length = vector.length();
+        if (length > 0xFFFF) throw new IllegalArgumentException("vector is too wide for a binary snapshot");
+        out.writeShort(length);
+
+        int bytes = (length + 7) / 8;
+        if (length <= Long.SIZE) {
+            long value = vector.toLong();
+            for (int i = bytes - 1; i >= 0; i--) out.writeByte((int) (value >>> (i * 8)));
+            return;
+        }
+        // the first byte holds the most significant length % 8 bits
+        for (int i = bytes - 1; i >= 0; i--) {
+            int to = length - i * 8;
+            out.writeByte((int) vector.slice(Math.max(0, to - 8), to).toLong());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeByte(END);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package hardwar.branch.prediction.core.snapshot;
+
+/*
+ * renders a snapshot in a compact line based text format which is easy to parse
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) every event of the visitor is one line:
+ *      begin <KIND> <name>     beginDevice
+ *      group <selector>        beginGroup
+ *      <key>=<value>           entry (the key of a register is empty)
+ *      endgroup                endGroup
+ *      end                     endDevice
+ *
+ * 2) selectors, keys and values are written as binary strings, first character is the most significant bit,
+ * so the length of every vector is kept.
+ *
+ * 3) the lines are appended as soon as they are visited, the same as the AsciiSnapshotRenderer.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+
+import java.io.IOException;
+
+public class CompactSnapshotRenderer implements SnapshotVisitor {
+    private final Appendable out;
+
+    public CompactSnapshotRenderer(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void beginDevice(Kind kind, String name) throws IOException {
+        out.append("begin ").append(kind.name()).append(' ').append(name).append('\n');
+    }
+
+    @Override
+    public void beginGroup(BitVector selector) throws IOException {
+        out.append("group ").append(selector.toString()).append('\n');
+    }
+
+    @Override
+    public void entry(BitVector key, BitVector value) throws IOException {
+        out.append(key.toString()).append('=').append(value.toString()).append('\n');
+    }
+
+    @Override
+    public void endGroup() throws IOException {
+        out.append("endgroup\n");
+    }
+
+    @Override
+    public void endDevice() throws IOException {
+        out.append("end\n");
+    }
+}
@@ -0,0 +1,207 @@
+package hardwar.branch.prediction.core.snapshot;
+
+/*
+ * visitors which filter the entries of a snapshot before passing them to another visitor
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) devices and groups are always passed, only the entries are filtered.
+ *
+ * 2) the default value of a block is zero (the predictors set the absent counters to zero), so a zero block
+ * is a default entry. registers are never filtered.
+ *
+ * 3) top keeps the n entries with the highest values of each device or group and passes them when the device
+ * or the group ends, highest value first. equal values keep the visiting order. only n entries of each open
+ * device or group are kept in memory.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public final class SnapshotFilters {
+
+    private SnapshotFilters() {
+    }
+
+    /**
+     * @param next the visitor which receives the entries which are not zero
+     * @return a visitor which skips the table entries with a zero value
+     */
+    public static SnapshotVisitor nonDefault(SnapshotVisitor next) {
+        return new NonDefaultFilter(next);
+    }
+
+    /**
+     * @param n    maximum number of entries of each device or group
+     * @param next the visitor which receives the entries
+     * @return a visitor which passes the n entries with the highest values of each device or group
+     */
+    public static SnapshotVisitor top(int n, SnapshotVisitor next) {
+        if (n < 0) throw new IllegalArgumentException("number of entries can not be negative");
+        return new TopFilter(n, next);
+    }
+
+    /**
+     * @return negative, zero or positive if a is smaller than, equal to or greater than b. vectors are compared
+     * by their numeric values.
+     */
+    static int compare(BitVector a, BitVector b) {
+        if (a.length() <= Long.SIZE && b.length() <= Long.SIZE) return Long.compareUnsigned(a.toLong(), b.toLong());
+        String x = a.toString();
+        String y = b.toString();
+        // strip the leading zeros so the vectors of different length are compared by their values
+        int i = 0, j = 0;
+        while (i < x.length() - 1 && x.charAt(i) == '0') i++;
+        while (j < y.length() - 1 && y.charAt(j) == '0') j++;
+        int lengths = Integer.compare(x.length() - i, y.length() - j);
+        return lengths != 0 ? lengths : x.substring(i).compareTo(y.substring(j));
+    }
+
+    private static boolean isZero(BitVector vector) {
+        return vector.length() <= Long.SIZE ? vector.toLong() == 0 : vector.toString().indexOf('1') < 0;
+    }
+
+    /**
+     * passes all the events to the next visitor
+     */
+    private abstract static class Filter implements SnapshotVisitor {
+        final SnapshotVisitor next;
+
+        Filter(SnapshotVisitor next) {
+            this.next = next;
+        }
+
+        @Override
+        public void beginDevice(Kind kind, String name) throws IOException {
+            next.beginDevice(kind, name);
+        }
+
+        @Override
+        public void beginGroup(BitVector selector) throws IOException {
+            next.beginGroup(selector);
+        }
+
+        @Override
+        public void entry(BitVector key, BitVector value) throws IOException {
+            next.entry(key, value);
+        }
+
+        @Override
+        public void endGroup() throws IOException {
+            next.endGroup();
+        }
+
+        @Override
+        public void endDevice() throws IOException {
+            next.endDevice();
+        }
+    }
+
+    private static final class NonDefaultFilter extends Filter {
+        private final Deque<Kind> kinds = new ArrayDeque<>(); // kinds of the devices which are not ended yet
+
+        NonDefaultFilter(SnapshotVisitor next) {
+            super(next);
+        }
+
+        @Override
+        public void beginDevice(Kind kind, String name) throws IOException {
+            kinds.push(kind);
+            next.beginDevice(kind, name);
+        }
+
+        @Override
+        public void entry(BitVector key, BitVector value) throws IOException {
+            if (kinds.peek() == Kind.REGISTER || !isZero(value)) next.entry(key, value);
+        }
+
+        @Override
+        public void endDevice() throws IOException {
+            kinds.pop();
+            next.endDevice();
+        }
+    }
+
+    private static final class TopFilter extends Filter {
+        private static final Comparator<Entry> ORDER = (a, b) -> {
+            int c = compare(a.value, b.value);
+            // the later entry is removed first if the values are equal
+            return c != 0 ? c : Long.compare(b.order, a.order);
+        };
+
+        private final int n;
+        private final Deque<PriorityQueue<Entry>> open = new ArrayDeque<>(); // kept entries of each open device or group
+        private final Deque<Kind> kinds = new ArrayDeque<>(); // kinds of the devices which are not ended yet
+        private long order; // visiting order of the next entry
+
+        TopFilter(int n, SnapshotVisitor next) {
+            super(next);
+            this.n = n;
+        }
+
+        @Override
+        public void beginDevice(Kind kind, String name) throws IOException {
+            kinds.push(kind);
+            open.push(new PriorityQueue<>(ORDER));
+            next.beginDevice(kind, name);
+        }
+
+        @Override
+        public void beginGroup(BitVector selector) throws IOException {
+            open.push(new PriorityQueue<>(ORDER));
+            next.beginGroup(selector);
+        }
+
+        @Override
+        public void entry(BitVector key, BitVector value) throws IOException {
+            if (kinds.peek() == Kind.REGISTER) {
+                next.entry(key, value);
+                return;
+            }
+
+            PriorityQueue<Entry> kept = open.peek();
+            if (kept == null) throw new IllegalStateException("entry is visited out of any device");
+            kept.add(new Entry(key, value, order++));
+            if (kept.size() > n) kept.poll(); // remove the smallest entry
+        }
+
+        @Override
+        public void endGroup() throws IOException {
+            flush();
+            next.endGroup();
+        }
+
+        @Override
+        public void endDevice() throws IOException {
+            flush();
+            kinds.pop();
+            next.endDevice();
+        }
+
+        private void flush() throws IOException {
+            PriorityQueue<Entry> kept = open.pop();
+            List<Entry> entries = new ArrayList<>(kept);
+            entries.sort(ORDER.reversed());
+            for (Entry entry : entries) next.entry(entry.key, entry.value);
+        }
+    }
+
+    private static final class Entry {
+        final BitVector key;
+        final BitVector value;
+        final long order;
+
+        Entry(BitVector key, BitVector value, long order) {
+            this.key = key;
+            this.value = value;
+            this.order = order;
+        }
+    }
+}
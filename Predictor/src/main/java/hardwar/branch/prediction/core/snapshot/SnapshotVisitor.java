@@ -0,0 +1,58 @@
+package hardwar.branch.prediction.core.snapshot;
+
+/*
+ * a visitor which receives the state of a Snapshottable entry by entry
+ * read below assumptions about snapshots
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) a device is visited as beginDevice, its entries and endDevice. devices can be nested, i.e. a predictor
+ * visits its registers and tables between its own beginDevice and endDevice.
+ *
+ * 2) the entries of a PAPHT are grouped by the PHT selector (beginGroup and endGroup). other devices do not
+ * use groups.
+ *
+ * 3) a register is visited as a single entry with an empty key. the entries of the tables and register banks
+ * are visited in the same order as the monitor table shows them.
+ *
+ * 4) the vectors are not kept by the device, so a visitor can keep them without copying (BitVector is immutable).
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.BitVector;
+
+import java.io.IOException;
+
+public interface SnapshotVisitor {
+
+    enum Kind {
+        PREDICTOR, // a branch predictor which holds other devices
+        REGISTER, // a single register, visited as one entry with an empty key
+        REGISTER_BANK, // entries are register number and register value
+        PHT, // entries are address and block
+        PAPHT // entries are address and block grouped by the PHT selector
+    }
+
+    /**
+     * @param kind the kind of the device
+     * @param name name of the device
+     * @throws IOException if the snapshot can not be written
+     */
+    void beginDevice(Kind kind, String name) throws IOException;
+
+    /**
+     * @param selector the selector of the group (e.g. the PHT selector of a PAPHT)
+     * @throws IOException if the snapshot can not be written
+     */
+    void beginGroup(BitVector selector) throws IOException;
+
+    /**
+     * @param key   address of the entry (empty for registers)
+     * @param value value of the entry
+     * @throws IOException if the snapshot can not be written
+     */
+    void entry(BitVector key, BitVector value) throws IOException;
+
+    void endGroup() throws IOException;
+
+    void endDevice() throws IOException;
+}
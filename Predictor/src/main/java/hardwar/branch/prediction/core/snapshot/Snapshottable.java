@@ -0,0 +1,20 @@
+package hardwar.branch.prediction.core.snapshot;
+
+/*
+ * a device whose state can be streamed entry by entry into a SnapshotVisitor
+ */
+
+import hardwar.branch.prediction.shared.Monitorable;
+
+import java.io.IOException;
+
+public interface Snapshottable extends Monitorable {
+    /**
+     * stream the state of the device entry by entry into the visitor (see {@link AsciiSnapshotRenderer} for
+     * the monitor table)
+     *
+     * @param visitor the visitor which receives the entries
+     * @throws IOException if the visitor can not write the snapshot
+     */
+    void snapshot(SnapshotVisitor visitor) throws IOException;
+}
@@ -0,0 +1,15 @@
+package hardwar.branch.prediction.core.stats;
+
+/*
+ * receives the numeric index of every entry which is written in a device (see AccessReporter)
+ *
+ * the listener is called on the thread which writes the device, before the write returns.
+ */
+
+public interface AccessListener {
+    /**
+     * @param index the numeric index of the written entry (the numeric address of a table or the selector of a
+     *              register bank)
+     */
+    void written(long index);
+}
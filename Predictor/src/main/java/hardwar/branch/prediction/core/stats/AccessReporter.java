@@ -0,0 +1,12 @@
+package hardwar.branch.prediction.core.stats;
+
+/*
+ * a device which is addressed by numbers and can report the entries which are written (see AccessListener)
+ */
+
+public interface AccessReporter {
+    /**
+     * @param listener the listener which is called for every written entry, or null to remove the listener
+     */
+    void setAccessListener(AccessListener listener);
+}
@@ -0,0 +1,94 @@
+package hardwar.branch.prediction.core.stats;
+
+/*
+ * access counters of a register or a table
+ * read below assumptions about the device counters
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the counters are enabled with -Dhardwar.stats=true. ENABLED is a static final field, so when it is
+ * false the JIT removes every `if (DeviceCounters.ENABLED)` block of the devices and they cost nothing.
+ * the devices do not create any counter if they are disabled.
+ *
+ * 2) every counter is a LongAdder, so the device can count without locking while a monitoring thread
+ * (e.g. JMX) reads the counters.
+ *
+ * 3) a read is a lookup of an entry (get, read or setDefault), a write is a put or a write, a default fill is
+ * a setDefault or putIfAbsent which saves the default value, and an entry is touched when it gets a value for
+ * the first time. an entry which is cleared and then used again is touched again.
+ *
+ * 4) occupancy is the number of entries which hold a value now and it is computed by the device when it is asked.
+ * -------------------------------------------------------
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+public final class DeviceCounters {
+    public static final boolean ENABLED = Boolean.getBoolean("hardwar.stats");
+
+    private final long capacity; // number of entries of the device
+    private final LongSupplier occupancy; // number of entries which hold a value
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder defaultFills = new LongAdder();
+    private final LongAdder touched = new LongAdder();
+
+    /**
+     * @param capacity  number of entries of the device
+     * @param occupancy computes the number of entries which hold a value
+     */
+    public DeviceCounters(long capacity, LongSupplier occupancy) {
+        this.capacity = capacity;
+        this.occupancy = occupancy;
+    }
+
+    public void read() {
+        reads.increment();
+    }
+
+    public void write() {
+        writes.increment();
+    }
+
+    public void defaultFill() {
+        defaultFills.increment();
+    }
+
+    public void touch() {
+        touched.increment();
+    }
+
+    public long getReads() {
+        return reads.sum();
+    }
+
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    public long getDefaultFills() {
+        return defaultFills.sum();
+    }
+
+    public long getTouched() {
+        return touched.sum();
+    }
+
+    public long getOccupancy() {
+        return occupancy.getAsLong();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * set all the counters to zero. occupancy is not changed.
+     */
+    public void reset() {
+        reads.reset();
+        writes.reset();
+        defaultFills.reset();
+        touched.reset();
+    }
+}
@@ -0,0 +1,76 @@
+package hardwar.branch.prediction.core.stats;
+
+/*
+ * the values of the counters of one device at a point of time
+ *
+ * this class is mapped to a CompositeData by the MXBean framework. it only has getters and the constructor
+ * is annotated, so an MXBean proxy can rebuild it.
+ */
+
+import java.beans.ConstructorProperties;
+
+public final class DeviceStats {
+    private final String name;
+    private final long reads;
+    private final long writes;
+    private final long defaultFills;
+    private final long touched;
+    private final long occupancy;
+    private final long capacity;
+
+    @ConstructorProperties({"name", "reads", "writes", "defaultFills", "touched", "occupancy", "capacity"})
+    public DeviceStats(String name, long reads, long writes, long defaultFills, long touched, long occupancy,
+                       long capacity) {
+        this.name = name;
+        this.reads = reads;
+        this.writes = writes;
+        this.defaultFills = defaultFills;
+        this.touched = touched;
+        this.occupancy = occupancy;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param name     name of the device in the predictor
+     * @param counters the counters of the device
+     * @return the current values of the counters
+     */
+    public static DeviceStats of(String name, DeviceCounters counters) {
+        return new DeviceStats(name, counters.getReads(), counters.getWrites(), counters.getDefaultFills(),
+                counters.getTouched(), counters.getOccupancy(), counters.getCapacity());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getReads() {
+        return reads;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getDefaultFills() {
+        return defaultFills;
+    }
+
+    public long getTouched() {
+        return touched;
+    }
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-8s reads=%d writes=%d defaultFills=%d touched=%d occupancy=%d/%d",
+                name, reads, writes, defaultFills, touched, occupancy, capacity);
+    }
+}
@@ -0,0 +1,12 @@
+package hardwar.branch.prediction.core.stats;
+
+/*
+ * a device which counts its accesses (see DeviceCounters)
+ */
+
+public interface Instrumented {
+    /**
+     * @return the access counters of the device, or null if the counters are disabled
+     */
+    DeviceCounters getCounters();
+}
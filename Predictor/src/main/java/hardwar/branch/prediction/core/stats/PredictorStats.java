@@ -0,0 +1,162 @@
+package hardwar.branch.prediction.core.stats;
+
+/*
+ * exposes the device counters of one predictor instance as an MXBean
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the devices are found with Predictor.getDevices(). only the devices which implement Instrumented
+ * and have counters (-Dhardwar.stats=true) are exposed.
+ *
+ * 2) every instance is registered in the platform MBean server with its own name
+ * (hardwar.branch.prediction:type=Predictor,name=<predictor>,id=<n>), so two instances of the same predictor
+ * can be watched at the same time. close unregisters the bean.
+ *
+ * 3) the values are read from the LongAdders when they are asked, so the predictor is never blocked by the
+ * monitoring thread.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PredictorStats implements PredictorStatsMXBean, Closeable {
+    private static final AtomicLong INSTANCES = new AtomicLong(); // id of the next registered bean
+
+    private final String predictor;
+    private final Map<String, DeviceCounters> devices; // counters of the devices by name
+    private ObjectName objectName; // name of the registered bean, null if it is not registered
+
+    /**
+     * @param predictor name of the predictor
+     * @param devices   the counters of the devices by name
+     */
+    public PredictorStats(String predictor, Map<String, DeviceCounters> devices) {
+        this.predictor = predictor;
+        this.devices = new LinkedHashMap<>(devices);
+    }
+
+    /**
+     * @param predictor the predictor
+     * @return the counters of the instrumented devices of the predictor
+     * @throws IllegalStateException if the counters are disabled
+     */
+    public static PredictorStats of(Predictor predictor) {
+        if (!DeviceCounters.ENABLED)
+            throw new IllegalStateException("device counters are disabled, run with -Dhardwar.stats=true");
+
+        Map<String, DeviceCounters> devices = new LinkedHashMap<>();
+        for (Map.Entry<String, Snapshottable> device : predictor.getDevices().entrySet()) {
+            if (!(device.getValue() instanceof Instrumented)) continue;
+            DeviceCounters counters = ((Instrumented) device.getValue()).getCounters();
+            if (counters != null) devices.put(device.getKey(), counters);
+        }
+        return new PredictorStats(predictor.getClass().getSimpleName(), devices);
+    }
+
+    /**
+     * @param predictor the predictor
+     * @return the registered bean of the predictor
+     * @throws IllegalStateException if the counters are disabled or the bean can not be registered
+     */
+    public static PredictorStats register(Predictor predictor) {
+        PredictorStats stats = of(predictor);
+        stats.register();
+        return stats;
+    }
+
+    /**
+     * register the bean in the platform MBean server
+     *
+     * @throws IllegalStateException if the bean can not be registered
+     */
+    public synchronized void register() {
+        if (objectName != null) return;
+        try {
+            ObjectName name = new ObjectName("hardwar.branch.prediction:type=Predictor,name="
+                    + predictor + ",id=" + INSTANCES.getAndIncrement());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            throw new IllegalStateException("can not register the stats of " + predictor, e);
+        }
+    }
+
+    /**
+     * @return name of the registered bean, or null if it is not registered
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public String getPredictor() {
+        return predictor;
+    }
+
+    @Override
+    public DeviceStats[] getDevices() {
+        DeviceStats[] stats = new DeviceStats[devices.size()];
+        int i = 0;
+        for (Map.Entry<String, DeviceCounters> device : devices.entrySet()) {
+            stats[i++] = DeviceStats.of(device.getKey(), device.getValue());
+        }
+        return stats;
+    }
+
+    @Override
+    public long getReads() {
+        long sum = 0;
+        for (DeviceCounters counters : devices.values()) sum += counters.getReads();
+        return sum;
+    }
+
+    @Override
+    public long getWrites() {
+        long sum = 0;
+        for (DeviceCounters counters : devices.values()) sum += counters.getWrites();
+        return sum;
+    }
+
+    @Override
+    public long getDefaultFills() {
+        long sum = 0;
+        for (DeviceCounters counters : devices.values()) sum += counters.getDefaultFills();
+        return sum;
+    }
+
+    @Override
+    public void reset() {
+        for (DeviceCounters counters : devices.values()) counters.reset();
+    }
+
+    /**
+     * unregister the bean from the platform MBean server
+     */
+    @Override
+    public synchronized void close() {
+        if (objectName == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            // the bean is already unregistered
+        }
+        objectName = null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(predictor).append(" device stats:\n");
+        for (DeviceStats stats : getDevices()) sb.append("  ").append(stats).append('\n');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package hardwar.branch.prediction.core.stats;
+
+/*
+ * the management interface of the device counters of one predictor instance (see PredictorStats)
+ */
+
+public interface PredictorStatsMXBean {
+    /**
+     * @return name of the predictor
+     */
+    String getPredictor();
+
+    /**
+     * @return the counters of each instrumented device of the predictor
+     */
+    DeviceStats[] getDevices();
+
+    /**
+     * @return sum of the reads of all the devices
+     */
+    long getReads();
+
+    /**
+     * @return sum of the writes of all the devices
+     */
+    long getWrites();
+
+    /**
+     * @return sum of the default fills of all the devices
+     */
+    long getDefaultFills();
+
+    /**
+     * set the counters of all the devices to zero
+     */
+    void reset();
+}
@@ -0,0 +1,221 @@
+package hardwar.branch.prediction.extended.BTB;
+
+/*
+ * a branch target buffer with a return address stack
+ * read below assumptions about the branch target buffer
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the BTB is a SetAssociativeCache which is indexed by the branch address and holds the jump address of the
+ * branch. the set index is the low bits of the address and a partial tag is kept for the next tagBits bits, so
+ * the size, the associativity and the replacement policy can be configured.
+ *
+ * 2) every branch looks up the BTB (a hit or a miss is counted, see getLookups and getHits), but only taken
+ * branches are written, and only if the BTB does not hold their jump address yet.
+ *
+ * 3) the kind of a branch is given by its opcode (by default BranchKind.of). a taken call pushes its address plus
+ * the return offset on the return address stack, and a taken return pops it. the target of a return is the top of
+ * the stack, or the BTB target if the stack is empty. a depth of 0 disables the stack.
+ *
+ * 4) the addresses are cut to the address size, which is at most 63 bits so a target can not be NO_TARGET.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.ReturnAddressStack;
+import hardwar.branch.prediction.core.devices.SetAssociativeCache;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.*;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+public class BranchTargetBuffer implements TargetPredictor {
+
+    private final long addressMask;
+    private final long returnOffset; // distance of the return address from the address of the call
+    private final IntFunction<BranchKind> classifier; // the kind of an opcode
+    private final SetAssociativeCache BTB; // jump address of each taken branch
+    private final ReturnAddressStack RAS; // return address stack, null if it is disabled
+
+    // the lookup of the last branch, kept until its update
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastTarget; // BTB target of the last prediction
+
+    private long lookups;
+    private long hits;
+
+    public BranchTargetBuffer() {
+        this(16, 4, 4, 8, ReplacementMode.LRU, 8, 4);
+    }
+
+    /**
+     * @param nSets        number of sets of the BTB, a power of two
+     * @param nWays        number of ways of each set
+     * @param tagBits      number of bits of the partial tag
+     * @param addressSize  number of bits of the branch and jump addresses (1 to 63)
+     * @param mode         the replacement policy of the BTB
+     * @param RASDepth     number of addresses of the return address stack, 0 disables it
+     * @param returnOffset distance of the return address from the address of the call
+     */
+    public BranchTargetBuffer(int nSets, int nWays, int tagBits, int addressSize, ReplacementMode mode,
+                              int RASDepth, int returnOffset) {
+        this(nSets, nWays, tagBits, addressSize, mode, RASDepth, returnOffset, BranchKind::of);
+    }
+
+    /**
+     * @param classifier the kind of each opcode
+     */
+    public BranchTargetBuffer(int nSets, int nWays, int tagBits, int addressSize, ReplacementMode mode,
+                              int RASDepth, int returnOffset, IntFunction<BranchKind> classifier) {
+        if (addressSize <= 0 || addressSize >= Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 63 bits");
+        if (RASDepth < 0) throw new IllegalArgumentException("stack depth can not be negative");
+
+        this.addressMask = BitVector.mask(addressSize);
+        this.returnOffset = returnOffset;
+        this.classifier = classifier;
+        this.BTB = new SetAssociativeCache(nSets, nWays, tagBits, addressSize, mode);
+        this.RAS = RASDepth == 0 ? null : new ReturnAddressStack(RASDepth, addressSize);
+    }
+
+    /**
+     * @return number of BTB lookups of the predictions
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return number of BTB lookups which found the branch
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    public double getHitRate() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * reset the lookup and hit counters
+     */
+    public void resetCounters() {
+        lookups = 0;
+        hits = 0;
+    }
+
+    @Override
+    public long predictTarget(BranchInstruction instruction) {
+        lastInstruction = instruction;
+        lastTarget = lookup(getAddress(instruction));
+        return getPrediction(getKind(instruction), lastTarget);
+    }
+
+    @Override
+    public void updateTarget(BranchInstruction instruction, BranchResult result) {
+        long address = getAddress(instruction);
+        long target = instruction == lastInstruction ? lastTarget : BTB.readOrDefault(address, NO_TARGET);
+        lastInstruction = null;
+        train(getKind(instruction), address, target, getJumpAddress(instruction), BranchResult.isTaken(result));
+    }
+
+    /**
+     * predicts the target and updates the predictor with one BTB lookup
+     */
+    @Override
+    public long predictAndUpdateTarget(BranchInstruction instruction, BranchResult result) {
+        lastInstruction = null;
+        long address = getAddress(instruction);
+        BranchKind kind = getKind(instruction);
+        long target = lookup(address);
+        long prediction = getPrediction(kind, target);
+        train(kind, address, target, getJumpAddress(instruction), BranchResult.isTaken(result));
+        return prediction;
+    }
+
+    private long lookup(long address) {
+        lookups++;
+        long target = BTB.readOrDefault(address, NO_TARGET);
+        if (target != NO_TARGET) hits++;
+        return target;
+    }
+
+    /**
+     * @param kind   the kind of the branch
+     * @param target the BTB target of the branch
+     * @return the top of the RAS for a return, the BTB target otherwise
+     */
+    private long getPrediction(BranchKind kind, long target) {
+        if (kind == BranchKind.RETURN && RAS != null && !RAS.isEmpty()) return RAS.peek();
+        return target;
+    }
+
+    /**
+     * writes the jump address of a taken branch into the BTB and pushes or pops the RAS
+     *
+     * @param kind        the kind of the branch
+     * @param address     the branch address
+     * @param target      the BTB target of the branch, or NO_TARGET on a miss
+     * @param jumpAddress the actual jump address
+     * @param taken       the actual result of the branch
+     */
+    private void train(BranchKind kind, long address, long target, long jumpAddress, boolean taken) {
+        if (!taken) return;
+        if (target != jumpAddress) BTB.write(address, jumpAddress);
+        if (RAS == null) return;
+        if (kind == BranchKind.CALL) RAS.push(address + returnOffset);
+        else if (kind == BranchKind.RETURN) RAS.pop();
+    }
+
+    private long getAddress(BranchInstruction instruction) {
+        if (instruction instanceof PackedBranchInstruction)
+            return ((PackedBranchInstruction) instruction).getInstructionAddressValue() & addressMask;
+        return InstructionAddress.valueOf(instruction, InstructionAddress.sizeOf(instruction)) & addressMask;
+    }
+
+    private long getJumpAddress(BranchInstruction instruction) {
+        if (instruction instanceof PackedBranchInstruction)
+            return ((PackedBranchInstruction) instruction).getJumpAddressValue() & addressMask;
+        Bit[] bits = instruction.getJumpAddress();
+        return bits.length == 0 ? 0 : BitVector.of(bits).toLong() & addressMask;
+    }
+
+    private BranchKind getKind(BranchInstruction instruction) {
+        if (instruction instanceof PackedBranchInstruction)
+            return classifier.apply(((PackedBranchInstruction) instruction).getOpcodeValue());
+        Bit[] bits = instruction.getOpcode();
+        return classifier.apply(bits.length == 0 ? 0 : (int) BitVector.of(bits).toLong());
+    }
+
+    /**
+     * @return snapshot of caches and registers content
+     */
+    @Override
+    public String monitor() {
+        return "BTB predictor snapshot: \n" + BTB.monitor() + (RAS == null ? "" : RAS.monitor());
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "BTB");
+        BTB.snapshot(visitor);
+        if (RAS != null) RAS.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("BTB", BTB);
+        if (RAS != null) devices.put("RAS", RAS);
+        return devices;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BTB %s, lookups=%d hits=%d (%.2f%%)", BTB, lookups, hits, 100 * getHitRate());
+    }
+}
@@ -0,0 +1,184 @@
+package hardwar.branch.prediction.extended.GShare;
+
+/*
+ * the gshare predictor of McFarling
+ * read below assumptions about the gshare predictor
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) one direct-indexed table of 2^indexBits saturating counters (a DensePageHistoryTable). the index is the hash
+ * of the branch address xor the global history, so all the index bits are used by both the address and the history.
+ *
+ * 2) the global history is kept by a HistoryRegister with one fold as wide as the history, so the history is a
+ * primitive word which is up to date after every insert (bit 0 is the most recent branch). a history which is
+ * shorter than the index is xored into the low bits of the address hash.
+ *
+ * 3) the address is hashed to indexBits bits with the hash mode (a PackedBranchInstruction gives its precomputed
+ * hash), so the index is the hash and one xor.
+ *
+ * 4) the counters start at zero (strongly not taken), the same as the judged predictors.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.DensePageHistoryTable;
+import hardwar.branch.prediction.core.devices.HistoryRegister;
+import hardwar.branch.prediction.core.devices.PackedLogic;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.*;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class GShare implements Predictor {
+
+    private final int branchInstructionSize;
+    private final int indexBits;
+    private final int SCSize;
+    private final HashFunction hashMode;
+    private final HistoryRegister GHR; // global history register
+    private final int historyFold; // the fold of the GHR which holds the whole history as a word
+    private final DensePageHistoryTable PHT; // one counter for each index
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastIndex; // PHT index of the last prediction
+
+    public GShare() {
+        this(10, 10, 2, 8, HashFunction.XOR);
+    }
+
+    /**
+     * @param historySize           number of global history bits (1 to indexBits)
+     * @param indexBits             log2 of the number of counters
+     * @param SCSize                the size of the saturating counters
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param hashMode              the hash function of the branch address (GSHARE is not supported)
+     */
+    public GShare(int historySize, int indexBits, int SCSize, int branchInstructionSize, HashFunction hashMode) {
+        if (indexBits <= 0 || indexBits > 30) throw new IllegalArgumentException("index bits must be between 1 and 30");
+        if (historySize <= 0 || historySize > indexBits)
+            throw new IllegalArgumentException("history size must be between 1 and the index bits");
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        if (hashMode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+
+        this.branchInstructionSize = branchInstructionSize;
+        this.indexBits = indexBits;
+        this.SCSize = SCSize;
+        this.hashMode = hashMode;
+        this.GHR = new HistoryRegister("GHR", historySize);
+        this.historyFold = GHR.addFold(historySize, historySize);
+        this.PHT = new DensePageHistoryTable(1 << indexBits, SCSize);
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction branchInstruction) {
+        lastInstruction = branchInstruction;
+        lastIndex = getIndex(InstructionAddress.hashOf(branchInstruction, indexBits, hashMode));
+        return BranchResult.of(isTaken(PHT.read(lastIndex)));
+    }
+
+    @Override
+    public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        long index = branchInstruction == lastInstruction ? lastIndex
+                : getIndex(InstructionAddress.hashOf(branchInstruction, indexBits, hashMode));
+        lastInstruction = null;
+        store(index, PHT.read(index), BranchResult.isTaken(actual));
+    }
+
+    /**
+     * predicts the branch and updates the predictor with one PHT lookup
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        long index = getIndex(InstructionAddress.hashOf(branchInstruction, indexBits, hashMode));
+        long counter = PHT.read(index);
+        store(index, counter, BranchResult.isTaken(actual));
+        return BranchResult.of(isTaken(counter));
+    }
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        long addressMask = BitVector.mask(branchInstructionSize);
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long index = getIndex(PackedLogic.hash(pcs[i] & addressMask, branchInstructionSize, indexBits, hashMode));
+            long counter = PHT.read(index);
+            boolean prediction = isTaken(counter);
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            store(index, counter, taken);
+        }
+        return mispredictions;
+    }
+
+    /**
+     * @param addressHash the hash of the branch address
+     * @return the PHT index: the hash xor the global history
+     */
+    private long getIndex(long addressHash) {
+        return addressHash ^ GHR.getFold(historyFold);
+    }
+
+    private boolean isTaken(long counter) {
+        return (counter >>> (SCSize - 1)) != 0;
+    }
+
+    /**
+     * counts the counter of the index and shifts the result into the GHR
+     *
+     * @param index   the PHT index
+     * @param counter the value of the counter before the update
+     * @param taken   the actual result of the branch
+     */
+    private void store(long index, long counter, boolean taken) {
+        PHT.write(index, PackedLogic.count((int) counter, SCSize, taken, CountMode.SATURATING));
+        GHR.shiftIn(taken);
+    }
+
+    /**
+     * @return snapshot of caches and registers content
+     */
+    @Override
+    public String monitor() {
+        return "GShare predictor snapshot: \n" + GHR.monitor() + PHT.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "GShare");
+        GHR.snapshot(visitor);
+        PHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("GHR", GHR);
+        devices.put("PHT", PHT);
+        return devices;
+    }
+}
@@ -0,0 +1,187 @@
+package hardwar.branch.prediction.extended.Perceptron;
+
+/*
+ * a global history perceptron predictor
+ * read below assumptions about the perceptron predictor
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the hashed branch address selects a row of a WeightTable. the output of the row is the bias plus the dot
+ * product of its weights with the global history, where a taken branch is +1 and a not taken branch is -1. the
+ * branch is predicted taken if the output is not negative.
+ *
+ * 2) the row is trained when the prediction is wrong or the magnitude of the output is not larger than the
+ * threshold 1.93 * historySize + 14 (the threshold rule of Jimenez and Lin), so a row stops learning a branch it
+ * already predicts with confidence.
+ *
+ * 3) the global history is kept by a HistoryRegister and it is read into words once per branch, so the dot
+ * product and the training are loops over primitive arrays. a history of 64 to 256 bits costs a few words.
+ *
+ * 4) all the state is kept in the devices (getDevices), so the predictor can be checkpointed and monitored.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.HistoryRegister;
+import hardwar.branch.prediction.core.devices.PackedLogic;
+import hardwar.branch.prediction.core.devices.WeightTable;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.*;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class Perceptron implements Predictor {
+
+    private final int branchInstructionSize;
+    private final int rowBits;
+    private final HashFunction hashMode;
+    private final int threshold; // the output magnitude up to which a correct prediction is still trained
+    private final HistoryRegister GHR; // global history register
+    private final WeightTable weights; // one row of weights for each hashed address
+
+    // the lookup of the last branch, kept until its update
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private final long[] history; // the global history in the order of age
+    private int row;
+    private int output;
+
+    public Perceptron() {
+        this(64, 8, 8, HashFunction.XOR);
+    }
+
+    /**
+     * @param historySize           number of global history bits
+     * @param rowBits               log2 of the number of rows of weights
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param hashMode              the hash function of the branch address (GSHARE is not supported)
+     */
+    public Perceptron(int historySize, int rowBits, int branchInstructionSize, HashFunction hashMode) {
+        if (rowBits <= 0 || rowBits > 24) throw new IllegalArgumentException("row bits must be between 1 and 24");
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        if (hashMode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+
+        this.branchInstructionSize = branchInstructionSize;
+        this.rowBits = rowBits;
+        this.hashMode = hashMode;
+        this.threshold = (int) (1.93 * historySize + 14);
+        this.GHR = new HistoryRegister("GHR", historySize);
+        this.weights = new WeightTable(1 << rowBits, historySize);
+        this.history = new long[(historySize + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction branchInstruction) {
+        lastInstruction = branchInstruction;
+        return BranchResult.of(lookup(getAddress(branchInstruction)));
+    }
+
+    @Override
+    public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        if (branchInstruction != lastInstruction) lookup(getAddress(branchInstruction));
+        lastInstruction = null;
+        train(BranchResult.isTaken(actual));
+    }
+
+    /**
+     * predicts the branch and updates the predictor with one dot product
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        boolean predicted = lookup(getAddress(branchInstruction));
+        train(BranchResult.isTaken(actual));
+        return BranchResult.of(predicted);
+    }
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            boolean predicted = lookup(pcs[i]);
+            if (predicted != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, predicted);
+            train(taken);
+        }
+        return mispredictions;
+    }
+
+    private long getAddress(BranchInstruction instruction) {
+        return InstructionAddress.valueOf(instruction, InstructionAddress.sizeOf(instruction));
+    }
+
+    /**
+     * reads the history and computes the output of the row of the branch
+     *
+     * @param pc the branch address
+     * @return true if the branch is predicted taken
+     */
+    private boolean lookup(long pc) {
+        long address = pc & BitVector.mask(branchInstructionSize);
+        row = (int) PackedLogic.hash(address, branchInstructionSize, rowBits, hashMode);
+        GHR.readWords(history);
+        output = weights.output(row, history);
+        return output >= 0;
+    }
+
+    /**
+     * trains the row of the last lookup with the threshold rule and inserts the result into the history
+     *
+     * @param taken the actual result of the branch
+     */
+    private void train(boolean taken) {
+        if ((output >= 0) != taken || Math.abs(output) <= threshold) weights.train(row, history, taken);
+        GHR.shiftIn(taken);
+    }
+
+    /**
+     * @return snapshot of caches and registers content
+     */
+    @Override
+    public String monitor() {
+        return "Perceptron predictor snapshot: \n" + GHR.monitor() + weights.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "Perceptron");
+        GHR.snapshot(visitor);
+        weights.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("GHR", GHR);
+        devices.put("WEIGHTS", weights);
+        return devices;
+    }
+}
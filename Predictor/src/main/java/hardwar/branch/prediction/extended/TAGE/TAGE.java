@@ -0,0 +1,391 @@
+package hardwar.branch.prediction.extended.TAGE;
+
+/*
+ * a TAGE (TAgged GEometric history length) predictor
+ * read below assumptions about the TAGE predictor
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the predictor has a bimodal base table indexed by the hashed branch address and N tagged components. component
+ * i is indexed and tagged with the hashed address and the folded L(i) most recent branches of the global history,
+ * where the lengths L(i) grow geometrically from minHistory to maxHistory.
+ *
+ * 2) the prediction is given by the matching component with the longest history (the provider). the next matching
+ * component, or the base table, gives the alternate prediction. a newly allocated provider (weak counter and no
+ * usefulness) gives way to the alternate prediction while the USE_ALT counter is in its upper half.
+ *
+ * 3) the entry of a component is packed into one block of a DensePageHistoryTable: a valid bit, the tag, a 3-bit
+ * saturating counter (the most significant bit is the prediction) and a 2-bit useful counter, so a lookup is one
+ * read and an entry which has never been written (a zero block) does not match. the folded histories are kept by a HistoryRegister, so a branch costs O(N) whatever the
+ * length of the history.
+ *
+ * 4) on a misprediction an entry is allocated in a component with a longer history than the provider whose entry
+ * is not useful. if there is no such entry the useful counters of those entries are decremented. the choice
+ * between the first two free components is made with a bit of the hashed tag, so the predictor is deterministic.
+ * the TICK counter counts the branches and the useful counters of all the entries are halved every 2^18 branches,
+ * so the cost of the aging is a fraction of an access per branch.
+ *
+ * 5) all the state is kept in the devices (getDevices), so the predictor can be checkpointed and monitored.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.DensePageHistoryTable;
+import hardwar.branch.prediction.core.devices.HistoryRegister;
+import hardwar.branch.prediction.core.devices.PackedLogic;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.*;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TAGE implements Predictor {
+    private static final int BASE_COUNTER_BITS = 2;
+    private static final int COUNTER_BITS = 3;
+    private static final int USEFUL_BITS = 2;
+    private static final int USE_ALT_BITS = 4;
+    private static final int TICK_BITS = 18;
+
+    private final int addressSize;
+    private final int baseBits;
+    private final int hashBits; // number of bits of the address hash, the larger of baseBits and tableBits
+    private final int tableBits;
+    private final int tagBits;
+    private final HashFunction hashMode;
+    private final int[] historyLengths; // history length of each component
+    private final HistoryRegister GHR; // global history register, holds the folds of the components
+    private final DensePageHistoryTable BASE; // bimodal base table
+    private final DensePageHistoryTable[] T; // tagged components, from the shortest to the longest history
+    private final DensePageHistoryTable USE_ALT; // one counter, use the alternate prediction for new entries
+    private final DensePageHistoryTable TICK; // one counter of the branches since the last aging
+    private final int[] indexFolds; // fold of the index of each component
+    private final int[] tagFolds; // first fold of the tag of each component
+    private final int[] tagFolds2; // second fold of the tag of each component (one bit shorter)
+
+    // the lookup of the last branch, kept until its update
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private final long[] indexes; // index of each component
+    private final long[] tags; // tag of each component, with the valid bit
+    private final long[] blocks; // block of each component, 0 if the entry has never been written
+    private long baseIndex;
+    private long baseCounter;
+    private int provider; // the matching component with the longest history, -1 if there is none
+    private int alternate; // the next matching component, -1 if there is none
+    private boolean providerPrediction;
+    private boolean alternatePrediction;
+    private boolean prediction;
+
+    public TAGE() {
+        this(8, 10, 4, 9, 8, 4, 64, HashFunction.XOR);
+    }
+
+    /**
+     * @param addressSize the number of bits which is used for saving a branch instruction
+     * @param baseBits    log2 of the number of entries of the base table
+     * @param components  number of tagged components (1 to 16)
+     * @param tableBits   log2 of the number of entries of each component
+     * @param tagBits     number of bits of the tags (2 to 16)
+     * @param minHistory  history length of the first component
+     * @param maxHistory  history length of the last component
+     * @param hashMode    the hash function of the branch address (GSHARE is not supported, the history is folded)
+     */
+    public TAGE(int addressSize, int baseBits, int components, int tableBits, int tagBits, int minHistory,
+                int maxHistory, HashFunction hashMode) {
+        if (addressSize <= 0 || addressSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        if (baseBits <= 0 || baseBits > 30 || tableBits <= 0 || tableBits > 30)
+            throw new IllegalArgumentException("table bits must be between 1 and 30");
+        if (components <= 0 || components > 16)
+            throw new IllegalArgumentException("number of components must be between 1 and 16");
+        if (tagBits < 2 || tagBits > 16) throw new IllegalArgumentException("tag bits must be between 2 and 16");
+        if (minHistory <= 0 || maxHistory < minHistory + components - 1)
+            throw new IllegalArgumentException("history lengths must be positive and grow for every component");
+        if (hashMode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+
+        this.addressSize = addressSize;
+        this.baseBits = baseBits;
+        this.hashBits = Math.max(baseBits, tableBits);
+        this.tableBits = tableBits;
+        this.tagBits = tagBits;
+        this.hashMode = hashMode;
+        this.historyLengths = geometricLengths(components, minHistory, maxHistory);
+
+        this.GHR = new HistoryRegister("GHR", maxHistory);
+        this.BASE = new DensePageHistoryTable(1 << baseBits, BASE_COUNTER_BITS);
+        this.T = new DensePageHistoryTable[components];
+        this.indexFolds = new int[components];
+        this.tagFolds = new int[components];
+        this.tagFolds2 = new int[components];
+        for (int i = 0; i < components; i++) {
+            T[i] = new DensePageHistoryTable(1 << tableBits, 1 + tagBits + COUNTER_BITS + USEFUL_BITS);
+            indexFolds[i] = GHR.addFold(historyLengths[i], tableBits);
+            tagFolds[i] = GHR.addFold(historyLengths[i], tagBits);
+            tagFolds2[i] = GHR.addFold(historyLengths[i], tagBits - 1);
+        }
+        this.USE_ALT = new DensePageHistoryTable(1, USE_ALT_BITS);
+        this.TICK = new DensePageHistoryTable(1, TICK_BITS);
+
+        this.indexes = new long[components];
+        this.tags = new long[components];
+        this.blocks = new long[components];
+    }
+
+    /**
+     * @return history lengths which grow geometrically from min to max, at least one bit per component
+     */
+    private static int[] geometricLengths(int components, int min, int max) {
+        int[] lengths = new int[components];
+        double ratio = components == 1 ? 1 : Math.pow((double) max / min, 1.0 / (components - 1));
+        for (int i = 0; i < components; i++) {
+            lengths[i] = (int) Math.round(min * Math.pow(ratio, i));
+            if (i > 0 && lengths[i] <= lengths[i - 1]) lengths[i] = lengths[i - 1] + 1;
+        }
+        lengths[components - 1] = components == 1 ? min : max;
+        return lengths;
+    }
+
+    /**
+     * @return history length of each component
+     */
+    public int[] getHistoryLengths() {
+        return historyLengths.clone();
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction branchInstruction) {
+        lastInstruction = branchInstruction;
+        return BranchResult.of(lookup(getAddress(branchInstruction)));
+    }
+
+    @Override
+    public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        if (branchInstruction != lastInstruction) lookup(getAddress(branchInstruction));
+        lastInstruction = null;
+        train(BranchResult.isTaken(actual));
+    }
+
+    /**
+     * predicts the branch and updates the predictor with one lookup of the components
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        boolean predicted = lookup(getAddress(branchInstruction));
+        train(BranchResult.isTaken(actual));
+        return BranchResult.of(predicted);
+    }
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            boolean predicted = lookup(pcs[i]);
+            if (predicted != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, predicted);
+            train(taken);
+        }
+        return mispredictions;
+    }
+
+    private long getAddress(BranchInstruction instruction) {
+        return InstructionAddress.valueOf(instruction, InstructionAddress.sizeOf(instruction));
+    }
+
+    /**
+     * reads the base table and every component and saves the lookup for the update
+     *
+     * @param pc the branch address
+     * @return true if the branch is predicted taken
+     */
+    private boolean lookup(long pc) {
+        long address = pc & BitVector.mask(addressSize);
+        // one hash for the base table and the components, the tags use the address bits as they are
+        long addressHash = PackedLogic.hash(address, addressSize, hashBits, hashMode);
+        long addressIndex = addressHash >>> (hashBits - tableBits);
+        baseIndex = addressHash >>> (hashBits - baseBits);
+        baseCounter = BASE.read(baseIndex);
+
+        provider = -1;
+        alternate = -1;
+        long tagMask = BitVector.mask(tagBits);
+        long valid = 1L << tagBits; // the valid bit above the tag, so an entry which is never written does not match
+        for (int i = T.length - 1; i >= 0; i--) {
+            long index = addressIndex ^ GHR.getFold(indexFolds[i]);
+            long tag = valid | ((address ^ GHR.getFold(tagFolds[i]) ^ (GHR.getFold(tagFolds2[i]) << 1)) & tagMask);
+            indexes[i] = index;
+            tags[i] = tag;
+            blocks[i] = T[i].read(index);
+            if (tagOf(blocks[i]) == tag) {
+                if (provider < 0) provider = i;
+                else if (alternate < 0) alternate = i;
+            }
+        }
+
+        boolean basePrediction = (baseCounter >>> (BASE_COUNTER_BITS - 1)) != 0;
+        if (provider < 0) {
+            providerPrediction = basePrediction;
+            alternatePrediction = basePrediction;
+            prediction = basePrediction;
+            return prediction;
+        }
+        providerPrediction = isTaken(counterOf(blocks[provider]));
+        alternatePrediction = alternate < 0 ? basePrediction : isTaken(counterOf(blocks[alternate]));
+        boolean useAlternate = isNew(blocks[provider]) && (USE_ALT.read(0) >>> (USE_ALT_BITS - 1)) != 0;
+        prediction = useAlternate ? alternatePrediction : providerPrediction;
+        return prediction;
+    }
+
+    /**
+     * updates the counters of the last lookup, allocates entries on a misprediction and inserts the result into
+     * the history
+     *
+     * @param taken the actual result of the branch
+     */
+    private void train(boolean taken) {
+        if (provider < 0) {
+            BASE.write(baseIndex, PackedLogic.count((int) baseCounter, BASE_COUNTER_BITS, taken,
+                    CountMode.SATURATING));
+        } else {
+            long block = blocks[provider];
+            int useful = usefulOf(block);
+            if (providerPrediction != alternatePrediction) {
+                if (isNew(block)) {
+                    USE_ALT.write(0, PackedLogic.count((int) USE_ALT.read(0), USE_ALT_BITS,
+                            alternatePrediction == taken, CountMode.SATURATING));
+                }
+                useful = PackedLogic.count(useful, USEFUL_BITS, providerPrediction == taken,
+                        CountMode.SATURATING);
+            }
+            int counter = PackedLogic.count(counterOf(block), COUNTER_BITS, taken, CountMode.SATURATING);
+            T[provider].write(indexes[provider], pack(tagOf(block), counter, useful));
+        }
+
+        if (prediction != taken && provider < T.length - 1) allocate(taken);
+        GHR.shiftIn(taken);
+
+        long tick = TICK.read(0) + 1;
+        if (tick == 1 << TICK_BITS) {
+            age();
+            tick = 0;
+        }
+        TICK.write(0, tick);
+    }
+
+    /**
+     * allocates an entry in one of the first two free components with a longer history than the provider
+     */
+    private void allocate(boolean taken) {
+        int first = -1;
+        int second = -1;
+        for (int i = provider + 1; i < T.length && second < 0; i++) {
+            if (usefulOf(blocks[i]) != 0) continue;
+            if (first < 0) first = i;
+            else second = i;
+        }
+
+        if (first < 0) {
+            for (int i = provider + 1; i < T.length; i++) {
+                long block = blocks[i];
+                int useful = PackedLogic.count(usefulOf(block), USEFUL_BITS, false, CountMode.SATURATING);
+                T[i].write(indexes[i], pack(tagOf(block), counterOf(block), useful));
+            }
+            return;
+        }
+
+        int component = second >= 0 && (tags[first] & 1) != 0 ? second : first;
+        int counter = taken ? 1 << (COUNTER_BITS - 1) : (1 << (COUNTER_BITS - 1)) - 1; // weak
+        T[component].write(indexes[component], pack(tags[component], counter, 0));
+    }
+
+    /**
+     * halves the useful counters of all the entries
+     */
+    private void age() {
+        for (DensePageHistoryTable table : T) {
+            for (long index = 0; index < 1 << tableBits; index++) {
+                long block = table.read(index);
+                if (block == 0) continue;
+                table.write(index, pack(tagOf(block), counterOf(block), usefulOf(block) >>> 1));
+            }
+        }
+    }
+
+    private long pack(long tag, int counter, int useful) {
+        return (tag << (COUNTER_BITS + USEFUL_BITS)) | ((long) counter << USEFUL_BITS) | useful;
+    }
+
+    private static long tagOf(long block) {
+        return block >>> (COUNTER_BITS + USEFUL_BITS);
+    }
+
+    private static int counterOf(long block) {
+        return (int) (block >>> USEFUL_BITS) & ((1 << COUNTER_BITS) - 1);
+    }
+
+    private static int usefulOf(long block) {
+        return (int) block & ((1 << USEFUL_BITS) - 1);
+    }
+
+    private static boolean isTaken(int counter) {
+        return (counter >>> (COUNTER_BITS - 1)) != 0;
+    }
+
+    /**
+     * @return true if the entry looks newly allocated: its counter is weak and it is not useful
+     */
+    private static boolean isNew(long block) {
+        int counter = counterOf(block);
+        int half = 1 << (COUNTER_BITS - 1);
+        return usefulOf(block) == 0 && (counter == half || counter == half - 1);
+    }
+
+    /**
+     * @return snapshot of caches and registers content
+     */
+    @Override
+    public String monitor() {
+        StringBuilder builder = new StringBuilder("TAGE predictor snapshot: \n");
+        for (Snapshottable device : getDevices().values()) builder.append(device.monitor());
+        return builder.toString();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "TAGE");
+        for (Snapshottable device : getDevices().values()) device.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return addressSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("GHR", GHR);
+        devices.put("BASE", BASE);
+        for (int i = 0; i < T.length; i++) devices.put("T" + (i + 1), T[i]);
+        devices.put("USE_ALT", USE_ALT);
+        devices.put("TICK", TICK);
+        return devices;
+    }
+}
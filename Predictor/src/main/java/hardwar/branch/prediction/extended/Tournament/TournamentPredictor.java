@@ -0,0 +1,308 @@
+package hardwar.branch.prediction.extended.Tournament;
+
+/*
+ * a tournament (hybrid) predictor which chooses between any two or more branch predictors
+ * read below assumptions about the tournament predictor
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) every component predicts every branch and is updated with the actual result, whether it is chosen or not.
+ * a component is used with predictAndUpdate (or its batch simulate), so it computes its table index only once.
+ *
+ * 2) the chooser is a DensePageHistoryTable with one saturating counter for each component in each row, and the
+ * row is selected by the hashed branch address. the component with the largest counter is chosen (the first one on
+ * a tie), so with two components the chooser works as the classic 2-bit chooser of McFarling.
+ *
+ * 3) the chooser is trained only when the components disagree: the counters of the correct components count up
+ * and the counters of the wrong ones count down.
+ *
+ * 4) the address is hashed once per branch. a PackedBranchInstruction gives its precomputed hash when the chooser
+ * uses the same hash size.
+ *
+ * 5) the accuracy counters (see getCorrect, getChosen and getChosenCorrect) are statistics of the replay, they are
+ * not part of the predictor state and are not checkpointed.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.DensePageHistoryTable;
+import hardwar.branch.prediction.core.devices.PackedLogic;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
+import hardwar.branch.prediction.shared.*;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TournamentPredictor implements Predictor {
+
+    private final Predictor[] components;
+    private final int chooserBits;
+    private final int SCSize;
+    private final int branchInstructionSize;
+    private final HashFunction hashMode;
+    private final DensePageHistoryTable chooser; // one counter for each component in each row
+
+    // the lookup of the last branch, kept until its update
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private final boolean[] predictions; // prediction of each component
+    private final BitSet[] blockPredictions; // predictions of each component for a block of branches
+    private long row;
+
+    private long branches;
+    private final long[] correct; // number of correct predictions of each component
+    private final long[] chosen; // number of branches for which each component is chosen
+    private final long[] chosenCorrect; // number of correct predictions of each component when it is chosen
+
+    /**
+     * @param chooserBits           log2 of the number of rows of the chooser
+     * @param SCSize                number of bits of the chooser counters
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param hashMode              the hash function of the branch address (GSHARE is not supported)
+     * @param components            the predictors which are combined, at least two
+     */
+    public TournamentPredictor(int chooserBits, int SCSize, int branchInstructionSize, HashFunction hashMode,
+                               Predictor... components) {
+        if (components.length < 2) throw new IllegalArgumentException("a tournament needs at least two predictors");
+        if (chooserBits <= 0 || chooserBits > 24)
+            throw new IllegalArgumentException("chooser bits must be between 1 and 24");
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        if (hashMode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+
+        this.components = components.clone();
+        this.chooserBits = chooserBits;
+        this.SCSize = SCSize;
+        this.branchInstructionSize = branchInstructionSize;
+        this.hashMode = hashMode;
+        this.chooser = new DensePageHistoryTable((1 << chooserBits) * components.length, SCSize);
+        this.predictions = new boolean[components.length];
+        this.blockPredictions = new BitSet[components.length];
+        for (int c = 0; c < components.length; c++) blockPredictions[c] = new BitSet();
+        this.correct = new long[components.length];
+        this.chosen = new long[components.length];
+        this.chosenCorrect = new long[components.length];
+    }
+
+    /**
+     * @return the combined predictors
+     */
+    public Predictor[] getComponents() {
+        return components.clone();
+    }
+
+    /**
+     * @return number of branches which are predicted and updated
+     */
+    public long getBranches() {
+        return branches;
+    }
+
+    /**
+     * @param component number of the component
+     * @return number of correct predictions of the component
+     */
+    public long getCorrect(int component) {
+        return correct[component];
+    }
+
+    /**
+     * @param component number of the component
+     * @return number of branches for which the chooser chose the component
+     */
+    public long getChosen(int component) {
+        return chosen[component];
+    }
+
+    /**
+     * @param component number of the component
+     * @return number of correct predictions of the component when it is chosen
+     */
+    public long getChosenCorrect(int component) {
+        return chosenCorrect[component];
+    }
+
+    /**
+     * reset the accuracy counters
+     */
+    public void resetCounters() {
+        branches = 0;
+        for (int c = 0; c < components.length; c++) {
+            correct[c] = 0;
+            chosen[c] = 0;
+            chosenCorrect[c] = 0;
+        }
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction branchInstruction) {
+        lastInstruction = branchInstruction;
+        for (int c = 0; c < components.length; c++) {
+            predictions[c] = BranchResult.isTaken(components[c].predict(branchInstruction));
+        }
+        row = InstructionAddress.hashOf(branchInstruction, chooserBits, hashMode);
+        return BranchResult.of(predictions[choose()]);
+    }
+
+    @Override
+    public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        if (branchInstruction != lastInstruction) {
+            for (int c = 0; c < components.length; c++) {
+                predictions[c] = BranchResult.isTaken(components[c].predict(branchInstruction));
+            }
+            row = InstructionAddress.hashOf(branchInstruction, chooserBits, hashMode);
+        }
+        lastInstruction = null;
+        for (Predictor component : components) component.update(branchInstruction, actual);
+        train(choose(), BranchResult.isTaken(actual));
+    }
+
+    /**
+     * predicts and updates every component with one predictAndUpdate and the chooser with one lookup
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        for (int c = 0; c < components.length; c++) {
+            predictions[c] = BranchResult.isTaken(components[c].predictAndUpdate(branchInstruction, actual));
+        }
+        row = InstructionAddress.hashOf(branchInstruction, chooserBits, hashMode);
+        int choice = choose();
+        train(choice, BranchResult.isTaken(actual));
+        return BranchResult.of(predictions[choice]);
+    }
+
+    /**
+     * simulates the block on each component with its batch simulation and then runs the chooser
+     * over the predictions of the components. the components do not depend on the chooser, so this is the same as
+     * predicting and updating the branches one after another.
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     the jump address of each branch, passed to the components
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        long addressMask = BitVector.mask(branchInstructionSize);
+        for (int c = 0; c < components.length; c++) {
+            BitSet block = blockPredictions[c];
+            block.clear();
+            components[c].simulate(pcs, targets, outcomes, from, to, block);
+        }
+
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            for (int c = 0; c < components.length; c++) this.predictions[c] = blockPredictions[c].get(i);
+            row = PackedLogic.hash(pcs[i] & addressMask, branchInstructionSize, chooserBits, hashMode);
+            int choice = choose();
+            boolean predicted = this.predictions[choice];
+            if (predicted != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, predicted);
+            train(choice, taken);
+        }
+        return mispredictions;
+    }
+
+    /**
+     * @return the component with the largest chooser counter in the row of the last branch
+     */
+    private int choose() {
+        long base = row * components.length;
+        int choice = 0;
+        long best = chooser.read(base);
+        for (int c = 1; c < components.length; c++) {
+            long counter = chooser.read(base + c);
+            if (counter > best) {
+                best = counter;
+                choice = c;
+            }
+        }
+        return choice;
+    }
+
+    /**
+     * counts the accuracy of the components and trains the chooser if they disagree
+     *
+     * @param choice the chosen component
+     * @param taken  the actual result of the branch
+     */
+    private void train(int choice, boolean taken) {
+        branches++;
+        chosen[choice]++;
+        if (predictions[choice] == taken) chosenCorrect[choice]++;
+
+        boolean disagree = false;
+        for (int c = 0; c < components.length; c++) {
+            if (predictions[c] == taken) correct[c]++;
+            if (predictions[c] != predictions[0]) disagree = true;
+        }
+        if (!disagree) return;
+
+        long base = row * components.length;
+        for (int c = 0; c < components.length; c++) {
+            int counter = (int) chooser.read(base + c);
+            chooser.write(base + c, PackedLogic.count(counter, SCSize, predictions[c] == taken,
+                    CountMode.SATURATING));
+        }
+    }
+
+    /**
+     * @return snapshot of the chooser and the components
+     */
+    @Override
+    public String monitor() {
+        StringBuilder builder = new StringBuilder("Tournament predictor snapshot: \n").append(chooser.monitor());
+        for (Predictor component : components) builder.append(component.monitor());
+        return builder.toString();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "Tournament");
+        chooser.snapshot(visitor);
+        for (Predictor component : components) component.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    /**
+     * @return the chooser and the devices of each component, prefixed by the number of the component (e.g. "0.BHR")
+     */
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("CHOOSER", chooser);
+        for (int c = 0; c < components.length; c++) {
+            for (Map.Entry<String, Snapshottable> device : components[c].getDevices().entrySet()) {
+                devices.put(c + "." + device.getKey(), device.getValue());
+            }
+        }
+        return devices;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Tournament of ").append(components.length)
+                .append(" predictors, ").append(branches).append(" branches");
+        for (int c = 0; c < components.length; c++) {
+            builder.append(String.format("%n  %d %s: accuracy=%.2f%% chosen=%d (%.2f%% correct)", c,
+                    components[c].getClass().getSimpleName(),
+                    branches == 0 ? 0 : 100.0 * correct[c] / branches, chosen[c],
+                    chosen[c] == 0 ? 0 : 100.0 * chosenCorrect[c] / chosen[c]));
+        }
+        return builder.toString();
+    }
+}
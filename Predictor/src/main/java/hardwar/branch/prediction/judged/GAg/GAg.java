@@ -1,14 +1,23 @@
 package hardwar.branch.prediction.judged.GAg;
 
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.*;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class GAg implements BranchPredictor {
-    private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PHT; // page history table
-    private final ShiftRegister SC; // saturated counter register
+public class GAg implements Predictor {
+    private final PackedRegister BHR; // branch history register
+    private final CounterTable PHT; // page history table
+    private final PackedRegister SC; // saturated counter register
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastIndex; // PHT index of the last prediction
 
     public GAg() {
         this(4, 2);
@@ -21,19 +30,14 @@ public class GAg implements BranchPredictor {
      * @param SCSize  the size of the register which hold the saturating counter value and the cache block size
      */
     public GAg(int BHRSize, int SCSize) {
-        // TODO : complete the constructor
         // Initialize the BHR register with the given size and no default value
-        this.BHR = new SIPORegister("BHR", BHRSize, null);
+        this.BHR = new PackedRegister("BHR", BHRSize);
 
         // Initialize the PHT with a size of 2^size and each entry having a saturating counter of size "SCSize"
-        PHT = new PageHistoryTable((1<<BHRSize), SCSize);
+        PHT = new DensePageHistoryTable((1<<BHRSize), SCSize);
 
         // Initialize the SC register
-        Bit[] zero = new Bit[SCSize];
-        for(int i=0;i<SCSize;i++) {
-            zero[i] = Bit.ZERO;
-        }
-        SC = new SIPORegister("SC", SCSize, zero);
+        SC = new PackedRegister("SC", SCSize);
     }
 
     /**
@@ -44,19 +48,9 @@ public class GAg implements BranchPredictor {
      */
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
-        // TODO : complete Task 1
-        //System.err.println(BHR.monitor());
-        Bit[] current = BHR.read();
-        //System.err.println(PHT.monitor());
-        PHT.setDefault(current, getDefaultBlock());
-        Bit[] values = PHT.get(current);
-        SC.load(values);
-
-        if(values[0] == Bit.ONE) {
-            return BranchResult.TAKEN;
-        } else {
-            return BranchResult.NOT_TAKEN;
-        }
+        lastIndex = getIndex();
+        lastInstruction = branchInstruction;
+        return getPrediction(load(lastIndex));
     }
 
     /**
@@ -67,35 +61,130 @@ public class GAg implements BranchPredictor {
      */
     @Override
     public void update(BranchInstruction instruction, BranchResult actual) {
-        // TODO: complete Task 2
-        Bit[] currentNum = SC.read();
-        if(actual.equals(BranchResult.TAKEN)) {
-            currentNum = CombinationalLogic.count(currentNum, true, CountMode.SATURATING);
-        }
-        else {
-            currentNum = CombinationalLogic.count(currentNum, false, CountMode.SATURATING);
-        }
-        PHT.put(BHR.read(), currentNum);
-        if(actual.equals(BranchResult.TAKEN)) {
-            BHR.insert(Bit.ONE);
-        }
-        else {
-            BHR.insert(Bit.ZERO);
-        }
+        long index = instruction == lastInstruction ? lastIndex : getIndex();
+        lastInstruction = null;
+        store(index, (int) SC.readValue(), actual);
     }
 
+    /**
+     * predicts the branch and updates the predictor with one PHT lookup
+     *
+     * @param instruction the branch instruction
+     * @param actual      the actual result of the branch condition
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        lastInstruction = null;
+        long index = getIndex();
+        long counter = load(index);
+        store(index, (int) counter, actual);
+        return getPrediction(counter);
+    }
+
+    /**
+     * @return the PHT index of the current global history
+     */
+    private long getIndex() {
+        return BHR.readValue();
+    }
+
+    /**
+     * loads the counter of the index into the SC register
+     *
+     * @param index the PHT index
+     * @return the value of the counter
+     */
+    private long load(long index) {
+        long counter = PHT.setDefault(index, 0L);
+        SC.loadValue(counter);
+        return counter;
+    }
 
     /**
-     * @return a zero series of bits as default value of cache block
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
      */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SC.getLength() - 1)) != 0);
+    }
+
+    /**
+     * counts the counter of the index and shifts the result into the BHR
+     *
+     * @param index   the PHT index
+     * @param counter the value of the counter before the update
+     * @param actual  the actual result of the branch condition
+     */
+    private void store(long index, int counter, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        PHT.write(index, PackedLogic.count(counter, SC.getLength(), taken, CountMode.SATURATING));
+        BHR.insert(Bit.of(taken));
+    }
+
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        int counterSize = SC.getLength();
+        int historySize = BHR.getLength();
+        long msb = 1L << (historySize - 1); // the bit which is set when ONE is inserted into the BHR
+        long history = BHR.readValue();
+        long counter = SC.readValue();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long index = history;
+            counter = PHT.setDefault(index, 0L);
+            boolean prediction = (counter >>> (counterSize - 1)) != 0;
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            PHT.write(index, PackedLogic.count((int) counter, counterSize, taken, CountMode.SATURATING));
+            history = (history >>> 1) | (taken ? msb : 0L);
+        }
+        SC.loadValue(counter);
+        BHR.loadValue(history);
+        return mispredictions;
     }
 
     @Override
     public String monitor() {
         return "GAg predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PHT.monitor();
     }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "GAg");
+        BHR.snapshot(visitor);
+        SC.snapshot(visitor);
+        PHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return 0;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("BHR", BHR);
+        devices.put("SC", SC);
+        devices.put("PHT", PHT);
+        return devices;
+    }
 }
@@ -1,15 +1,25 @@
 package hardwar.branch.prediction.judged.GAp;
 
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.*;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class GAp implements BranchPredictor {
+public class GAp implements Predictor {
     private final int branchInstructionSize;
-    private final ShiftRegister SC; // saturating counter register
-    private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PAPHT; // Per Address History Table
+    private final PackedRegister SC; // saturating counter register
+    private final PackedRegister BHR; // branch history register
+    private final FlatPerAddressPredictionHistoryTable PAPHT; // Per Address History Table
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastAddress; // PAPHT selector of the last prediction
+    private int lastRow; // PAPHT row of the last prediction
 
     public GAp() {
         this(4, 2, 8);
@@ -24,22 +34,19 @@ public class GAp implements BranchPredictor {
      * @param branchInstructionSize the number of bits which is used for saving a branch instruction
      */
     public GAp(int BHRSize, int SCSize, int branchInstructionSize) {
-        // TODO: complete the constructor
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
         this.branchInstructionSize = branchInstructionSize;
 
         // Initialize the BHR register with the given size and no default value
-        this.BHR = new SIPORegister("BHR", BHRSize, null);
+        this.BHR = new PackedRegister("BHR", BHRSize);
 
         // Initializing the PAPHT with BranchInstructionSize as PHT Selector and 2^BHRSize row as each PHT entries
         // number and SCSize as block size
-        PAPHT = new PerAddressPredictionHistoryTable(branchInstructionSize, BHRSize, SCSize);
+        PAPHT = new FlatPerAddressPredictionHistoryTable(branchInstructionSize, (1<<BHRSize), SCSize);
 
         // Initialize the SC register
-        Bit[] zero = new Bit[SCSize];
-        for(int i=0;i<SCSize;i++) {
-            zero[i] = Bit.ZERO;
-        }
-        SC = new SIPORegister("SC", SCSize, zero);
+        SC = new PackedRegister("SC", SCSize);
     }
 
     /**
@@ -50,19 +57,10 @@ public class GAp implements BranchPredictor {
      */
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
-        // TODO: complete Task 1
-        Bit[] current = BHR.read();
-        PAPHT.setDefault(getCacheEntry(branchInstruction.getInstructionAddress()), getDefaultBlock());
-        Bit[] values = PAPHT.get(getCacheEntry(branchInstruction.getInstructionAddress()));
-        
-        SC.load(values);
-
-
-        if(values[0] == Bit.ONE) {
-            return BranchResult.TAKEN;
-        } else {
-            return BranchResult.NOT_TAKEN;
-        }
+        lastAddress = InstructionAddress.valueOf(branchInstruction, branchInstructionSize);
+        lastRow = (int) BHR.readValue();
+        lastInstruction = branchInstruction;
+        return getPrediction(load(lastAddress, lastRow));
     }
 
     /**
@@ -73,45 +71,102 @@ public class GAp implements BranchPredictor {
      */
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
-        // TODO : complete Task 2
-        Bit[] currentNum = SC.read();
-        if(actual.equals(BranchResult.TAKEN)) {
-            currentNum = CombinationalLogic.count(currentNum, true, CountMode.SATURATING);
-        }
-        else {
-            currentNum = CombinationalLogic.count(currentNum, false, CountMode.SATURATING);
+        if (branchInstruction != lastInstruction) {
+            lastAddress = InstructionAddress.valueOf(branchInstruction, branchInstructionSize);
+            lastRow = (int) BHR.readValue();
         }
+        lastInstruction = null;
+        store(lastAddress, lastRow, (int) SC.readValue(), actual);
+    }
 
-        //PHT.put(BHR.read(), currentNum);
-        PAPHT.put(getCacheEntry(branchInstruction.getInstructionAddress()), currentNum);
-        if(actual.equals(BranchResult.TAKEN)) {
-            BHR.insert(Bit.ONE);
-        }
-        else {
-            BHR.insert(Bit.ZERO);
-        }
+    /**
+     * predicts the branch and updates the predictor with one PAPHT lookup
+     *
+     * @param branchInstruction the branch instruction
+     * @param actual            the actual result of branch (Taken or Not)
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        long address = InstructionAddress.valueOf(branchInstruction, branchInstructionSize);
+        int row = (int) BHR.readValue();
+        long counter = load(address, row);
+        store(address, row, (int) counter, actual);
+        return getPrediction(counter);
     }
 
+    /**
+     * loads the counter of the first M bits of branch address (the PHT) and the BHR (the row) into the SC register
+     *
+     * @param address the PAPHT selector
+     * @param row     the PAPHT row
+     * @return the value of the counter
+     */
+    private long load(long address, int row) {
+        long counter = PAPHT.setDefault(address, row, 0L);
+        SC.loadValue(counter);
+        return counter;
+    }
 
     /**
-     * concat the branch address and BHR to retrieve the desired address
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
+     */
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SC.getLength() - 1)) != 0);
+    }
+
+    /**
+     * counts the counter of the address and the row and shifts the result into the BHR
      *
-     * @param branchAddress program counter
-     * @return concatenated value of first M bits of branch address and BHR
+     * @param address the PAPHT selector
+     * @param row     the PAPHT row
+     * @param counter the value of the counter before the update
+     * @param actual  the actual result of branch (Taken or Not)
      */
-    private Bit[] getCacheEntry(Bit[] branchAddress) {
-        // Concatenate the branch address bits with the BHR bits
-        Bit[] bhrBits = BHR.read();
-        Bit[] cacheEntry = new Bit[branchAddress.length + bhrBits.length];
-        System.arraycopy(branchAddress, 0, cacheEntry, 0, branchInstructionSize);
-        System.arraycopy(bhrBits, 0, cacheEntry, branchAddress.length, bhrBits.length);
-        return cacheEntry;
+    private void store(long address, int row, int counter, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        PAPHT.write(address, row, PackedLogic.count(counter, SC.getLength(), taken, CountMode.SATURATING));
+        BHR.insert(Bit.of(taken));
     }
 
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        int counterSize = SC.getLength();
+        long addressMask = BitVector.mask(branchInstructionSize);
+        int historySize = BHR.getLength();
+        long msb = 1L << (historySize - 1); // the bit which is set when ONE is inserted into the BHR
+        long history = BHR.readValue();
+        long counter = SC.readValue();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long address = pcs[i] & addressMask;
+            counter = PAPHT.setDefault(address, (int) history, 0L);
+            boolean prediction = (counter >>> (counterSize - 1)) != 0;
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            PAPHT.write(address, (int) history, PackedLogic.count((int) counter, counterSize, taken, CountMode.SATURATING));
+            history = (history >>> 1) | (taken ? msb : 0L);
+        }
+        SC.loadValue(counter);
+        BHR.loadValue(history);
+        return mispredictions;
     }
 
     /**
@@ -122,5 +177,28 @@ public class GAp implements BranchPredictor {
         return "GAp predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PAPHT.monitor();
     }
 
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "GAp");
+        BHR.snapshot(visitor);
+        SC.snapshot(visitor);
+        PAPHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("BHR", BHR);
+        devices.put("SC", SC);
+        devices.put("PAPHT", PAPHT);
+        return devices;
+    }
+
 }
 
@@ -1,19 +1,28 @@
 package hardwar.branch.prediction.judged.GAs;
 
 
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.*;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class GAs implements BranchPredictor {
+public class GAs implements Predictor {
 
     private final int branchInstructionSize;
     private final int KSize;
-    private final HashMode hashMode;
-    private final ShiftRegister SC; // saturating counter register
-    private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PSPHT; // Per Set Predication History Table
+    private final HashFunction hashMode;
+    private final PackedRegister SC; // saturating counter register
+    private final PackedRegister BHR; // branch history register
+    private final FlatPerAddressPredictionHistoryTable PSPHT; // Per Set Predication History Table
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastIndex; // PSPHT index of the last prediction
 
     public GAs() {
         this(4, 2, 8, 4, HashMode.XOR);
@@ -28,20 +37,29 @@ public class GAs implements BranchPredictor {
      * @param branchInstructionSize the number of bits which is used for saving a branch instruction
      */
     public GAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashmode) {
-        // TODO: complete the constructor
+        this(BHRSize, SCSize, branchInstructionSize, KSize, HashFunction.of(hashmode));
+    }
+
+    /**
+     * @param hashMode the hash function of the branch instruction address (GSHARE is not supported)
+     */
+    public GAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashFunction hashmode) {
+        if (hashmode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
         this.branchInstructionSize = branchInstructionSize;
         this.KSize = KSize;
         this.hashMode = hashmode;
 
         // Initialize the BHR register with the given size and no default value
-        this.BHR = new SIPORegister("BHR", BHRSize, null);
+        this.BHR = new PackedRegister("BHR", BHRSize);
 
         // Initializing the PAPHT with K bit as PHT selector and 2^BHRSize row as each PHT entries
         // number and SCSize as block size
-        this.PSPHT = new PerAddressPredictionHistoryTable(SCSize, (1<<BHRSize), KSize);
+        this.PSPHT = new FlatPerAddressPredictionHistoryTable(KSize, (1<<BHRSize), SCSize);
 
         // Initialize the saturating counter
-        SC = new SIPORegister("SC", KSize, null);
+        SC = new PackedRegister("SC", SCSize);
     }
 
     /**
@@ -53,18 +71,9 @@ public class GAs implements BranchPredictor {
      */
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
-        // TODO: complete Task 1
-        Bit[] current = BHR.read();
-        Bit[] entry = getCacheEntry(CombinationalLogic.hash(branchInstruction.getInstructionAddress(), KSize, hashMode));
-        //System.err.println(Bit.arrayToString(entry));
-        PSPHT.setDefault(entry, getDefaultBlock());
-        Bit[] values = PSPHT.get(entry);
-        SC.load(values);
-        if(values[0] == Bit.ONE) {
-            return BranchResult.TAKEN;
-        } else {
-            return BranchResult.NOT_TAKEN;
-        }
+        lastIndex = getIndex(branchInstruction);
+        lastInstruction = branchInstruction;
+        return getPrediction(load(lastIndex));
     }
 
     /**
@@ -75,54 +84,138 @@ public class GAs implements BranchPredictor {
      */
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
-        // TODO: complete Task 2
-        Bit[] currentNum = SC.read();
-        if(actual.equals(BranchResult.TAKEN)) {
-            currentNum = CombinationalLogic.count(currentNum, true, CountMode.SATURATING);
-        }
-        else {
-            currentNum = CombinationalLogic.count(currentNum, false, CountMode.SATURATING);
-        }
-        Bit[] current = BHR.read();
-        PSPHT.put(getCacheEntry(CombinationalLogic.hash(branchInstruction.getInstructionAddress(), KSize, hashMode)), currentNum);
-        if(actual.equals(BranchResult.TAKEN)) {
-            BHR.insert(Bit.ONE);
-        }
-        else {
-            BHR.insert(Bit.ZERO);
-        }
+        long index = branchInstruction == lastInstruction ? lastIndex : getIndex(branchInstruction);
+        lastInstruction = null;
+        store(index, (int) SC.readValue(), actual);
     }
 
     /**
-     * @return snapshot of caches and registers content
+     * predicts the branch and updates the predictor with one PSPHT lookup
+     *
+     * @param branchInstruction the branch instruction
+     * @param actual            the actual result of branch (Taken or Not)
+     * @return the predicted outcome of the branch instruction (taken or not taken)
      */
-    public String monitor() {
-        return "GAp predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PSPHT.monitor();
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        long index = getIndex(branchInstruction);
+        long counter = load(index);
+        store(index, (int) counter, actual);
+        return getPrediction(counter);
     }
 
+    /**
+     * concat the hash of the PC and BHR to retrieve the desired address
+     *
+     * @param instruction the branch instruction
+     * @return the PSPHT index of the hash value of branch address and the BHR
+     */
+    private long getIndex(BranchInstruction instruction) {
+        long hashKSize = InstructionAddress.hashOf(instruction, KSize, hashMode);
+        return (hashKSize << PSPHT.getRowBits()) | BHR.readValue();
+    }
 
     /**
-     * concat the PC and BHR to retrieve the desired address
+     * loads the counter of the index into the SC register
      *
-     * @param branchAddress program counter
-     * @return concatenated value of first M bits of branch address and BHR
+     * @param index the PSPHT index
+     * @return the value of the counter
      */
-    private Bit[] getCacheEntry(Bit[] branchAddress) {
-        // hash the branch address
-        Bit[] hashKSize = CombinationalLogic.hash(branchAddress, KSize, hashMode);
+    private long load(long index) {
+        long counter = PSPHT.setDefault(index, 0L);
+        SC.loadValue(counter);
+        return counter;
+    }
 
-        // Concatenate the Hash bits with the BHR bits
-        Bit[] bhrBits = BHR.read();
-        Bit[] cacheEntry = new Bit[hashKSize.length + bhrBits.length];
-        System.arraycopy(hashKSize, 0, cacheEntry, 0, hashKSize.length);
-        System.arraycopy(bhrBits, 0, cacheEntry, hashKSize.length, bhrBits.length);
+    /**
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
+     */
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SC.getLength() - 1)) != 0);
+    }
 
-        return cacheEntry;
+    /**
+     * counts the counter of the index and shifts the result into the BHR
+     *
+     * @param index   the PSPHT index
+     * @param counter the value of the counter before the update
+     * @param actual  the actual result of branch (Taken or Not)
+     */
+    private void store(long index, int counter, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        PSPHT.write(index, PackedLogic.count(counter, SC.getLength(), taken, CountMode.SATURATING));
+        BHR.insert(Bit.of(taken));
+    }
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        int counterSize = SC.getLength();
+        long addressMask = BitVector.mask(branchInstructionSize);
+        int rowBits = PSPHT.getRowBits();
+        int historySize = BHR.getLength();
+        long msb = 1L << (historySize - 1); // the bit which is set when ONE is inserted into the BHR
+        long history = BHR.readValue();
+        long counter = SC.readValue();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long hash = PackedLogic.hash(pcs[i] & addressMask, branchInstructionSize, KSize, hashMode);
+            long index = (hash << rowBits) | history;
+            counter = PSPHT.setDefault(index, 0L);
+            boolean prediction = (counter >>> (counterSize - 1)) != 0;
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            PSPHT.write(index, PackedLogic.count((int) counter, counterSize, taken, CountMode.SATURATING));
+            history = (history >>> 1) | (taken ? msb : 0L);
+        }
+        SC.loadValue(counter);
+        BHR.loadValue(history);
+        return mispredictions;
     }
 
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    /**
+     * @return snapshot of caches and registers content
+     */
+    public String monitor() {
+        return "GAs predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PSPHT.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "GAs");
+        BHR.snapshot(visitor);
+        SC.snapshot(visitor);
+        PSPHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("BHR", BHR);
+        devices.put("SC", SC);
+        devices.put("PSPHT", PSPHT);
+        return devices;
     }
 }
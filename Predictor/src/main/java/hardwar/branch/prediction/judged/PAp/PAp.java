@@ -1,103 +1,192 @@
 package hardwar.branch.prediction.judged.PAp;
 
 
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.*;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class PAp implements BranchPredictor {
+public class PAp implements Predictor {
 
     private final int branchInstructionSize;
 
-    private final ShiftRegister SC; // saturating counter register
+    private final PackedRegister SC; // saturating counter register
 
-    private final RegisterBank PABHR; // per address branch history register
+    private final DenseRegisterBank PABHR; // per address branch history register
 
-    private final Cache<Bit[], Bit[]> PAPHT; // Per Address Predication History Table
+    private final FlatPerAddressPredictionHistoryTable PAPHT; // Per Address Predication History Table
+
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastSelector; // PABHR selector of the last prediction
+    private int lastRow; // PAPHT row of the last prediction
 
     public PAp() {
         this(4, 2, 8);
     }
 
     public PAp(int BHRSize, int SCSize, int branchInstructionSize) {
-        // TODO: complete the constructor
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
         this.branchInstructionSize = branchInstructionSize;
 
         // Initialize the PABHR with the given bhr and branch instruction size
-        PABHR = new RegisterBank(branchInstructionSize,BHRSize);;
+        PABHR = new DenseRegisterBank(branchInstructionSize,BHRSize);
 
         // Initializing the PAPHT with BranchInstructionSize as PHT Selector and 2^BHRSize row as each PHT entries
         // number and SCSize as block size
-        PAPHT = new PerAddressPredictionHistoryTable(branchInstructionSize, BHRSize, SCSize);
+        PAPHT = new FlatPerAddressPredictionHistoryTable(branchInstructionSize, (1<<BHRSize), SCSize);
 
         // Initialize the SC register
-        Bit[] zero = new Bit[SCSize];
-        for(int i=0;i<SCSize;i++) {
-            zero[i] = Bit.ZERO;
-        }
-        SC = new SIPORegister("SC", SCSize, zero);
+        SC = new PackedRegister("SC", SCSize);
     }
 
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
-        ShiftRegister current = PABHR.read(branchInstruction.getInstructionAddress());
-        Bit[] pht = getCacheEntry(branchInstruction.getInstructionAddress(),current.read() );
-        PAPHT.setDefault(pht, getDefaultBlock());
-        Bit[] values = PAPHT.get(pht);
-        SC.load(values);
-
-        if(values[0] == Bit.ONE) {
-            return BranchResult.TAKEN;
-        } else {
-            return BranchResult.NOT_TAKEN;
-        }
-        // TODO: complete Task 1
+        lastSelector = getSelector(branchInstruction);
+        lastRow = (int) PABHR.readHistory(lastSelector);
+        lastInstruction = branchInstruction;
+        return getPrediction(load(lastSelector, lastRow));
     }
 
     @Override
-    public void update(BranchInstruction instruction, BranchResult actual) {
-        // TODO:complete Task 2
-        ShiftRegister current = PABHR.read(instruction.getInstructionAddress());
-        Bit[] pht = getCacheEntry(instruction.getInstructionAddress(),current.read() );
-        Bit[] currentNum = SC.read();
-        if(actual.equals(BranchResult.TAKEN)) {
-            currentNum = CombinationalLogic.count(currentNum, true, CountMode.SATURATING);
-        }
-        else {
-            currentNum = CombinationalLogic.count(currentNum, false, CountMode.SATURATING);
-        }
-        PAPHT.put(pht, currentNum);
-        if(actual.equals(BranchResult.TAKEN)) {
-            current.insert(Bit.ONE);
-            PABHR.write(instruction.getInstructionAddress(),current.read());
-        }
-        else {
-            current.insert(Bit.ZERO);
-            PABHR.write(instruction.getInstructionAddress(),current.read());
+    public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        if (branchInstruction != lastInstruction) {
+            lastSelector = getSelector(branchInstruction);
+            lastRow = (int) PABHR.readHistory(lastSelector);
         }
+        lastInstruction = null;
+        store(lastSelector, lastRow, (int) SC.readValue(), actual);
+    }
+
+    /**
+     * predicts the branch and updates the predictor with one PABHR and one PAPHT lookup
+     *
+     * @param branchInstruction the branch instruction
+     * @param actual            the actual result of branch (taken or not)
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        long selector = getSelector(branchInstruction);
+        int row = (int) PABHR.readHistory(selector);
+        long counter = load(selector, row);
+        store(selector, row, (int) counter, actual);
+        return getPrediction(counter);
     }
 
+    /**
+     * @param instruction the branch instruction
+     * @return the PABHR selector of the branch address
+     */
+    private long getSelector(BranchInstruction instruction) {
+        if (InstructionAddress.sizeOf(instruction) != branchInstructionSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+        return InstructionAddress.valueOf(instruction, branchInstructionSize);
+    }
 
-    private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
-        // Concatenate the branch address bits with the BHR bits
-        Bit[] cacheEntry = new Bit[branchAddress.length + BHRValue.length];
-        System.arraycopy(branchAddress, 0, cacheEntry, 0, branchInstructionSize);
-        System.arraycopy(BHRValue, 0, cacheEntry, branchAddress.length, BHRValue.length);
-        return cacheEntry;
+    /**
+     * loads the counter of the branch address (the PHT) and its BHR (the row) into the SC register
+     *
+     * @param selector the PABHR and PAPHT selector of the branch address
+     * @param row      the PAPHT row
+     * @return the value of the counter
+     */
+    private long load(long selector, int row) {
+        long counter = PAPHT.setDefault(selector, row, 0L);
+        SC.loadValue(counter);
+        return counter;
     }
 
     /**
-     * @return a zero series of bits as default value of cache block
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
      */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SC.getLength() - 1)) != 0);
+    }
+
+    /**
+     * counts the counter of the selector and the row and shifts the result into the BHR of the selector
+     *
+     * @param selector the PABHR and PAPHT selector
+     * @param row      the PAPHT row
+     * @param counter  the value of the counter before the update
+     * @param actual   the actual result of branch (taken or not)
+     */
+    private void store(long selector, int row, int counter, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        PAPHT.write(selector, row, PackedLogic.count(counter, SC.getLength(), taken, CountMode.SATURATING));
+        PABHR.shiftIn(selector, Bit.of(taken));
+    }
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        int counterSize = SC.getLength();
+        long addressMask = BitVector.mask(branchInstructionSize);
+        long counter = SC.readValue();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long selector = pcs[i] & addressMask;
+            int row = (int) PABHR.readHistory(selector);
+            counter = PAPHT.setDefault(selector, row, 0L);
+            boolean prediction = (counter >>> (counterSize - 1)) != 0;
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            PAPHT.write(selector, row, PackedLogic.count((int) counter, counterSize, taken, CountMode.SATURATING));
+            PABHR.shiftIn(selector, Bit.of(taken));
+        }
+        SC.loadValue(counter);
+        return mispredictions;
     }
 
     @Override
     public String monitor() {
         return "PAp predictor snapshot: \n" + PABHR.monitor() + SC.monitor() + PAPHT.monitor();
     }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "PAp");
+        PABHR.snapshot(visitor);
+        SC.snapshot(visitor);
+        PAPHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("PABHR", PABHR);
+        devices.put("SC", SC);
+        devices.put("PAPHT", PAPHT);
+        return devices;
+    }
 }
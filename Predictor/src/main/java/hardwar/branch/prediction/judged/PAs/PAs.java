@@ -1,39 +1,58 @@
 package hardwar.branch.prediction.judged.PAs;
 
 
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.*;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class PAs implements BranchPredictor {
+public class PAs implements Predictor {
 
     private final int branchInstructionSize;
     private final int KSize;
-    private final HashMode hashMode;
-    private final ShiftRegister SC; // saturating counter register
-    private final RegisterBank PABHR; // per address Branch History Register
-    private final Cache<Bit[], Bit[]> PSPHT; // Per Set Predication History Table
+    private final HashFunction hashMode;
+    private final PackedRegister SC; // saturating counter register
+    private final DenseRegisterBank PABHR; // per address Branch History Register
+    private final FlatPerAddressPredictionHistoryTable PSPHT; // Per Set Predication History Table
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastSelector; // PABHR selector of the last prediction
+    private long lastIndex; // PSPHT index of the last prediction
 
     public PAs() {
         this(4, 2, 8, 4, HashMode.XOR);
     }
 
     public PAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode) {
-        // TODO: complete the constructor
-        this.branchInstructionSize = 0;
-        this.KSize = 0;
-        this.hashMode = HashMode.XOR;
+        this(BHRSize, SCSize, branchInstructionSize, KSize, HashFunction.of(hashMode));
+    }
+
+    /**
+     * @param hashMode the hash function of the branch instruction address (GSHARE is not supported)
+     */
+    public PAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashFunction hashMode) {
+        if (hashMode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        this.branchInstructionSize = branchInstructionSize;
+        this.KSize = KSize;
+        this.hashMode = hashMode;
 
         // Initialize the PABHR with the given bhr and branch instruction size
-        PABHR = null;
+        PABHR = new DenseRegisterBank(branchInstructionSize, BHRSize);
 
         // Initializing the PAPHT with K bit as PHT selector and 2^BHRSize row as each PHT entries
         // number and SCSize as block size
-        PSPHT = null;
+        PSPHT = new FlatPerAddressPredictionHistoryTable(KSize, (1<<BHRSize), SCSize);
 
         // Initialize the saturating counter
-        SC = null;
+        SC = new PackedRegister("SC", SCSize);
     }
 
     /**
@@ -45,36 +64,157 @@ public class PAs implements BranchPredictor {
      */
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
-        // TODO: complete Task 1
-        return BranchResult.NOT_TAKEN;
+        lastSelector = getSelector(branchInstruction);
+        lastIndex = getIndex(branchInstruction, lastSelector);
+        lastInstruction = branchInstruction;
+        return getPrediction(load(lastIndex));
     }
 
     @Override
-    public void update(BranchInstruction instruction, BranchResult actual) {
-        // TODO:complete Task 2
+    public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        if (branchInstruction != lastInstruction) {
+            lastSelector = getSelector(branchInstruction);
+            lastIndex = getIndex(branchInstruction, lastSelector);
+        }
+        lastInstruction = null;
+        store(lastIndex, lastSelector, (int) SC.readValue(), actual);
     }
 
+    /**
+     * predicts the branch and updates the predictor with one PABHR and one PSPHT lookup
+     *
+     * @param branchInstruction the branch instruction
+     * @param actual            the actual result of branch (taken or not)
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
     @Override
-    public String monitor() {
-        return "PAs predictor snapshot: \n" + PABHR.monitor() + SC.monitor() + PSPHT.monitor();
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        long selector = getSelector(branchInstruction);
+        long index = getIndex(branchInstruction, selector);
+        long counter = load(index);
+        store(index, selector, (int) counter, actual);
+        return getPrediction(counter);
     }
 
-    private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
-        // hash the branch address
-        Bit[] hashKSize = CombinationalLogic.hash(branchAddress, KSize, hashMode);
+    /**
+     * @param instruction the branch instruction
+     * @return the PABHR selector of the branch address
+     */
+    private long getSelector(BranchInstruction instruction) {
+        if (InstructionAddress.sizeOf(instruction) != branchInstructionSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+        return InstructionAddress.valueOf(instruction, branchInstructionSize);
+    }
 
-        // Concatenate the Hash bits with the BHR bits
-        Bit[] cacheEntry = new Bit[hashKSize.length + BHRValue.length];
-        System.arraycopy(hashKSize, 0, cacheEntry, 0, hashKSize.length);
-        System.arraycopy(BHRValue, 0, cacheEntry, hashKSize.length, BHRValue.length);
+    /**
+     * concat the hash of the branch address and the BHR of the branch address to retrieve the desired address
+     *
+     * @param instruction the branch instruction
+     * @param selector    the PABHR selector of the branch address
+     * @return the PSPHT index
+     */
+    private long getIndex(BranchInstruction instruction, long selector) {
+        long hashKSize = InstructionAddress.hashOf(instruction, KSize, hashMode);
+        return (hashKSize << PSPHT.getRowBits()) | PABHR.readHistory(selector);
+    }
 
-        return cacheEntry;
+    /**
+     * loads the counter of the index into the SC register
+     *
+     * @param index the PSPHT index
+     * @return the value of the counter
+     */
+    private long load(long index) {
+        long counter = PSPHT.setDefault(index, 0L);
+        SC.loadValue(counter);
+        return counter;
     }
 
+    /**
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
+     */
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SC.getLength() - 1)) != 0);
+    }
 
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    /**
+     * counts the counter of the index and shifts the result into the BHR of the selector
+     *
+     * @param index    the PSPHT index
+     * @param selector the PABHR selector
+     * @param counter  the value of the counter before the update
+     * @param actual   the actual result of branch (taken or not)
+     */
+    private void store(long index, long selector, int counter, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        PSPHT.write(index, PackedLogic.count(counter, SC.getLength(), taken, CountMode.SATURATING));
+        PABHR.shiftIn(selector, Bit.of(taken));
+    }
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        int counterSize = SC.getLength();
+        long addressMask = BitVector.mask(branchInstructionSize);
+        int rowBits = PSPHT.getRowBits();
+        long counter = SC.readValue();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long selector = pcs[i] & addressMask;
+            long hash = PackedLogic.hash(selector, branchInstructionSize, KSize, hashMode);
+            long index = (hash << rowBits) | PABHR.readHistory(selector);
+            counter = PSPHT.setDefault(index, 0L);
+            boolean prediction = (counter >>> (counterSize - 1)) != 0;
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            PSPHT.write(index, PackedLogic.count((int) counter, counterSize, taken, CountMode.SATURATING));
+            PABHR.shiftIn(selector, Bit.of(taken));
+        }
+        SC.loadValue(counter);
+        return mispredictions;
+    }
+
+    @Override
+    public String monitor() {
+        return "PAs predictor snapshot: \n" + PABHR.monitor() + SC.monitor() + PSPHT.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "PAs");
+        PABHR.snapshot(visitor);
+        SC.snapshot(visitor);
+        PSPHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("PABHR", PABHR);
+        devices.put("SC", SC);
+        devices.put("PSPHT", PSPHT);
+        return devices;
     }
 }
@@ -1,120 +1,199 @@
 package hardwar.branch.prediction.judged.SAg;
 
 
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.*;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class SAg implements BranchPredictor {
+public class SAg implements Predictor {
     private final int branchInstructionSize;
     private final int KSize;
-    private final ShiftRegister SC; // saturating counter register
-    private final RegisterBank PSBHR; // per set branch history register
-    private final Cache<Bit[], Bit[]> PHT; // page history table
+    private final PackedRegister SC; // saturating counter register
+    private final DenseRegisterBank PSBHR; // per set branch history register
+    private final CounterTable PHT; // page history table
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastSelector; // PSBHR selector of the last prediction
+    private long lastIndex; // PHT index of the last prediction
 
     public SAg() {
         this(4, 2, 8, 4);
     }
 
     public SAg(int BHRSize, int SCSize, int branchInstructionSize, int KSize) {
-        // TODO: complete the constructor
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
         this.branchInstructionSize = branchInstructionSize;
         this.KSize = KSize;
 
         // Initialize the PABHR with the given bhr and Ksize
-        PSBHR = new RegisterBank(KSize ,BHRSize);
+        PSBHR = new DenseRegisterBank(KSize ,BHRSize);
 
         // Initialize the PHT with a size of 2^size and each entry having a saturating counter of size "SCSize"
-        PHT = new PageHistoryTable((1<<KSize), SCSize);
+        PHT = new DensePageHistoryTable((1<<BHRSize), SCSize);
 
         // Initialize the SC register
-        Bit[] zero = new Bit[SCSize];
-        for(int i=0;i<SCSize;i++) {
-            zero[i] = Bit.ZERO;
-        }
-        SC = new SIPORegister("SC", SCSize, zero);
+        SC = new PackedRegister("SC", SCSize);
     }
 
     @Override
-    public BranchResult predict(BranchInstruction instruction) {
-        Bit[] hashaddr = hash(instruction.getInstructionAddress());
-        ShiftRegister BHR = PSBHR.read(hashaddr);
-        Bit[] current = BHR.read();
-        PHT.setDefault(current, getDefaultBlock());
-        Bit[] values = PHT.get(current);
-        SC.load(values);
-
-        if(values[0] == Bit.ONE) {
-            return BranchResult.TAKEN;
-        } else {
-            return BranchResult.NOT_TAKEN;
-        }
-        // TODO: complete Task 1
+    public BranchResult predict(BranchInstruction branchInstruction) {
+        lastSelector = getSelector(branchInstruction);
+        lastIndex = getIndex(branchInstruction, lastSelector);
+        lastInstruction = branchInstruction;
+        return getPrediction(load(lastIndex));
     }
 
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
-        // TODO: complete Task 2
-        Bit[] currentNum = SC.read();
-        if(actual.equals(BranchResult.TAKEN)) {
-            currentNum = CombinationalLogic.count(currentNum, true, CountMode.SATURATING);
-        }
-        else {
-            currentNum = CombinationalLogic.count(currentNum, false, CountMode.SATURATING);
+        if (branchInstruction != lastInstruction) {
+            lastSelector = getSelector(branchInstruction);
+            lastIndex = getIndex(branchInstruction, lastSelector);
         }
-        Bit[] hashaddr = hash(branchInstruction.getInstructionAddress());
-        ShiftRegister BHR = PSBHR.read(hashaddr);
-        Bit[] current = BHR.read();
-        PHT.put(BHR.read(), currentNum);
-        if(actual.equals(BranchResult.TAKEN)) {
-            BHR.insert(Bit.ONE);
-        }
-        else {
-            BHR.insert(Bit.ZERO);
-        }
-        PSBHR.write(hashaddr, BHR.read());
+        lastInstruction = null;
+        store(lastIndex, lastSelector, (int) SC.readValue(), actual);
     }
 
-    private Bit[] getRBAddressLine(Bit[] branchAddress) {
-        // hash the branch address
-        return hash(branchAddress);
+    /**
+     * predicts the branch and updates the predictor with one PSBHR and one PHT lookup
+     *
+     * @param branchInstruction the branch instruction
+     * @param actual            the actual result of branch (taken or not)
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        long selector = getSelector(branchInstruction);
+        long index = getIndex(branchInstruction, selector);
+        long counter = load(index);
+        store(index, selector, (int) counter, actual);
+        return getPrediction(counter);
     }
 
     /**
      * hash N bits to a K bit value
      *
-     * @param bits program counter
-     * @return hash value of fist M bits of `bits` in K bits
+     * @param instruction the branch instruction
+     * @return the PSBHR selector, which is the hash value of fist M bits of the program counter in K bits
      */
-    private Bit[] hash(Bit[] bits) {
-        Bit[] hash = new Bit[KSize];
-
+    private long getSelector(BranchInstruction instruction) {
         // XOR the first M bits of the PC to produce the hash
-        for (int i = 0; i < branchInstructionSize; i++) {
-            int j = i % KSize;
-            if (hash[j] == null) {
-                hash[j] = bits[i];
-            } else {
-                Bit xorProduce = hash[j].getValue() ^ bits[i].getValue() ? Bit.ONE : Bit.ZERO;
-                hash[j] = xorProduce;
-
-            }
-        }
-        return hash;
+        if (InstructionAddress.sizeOf(instruction) == branchInstructionSize) return InstructionAddress.hashOf(instruction, KSize, HashFunction.XOR);
+        long address = InstructionAddress.valueOf(instruction, branchInstructionSize);
+        return PackedLogic.hash(address, branchInstructionSize, KSize, HashFunction.XOR);
     }
 
     /**
-     * @return a zero series of bits as default value of cache block
+     * @param instruction the branch instruction
+     * @param selector    the PSBHR selector of the branch address
+     * @return the PHT index, which is the BHR of the set of the branch address
      */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    private long getIndex(BranchInstruction instruction, long selector) {
+        return PSBHR.readHistory(selector);
+    }
+
+    /**
+     * loads the counter of the index into the SC register
+     *
+     * @param index the PHT index
+     * @return the value of the counter
+     */
+    private long load(long index) {
+        long counter = PHT.setDefault(index, 0L);
+        SC.loadValue(counter);
+        return counter;
+    }
+
+    /**
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
+     */
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SC.getLength() - 1)) != 0);
+    }
+
+    /**
+     * counts the counter of the index and shifts the result into the BHR of the selector
+     *
+     * @param index    the PHT index
+     * @param selector the PSBHR selector
+     * @param counter  the value of the counter before the update
+     * @param actual   the actual result of branch (taken or not)
+     */
+    private void store(long index, long selector, int counter, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        PHT.write(index, PackedLogic.count(counter, SC.getLength(), taken, CountMode.SATURATING));
+        PSBHR.shiftIn(selector, Bit.of(taken));
+    }
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        int counterSize = SC.getLength();
+        long addressMask = BitVector.mask(branchInstructionSize);
+        long counter = SC.readValue();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long selector = PackedLogic.hash(pcs[i] & addressMask, branchInstructionSize, KSize, HashFunction.XOR);
+            long index = PSBHR.readHistory(selector);
+            counter = PHT.setDefault(index, 0L);
+            boolean prediction = (counter >>> (counterSize - 1)) != 0;
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            PHT.write(index, PackedLogic.count((int) counter, counterSize, taken, CountMode.SATURATING));
+            PSBHR.shiftIn(selector, Bit.of(taken));
+        }
+        SC.loadValue(counter);
+        return mispredictions;
     }
 
     @Override
     public String monitor() {
-        return null;
+        return "SAg predictor snapshot: \n" + PSBHR.monitor() + SC.monitor() + PHT.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "SAg");
+        PSBHR.snapshot(visitor);
+        SC.snapshot(visitor);
+        PHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("PSBHR", PSBHR);
+        devices.put("SC", SC);
+        devices.put("PHT", PHT);
+        return devices;
     }
 }
@@ -1,99 +1,199 @@
 package hardwar.branch.prediction.judged.SAp;
 
 
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.*;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class SAp implements BranchPredictor {
+public class SAp implements Predictor {
 
     private final int branchInstructionSize;
     private final int KSize;
-    private final ShiftRegister SC;
-    private final RegisterBank PSBHR; // per set branch history register
-    private final Cache<Bit[], Bit[]> PAPHT; // per address predication history table
+    private final PackedRegister SC;
+    private final DenseRegisterBank PSBHR; // per set branch history register
+    private final FlatPerAddressPredictionHistoryTable PAPHT; // per address predication history table
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastSelector; // PSBHR selector of the last prediction
+    private long lastAddress; // PAPHT selector of the last prediction
+    private int lastRow; // PAPHT row of the last prediction
 
     public SAp() {
         this(4, 2, 8, 4);
     }
 
     public SAp(int BHRSize, int SCSize, int branchInstructionSize, int KSize) {
-        // TODO: complete the constructor
-        this.branchInstructionSize = 0;
-        this.KSize = 0;
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
+        this.branchInstructionSize = branchInstructionSize;
+        this.KSize = KSize;
 
         // Initialize the PSBHR with the given bhr and Ksize
-        PSBHR = null;
+        PSBHR = new DenseRegisterBank(KSize, BHRSize);
 
         // Initializing the PAPHT with BranchInstructionSize as PHT Selector and 2^BHRSize row as each PHT entries
         // number and SCSize as block size
-        PAPHT = null;
+        PAPHT = new FlatPerAddressPredictionHistoryTable(branchInstructionSize, (1<<BHRSize), SCSize);
 
         // Initialize the SC register
-        SC = null;
+        SC = new PackedRegister("SC", SCSize);
     }
 
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
-        // TODO: complete Task 1
-        return BranchResult.NOT_TAKEN;
+        lastSelector = getSelector(branchInstruction);
+        lastAddress = InstructionAddress.valueOf(branchInstruction, branchInstructionSize);
+        lastRow = (int) PSBHR.readHistory(lastSelector);
+        lastInstruction = branchInstruction;
+        return getPrediction(load(lastAddress, lastRow));
     }
 
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
-        // TODO:complete Task 2
+        if (branchInstruction != lastInstruction) {
+            lastSelector = getSelector(branchInstruction);
+            lastAddress = InstructionAddress.valueOf(branchInstruction, branchInstructionSize);
+            lastRow = (int) PSBHR.readHistory(lastSelector);
+        }
+        lastInstruction = null;
+        store(lastAddress, lastRow, lastSelector, (int) SC.readValue(), actual);
     }
 
+    /**
+     * predicts the branch and updates the predictor with one PSBHR and one PAPHT lookup
+     *
+     * @param branchInstruction the branch instruction
+     * @param actual            the actual result of branch (taken or not)
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        long selector = getSelector(branchInstruction);
+        long address = InstructionAddress.valueOf(branchInstruction, branchInstructionSize);
+        int row = (int) PSBHR.readHistory(selector);
+        long counter = load(address, row);
+        store(address, row, selector, (int) counter, actual);
+        return getPrediction(counter);
+    }
 
-    private Bit[] getRBAddressLine(Bit[] branchAddress) {
-        // hash the branch address
-        return hash(branchAddress);
+    /**
+     * hash N bits to a K bit value
+     *
+     * @param instruction the branch instruction
+     * @return the PSBHR selector, which is the hash value of fist M bits of the program counter in K bits
+     */
+    private long getSelector(BranchInstruction instruction) {
+        // XOR the first M bits of the PC to produce the hash
+        if (InstructionAddress.sizeOf(instruction) == branchInstructionSize) return InstructionAddress.hashOf(instruction, KSize, HashFunction.XOR);
+        long address = InstructionAddress.valueOf(instruction, branchInstructionSize);
+        return PackedLogic.hash(address, branchInstructionSize, KSize, HashFunction.XOR);
     }
 
-    private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
-        // Concatenate the branch address bits with the BHR bits
-        Bit[] cacheEntry = new Bit[branchAddress.length + BHRValue.length];
-        System.arraycopy(branchAddress, 0, cacheEntry, 0, branchInstructionSize);
-        System.arraycopy(BHRValue, 0, cacheEntry, branchAddress.length, BHRValue.length);
-        return cacheEntry;
+    /**
+     * loads the counter of the branch address (the PHT) and the BHR of its set (the row) into the SC register
+     *
+     * @param address the PAPHT selector
+     * @param row     the PAPHT row
+     * @return the value of the counter
+     */
+    private long load(long address, int row) {
+        long counter = PAPHT.setDefault(address, row, 0L);
+        SC.loadValue(counter);
+        return counter;
     }
 
+    /**
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
+     */
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SC.getLength() - 1)) != 0);
+    }
 
     /**
-     * hash N bits to a K bit value
+     * counts the counter of the address and the row and shifts the result into the BHR of the selector
      *
-     * @param bits program counter
-     * @return hash value of fist M bits of `bits` in K bits
+     * @param address  the PAPHT selector
+     * @param row      the PAPHT row
+     * @param selector the PSBHR selector
+     * @param counter  the value of the counter before the update
+     * @param actual   the actual result of branch (taken or not)
      */
-    private Bit[] hash(Bit[] bits) {
-        Bit[] hash = new Bit[KSize];
-
-        // XOR the first M bits of the PC to produce the hash
-        for (int i = 0; i < branchInstructionSize; i++) {
-            int j = i % KSize;
-            if (hash[j] == null) {
-                hash[j] = bits[i];
-            } else {
-                Bit xorProduce = hash[j].getValue() ^ bits[i].getValue() ? Bit.ONE : Bit.ZERO;
-                hash[j] = xorProduce;
-
-            }
-        }
-        return hash;
+    private void store(long address, int row, long selector, int counter, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        PAPHT.write(address, row, PackedLogic.count(counter, SC.getLength(), taken, CountMode.SATURATING));
+        PSBHR.shiftIn(selector, Bit.of(taken));
     }
 
     /**
-     * @return a zero series of bits as default value of cache block
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
      */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        int counterSize = SC.getLength();
+        long addressMask = BitVector.mask(branchInstructionSize);
+        long counter = SC.readValue();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long address = pcs[i] & addressMask;
+            long selector = PackedLogic.hash(address, branchInstructionSize, KSize, HashFunction.XOR);
+            int row = (int) PSBHR.readHistory(selector);
+            counter = PAPHT.setDefault(address, row, 0L);
+            boolean prediction = (counter >>> (counterSize - 1)) != 0;
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            PAPHT.write(address, row, PackedLogic.count((int) counter, counterSize, taken, CountMode.SATURATING));
+            PSBHR.shiftIn(selector, Bit.of(taken));
+        }
+        SC.loadValue(counter);
+        return mispredictions;
     }
 
     @Override
     public String monitor() {
-        return null;
+        return "SAp predictor snapshot: \n" + PSBHR.monitor() + SC.monitor() + PAPHT.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "SAp");
+        PSBHR.snapshot(visitor);
+        SC.snapshot(visitor);
+        PAPHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("PSBHR", PSBHR);
+        devices.put("SC", SC);
+        devices.put("PAPHT", PAPHT);
+        return devices;
     }
 }
@@ -1,110 +1,208 @@
 package hardwar.branch.prediction.judged.SAs;
 
+import hardwar.branch.prediction.core.*;
+import hardwar.branch.prediction.core.devices.*;
+import hardwar.branch.prediction.core.snapshot.SnapshotVisitor;
+import hardwar.branch.prediction.core.snapshot.Snapshottable;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class SAs implements BranchPredictor {
+public class SAs implements Predictor {
 
     private final int branchInstructionSize;
     private final int KSize;
-    private final ShiftRegister SC;
-    private final RegisterBank PSBHR; // per set branch history register
-    private final Cache<Bit[], Bit[]> PSPHT; // per set predication history table
-    private final HashMode hashMode;
+    private final PackedRegister SC;
+    private final DenseRegisterBank PSBHR; // per set branch history register
+    private final FlatPerAddressPredictionHistoryTable PSPHT; // per set predication history table
+    private final HashFunction hashMode;
+    private BranchInstruction lastInstruction; // the last predicted instruction, null if it is updated
+    private long lastSelector; // PSBHR selector of the last prediction
+    private long lastIndex; // PSPHT index of the last prediction
 
     public SAs() {
         this(4, 2, 8, 4, HashMode.XOR);
     }
 
     public SAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode) {
-        // TODO: complete the constructor
+        this(BHRSize, SCSize, branchInstructionSize, KSize, HashFunction.of(hashMode));
+    }
+
+    /**
+     * @param hashMode the hash function of the branch instruction address (GSHARE is not supported)
+     */
+    public SAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashFunction hashMode) {
+        if (hashMode == HashFunction.GSHARE) throw new IllegalArgumentException("GSHARE is not an address hash");
+        if (branchInstructionSize <= 0 || branchInstructionSize > Long.SIZE)
+            throw new IllegalArgumentException("address size must be between 1 and 64 bits");
         this.branchInstructionSize = branchInstructionSize;
         this.KSize = KSize;
         this.hashMode = hashMode;
 
         // Initialize the PSBHR with the given bhr and branch instruction size
-        PSBHR = new RegisterBank(KSize, BHRSize);
+        PSBHR = new DenseRegisterBank(KSize, BHRSize);
 
         // Initializing the PSPHT with BranchInstructionSize as PHT Selector and 2^BHRSize row as each PHT entries
         // number and SCSize as block size
-        PSPHT = new PerAddressPredictionHistoryTable(KSize, (1<<BHRSize), SCSize);
+        PSPHT = new FlatPerAddressPredictionHistoryTable(KSize, (1<<BHRSize), SCSize);
 
         // Initialize the SC register
-        SC = new SIPORegister("SC", SCSize, null);
+        SC = new PackedRegister("SC", SCSize);
     }
 
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
-        //System.err.println(this.monitor());
-        Bit[] hashaddr = CombinationalLogic.hash(branchInstruction.getInstructionAddress(), KSize, hashMode);
-        ShiftRegister BHR = PSBHR.read(hashaddr);
-        Bit[] current = BHR.read();
-        //System.err.println(BHR.monitor());
-        //System.err.println(PHT.monitor());
-        //System.err.println(Bit.arrayToString(current));
-        Bit[] entry = getCacheEntry(hashaddr, current);
-        //System.err.println(Bit.arrayToString(entry));
-        PSPHT.setDefault(entry, getDefaultBlock());
-        Bit[] values = PSPHT.get(entry);
-        SC.load(values);
-        if(values[0] == Bit.ONE) {
-            return BranchResult.TAKEN;
-        } else {
-            return BranchResult.NOT_TAKEN;
-        }
+        lastSelector = getSelector(branchInstruction);
+        lastIndex = getIndex(branchInstruction, lastSelector);
+        lastInstruction = branchInstruction;
+        return getPrediction(load(lastIndex));
     }
 
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
-        //System.err.println(this.monitor());
-        // TODO: complete Task 2
-        Bit[] currentNum = SC.read();
-        if(actual.equals(BranchResult.TAKEN)) {
-            currentNum = CombinationalLogic.count(currentNum, true, CountMode.SATURATING);
+        if (branchInstruction != lastInstruction) {
+            lastSelector = getSelector(branchInstruction);
+            lastIndex = getIndex(branchInstruction, lastSelector);
         }
-        else {
-            currentNum = CombinationalLogic.count(currentNum, false, CountMode.SATURATING);
-        }
-        Bit[] hashaddr = CombinationalLogic.hash(branchInstruction.getInstructionAddress(), KSize, hashMode);
-        ShiftRegister BHR = PSBHR.read(hashaddr);
-        Bit[] current = BHR.read();
-        PSPHT.put(getCacheEntry(hashaddr, current), currentNum);
-        if(actual.equals(BranchResult.TAKEN)) {
-            BHR.insert(Bit.ONE);
-        }
-        else {
-            BHR.insert(Bit.ZERO);
-        }
-        PSBHR.write(hashaddr, BHR.read());
+        lastInstruction = null;
+        store(lastIndex, lastSelector, (int) SC.readValue(), actual);
+    }
+
+    /**
+     * predicts the branch and updates the predictor with one PSBHR and one PSPHT lookup
+     *
+     * @param branchInstruction the branch instruction
+     * @param actual            the actual result of branch (taken or not)
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction branchInstruction, BranchResult actual) {
+        lastInstruction = null;
+        long selector = getSelector(branchInstruction);
+        long index = getIndex(branchInstruction, selector);
+        long counter = load(index);
+        store(index, selector, (int) counter, actual);
+        return getPrediction(counter);
     }
 
+    /**
+     * @param instruction the branch instruction
+     * @return the PSBHR selector, which is the hash value of the program counter in K bits
+     */
+    private long getSelector(BranchInstruction instruction) {
+        return InstructionAddress.hashOf(instruction, KSize, hashMode);
+    }
 
-    private Bit[] getAddressLine(Bit[] branchAddress) {
-        // hash the branch address
-        return CombinationalLogic.hash(branchAddress, KSize, hashMode);
+    /**
+     * concat the selector and the BHR of the set of the branch address to retrieve the desired address
+     *
+     * @param instruction the branch instruction
+     * @param selector    the PSBHR selector of the branch address
+     * @return the PSPHT index
+     */
+    private long getIndex(BranchInstruction instruction, long selector) {
+        return (selector << PSPHT.getRowBits()) | PSBHR.readHistory(selector);
     }
 
-    private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
-        // Concatenate the branch address bits with the BHR bits
-        Bit[] cacheEntry = new Bit[branchAddress.length + BHRValue.length];
-        System.arraycopy(branchAddress, 0, cacheEntry, 0, KSize);
-        System.arraycopy(BHRValue, 0, cacheEntry, branchAddress.length, BHRValue.length);
-        return cacheEntry;
+    /**
+     * loads the counter of the index into the SC register
+     *
+     * @param index the PSPHT index
+     * @return the value of the counter
+     */
+    private long load(long index) {
+        long counter = PSPHT.setDefault(index, 0L);
+        SC.loadValue(counter);
+        return counter;
     }
 
     /**
-     * @return a zero series of bits as default value of cache block
+     * @param counter value of a saturating counter
+     * @return taken if the most significant bit of the counter is one
      */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    private BranchResult getPrediction(long counter) {
+        return BranchResult.of((counter >>> (SC.getLength() - 1)) != 0);
+    }
+
+    /**
+     * counts the counter of the index and shifts the result into the BHR of the selector
+     *
+     * @param index    the PSPHT index
+     * @param selector the PSBHR selector
+     * @param counter  the value of the counter before the update
+     * @param actual   the actual result of branch (taken or not)
+     */
+    private void store(long index, long selector, int counter, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        PSPHT.write(index, PackedLogic.count(counter, SC.getLength(), taken, CountMode.SATURATING));
+        PSBHR.shiftIn(selector, Bit.of(taken));
+    }
+
+    /**
+     * predicts and updates the branches in [from, to) in one loop, without building instructions
+     *
+     * @param pcs         the instruction address of each branch
+     * @param targets     not used
+     * @param outcomes    bit i is set if branch i is taken
+     * @param from        index of the first branch (inclusive)
+     * @param to          index of the last branch (exclusive)
+     * @param predictions bit i is set if branch i is predicted taken, or null if the predictions are not needed
+     * @return number of wrong predictions
+     */
+    @Override
+    public long simulate(long[] pcs, long[] targets, BitSet outcomes, int from, int to, BitSet predictions) {
+        if (from < 0 || from > to || to > pcs.length)
+            throw new IndexOutOfBoundsException("invalid block [" + from + ", " + to + ") of " + pcs.length + " branches");
+        lastInstruction = null;
+        int counterSize = SC.getLength();
+        long addressMask = BitVector.mask(branchInstructionSize);
+        int rowBits = PSPHT.getRowBits();
+        long counter = SC.readValue();
+        long mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes.get(i);
+            long selector = PackedLogic.hash(pcs[i] & addressMask, branchInstructionSize, KSize, hashMode);
+            long index = (selector << rowBits) | PSBHR.readHistory(selector);
+            counter = PSPHT.setDefault(index, 0L);
+            boolean prediction = (counter >>> (counterSize - 1)) != 0;
+            if (prediction != taken) mispredictions++;
+            if (predictions != null) predictions.set(i, prediction);
+            PSPHT.write(index, PackedLogic.count((int) counter, counterSize, taken, CountMode.SATURATING));
+            PSBHR.shiftIn(selector, Bit.of(taken));
+        }
+        SC.loadValue(counter);
+        return mispredictions;
     }
 
     @Override
     public String monitor() {
-        return null;
+        return "SAs predictor snapshot: \n" + PSBHR.monitor() + SC.monitor() + PSPHT.monitor();
+    }
+
+    @Override
+    public void snapshot(SnapshotVisitor visitor) throws IOException {
+        visitor.beginDevice(SnapshotVisitor.Kind.PREDICTOR, "SAs");
+        PSBHR.snapshot(visitor);
+        SC.snapshot(visitor);
+        PSPHT.snapshot(visitor);
+        visitor.endDevice();
+    }
+
+    @Override
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    @Override
+    public Map<String, Snapshottable> getDevices() {
+        Map<String, Snapshottable> devices = new LinkedHashMap<>();
+        devices.put("PSBHR", PSBHR);
+        devices.put("SC", SC);
+        devices.put("PSPHT", PSPHT);
+        return devices;
     }
 }
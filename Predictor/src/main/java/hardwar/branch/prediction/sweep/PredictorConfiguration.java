@@ -0,0 +1,149 @@
+package hardwar.branch.prediction.sweep;
+
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAg.SAg;
+import hardwar.branch.prediction.judged.SAp.SAp;
+import hardwar.branch.prediction.judged.SAs.SAs;
+
+/*
+ * the name and the parameters of a judged predictor
+ *
+ * a configuration only keeps the parameters which the predictor uses. the others are 0 (or null for the
+ * hash mode), so two configurations which build the same predictor are equal.
+ */
+public final class PredictorConfiguration {
+    public static final String[] PREDICTORS = {"GAg", "GAp", "GAs", "PAg", "PAp", "PAs", "SAg", "SAp", "SAs"};
+
+    private final String predictor;
+    private final int BHRSize;
+    private final int SCSize;
+    private final int KSize;
+    private final int addressSize;
+    private final HashFunction hashMode;
+
+    /**
+     * @param predictor   name of the predictor (GAg, GAp, ..., SAs)
+     * @param BHRSize     the size of the branch history registers
+     * @param SCSize      the size of the saturating counters
+     * @param KSize       number of bits of the hashed address
+     * @param addressSize the number of bits which is used for saving a branch instruction
+     * @param hashMode    the hash function of the branch address (GSHARE is not supported)
+     */
+    public PredictorConfiguration(String predictor, int BHRSize, int SCSize, int KSize, int addressSize,
+                                  HashFunction hashMode) {
+        if (indexOf(predictor) < 0) throw new IllegalArgumentException("unknown predictor: " + predictor);
+        if (usesHashMode(predictor) && hashMode == HashFunction.GSHARE)
+            throw new IllegalArgumentException("GSHARE is not an address hash");
+        this.predictor = predictor;
+        this.BHRSize = BHRSize;
+        this.SCSize = SCSize;
+        this.KSize = usesKSize(predictor) ? KSize : 0;
+        this.addressSize = addressSize;
+        this.hashMode = usesHashMode(predictor) ? hashMode : null;
+    }
+
+    private static int indexOf(String predictor) {
+        for (int i = 0; i < PREDICTORS.length; i++) {
+            if (PREDICTORS[i].equals(predictor)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param predictor name of the predictor
+     * @return true if the predictor hashes the branch address into KSize bits
+     */
+    public static boolean usesKSize(String predictor) {
+        return predictor.endsWith("s") || predictor.startsWith("S");
+    }
+
+    /**
+     * @param predictor name of the predictor
+     * @return true if the hash function of the predictor can be selected
+     */
+    public static boolean usesHashMode(String predictor) {
+        return predictor.endsWith("s");
+    }
+
+    /**
+     * @return a new predictor with this configuration
+     */
+    public Predictor create() {
+        switch (predictor) {
+            case "GAg":
+                return new GAg(BHRSize, SCSize);
+            case "GAp":
+                return new GAp(BHRSize, SCSize, addressSize);
+            case "GAs":
+                return new GAs(BHRSize, SCSize, addressSize, KSize, hashMode);
+            case "PAg":
+                return new PAg(BHRSize, SCSize, addressSize);
+            case "PAp":
+                return new PAp(BHRSize, SCSize, addressSize);
+            case "PAs":
+                return new PAs(BHRSize, SCSize, addressSize, KSize, hashMode);
+            case "SAg":
+                return new SAg(BHRSize, SCSize, addressSize, KSize);
+            case "SAp":
+                return new SAp(BHRSize, SCSize, addressSize, KSize);
+            default:
+                return new SAs(BHRSize, SCSize, addressSize, KSize, hashMode);
+        }
+    }
+
+    public String getPredictor() {
+        return predictor;
+    }
+
+    public int getBHRSize() {
+        return BHRSize;
+    }
+
+    public int getSCSize() {
+        return SCSize;
+    }
+
+    public int getKSize() {
+        return KSize;
+    }
+
+    public int getAddressSize() {
+        return addressSize;
+    }
+
+    public HashFunction getHashMode() {
+        return hashMode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PredictorConfiguration)) return false;
+        PredictorConfiguration other = (PredictorConfiguration) o;
+        return predictor.equals(other.predictor) && BHRSize == other.BHRSize && SCSize == other.SCSize
+                && KSize == other.KSize && addressSize == other.addressSize && hashMode == other.hashMode;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = predictor.hashCode();
+        result = 31 * result + BHRSize;
+        result = 31 * result + SCSize;
+        result = 31 * result + KSize;
+        result = 31 * result + addressSize;
+        return 31 * result + (hashMode == null ? 0 : hashMode.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return predictor + "(BHR=" + BHRSize + ", SC=" + SCSize + ", K=" + KSize + ", address=" + addressSize
+                + ", hash=" + (hashMode == null ? "-" : hashMode) + ")";
+    }
+}
@@ -0,0 +1,245 @@
+package hardwar.branch.prediction.sweep;
+
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.trace.DecodedTrace;
+import hardwar.branch.prediction.trace.TraceReader;
+import hardwar.branch.prediction.trace.TraceReplay;
+import hardwar.branch.prediction.trace.Traces;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * replays one trace on many predictor configurations in parallel
+ *
+ * the trace is decoded once and shared by all the tasks. every configuration builds its own predictor,
+ * so the tasks share nothing but the read-only trace. the configurations are split between the threads
+ * of a fork-join pool and the results are returned in the order of the configurations. a configuration which
+ * fails (including an OutOfMemoryError while it allocates its tables) keeps its error in its result and does not
+ * stop the other configurations. the other VirtualMachineErrors still stop the sweep.
+ */
+public class Sweep {
+    private final ForkJoinPool pool;
+
+    /**
+     * sweep on the common fork-join pool which uses all the cores
+     */
+    public Sweep() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool which runs the configurations
+     */
+    public Sweep(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * build every combination of the parameters. the parameters which a predictor does not use are not
+     * combined, i.e. GAg is only swept over BHRSize and SCSize.
+     *
+     * @param predictors  names of the predictors
+     * @param BHRSizes    sizes of the branch history registers
+     * @param SCSizes     sizes of the saturating counters
+     * @param KSizes      number of bits of the hashed address
+     * @param addressSize the number of bits which is used for saving a branch instruction
+     * @param hashModes   hash functions of the branch address
+     * @return the configurations without duplicates
+     */
+    public static List<PredictorConfiguration> grid(String[] predictors, int[] BHRSizes, int[] SCSizes, int[] KSizes,
+                                                    int addressSize, HashFunction[] hashModes) {
+        Set<PredictorConfiguration> configurations = new LinkedHashSet<>();
+        for (String predictor : predictors) {
+            for (int BHRSize : BHRSizes) {
+                for (int SCSize : SCSizes) {
+                    for (int KSize : KSizes) {
+                        for (HashFunction hashMode : hashModes) {
+                            configurations.add(new PredictorConfiguration(predictor, BHRSize, SCSize, KSize,
+                                    addressSize, hashMode));
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(configurations);
+    }
+
+    /**
+     * @param trace          the decoded trace
+     * @param configurations the configurations which are replayed
+     * @return the result of each configuration (or its error), in the same order as the configurations
+     */
+    public List<SweepResult> run(DecodedTrace trace, List<PredictorConfiguration> configurations) {
+        SweepResult[] results = new SweepResult[configurations.size()];
+        pool.invoke(new SweepTask(trace, configurations, results, 0, results.length));
+        return Arrays.asList(results);
+    }
+
+    /*
+     * replays the configurations in [from, to). the range is split in half until a single configuration
+     * is left, so idle threads can steal the other half.
+     */
+    private static final class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DecodedTrace trace;
+        private final List<PredictorConfiguration> configurations;
+        private final SweepResult[] results;
+        private final int from;
+        private final int to;
+
+        SweepTask(DecodedTrace trace, List<PredictorConfiguration> configurations, SweepResult[] results,
+                  int from, int to) {
+            this.trace = trace;
+            this.configurations = configurations;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SweepTask(trace, configurations, results, from, middle),
+                        new SweepTask(trace, configurations, results, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                PredictorConfiguration configuration = configurations.get(i);
+                try {
+                    results[i] = new SweepResult(configuration, TraceReplay.simulate(trace, configuration.create()));
+                } catch (OutOfMemoryError e) {
+                    // the tables of the configuration did not fit, they are garbage once the task gives them up
+                    results[i] = new SweepResult(configuration, e);
+                } catch (VirtualMachineError | ThreadDeath e) {
+                    throw e;
+                } catch (RuntimeException | Error e) {
+                    results[i] = new SweepResult(configuration, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param results results of a sweep
+     * @return a table of the results sorted by accuracy, the best configuration first and the failed ones last.
+     * the MPKI is "-" if the instruction count of the trace is unknown.
+     */
+    public static String table(List<SweepResult> results) {
+        List<SweepResult> sorted = new ArrayList<>(results);
+        Collections.sort(sorted, Comparator.comparingDouble(
+                (SweepResult r) -> r.isFailed() ? Double.NEGATIVE_INFINITY : r.getResult().getAccuracy()).reversed());
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("+---------------------------------------------------------------------------+\n");
+        sb.append(String.format("| %-9s | %-3s | %-3s | %-3s | %-14s | %-10s | %-12s |\n",
+                "Predictor", "BHR", "SC", "K", "Hash", "Accuracy", "MPKI"));
+        sb.append("|-----------|-----|-----|-----|----------------|------------|--------------|\n");
+        for (SweepResult result : sorted) {
+            PredictorConfiguration c = result.getConfiguration();
+            sb.append(String.format("| %-9s | %3d | %3d | %3s | %-14s | ",
+                    c.getPredictor(), c.getBHRSize(), c.getSCSize(), c.getKSize() == 0 ? "-" : c.getKSize(),
+                    c.getHashMode() == null ? "-" : c.getHashMode()));
+            if (result.isFailed()) sb.append(String.format("%-25s |\n", "failed"));
+            else if (result.getResult().getInstructions() > 0) sb.append(String.format("%10.6f | %12.4f |\n",
+                    result.getResult().getAccuracy(), result.getResult().getMPKI()));
+            else sb.append(String.format("%10.6f | %12s |\n", result.getResult().getAccuracy(), "-"));
+        }
+        sb.append("+---------------------------------------------------------------------------+\n");
+        return sb.toString();
+    }
+
+    /**
+     * sweep a raw or compact trace
+     * <p>
+     * usage: Sweep trace-file [predictors=GAg,PAs] [bhr=2,4,6,8,10] [sc=2,3] [k=2,4,6,8]
+     * [hash=XOR,SIMPLE_CUT,FOLDED_XOR,MULTIPLICATIVE] [address=8] [threads=all cores]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: Sweep trace-file [predictors=..] [bhr=..] [sc=..] [k=..] [hash=..] "
+                    + "[address=..] [threads=..]");
+            System.exit(1);
+        }
+        String[] predictors = PredictorConfiguration.PREDICTORS;
+        int[] BHRSizes = {2, 4, 6, 8, 10};
+        int[] SCSizes = {2, 3};
+        int[] KSizes = {2, 4, 6, 8};
+        HashFunction[] hashModes = {HashFunction.XOR, HashFunction.SIMPLE_CUT, HashFunction.FOLDED_XOR, HashFunction.MULTIPLICATIVE};
+        int addressSize = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            int split = args[i].indexOf('=');
+            if (split < 0) throw new IllegalArgumentException("invalid option: " + args[i]);
+            String key = args[i].substring(0, split);
+            String[] values = args[i].substring(split + 1).split(",");
+            switch (key) {
+                case "predictors":
+                    predictors = values;
+                    break;
+                case "bhr":
+                    BHRSizes = parseInts(values);
+                    break;
+                case "sc":
+                    SCSizes = parseInts(values);
+                    break;
+                case "k":
+                    KSizes = parseInts(values);
+                    break;
+                case "hash":
+                    hashModes = new HashFunction[values.length];
+                    for (int j = 0; j < values.length; j++) {
+                        hashModes[j] = HashFunction.valueOf(values[j]);
+                        if (hashModes[j] == HashFunction.GSHARE)
+                            throw new IllegalArgumentException("GSHARE is not an address hash");
+                    }
+                    break;
+                case "address":
+                    addressSize = Integer.parseInt(values[0]);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(values[0]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + key);
+            }
+        }
+
+        long start = System.nanoTime();
+        DecodedTrace trace;
+        try (TraceReader reader = Traces.open(Paths.get(args[0]))) {
+            trace = DecodedTrace.load(reader);
+        }
+        List<PredictorConfiguration> configurations = grid(predictors, BHRSizes, SCSizes, KSizes, addressSize, hashModes);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<SweepResult> results = new Sweep(pool).run(trace, configurations);
+            System.out.print(table(results));
+            for (SweepResult result : results) {
+                if (result.isFailed()) System.err.println(result);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.printf("%d configurations, %d branches, %d threads, %.1f s%n", configurations.size(),
+                trace.length(), threads, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static int[] parseInts(String[] values) {
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) result[i] = Integer.parseInt(values[i]);
+        return result;
+    }
+}
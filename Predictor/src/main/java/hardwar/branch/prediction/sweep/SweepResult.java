@@ -0,0 +1,58 @@
+package hardwar.branch.prediction.sweep;
+
+import hardwar.branch.prediction.trace.ReplayResult;
+
+/*
+ * the statistics of one configuration of a sweep
+ *
+ * a configuration which can not be built or replayed (e.g. a table which is too large, or does not fit in the
+ * heap) keeps its error instead of statistics, so the rest of the sweep is not lost.
+ */
+public class SweepResult {
+    private final PredictorConfiguration configuration;
+    private final ReplayResult result;
+    private final Throwable error;
+
+    public SweepResult(PredictorConfiguration configuration, ReplayResult result) {
+        this.configuration = configuration;
+        this.result = result;
+        this.error = null;
+    }
+
+    /**
+     * @param configuration the failed configuration
+     * @param error         the error which stopped the configuration
+     */
+    public SweepResult(PredictorConfiguration configuration, Throwable error) {
+        this.configuration = configuration;
+        this.result = null;
+        this.error = error;
+    }
+
+    public PredictorConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return statistics of the configuration, or null if it failed
+     */
+    public ReplayResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return the error of the configuration, or null if it did not fail
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    @Override
+    public String toString() {
+        return configuration + ": " + (error == null ? result : "failed: " + error);
+    }
+}
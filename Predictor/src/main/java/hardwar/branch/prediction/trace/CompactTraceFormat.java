@@ -0,0 +1,72 @@
+package hardwar.branch.prediction.trace;
+
+import java.nio.ByteBuffer;
+
+/*
+ * the compact (delta encoded) branch trace format
+ * ------------------------------------------------------
+ * header (48 bytes, big endian):
+ *   int  magic             "BRTC"
+ *   int  version           1
+ *   int  block size        number of records in a block (the last block may be shorter)
+ *   int  reserved
+ *   long branch count      number of records
+ *   long instruction count number of instructions the trace is recorded from (0 if unknown)
+ *   long block count
+ *   long index offset      file offset of the block index
+ *
+ * blocks: the records of a block are written one after another. the delta encoding starts over
+ * at the first record of each block, so a block can be decoded without the previous blocks.
+ *
+ * record:
+ *   byte   flags           bit 0 is the taken bit, bits 1-7 hold the opcode. if the opcode is
+ *                          bigger than 126 the bits hold 127 and the opcode follows as a varint
+ *   varint address delta   zigzag encoded (address - address of the previous record of the block)
+ *   varint jump delta      zigzag encoded (jump address - address of this record)
+ *
+ * index: one long for each block which is the file offset of the block
+ * ------------------------------------------------------
+ */
+public final class CompactTraceFormat {
+    public static final int MAGIC = 0x42525443; // "BRTC"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 48;
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    public static final int MAX_RECORD_SIZE = 1 + 5 + 10 + 10;
+    public static final int TAKEN_FLAG = 1;
+    public static final int OPCODE_ESCAPE = 127;
+
+    private CompactTraceFormat() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * @param value the signed value
+     * @return the value with the sign moved to the least significant bit
+     */
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @param value the zigzag encoded value
+     * @return the signed value
+     */
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * write an unsigned variable length integer, 7 bits per byte and the least significant group first
+     *
+     * @param buffer the output buffer
+     * @param value  the unsigned value
+     */
+    public static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,190 @@
+package hardwar.branch.prediction.trace;
+
+/*
+ * a memory mapped reader of the compact trace format (see CompactTraceFormat)
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the trace is mapped window by window. a window holds whole blocks (at least one), so a record
+ * never crosses two windows.
+ *
+ * 2) next() decodes the varints directly from the mapped buffer and does not create any object.
+ *
+ * 3) the block index is loaded when the reader is opened, so seek can jump to any branch by decoding
+ * at most one block.
+ * -------------------------------------------------------
+ */
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class CompactTraceReader implements TraceReader {
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20; // 64 MB
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private final long branchCount;
+    private final long instructionCount;
+    private final long indexOffset;
+    private final long[] blockOffsets;
+    private final long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart; // file offset of the first byte of the window
+    private int windowEndBlock; // index of the first block after the window
+    private int position; // offset of the next record in the window
+    private int block = -1; // index of the current block
+    private int leftInBlock; // number of records which are not decoded yet in the current block
+    private long cursor = -1; // index of the current record
+
+    private long instructionAddress;
+    private long jumpAddress;
+    private int opcode;
+    private boolean taken;
+
+    public CompactTraceReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param path       the trace file
+     * @param windowSize maximum number of bytes which is mapped at a time (a window holds at least one block)
+     * @throws IOException if the file can not be read or it is not a compact trace
+     */
+    public CompactTraceReader(Path path, int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, CompactTraceFormat.HEADER_SIZE);
+            if (header.getInt(0) != CompactTraceFormat.MAGIC)
+                throw new IOException(path + " is not a compact branch trace");
+            if (header.getInt(4) != CompactTraceFormat.VERSION)
+                throw new IOException("unsupported compact trace version " + header.getInt(4));
+            this.blockSize = header.getInt(8);
+            this.branchCount = header.getLong(16);
+            this.instructionCount = header.getLong(24);
+            long blockCount = header.getLong(32);
+            this.indexOffset = header.getLong(40);
+            if (blockCount > Integer.MAX_VALUE || indexOffset + blockCount * Long.BYTES > channel.size())
+                throw new IOException(path + " has an invalid block index");
+
+            this.blockOffsets = new long[(int) blockCount];
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, blockCount * Long.BYTES);
+            index.asLongBuffer().get(blockOffsets);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (cursor + 1 >= branchCount) return false;
+        if (leftInBlock == 0) startBlock(block + 1);
+        decode();
+        return true;
+    }
+
+    /**
+     * move the cursor so the next call of next() returns the branch with the given index
+     *
+     * @param branchIndex index of the branch (0 is the first branch of the trace)
+     * @throws IOException if the trace can not be read
+     */
+    public void seek(long branchIndex) throws IOException {
+        if (branchIndex < 0 || branchIndex > branchCount)
+            throw new IndexOutOfBoundsException("branch " + branchIndex + " is out of the trace");
+        if (branchIndex == branchCount) {
+            cursor = branchCount - 1;
+            return;
+        }
+
+        startBlock((int) (branchIndex / blockSize));
+        for (long skip = branchIndex % blockSize; skip > 0; skip--) decode();
+    }
+
+    private void startBlock(int newBlock) throws IOException {
+        if (newBlock >= windowEndBlock || window == null || blockOffsets[newBlock] < windowStart) {
+            mapWindow(newBlock);
+        }
+        block = newBlock;
+        position = (int) (blockOffsets[newBlock] - windowStart);
+        leftInBlock = (int) Math.min(blockSize, branchCount - (long) newBlock * blockSize);
+        cursor = (long) newBlock * blockSize - 1;
+        instructionAddress = 0;
+    }
+
+    private void mapWindow(int firstBlock) throws IOException {
+        long start = blockOffsets[firstBlock];
+        int end = firstBlock + 1;
+        while (end < blockOffsets.length && blockEnd(end) - start <= windowSize) end++;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, blockEnd(end - 1) - start);
+        windowStart = start;
+        windowEndBlock = end;
+    }
+
+    private long blockEnd(int block) {
+        return block + 1 < blockOffsets.length ? blockOffsets[block + 1] : indexOffset;
+    }
+
+    private void decode() {
+        int flags = window.get(position++) & 0xFF;
+        taken = (flags & CompactTraceFormat.TAKEN_FLAG) != 0;
+        opcode = flags >>> 1;
+        if (opcode == CompactTraceFormat.OPCODE_ESCAPE) opcode = (int) readVarint();
+        instructionAddress += CompactTraceFormat.unzigzag(readVarint());
+        jumpAddress = instructionAddress + CompactTraceFormat.unzigzag(readVarint());
+        leftInBlock--;
+        cursor++;
+    }
+
+    private long readVarint() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = window.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    @Override
+    public long getInstructionAddress() {
+        return instructionAddress;
+    }
+
+    @Override
+    public long getJumpAddress() {
+        return jumpAddress;
+    }
+
+    @Override
+    public int getOpcode() {
+        return opcode;
+    }
+
+    @Override
+    public boolean isTaken() {
+        return taken;
+    }
+
+    @Override
+    public long getBranchCount() {
+        return branchCount;
+    }
+
+    @Override
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,118 @@
+package hardwar.branch.prediction.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * writes branches in the compact trace format (see CompactTraceFormat)
+ *
+ * the block index and the header are written when the writer is closed.
+ */
+public class CompactTraceWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int blockSize;
+    private long[] blockOffsets = new long[64];
+    private long blockCount;
+    private long branchCount;
+    private long instructionCount;
+    private long position = CompactTraceFormat.HEADER_SIZE; // file offset of the next byte
+    private long previousAddress;
+
+    public CompactTraceWriter(Path path) throws IOException {
+        this(path, CompactTraceFormat.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param path      the trace file
+     * @param blockSize number of records in a block
+     * @throws IOException if the file can not be created
+     */
+    public CompactTraceWriter(Path path, int blockSize) throws IOException {
+        if (blockSize <= 0) throw new IllegalArgumentException("block size must be positive");
+        this.blockSize = blockSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        channel.position(CompactTraceFormat.HEADER_SIZE);
+    }
+
+    /**
+     * @param instructionAddress address of the branch instruction
+     * @param jumpAddress        jump address of the branch instruction
+     * @param opcode             opcode of the branch instruction (not negative)
+     * @param taken              the actual result of the branch
+     * @throws IOException if the trace can not be written
+     */
+    public void write(long instructionAddress, long jumpAddress, int opcode, boolean taken) throws IOException {
+        if (opcode < 0) throw new IllegalArgumentException("opcode can not be negative");
+        if (buffer.remaining() < CompactTraceFormat.MAX_RECORD_SIZE) flush();
+
+        if (branchCount % blockSize == 0) {
+            // start a new block
+            if (blockCount == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+            blockOffsets[(int) blockCount++] = position + buffer.position();
+            previousAddress = 0;
+        }
+
+        int flags = taken ? CompactTraceFormat.TAKEN_FLAG : 0;
+        if (opcode < CompactTraceFormat.OPCODE_ESCAPE) {
+            buffer.put((byte) (flags | (opcode << 1)));
+        } else {
+            buffer.put((byte) (flags | (CompactTraceFormat.OPCODE_ESCAPE << 1)));
+            CompactTraceFormat.putVarint(buffer, opcode);
+        }
+        CompactTraceFormat.putVarint(buffer, CompactTraceFormat.zigzag(instructionAddress - previousAddress));
+        CompactTraceFormat.putVarint(buffer, CompactTraceFormat.zigzag(jumpAddress - instructionAddress));
+        previousAddress = instructionAddress;
+        branchCount++;
+    }
+
+    /**
+     * @param instructionCount number of instructions which the trace is recorded from
+     */
+    public void setInstructionCount(long instructionCount) {
+        this.instructionCount = instructionCount;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        position += buffer.remaining();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // write the block index
+            for (int i = 0; i < blockCount; i++) {
+                if (buffer.remaining() < Long.BYTES) flush();
+                buffer.putLong(blockOffsets[i]);
+            }
+            long indexOffset = position + buffer.position() - blockCount * Long.BYTES;
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(CompactTraceFormat.HEADER_SIZE);
+            header.putInt(CompactTraceFormat.MAGIC);
+            header.putInt(CompactTraceFormat.VERSION);
+            header.putInt(blockSize);
+            header.putInt(0);
+            header.putLong(branchCount);
+            header.putLong(instructionCount);
+            header.putLong(blockCount);
+            header.putLong(indexOffset);
+            header.flip();
+            while (header.hasRemaining()) channel.write(header, header.position());
+        } finally {
+            channel.close();
+        }
+    }
+}
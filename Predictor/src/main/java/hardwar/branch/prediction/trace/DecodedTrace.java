@@ -0,0 +1,93 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.core.Predictor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * a trace which is decoded into memory once
+ *
+ * the branches are kept in primitive arrays and the trace never changes after it is loaded, so one
+ * decoded trace can be replayed by many threads at the same time without copying or locking.
+ */
+public final class DecodedTrace {
+    private final long[] addresses; // instruction address of each branch
+    private final BitSet taken; // one bit for each branch. set if the branch is taken
+    private final long instructionCount;
+
+    private DecodedTrace(long[] addresses, BitSet taken, long instructionCount) {
+        this.addresses = addresses;
+        this.taken = taken;
+        this.instructionCount = instructionCount;
+    }
+
+    /**
+     * decode all the remaining branches of a reader
+     *
+     * @param reader the trace
+     * @return the decoded trace
+     * @throws IOException if the trace can not be read
+     */
+    public static DecodedTrace load(TraceReader reader) throws IOException {
+        long count = reader.getBranchCount();
+        if (count > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("trace has too many branches to decode: " + count);
+
+        long[] addresses = new long[(int) count];
+        BitSet taken = new BitSet(addresses.length);
+        int length = 0;
+        while (reader.next()) {
+            if (length == addresses.length) addresses = Arrays.copyOf(addresses, Math.max(16, addresses.length * 2));
+            addresses[length] = reader.getInstructionAddress();
+            if (reader.isTaken()) taken.set(length);
+            length++;
+        }
+        return new DecodedTrace(Arrays.copyOf(addresses, length), taken, reader.getInstructionCount());
+    }
+
+    /**
+     * @return number of branches of the trace
+     */
+    public int length() {
+        return addresses.length;
+    }
+
+    /**
+     * @param index index of the branch
+     * @return the instruction address of the branch
+     */
+    public long getInstructionAddress(int index) {
+        return addresses[index];
+    }
+
+    /**
+     * @param index index of the branch
+     * @return true if the branch is taken
+     */
+    public boolean isTaken(int index) {
+        if (index < 0 || index >= addresses.length) throw new IndexOutOfBoundsException("branch index: " + index);
+        return taken.get(index);
+    }
+
+    /**
+     * simulate a block of the trace on the predictor. the predictor reads the arrays of the trace directly.
+     *
+     * @param predictor the predictor
+     * @param from      index of the first branch (inclusive)
+     * @param to        index of the last branch (exclusive)
+     * @return number of wrong predictions of the batch simulation of the branches
+     * @see Predictor#simulate(long[], long[], BitSet, int, int)
+     */
+    public long simulate(Predictor predictor, int from, int to) {
+        return predictor.simulate(addresses, null, taken, from, to);
+    }
+
+    /**
+     * @return number of instructions (branch and non-branch) which the trace is recorded from, or 0 if unknown
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+}
@@ -0,0 +1,95 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.core.Predictor;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * replays several traces on one shared predictor at the same time
+ *
+ * every trace is replayed by its own thread with its own TraceReplay (the interning tables are not shared),
+ * so the threads share nothing but the predictor. the predictor must be thread-safe, e.g. a predictor which is
+ * built on the concurrent devices (see ConcurrentPAs). the threads start together, so the traces interleave on
+ * the predictor like the threads of an SMT core.
+ */
+public class ParallelReplay {
+    private final int addressSize;
+    private final int hashSize;
+
+    /**
+     * @param addressSize number of bits of the instruction address which the predictor works with
+     * @param hashSize    number of bits of the address hash (KSize) of the predictor
+     */
+    public ParallelReplay(int addressSize, int hashSize) {
+        this.addressSize = addressSize;
+        this.hashSize = hashSize;
+    }
+
+    /**
+     * @param traces    the decoded traces, one thread for each trace
+     * @param predictor the thread-safe predictor which is shared by the threads
+     * @return statistics of the predictor on each trace, in the same order as the traces
+     * @throws InterruptedException if the thread is interrupted while it waits for the replays
+     */
+    public List<ReplayResult> replay(List<DecodedTrace> traces, Predictor predictor) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, traces.size()));
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<ReplayResult>> futures = new ArrayList<>();
+            for (DecodedTrace trace : traces) {
+                futures.add(pool.submit(() -> {
+                    TraceReplay replay = new TraceReplay(addressSize, hashSize);
+                    start.await();
+                    return replay.replay(trace, predictor);
+                }));
+            }
+            start.countDown();
+
+            List<ReplayResult> results = new ArrayList<>();
+            for (Future<ReplayResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("replay failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * replay raw or compact traces on one shared predictor which has a default constructor
+     * <p>
+     * usage: ParallelReplay predictor-class address-size hash-size trace-file [trace-file ...]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("usage: ParallelReplay predictor-class address-size hash-size trace-file [trace-file ...]");
+            System.exit(1);
+        }
+        Predictor predictor = (Predictor) Class.forName(args[0]).getConstructor().newInstance();
+        int addressSize = Integer.parseInt(args[1]);
+        int hashSize = Integer.parseInt(args[2]);
+
+        List<DecodedTrace> traces = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) traces.add(load(args[i]));
+        List<ReplayResult> results = new ParallelReplay(addressSize, hashSize).replay(traces, predictor);
+        for (int i = 0; i < results.size(); i++) System.out.println(args[i + 3] + ": " + results.get(i));
+    }
+
+    private static DecodedTrace load(String path) throws IOException {
+        try (TraceReader reader = Traces.open(Paths.get(path))) {
+            return DecodedTrace.load(reader);
+        }
+    }
+}
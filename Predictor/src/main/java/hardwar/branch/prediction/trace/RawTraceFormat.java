@@ -0,0 +1,30 @@
+package hardwar.branch.prediction.trace;
+
+/*
+ * the raw (fixed size record) branch trace format
+ * ------------------------------------------------------
+ * header (32 bytes, big endian):
+ *   int  magic             "BRAW"
+ *   int  version           1
+ *   long branch count      number of records
+ *   long instruction count number of instructions the trace is recorded from (0 if unknown)
+ *   long reserved
+ *
+ * record (24 bytes, big endian):
+ *   long instruction address
+ *   long jump address
+ *   int  opcode
+ *   int  flags             bit 0 is set if the branch is taken
+ * ------------------------------------------------------
+ */
+public final class RawTraceFormat {
+    public static final int MAGIC = 0x42524157; // "BRAW"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 24;
+    public static final int TAKEN_FLAG = 1;
+
+    private RawTraceFormat() {
+        // make the constructor private to avoid instantiating.
+    }
+}
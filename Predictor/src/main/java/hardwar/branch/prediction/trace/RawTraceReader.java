@@ -0,0 +1,128 @@
+package hardwar.branch.prediction.trace;
+
+/*
+ * a memory mapped reader of the raw trace format (see RawTraceFormat)
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the trace is mapped window by window. a window holds a whole number of records, so a record
+ * never crosses two windows.
+ *
+ * 2) only one window is mapped at a time, therefore traces bigger than the memory can be replayed.
+ *
+ * 3) next() only reads primitive values from the mapped buffer and does not create any object.
+ * -------------------------------------------------------
+ */
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class RawTraceReader implements TraceReader {
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20; // 64 MB
+
+    private final FileChannel channel;
+    private final long branchCount;
+    private final long instructionCount;
+    private final long windowRecords; // number of records in a full window
+
+    private MappedByteBuffer window;
+    private long windowFirst; // index of the first record in the current window
+    private long windowEnd; // index of the record after the last record of the current window
+    private long cursor = -1; // index of the current record
+
+    private long instructionAddress;
+    private long jumpAddress;
+    private int opcode;
+    private boolean taken;
+
+    public RawTraceReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param path       the trace file
+     * @param windowSize maximum number of bytes which is mapped at a time
+     * @throws IOException if the file can not be read or it is not a raw trace
+     */
+    public RawTraceReader(Path path, int windowSize) throws IOException {
+        if (windowSize < RawTraceFormat.RECORD_SIZE)
+            throw new IllegalArgumentException("window must hold at least one record");
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, RawTraceFormat.HEADER_SIZE);
+            if (header.getInt(0) != RawTraceFormat.MAGIC)
+                throw new IOException(path + " is not a raw branch trace");
+            if (header.getInt(4) != RawTraceFormat.VERSION)
+                throw new IOException("unsupported raw trace version " + header.getInt(4));
+            this.branchCount = header.getLong(8);
+            this.instructionCount = header.getLong(16);
+            if (RawTraceFormat.HEADER_SIZE + branchCount * RawTraceFormat.RECORD_SIZE > channel.size())
+                throw new IOException(path + " is truncated");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.windowRecords = windowSize / RawTraceFormat.RECORD_SIZE;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (cursor + 1 >= branchCount) return false;
+        cursor++;
+        if (cursor >= windowEnd) mapWindow(cursor);
+
+        int offset = (int) (cursor - windowFirst) * RawTraceFormat.RECORD_SIZE;
+        instructionAddress = window.getLong(offset);
+        jumpAddress = window.getLong(offset + 8);
+        opcode = window.getInt(offset + 16);
+        taken = (window.getInt(offset + 20) & RawTraceFormat.TAKEN_FLAG) != 0;
+        return true;
+    }
+
+    private void mapWindow(long first) throws IOException {
+        long records = Math.min(windowRecords, branchCount - first);
+        long position = RawTraceFormat.HEADER_SIZE + first * RawTraceFormat.RECORD_SIZE;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, records * RawTraceFormat.RECORD_SIZE);
+        windowFirst = first;
+        windowEnd = first + records;
+    }
+
+    @Override
+    public long getInstructionAddress() {
+        return instructionAddress;
+    }
+
+    @Override
+    public long getJumpAddress() {
+        return jumpAddress;
+    }
+
+    @Override
+    public int getOpcode() {
+        return opcode;
+    }
+
+    @Override
+    public boolean isTaken() {
+        return taken;
+    }
+
+    @Override
+    public long getBranchCount() {
+        return branchCount;
+    }
+
+    @Override
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
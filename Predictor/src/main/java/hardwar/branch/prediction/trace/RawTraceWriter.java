@@ -0,0 +1,75 @@
+package hardwar.branch.prediction.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * writes branches in the raw trace format (see RawTraceFormat)
+ *
+ * the header is written when the writer is closed, so the branch count is always right.
+ */
+public class RawTraceWriter implements Closeable {
+    private static final int BUFFER_SIZE = RawTraceFormat.RECORD_SIZE * 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long branchCount;
+    private long instructionCount;
+
+    public RawTraceWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        channel.position(RawTraceFormat.HEADER_SIZE);
+    }
+
+    /**
+     * @param instructionAddress address of the branch instruction
+     * @param jumpAddress        jump address of the branch instruction
+     * @param opcode             opcode of the branch instruction
+     * @param taken              the actual result of the branch
+     * @throws IOException if the trace can not be written
+     */
+    public void write(long instructionAddress, long jumpAddress, int opcode, boolean taken) throws IOException {
+        if (buffer.remaining() < RawTraceFormat.RECORD_SIZE) flush();
+        buffer.putLong(instructionAddress);
+        buffer.putLong(jumpAddress);
+        buffer.putInt(opcode);
+        buffer.putInt(taken ? RawTraceFormat.TAKEN_FLAG : 0);
+        branchCount++;
+    }
+
+    /**
+     * @param instructionCount number of instructions which the trace is recorded from
+     */
+    public void setInstructionCount(long instructionCount) {
+        this.instructionCount = instructionCount;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(RawTraceFormat.HEADER_SIZE);
+            header.putInt(RawTraceFormat.MAGIC);
+            header.putInt(RawTraceFormat.VERSION);
+            header.putLong(branchCount);
+            header.putLong(instructionCount);
+            header.putLong(0L);
+            header.flip();
+            while (header.hasRemaining()) channel.write(header, header.position());
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package hardwar.branch.prediction.trace;
+
+/*
+ * the statistics of replaying a trace on a predictor
+ */
+public class ReplayResult {
+    private final long branches;
+    private final long mispredictions;
+    private final long instructions;
+
+    /**
+     * @param branches       number of replayed branches
+     * @param mispredictions number of wrong predictions
+     * @param instructions   number of instructions which the trace is recorded from, or 0 if unknown
+     */
+    public ReplayResult(long branches, long mispredictions, long instructions) {
+        this.branches = branches;
+        this.mispredictions = mispredictions;
+        this.instructions = instructions;
+    }
+
+    public long getBranches() {
+        return branches;
+    }
+
+    public long getMispredictions() {
+        return mispredictions;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return ratio of the right predictions to all the branches
+     */
+    public double getAccuracy() {
+        return branches == 0 ? 0 : (double) (branches - mispredictions) / branches;
+    }
+
+    /**
+     * @return mispredictions per kilo instructions, or NaN if the instruction count of the trace is unknown
+     */
+    public double getMPKI() {
+        return instructions > 0 ? mispredictions * 1000.0 / instructions : Double.NaN;
+    }
+
+    /**
+     * @return mispredictions per kilo branches, which is known for every trace but can not be compared with
+     * the MPKI of another trace
+     */
+    public double getMispredictionsPerKiloBranch() {
+        return branches == 0 ? 0 : mispredictions * 1000.0 / branches;
+    }
+
+    /**
+     * prints the MPKI if the instruction count of the trace is known, otherwise the mispredictions per kilo
+     * branches as MPKB
+     */
+    @Override
+    public String toString() {
+        return String.format("branches=%d, mispredictions=%d, accuracy=%.4f, ", branches, mispredictions, getAccuracy())
+                + (instructions > 0 ? String.format("MPKI=%.3f", getMPKI())
+                : String.format("MPKB=%.3f", getMispredictionsPerKiloBranch()));
+    }
+}
@@ -0,0 +1,62 @@
+package hardwar.branch.prediction.trace;
+
+/*
+ * the statistics of replaying a trace on a direction predictor and a target predictor
+ *
+ * a target hit is a branch for which the target predictor has a target (a BTB hit, or a return address). a target
+ * misprediction is a taken branch whose predicted target is missing or is not its jump address, whether its
+ * direction is predicted right or not.
+ */
+public class TargetReplayResult extends ReplayResult {
+    private final long takenBranches;
+    private final long targetHits;
+    private final long targetMispredictions;
+
+    /**
+     * @param branches             number of replayed branches
+     * @param mispredictions       number of wrong direction predictions
+     * @param instructions         number of instructions which the trace is recorded from, or 0 if unknown
+     * @param takenBranches        number of taken branches
+     * @param targetHits           number of branches which have a predicted target
+     * @param targetMispredictions number of taken branches whose target is not predicted right
+     */
+    public TargetReplayResult(long branches, long mispredictions, long instructions, long takenBranches,
+                              long targetHits, long targetMispredictions) {
+        super(branches, mispredictions, instructions);
+        this.takenBranches = takenBranches;
+        this.targetHits = targetHits;
+        this.targetMispredictions = targetMispredictions;
+    }
+
+    public long getTakenBranches() {
+        return takenBranches;
+    }
+
+    public long getTargetHits() {
+        return targetHits;
+    }
+
+    public long getTargetMispredictions() {
+        return targetMispredictions;
+    }
+
+    /**
+     * @return ratio of the branches which have a predicted target to all the branches
+     */
+    public double getTargetHitRate() {
+        return getBranches() == 0 ? 0 : (double) targetHits / getBranches();
+    }
+
+    /**
+     * @return ratio of the right targets to the taken branches
+     */
+    public double getTargetAccuracy() {
+        return takenBranches == 0 ? 0 : (double) (takenBranches - targetMispredictions) / takenBranches;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + String.format(", target hit rate=%.4f, target mispredictions=%d, target accuracy=%.4f",
+                getTargetHitRate(), targetMispredictions, getTargetAccuracy());
+    }
+}
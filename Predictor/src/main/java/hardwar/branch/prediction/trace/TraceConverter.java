@@ -0,0 +1,96 @@
+package hardwar.branch.prediction.trace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+ * converts a plain text trace into the compact trace format
+ *
+ * each line of the text trace is "pc target opcode taken". pc and target are unsigned decimal or 0x prefixed
+ * hexadecimal numbers (or bare hexadecimal numbers with --hex), taken is 1/0, T/N or TAKEN/NOT_TAKEN.
+ * empty lines and lines starting with # are skipped.
+ */
+public final class TraceConverter {
+    private TraceConverter() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * @param in  the text trace
+     * @param out the compact trace
+     * @param hex true if the addresses are bare hexadecimal numbers
+     * @return number of converted branches
+     * @throws IOException if a trace can not be read or written or a line is not valid
+     */
+    public static long convert(BufferedReader in, CompactTraceWriter out, boolean hex) throws IOException {
+        long branches = 0;
+        long lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] fields = line.split("\\s+");
+            if (fields.length != 4) throw new IOException("line " + lineNumber + " must be \"pc target opcode taken\"");
+            try {
+                out.write(parseAddress(fields[0], hex), parseAddress(fields[1], hex), Integer.decode(fields[2]),
+                        parseTaken(fields[3]));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("invalid branch at line " + lineNumber + ": " + e.getMessage(), e);
+            }
+            branches++;
+        }
+        return branches;
+    }
+
+    private static long parseAddress(String field, boolean hex) {
+        if (field.startsWith("0x") || field.startsWith("0X")) return Long.parseUnsignedLong(field.substring(2), 16);
+        return Long.parseUnsignedLong(field, hex ? 16 : 10);
+    }
+
+    private static boolean parseTaken(String field) {
+        switch (field.toUpperCase()) {
+            case "1":
+            case "T":
+            case "TAKEN":
+                return true;
+            case "0":
+            case "N":
+            case "NOT_TAKEN":
+                return false;
+            default:
+                throw new IllegalArgumentException("unknown branch result " + field);
+        }
+    }
+
+    /**
+     * usage: TraceConverter text-trace compact-trace [--hex] [instruction-count]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: TraceConverter text-trace compact-trace [--hex] [instruction-count]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        boolean hex = false;
+        long instructionCount = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--hex")) hex = true;
+            else instructionCount = Long.parseLong(args[i]);
+        }
+
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             CompactTraceWriter out = new CompactTraceWriter(output)) {
+            out.setInstructionCount(instructionCount);
+            long branches = convert(in, out, hex);
+            System.out.println(branches + " branches converted");
+        }
+        System.out.println(Files.size(input) + " bytes -> " + Files.size(output) + " bytes");
+    }
+}
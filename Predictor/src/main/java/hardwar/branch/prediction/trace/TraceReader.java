@@ -0,0 +1,59 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * a cursor over the branches of a trace
+ *
+ * the reader does not create an object for each branch. next() decodes the next branch into the
+ * reader and the getters return the fields of the current branch until next() is called again.
+ */
+public interface TraceReader extends Closeable {
+    /**
+     * move the cursor to the next branch of the trace
+     *
+     * @return false if there is no more branch in the trace
+     * @throws IOException if the trace can not be read
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return the address of the current branch instruction
+     */
+    long getInstructionAddress();
+
+    /**
+     * @return the jump address of the current branch instruction
+     */
+    long getJumpAddress();
+
+    /**
+     * @return the opcode of the current branch instruction
+     */
+    int getOpcode();
+
+    /**
+     * @return true if the current branch is taken
+     */
+    boolean isTaken();
+
+    /**
+     * @return the actual result of the current branch
+     */
+    default BranchResult getResult() {
+        return BranchResult.of(isTaken());
+    }
+
+    /**
+     * @return number of branches in the trace
+     */
+    long getBranchCount();
+
+    /**
+     * @return number of instructions (branch and non-branch) which the trace is recorded from, or 0 if unknown
+     */
+    long getInstructionCount();
+}
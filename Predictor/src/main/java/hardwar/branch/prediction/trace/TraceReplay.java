@@ -0,0 +1,154 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.core.BranchInstructionTable;
+import hardwar.branch.prediction.core.PackedBranchInstruction;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.core.TargetPredictor;
+import hardwar.branch.prediction.core.stats.DeviceCounters;
+import hardwar.branch.prediction.core.stats.PredictorStats;
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+ * replays a branch trace on a branch predictor
+ *
+ * for each branch of the trace the predictor predicts the branch and then it is updated with the actual result.
+ * the addresses of the trace are cut to the `addressSize` least significant bits, which must be the
+ * branch instruction size of the predictor.
+ *
+ * the branches are interned into one shared PackedBranchInstruction per static branch, so a replay
+ * does not allocate for each dynamic branch. the interning table is kept between the replays, therefore
+ * a TraceReplay must not be shared between threads.
+ */
+public class TraceReplay {
+    public static final int DEFAULT_HASH_SIZE = 4; // KSize of the default predictors
+
+    private final BranchInstructionTable instructions;
+
+    /**
+     * @param addressSize number of bits of the instruction address which the predictor works with
+     */
+    public TraceReplay(int addressSize) {
+        this(addressSize, DEFAULT_HASH_SIZE);
+    }
+
+    /**
+     * @param addressSize number of bits of the instruction address which the predictor works with
+     * @param hashSize    number of bits of the address hash (KSize) of the predictor
+     */
+    public TraceReplay(int addressSize, int hashSize) {
+        this.instructions = new BranchInstructionTable(addressSize, hashSize);
+    }
+
+    /**
+     * @param reader    the trace
+     * @param predictor the predictor
+     * @return statistics of the predictor on the trace
+     * @throws IOException if the trace can not be read
+     */
+    public ReplayResult replay(TraceReader reader, Predictor predictor) throws IOException {
+        long branches = 0;
+        long mispredictions = 0;
+        while (reader.next()) {
+            PackedBranchInstruction instruction = instructions.intern(reader.getInstructionAddress(),
+                    reader.getJumpAddress(), reader.getOpcode());
+            BranchResult actual = reader.getResult();
+            if (predictor.predictAndUpdate(instruction, actual) != actual) mispredictions++;
+            branches++;
+        }
+        return new ReplayResult(branches, mispredictions, reader.getInstructionCount());
+    }
+
+    /**
+     * replay a trace on a direction predictor and a target predictor together. the address size of the target
+     * predictor must be the `addressSize` of the replay, since the jump addresses are cut to it.
+     *
+     * @param reader          the trace
+     * @param predictor       the direction predictor
+     * @param targetPredictor the target predictor
+     * @return statistics of both predictors on the trace
+     * @throws IOException if the trace can not be read
+     */
+    public TargetReplayResult replay(TraceReader reader, Predictor predictor, TargetPredictor targetPredictor)
+            throws IOException {
+        long branches = 0;
+        long mispredictions = 0;
+        long takenBranches = 0;
+        long targetHits = 0;
+        long targetMispredictions = 0;
+        while (reader.next()) {
+            PackedBranchInstruction instruction = instructions.intern(reader.getInstructionAddress(),
+                    reader.getJumpAddress(), reader.getOpcode());
+            BranchResult actual = reader.getResult();
+            if (predictor.predictAndUpdate(instruction, actual) != actual) mispredictions++;
+            long target = targetPredictor.predictAndUpdateTarget(instruction, actual);
+            if (target != TargetPredictor.NO_TARGET) targetHits++;
+            if (BranchResult.isTaken(actual)) {
+                takenBranches++;
+                if (target != instruction.getJumpAddressValue()) targetMispredictions++;
+            }
+            branches++;
+        }
+        return new TargetReplayResult(branches, mispredictions, reader.getInstructionCount(), takenBranches,
+                targetHits, targetMispredictions);
+    }
+
+    /**
+     * @param trace     the decoded trace
+     * @param predictor the predictor
+     * @return statistics of the predictor on the trace
+     */
+    public ReplayResult replay(DecodedTrace trace, Predictor predictor) {
+        long mispredictions = 0;
+        int length = trace.length();
+        for (int i = 0; i < length; i++) {
+            PackedBranchInstruction instruction = instructions.intern(trace.getInstructionAddress(i), 0L, 0);
+            BranchResult actual = BranchResult.of(trace.isTaken(i));
+            if (predictor.predictAndUpdate(instruction, actual) != actual) mispredictions++;
+        }
+        return new ReplayResult(length, mispredictions, trace.getInstructionCount());
+    }
+
+    /**
+     * replay a decoded trace with the batch simulation of the predictor. the addresses are cut to the branch
+     * instruction size of the predictor instead of the `addressSize` of the replay.
+     *
+     * @param trace     the decoded trace
+     * @param predictor the predictor which supports batch simulation
+     * @return statistics of the predictor on the trace
+     */
+    public static ReplayResult simulate(DecodedTrace trace, Predictor predictor) {
+        long mispredictions = trace.simulate(predictor, 0, trace.length());
+        return new ReplayResult(trace.length(), mispredictions, trace.getInstructionCount());
+    }
+
+    /**
+     * replay a raw or compact trace on a predictor which has a default constructor
+     * <p>
+     * usage: TraceReplay trace-file predictor-class [address-size] [hash-size]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: TraceReplay trace-file predictor-class [address-size] [hash-size]");
+            System.exit(1);
+        }
+        Path trace = Paths.get(args[0]);
+        Predictor predictor = (Predictor) Class.forName(args[1]).getConstructor().newInstance();
+        int addressSize = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int hashSize = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_HASH_SIZE;
+
+        // the device counters are exposed over JMX while the trace is replayed (-Dhardwar.stats=true)
+        PredictorStats stats = DeviceCounters.ENABLED ? PredictorStats.register(predictor) : null;
+        try (TraceReader reader = Traces.open(trace)) {
+            System.out.println(new TraceReplay(addressSize, hashSize).replay(reader, predictor));
+        } finally {
+            if (stats != null) {
+                System.out.print(stats);
+                stats.close();
+            }
+        }
+    }
+}
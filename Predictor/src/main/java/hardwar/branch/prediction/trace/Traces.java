@@ -0,0 +1,42 @@
+package hardwar.branch.prediction.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * helper functions for opening trace files
+ */
+public final class Traces {
+    private Traces() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * open a raw or a compact trace based on the magic number of the file
+     *
+     * @param path the trace file
+     * @return a reader of the trace
+     * @throws IOException if the file can not be read or it is not a trace
+     */
+    public static TraceReader open(Path path) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // read the whole magic number
+            }
+        }
+        if (magic.hasRemaining()) throw new IOException(path + " is not a branch trace");
+
+        switch (magic.getInt(0)) {
+            case RawTraceFormat.MAGIC:
+                return new RawTraceReader(path);
+            case CompactTraceFormat.MAGIC:
+                return new CompactTraceReader(path);
+            default:
+                throw new IOException(path + " is not a branch trace");
+        }
+    }
+}
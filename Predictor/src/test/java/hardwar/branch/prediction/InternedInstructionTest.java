@@ -0,0 +1,81 @@
+package hardwar.branch.prediction;
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.BranchInstructionTable;
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.core.InstructionAddress;
+import hardwar.branch.prediction.core.PackedBranchInstruction;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * the interned packed instructions must predict the same as the plain instructions which keep their addresses
+ * in Bit arrays
+ */
+public class InternedInstructionTest {
+
+    @Test
+    public void internedInstructionsPredictTheSameAsPlainInstructions() {
+        TestPredictors.Trace trace = new TestPredictors.Trace(31, 10000);
+        for (Map.Entry<String, Supplier<Predictor>> entry : TestPredictors.all().entrySet()) {
+            BranchInstructionTable table = new BranchInstructionTable(TestPredictors.ADDRESS_SIZE, TestPredictors.ADDRESS_SIZE);
+            Predictor interned = entry.getValue().get();
+            Predictor plain = entry.getValue().get();
+            for (int i = 0; i < trace.length(); i++) {
+                BranchResult actual = BranchResult.of(trace.outcomes.get(i));
+                BranchInstruction packed = table.intern(trace.pcs[i], trace.targets[i], 0);
+                BranchInstruction bits = plain(trace.pcs[i], trace.targets[i]);
+                assertEquals(plain.predict(bits), interned.predict(packed), entry.getKey() + " branch " + i);
+                interned.update(packed, actual);
+                plain.update(bits, actual);
+            }
+            assertEquals(plain.monitor(), interned.monitor(), entry.getKey());
+        }
+    }
+
+    @Test
+    public void internedInstructionsAreShared() {
+        BranchInstructionTable table = new BranchInstructionTable(TestPredictors.ADDRESS_SIZE, 4);
+        TestPredictors.Trace trace = new TestPredictors.Trace(32, 5000);
+        for (int i = 0; i < trace.length(); i++) {
+            PackedBranchInstruction instruction = table.intern(trace.pcs[i], trace.targets[i], 0);
+            assertSame(instruction, table.intern(trace.pcs[i], trace.targets[i], 0));
+            assertEquals(trace.pcs[i], instruction.getInstructionAddressValue());
+        }
+        assertTrue(table.size() <= 48, "one instruction for each static branch: " + table.size());
+        // the addresses are cut to the address size before they are interned
+        assertSame(table.intern(5, 9, 0), table.intern(5 | (1L << TestPredictors.ADDRESS_SIZE), 9, 0));
+        assertNotSame(table.intern(5, 9, 0), table.intern(5, 9, 1));
+    }
+
+    @Test
+    public void packedAddressesAndHashesAreTheSameAsTheBits() {
+        BranchInstructionTable table = new BranchInstructionTable(TestPredictors.ADDRESS_SIZE, 4);
+        for (long pc = 0; pc < 1 << TestPredictors.ADDRESS_SIZE; pc += 7) {
+            PackedBranchInstruction packed = table.intern(pc, pc ^ 0x155, 0);
+            BranchInstruction bits = plain(pc, pc ^ 0x155);
+            assertArrayEquals(bits.getInstructionAddress(), packed.getInstructionAddress());
+            assertArrayEquals(bits.getJumpAddress(), packed.getJumpAddress());
+            for (HashFunction mode : HashFunction.values()) {
+                if (mode == HashFunction.GSHARE) continue;
+                for (int outBits : new int[]{3, 4, 6}) {
+                    assertEquals(InstructionAddress.hashOf(bits, outBits, mode), InstructionAddress.hashOf(packed, outBits, mode),
+                            mode + " " + outBits + " bits of " + pc);
+                }
+            }
+        }
+    }
+
+    private static BranchInstruction plain(long pc, long target) {
+        return new BranchInstruction(new Bit[0], BitVector.of(pc, TestPredictors.ADDRESS_SIZE).toBits(),
+                BitVector.of(target, TestPredictors.ADDRESS_SIZE).toBits());
+    }
+}
@@ -0,0 +1,54 @@
+package hardwar.branch.prediction;
+
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * predictAndUpdate must give the same predictions and leave the same state as predict and then update
+ */
+public class PredictAndUpdateTest {
+
+    @Test
+    public void predictAndUpdateIsTheSameAsPredictThenUpdate() {
+        TestPredictors.Trace trace = new TestPredictors.Trace(11, 20000);
+        for (Map.Entry<String, Supplier<Predictor>> entry : TestPredictors.all().entrySet()) {
+            Predictor separate = entry.getValue().get();
+            Predictor combined = entry.getValue().get();
+            for (int i = 0; i < trace.length(); i++) {
+                BranchInstruction instruction = TestPredictors.instruction(trace.pcs[i], trace.targets[i]);
+                BranchResult actual = BranchResult.of(trace.outcomes.get(i));
+                BranchResult expected = separate.predict(instruction);
+                separate.update(instruction, actual);
+                assertEquals(expected, combined.predictAndUpdate(instruction, actual), entry.getKey() + " branch " + i);
+            }
+            assertEquals(separate.monitor(), combined.monitor(), entry.getKey());
+        }
+    }
+
+    @Test
+    public void updateOfAnotherInstructionObjectIsTheSame() {
+        // predict caches the lookup of its instruction; an update with an equal instruction must not depend on it
+        TestPredictors.Trace trace = new TestPredictors.Trace(12, 5000);
+        for (Map.Entry<String, Supplier<Predictor>> entry : TestPredictors.all().entrySet()) {
+            Predictor same = entry.getValue().get();
+            Predictor copies = entry.getValue().get();
+            for (int i = 0; i < trace.length(); i++) {
+                BranchInstruction instruction = TestPredictors.instruction(trace.pcs[i], trace.targets[i]);
+                BranchResult actual = BranchResult.of(trace.outcomes.get(i));
+                BranchResult expected = same.predict(instruction);
+                same.update(instruction, actual);
+                assertEquals(expected, copies.predict(TestPredictors.instruction(trace.pcs[i], trace.targets[i])),
+                        entry.getKey() + " branch " + i);
+                copies.update(TestPredictors.instruction(trace.pcs[i], trace.targets[i]), actual);
+            }
+            assertEquals(same.monitor(), copies.monitor(), entry.getKey());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package hardwar.branch.prediction;
+
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * simulate must give the same predictions and leave the same state as predict and update of every branch
+ */
+public class SimulateTest {
+    private static final int[] BLOCKS = {1, 7, 100, 1000, 3892}; // sizes of the blocks which add up to the trace
+
+    @Test
+    public void simulateIsTheSameAsPredictThenUpdate() {
+        TestPredictors.Trace trace = new TestPredictors.Trace(21, 5000);
+        for (Map.Entry<String, Supplier<Predictor>> entry : TestPredictors.all().entrySet()) {
+            Predictor expected = entry.getValue().get();
+            long expectedMispredictions = 0;
+            BitSet expectedPredictions = new BitSet();
+            for (int i = 0; i < trace.length(); i++) {
+                BranchInstruction instruction = TestPredictors.instruction(trace.pcs[i], trace.targets[i]);
+                boolean taken = trace.outcomes.get(i);
+                boolean predicted = BranchResult.isTaken(expected.predict(instruction));
+                expected.update(instruction, BranchResult.of(taken));
+                expectedPredictions.set(i, predicted);
+                if (predicted != taken) expectedMispredictions++;
+            }
+
+            Predictor simulated = entry.getValue().get();
+            BitSet predictions = new BitSet();
+            long mispredictions = 0;
+            int from = 0;
+            for (int block : BLOCKS) {
+                mispredictions += simulated.simulate(trace.pcs, trace.targets, trace.outcomes, from, from + block, predictions);
+                from += block;
+            }
+            assertEquals(trace.length(), from);
+            assertEquals(expectedMispredictions, mispredictions, entry.getKey());
+            assertEquals(expectedPredictions, predictions, entry.getKey());
+            assertEquals(expected.monitor(), simulated.monitor(), entry.getKey());
+        }
+    }
+
+    @Test
+    public void simulateWithoutPredictionsCountsTheSameMispredictions() {
+        TestPredictors.Trace trace = new TestPredictors.Trace(22, 3000);
+        for (Map.Entry<String, Supplier<Predictor>> entry : TestPredictors.all().entrySet()) {
+            Predictor saved = entry.getValue().get();
+            Predictor counted = entry.getValue().get();
+            long expected = saved.simulate(trace.pcs, trace.targets, trace.outcomes, 0, trace.length(), new BitSet());
+            assertEquals(expected, counted.simulate(trace.pcs, trace.targets, trace.outcomes, 0, trace.length()),
+                    entry.getKey());
+        }
+    }
+
+    @Test
+    public void simulateAndPredictCanBeMixed() {
+        // a block which is simulated after single predictions must continue from their state
+        TestPredictors.Trace trace = new TestPredictors.Trace(23, 3000);
+        for (Map.Entry<String, Supplier<Predictor>> entry : TestPredictors.all().entrySet()) {
+            Predictor expected = entry.getValue().get();
+            Predictor mixed = entry.getValue().get();
+            for (int i = 0; i < trace.length(); i++) {
+                BranchInstruction instruction = TestPredictors.instruction(trace.pcs[i], trace.targets[i]);
+                BranchResult actual = BranchResult.of(trace.outcomes.get(i));
+                expected.predictAndUpdate(instruction, actual);
+                if (i % 500 < 250) mixed.predictAndUpdate(instruction, actual);
+                else if (i % 500 == 250) mixed.simulate(trace.pcs, trace.targets, trace.outcomes, i, i + 250);
+            }
+            assertEquals(expected.monitor(), mixed.monitor(), entry.getKey());
+        }
+    }
+
+    @Test
+    public void invalidBlocksAreRejected() {
+        TestPredictors.Trace trace = new TestPredictors.Trace(24, 10);
+        for (Map.Entry<String, Supplier<Predictor>> entry : TestPredictors.all().entrySet()) {
+            Predictor predictor = entry.getValue().get();
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> predictor.simulate(trace.pcs, trace.targets, trace.outcomes, 5, 11), entry.getKey());
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> predictor.simulate(trace.pcs, trace.targets, trace.outcomes, 6, 5), entry.getKey());
+        }
+    }
+}
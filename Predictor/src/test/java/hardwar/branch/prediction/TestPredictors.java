@@ -0,0 +1,98 @@
+package hardwar.branch.prediction;
+
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.core.PackedBranchInstruction;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.extended.GSelect.GSelect;
+import hardwar.branch.prediction.extended.GShare.GShare;
+import hardwar.branch.prediction.extended.Perceptron.Perceptron;
+import hardwar.branch.prediction.extended.TAGE.TAGE;
+import hardwar.branch.prediction.extended.Tournament.TournamentPredictor;
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAg.SAg;
+import hardwar.branch.prediction.judged.SAp.SAp;
+import hardwar.branch.prediction.judged.SAs.SAs;
+import hardwar.branch.prediction.shared.BranchInstruction;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * the judged and extended predictors and the random trace which the equivalence tests replay
+ */
+public final class TestPredictors {
+    public static final int ADDRESS_SIZE = 10; // number of bits of the addresses of the trace
+
+    private TestPredictors() {
+    }
+
+    /**
+     * @return a factory of each predictor by its name. every factory builds a new predictor with new components.
+     */
+    public static Map<String, Supplier<Predictor>> all() {
+        Map<String, Supplier<Predictor>> predictors = new LinkedHashMap<>();
+        predictors.put("GAg", () -> new GAg(6, 2));
+        predictors.put("GAp", () -> new GAp(4, 2, ADDRESS_SIZE));
+        predictors.put("GAs", () -> new GAs(5, 2, ADDRESS_SIZE, 4, HashFunction.XOR));
+        predictors.put("PAg", () -> new PAg(5, 3, ADDRESS_SIZE));
+        predictors.put("PAp", () -> new PAp(4, 2, ADDRESS_SIZE));
+        predictors.put("PAs", () -> new PAs(4, 2, ADDRESS_SIZE, 4, HashFunction.XOR));
+        predictors.put("PAs MULTIPLICATIVE", () -> new PAs(5, 3, ADDRESS_SIZE, 3, HashFunction.MULTIPLICATIVE));
+        predictors.put("SAg", () -> new SAg(5, 2, ADDRESS_SIZE, 3));
+        predictors.put("SAp", () -> new SAp(4, 2, ADDRESS_SIZE, 4));
+        predictors.put("SAs", () -> new SAs(4, 2, ADDRESS_SIZE, 4, HashFunction.XOR));
+        predictors.put("SAs FOLDED_XOR", () -> new SAs(4, 3, ADDRESS_SIZE, 3, HashFunction.FOLDED_XOR));
+        predictors.put("GShare", () -> new GShare(8, 8, 2, ADDRESS_SIZE, HashFunction.XOR));
+        predictors.put("GSelect", () -> new GSelect(4, 8, 2, ADDRESS_SIZE, HashFunction.XOR));
+        predictors.put("Perceptron", () -> new Perceptron(12, 6, ADDRESS_SIZE, HashFunction.XOR));
+        predictors.put("TAGE", () -> new TAGE(ADDRESS_SIZE, 8, 4, 7, 8, 4, 32, HashFunction.XOR));
+        predictors.put("Tournament", () -> new TournamentPredictor(6, 2, ADDRESS_SIZE, HashFunction.XOR,
+                new PAs(4, 2, ADDRESS_SIZE, 4, HashFunction.XOR), new GShare(8, 8, 2, ADDRESS_SIZE, HashFunction.XOR)));
+        return predictors;
+    }
+
+    /**
+     * @return the branch instruction of a pc of the trace, with addresses of ADDRESS_SIZE bits
+     */
+    public static BranchInstruction instruction(long pc, long target) {
+        return new PackedBranchInstruction(pc, target, 0, ADDRESS_SIZE, ADDRESS_SIZE);
+    }
+
+    /**
+     * a random trace of a few static branches of ADDRESS_SIZE bits. every branch follows a short pattern of its
+     * own, with some noise, so the predictors learn something and their tables fill up.
+     */
+    public static final class Trace {
+        public final long[] pcs;
+        public final long[] targets;
+        public final BitSet outcomes;
+
+        public Trace(long seed, int length) {
+            Random random = new Random(seed);
+            long[] branches = new long[48];
+            for (int i = 0; i < branches.length; i++) branches[i] = random.nextInt(1 << ADDRESS_SIZE);
+            pcs = new long[length];
+            targets = new long[length];
+            outcomes = new BitSet(length);
+            for (int i = 0; i < length; i++) {
+                int branch = random.nextInt(branches.length);
+                pcs[i] = branches[branch];
+                targets[i] = (branches[branch] + 4 * branch) & ((1 << ADDRESS_SIZE) - 1);
+                boolean taken = (i / (branch % 5 + 1)) % 3 != 0;
+                outcomes.set(i, taken ^ random.nextInt(10) == 0);
+            }
+        }
+
+        public int length() {
+            return pcs.length;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package hardwar.branch.prediction.concurrent;
+
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.core.PackedBranchInstruction;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentPAsTest {
+
+    @Test
+    public void predictsTheSameAsPAsWithWholeAddresses() {
+        for (int width : new int[]{8, 32, 64}) {
+            ConcurrentPAs concurrent = new ConcurrentPAs(4, 2, width, 4, HashFunction.XOR);
+            PAs expected = new PAs(4, 2, width, 4, HashFunction.XOR);
+            Random random = new Random(width);
+            long[] addresses = new long[32];
+            for (int i = 0; i < addresses.length; i++) addresses[i] = random.nextLong() >>> (Long.SIZE - width);
+            for (int i = 0; i < 5000; i++) {
+                long address = addresses[random.nextInt(addresses.length)];
+                BranchInstruction instruction = new PackedBranchInstruction(address, 0L, 0, width, 4);
+                BranchResult actual = BranchResult.of(random.nextInt(4) != 0);
+                assertEquals(expected.predictAndUpdate(instruction, actual), concurrent.predictAndUpdate(instruction, actual),
+                        width + " bits, branch " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package hardwar.branch.prediction.core.checkpoint;
+
+import hardwar.branch.prediction.TestPredictors;
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.core.PackedBranchInstruction;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAs.SAs;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointsTest {
+
+    @Test
+    public void restoredPredictorContinuesTheSame() throws IOException {
+        TestPredictors.Trace warmUp = new TestPredictors.Trace(51, 5000);
+        TestPredictors.Trace other = new TestPredictors.Trace(52, 2000);
+        TestPredictors.Trace rest = new TestPredictors.Trace(53, 5000);
+        for (Map.Entry<String, Supplier<Predictor>> entry : TestPredictors.all().entrySet()) {
+            Predictor saved = entry.getValue().get();
+            replay(saved, warmUp);
+            Predictor restored = entry.getValue().get();
+            replay(restored, other); // its state is replaced by the checkpoint
+
+            Path file = Files.createTempFile("predictor", ".ckpt");
+            try {
+                Checkpoints.save(saved, file);
+                Checkpoints.restore(restored, file);
+            } finally {
+                Files.delete(file);
+            }
+            assertEquals(saved.monitor(), restored.monitor(), entry.getKey());
+
+            for (int i = 0; i < rest.length(); i++) {
+                BranchInstruction instruction = TestPredictors.instruction(rest.pcs[i], rest.targets[i]);
+                BranchResult actual = BranchResult.of(rest.outcomes.get(i));
+                assertEquals(saved.predictAndUpdate(instruction, actual), restored.predictAndUpdate(instruction, actual),
+                        entry.getKey() + " branch " + i);
+            }
+            assertEquals(saved.monitor(), restored.monitor(), entry.getKey());
+        }
+    }
+
+    @Test
+    public void wideAddressesAreRestored() throws IOException {
+        Predictor saved = new PAp(4, 2, 64);
+        Random random = new Random(54);
+        long[] addresses = new long[64];
+        for (int i = 0; i < addresses.length; i++) addresses[i] = random.nextLong();
+        for (int i = 0; i < 5000; i++) {
+            long address = addresses[random.nextInt(addresses.length)];
+            saved.predictAndUpdate(new PackedBranchInstruction(address, 0L, 0, 64, 4), BranchResult.of(random.nextBoolean()));
+        }
+        Predictor restored = new PAp(4, 2, 64);
+        Path file = Files.createTempFile("predictor", ".ckpt");
+        try {
+            Checkpoints.save(saved, file);
+            Checkpoints.restore(restored, file);
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(saved.monitor(), restored.monitor());
+    }
+
+    @Test
+    public void checkpointOfAnotherPredictorIsRejected() throws IOException {
+        Predictor saved = new PAs(4, 2, TestPredictors.ADDRESS_SIZE, 4, HashFunction.XOR);
+        replay(saved, new TestPredictors.Trace(55, 100));
+        Path file = Files.createTempFile("predictor", ".ckpt");
+        try {
+            Checkpoints.save(saved, file);
+            assertThrows(IOException.class, () -> Checkpoints.restore(new SAs(4, 2, TestPredictors.ADDRESS_SIZE, 4, HashFunction.XOR), file));
+            assertThrows(IOException.class, () -> Checkpoints.restore(new PAs(5, 2, TestPredictors.ADDRESS_SIZE, 4, HashFunction.XOR), file));
+            assertThrows(IOException.class, () -> Checkpoints.restore(new PAs(4, 3, TestPredictors.ADDRESS_SIZE, 4, HashFunction.XOR), file));
+            assertThrows(IOException.class, () -> Checkpoints.restore(new PAs(4, 2, TestPredictors.ADDRESS_SIZE, 5, HashFunction.XOR), file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void replay(Predictor predictor, TestPredictors.Trace trace) {
+        for (int i = 0; i < trace.length(); i++) {
+            BranchInstruction instruction = TestPredictors.instruction(trace.pcs[i], trace.targets[i]);
+            predictor.predictAndUpdate(instruction, BranchResult.of(trace.outcomes.get(i)));
+        }
+    }
+}
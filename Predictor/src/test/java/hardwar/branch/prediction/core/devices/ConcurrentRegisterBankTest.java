@@ -0,0 +1,76 @@
+package hardwar.branch.prediction.core.devices;
+
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.shared.Bit;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentRegisterBankTest {
+
+    @Test
+    public void behavesTheSameAsTheDenseRegisterBank() {
+        for (int selectorSize : new int[]{0, 5, ConcurrentRegisterBank.DIRECT_SELECTOR_BITS, 30, 64}) {
+            ConcurrentRegisterBank bank = new ConcurrentRegisterBank(selectorSize, 7);
+            DenseRegisterBank expected = new DenseRegisterBank(selectorSize, 7);
+            Random random = new Random(selectorSize);
+            long[] selectors = new long[500];
+            for (int i = 0; i < selectors.length; i++)
+                selectors[i] = selectorSize == 0 ? 0L : random.nextLong() >>> (Long.SIZE - selectorSize);
+            for (int i = 0; i < 10000; i++) {
+                long selector = selectors[random.nextInt(selectors.length)];
+                assertEquals(expected.readHistory(selector), bank.readHistory(selector), selectorSize + " bit selector");
+                Bit bit = Bit.of(random.nextBoolean());
+                assertEquals(expected.shiftIn(selector, bit), bank.shiftIn(selector, bit));
+            }
+            assertEquals(expected.monitor(), bank.monitor());
+        }
+    }
+
+    @Test
+    public void noBitIsLostWhenThreadsShareWideRegisters() throws InterruptedException {
+        ConcurrentRegisterBank bank = new ConcurrentRegisterBank(64, 32);
+        long[] selectors = new long[300];
+        Random random = new Random(7);
+        for (int i = 0; i < selectors.length; i++) selectors[i] = random.nextLong();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                // 8 threads insert 4 ones into each register, which fills its 32 bits
+                for (int round = 0; round < 4; round++) {
+                    for (long selector : selectors) bank.shiftIn(selector, Bit.ONE);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        for (long selector : selectors) assertEquals(0xFFFFFFFFL, bank.readHistory(selector));
+    }
+
+    @Test
+    public void checkpointRestoresTheUsedRegisters() throws IOException {
+        ConcurrentRegisterBank bank = new ConcurrentRegisterBank(48, 8);
+        Random random = new Random(48);
+        for (int i = 0; i < 500; i++) bank.writeHistory(random.nextLong() >>> 16, random.nextLong());
+        Path file = Files.createTempFile("bank", ".ckpt");
+        try {
+            try (CheckpointWriter out = new CheckpointWriter(file)) {
+                bank.checkpoint(out);
+            }
+            ConcurrentRegisterBank restored = new ConcurrentRegisterBank(48, 8);
+            restored.writeHistory(1L, 3L); // replaced by the checkpoint
+            try (CheckpointReader in = new CheckpointReader(file)) {
+                restored.restore(in);
+            }
+            assertEquals(bank.monitor(), restored.monitor());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
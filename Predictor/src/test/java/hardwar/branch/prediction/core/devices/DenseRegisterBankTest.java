@@ -0,0 +1,72 @@
+package hardwar.branch.prediction.core.devices;
+
+import hardwar.branch.prediction.core.checkpoint.CheckpointReader;
+import hardwar.branch.prediction.core.checkpoint.CheckpointWriter;
+import hardwar.branch.prediction.shared.Bit;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DenseRegisterBankTest {
+
+    @Test
+    public void directAndSparseBanksKeepEveryRegister() {
+        for (int selectorSize : new int[]{0, 8, DenseRegisterBank.DIRECT_SELECTOR_BITS, 17, 40, 64}) {
+            DenseRegisterBank bank = new DenseRegisterBank(selectorSize, 6);
+            Map<Long, Long> expected = new HashMap<>();
+            Random random = new Random(selectorSize);
+            long[] selectors = new long[1000];
+            for (int i = 0; i < selectors.length; i++)
+                selectors[i] = selectorSize == 0 ? 0L : random.nextLong() >>> (Long.SIZE - selectorSize);
+            for (int i = 0; i < 20000; i++) {
+                long selector = selectors[random.nextInt(selectors.length)];
+                long before = expected.getOrDefault(selector, 0L);
+                assertEquals(before, bank.readHistory(selector), selectorSize + " bit selector " + selector);
+                boolean taken = random.nextBoolean();
+                long after = (before >>> 1) | (taken ? 1L << 5 : 0L);
+                assertEquals(after, bank.shiftIn(selector, Bit.of(taken)));
+                expected.put(selector, after);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsSelectorsWiderThanTheBank() {
+        DenseRegisterBank bank = new DenseRegisterBank(40, 4);
+        assertThrows(IllegalArgumentException.class, () -> bank.readHistory(1L << 40));
+        assertThrows(IllegalArgumentException.class, () -> new DenseRegisterBank(65, 4));
+    }
+
+    @Test
+    public void checkpointRestoresTheUsedRegisters() throws IOException {
+        for (int selectorSize : new int[]{10, 64}) {
+            DenseRegisterBank bank = new DenseRegisterBank(selectorSize, 8);
+            Random random = new Random(selectorSize);
+            for (int i = 0; i < 500; i++) {
+                long selector = random.nextLong() >>> (Long.SIZE - selectorSize);
+                bank.writeHistory(selector, random.nextLong());
+            }
+            Path file = Files.createTempFile("bank", ".ckpt");
+            try {
+                try (CheckpointWriter out = new CheckpointWriter(file)) {
+                    bank.checkpoint(out);
+                }
+                DenseRegisterBank restored = new DenseRegisterBank(selectorSize, 8);
+                restored.writeHistory(1L, 3L); // replaced by the checkpoint
+                try (CheckpointReader in = new CheckpointReader(file)) {
+                    restored.restore(in);
+                }
+                assertEquals(bank.monitor(), restored.monitor());
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+}
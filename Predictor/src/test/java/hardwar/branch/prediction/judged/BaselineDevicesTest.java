@@ -0,0 +1,145 @@
+package hardwar.branch.prediction.judged;
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAg.SAg;
+import hardwar.branch.prediction.judged.SAp.SAp;
+import hardwar.branch.prediction.judged.SAs.SAs;
+import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.shared.devices.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * the judged predictors are written on the packed devices of the core package. they must predict the same as
+ * a two level predictor which is written on the Bit[] devices of the shared package, and render the same
+ * snapshot.
+ */
+public class BaselineDevicesTest {
+    private static final int BHR = 4;
+    private static final int SC = 2;
+    private static final int ADDRESS = 8;
+    private static final int K = 3;
+
+    @Test
+    public void globalHistoryPredictors() {
+        check(new GAg(BHR, SC), new Reference(History.GLOBAL, Table.GLOBAL));
+        check(new GAp(BHR, SC, ADDRESS), new Reference(History.GLOBAL, Table.PER_ADDRESS));
+        check(new GAs(BHR, SC, ADDRESS, K, HashMode.XOR), new Reference(History.GLOBAL, Table.PER_SET));
+    }
+
+    @Test
+    public void perAddressHistoryPredictors() {
+        check(new PAg(BHR, SC, ADDRESS), new Reference(History.PER_ADDRESS, Table.GLOBAL));
+        check(new PAp(BHR, SC, ADDRESS), new Reference(History.PER_ADDRESS, Table.PER_ADDRESS));
+        check(new PAs(BHR, SC, ADDRESS, K, HashMode.XOR), new Reference(History.PER_ADDRESS, Table.PER_SET));
+    }
+
+    @Test
+    public void perSetHistoryPredictors() {
+        check(new SAg(BHR, SC, ADDRESS, K), new Reference(History.PER_SET, Table.GLOBAL));
+        check(new SAp(BHR, SC, ADDRESS, K), new Reference(History.PER_SET, Table.PER_ADDRESS));
+        check(new SAs(BHR, SC, ADDRESS, K, HashMode.XOR), new Reference(History.PER_SET, Table.PER_SET));
+    }
+
+    private static void check(Predictor predictor, Reference reference) {
+        String name = predictor.getClass().getSimpleName();
+        Random random = new Random(41);
+        int[] pcs = new int[24];
+        for (int i = 0; i < pcs.length; i++) pcs[i] = random.nextInt(1 << ADDRESS);
+        for (int i = 0; i < 20000; i++) {
+            int pc = pcs[random.nextInt(pcs.length)];
+            BranchResult actual = BranchResult.of(((pc * 31 + i / 3) % 5) < 3 ^ random.nextInt(10) == 0);
+            BranchInstruction instruction = new BranchInstruction(new Bit[0], BitVector.of(pc, ADDRESS).toBits(), new Bit[0]);
+            assertEquals(reference.predict(instruction), predictor.predict(instruction), name + " branch " + i);
+            predictor.update(instruction, actual);
+            reference.update(instruction, actual);
+        }
+        // the snapshot of the judged predictor starts with its name
+        String monitor = predictor.monitor();
+        assertEquals(reference.monitor(), monitor.substring(monitor.indexOf('\n') + 1), name);
+    }
+
+    private enum History {GLOBAL, PER_ADDRESS, PER_SET}
+
+    private enum Table {GLOBAL, PER_ADDRESS, PER_SET}
+
+    /**
+     * a two level predictor on the devices of the shared package, the same as the predictors of the baseline
+     */
+    private static final class Reference implements BranchPredictor {
+        private final History history;
+        private final Table table;
+        private final ShiftRegister BHR; // global history register
+        private final RegisterBank BHRs; // per address or per set history registers
+        private final Cache<Bit[], Bit[]> PHT;
+        private final ShiftRegister SC;
+
+        private Reference(History history, Table table) {
+            this.history = history;
+            this.table = table;
+            this.BHR = new SIPORegister("BHR", BaselineDevicesTest.BHR, zeros(BaselineDevicesTest.BHR));
+            this.BHRs = new RegisterBank(history == History.PER_ADDRESS ? ADDRESS : K, BaselineDevicesTest.BHR);
+            if (table == Table.GLOBAL) PHT = new PageHistoryTable(1 << BaselineDevicesTest.BHR, BaselineDevicesTest.SC);
+            else PHT = new PerAddressPredictionHistoryTable(table == Table.PER_ADDRESS ? ADDRESS : K,
+                    1 << BaselineDevicesTest.BHR, BaselineDevicesTest.SC);
+            this.SC = new SIPORegister("SC", BaselineDevicesTest.SC, zeros(BaselineDevicesTest.SC));
+        }
+
+        @Override
+        public BranchResult predict(BranchInstruction instruction) {
+            Bit[] entry = entry(instruction.getInstructionAddress());
+            PHT.setDefault(entry, zeros(BaselineDevicesTest.SC));
+            SC.load(PHT.get(entry));
+            return SC.read()[0] == Bit.ONE ? BranchResult.TAKEN : BranchResult.NOT_TAKEN;
+        }
+
+        @Override
+        public void update(BranchInstruction instruction, BranchResult actual) {
+            Bit[] address = instruction.getInstructionAddress();
+            boolean taken = actual == BranchResult.TAKEN;
+            PHT.put(entry(address), CombinationalLogic.count(SC.read(), taken, CountMode.SATURATING));
+            if (history == History.GLOBAL) {
+                BHR.insert(Bit.of(taken));
+            } else {
+                ShiftRegister register = BHRs.read(selector(address));
+                register.insert(Bit.of(taken));
+                BHRs.write(selector(address), register.read());
+            }
+        }
+
+        private Bit[] selector(Bit[] address) {
+            return history == History.PER_ADDRESS ? address : CombinationalLogic.hash(address, K, HashMode.XOR);
+        }
+
+        private Bit[] entry(Bit[] address) {
+            Bit[] bhr = history == History.GLOBAL ? BHR.read() : BHRs.read(selector(address)).read();
+            if (table == Table.GLOBAL) return bhr;
+            Bit[] pht = table == Table.PER_ADDRESS ? address : CombinationalLogic.hash(address, K, HashMode.XOR);
+            Bit[] entry = Arrays.copyOf(pht, pht.length + bhr.length);
+            System.arraycopy(bhr, 0, entry, pht.length, bhr.length);
+            return entry;
+        }
+
+        @Override
+        public String monitor() {
+            return (history == History.GLOBAL ? BHR.monitor() : BHRs.monitor()) + SC.monitor() + PHT.monitor();
+        }
+
+        private static Bit[] zeros(int size) {
+            Bit[] bits = new Bit[size];
+            Arrays.fill(bits, Bit.ZERO);
+            return bits;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package hardwar.branch.prediction.judged;
+
+import hardwar.branch.prediction.core.BitVector;
+import hardwar.branch.prediction.core.PackedBranchInstruction;
+import hardwar.branch.prediction.core.Predictor;
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAp.SAp;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.HashMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * the predictors which keep a register or a PHT for each branch address are built with whole 32 and 64 bit
+ * addresses, and predict the same with packed and plain instructions
+ */
+public class WideAddressTest {
+    private static final int BRANCHES = 2000;
+
+    @Test
+    public void PAgAcceptsWideAddresses() {
+        check(width -> new PAg(4, 2, width));
+    }
+
+    @Test
+    public void PApAcceptsWideAddresses() {
+        check(width -> new PAp(4, 2, width));
+    }
+
+    @Test
+    public void PAsAcceptsWideAddresses() {
+        check(width -> new PAs(4, 2, width, 4, HashMode.XOR));
+    }
+
+    @Test
+    public void GApAcceptsWideAddresses() {
+        check(width -> new GAp(4, 2, width));
+    }
+
+    @Test
+    public void SApAcceptsWideAddresses() {
+        check(width -> new SAp(4, 2, width, 4));
+    }
+
+    @Test
+    public void PApAllocatesRegistersLazily() {
+        // 2^24 registers and PHTs would not fit in a small heap if they were allocated up front
+        Predictor predictor = new PAp(4, 2, 24);
+        BranchInstruction instruction = new PackedBranchInstruction(0xABCDEFL, 0L, 0, 24, 4);
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predict(instruction));
+        predictor.update(instruction, BranchResult.TAKEN);
+        assertTrue(predictor.monitor().contains("101010111100110111101111"));
+    }
+
+    private static void check(IntFunction<Predictor> factory) {
+        for (int width : new int[]{32, 64}) {
+            Predictor packed = factory.apply(width);
+            Predictor plain = factory.apply(width);
+            Random random = new Random(width);
+            long[] addresses = new long[16];
+            for (int i = 0; i < addresses.length; i++) addresses[i] = random.nextLong() & BitVector.mask(width);
+            for (int i = 0; i < BRANCHES; i++) {
+                long address = addresses[random.nextInt(addresses.length)];
+                BranchResult actual = BranchResult.of((address + i / 7) % 3 != 0);
+                BranchInstruction packedInstruction = new PackedBranchInstruction(address, 0L, 0, width, 4);
+                BranchInstruction plainInstruction = new BranchInstruction(new Bit[0], BitVector.of(address, width).toBits(), new Bit[0]);
+                assertEquals(plain.predict(plainInstruction), packed.predict(packedInstruction), width + " bits, branch " + i);
+                packed.update(packedInstruction, actual);
+                plain.update(plainInstruction, actual);
+            }
+            assertEquals(plain.monitor(), packed.monitor(), width + " bits");
+        }
+    }
+}
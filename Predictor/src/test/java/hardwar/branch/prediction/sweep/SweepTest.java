@@ -0,0 +1,64 @@
+package hardwar.branch.prediction.sweep;
+
+import hardwar.branch.prediction.core.HashFunction;
+import hardwar.branch.prediction.trace.CompactTraceReader;
+import hardwar.branch.prediction.trace.CompactTraceWriter;
+import hardwar.branch.prediction.trace.DecodedTrace;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SweepTest {
+
+    @Test
+    public void aFailedConfigurationDoesNotStopTheOthers() throws IOException {
+        DecodedTrace trace = trace();
+        List<PredictorConfiguration> configurations = Arrays.asList(
+                new PredictorConfiguration("GAg", 4, 2, 0, 8, null),
+                // every PHT of 2^30 64 bit counters takes 8 GB, so the tables of the 256 addresses never fit
+                new PredictorConfiguration("PAp", 30, 64, 0, 8, null),
+                new PredictorConfiguration("PAs", 31, 2, 4, 8, HashFunction.XOR), // 2^31 rows can not be counted
+                new PredictorConfiguration("SAg", 4, 2, 4, 8, null));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<SweepResult> results = new Sweep(pool).run(trace, configurations);
+            assertEquals(configurations.size(), results.size());
+            for (int i = 0; i < results.size(); i++) assertSame(configurations.get(i), results.get(i).getConfiguration());
+
+            assertFalse(results.get(0).isFailed());
+            assertEquals(trace.length(), results.get(0).getResult().getBranches());
+            assertTrue(results.get(1).getError() instanceof OutOfMemoryError, String.valueOf(results.get(1).getError()));
+            assertTrue(results.get(2).getError() instanceof IllegalArgumentException, String.valueOf(results.get(2).getError()));
+            assertFalse(results.get(3).isFailed());
+            assertTrue(Sweep.table(results).contains("failed"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static DecodedTrace trace() throws IOException {
+        Path file = Files.createTempFile("sweep", ".ctrace");
+        try {
+            Random random = new Random(1);
+            try (CompactTraceWriter out = new CompactTraceWriter(file)) {
+                for (int i = 0; i < 4096; i++) {
+                    long address = i % 256;
+                    out.write(address, address + 4, 0, random.nextInt(3) != 0);
+                }
+            }
+            try (CompactTraceReader in = new CompactTraceReader(file)) {
+                return DecodedTrace.load(in);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
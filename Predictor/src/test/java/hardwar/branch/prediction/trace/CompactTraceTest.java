@@ -0,0 +1,219 @@
+package hardwar.branch.prediction.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactTraceTest {
+    private static final int BRANCHES = 10000;
+
+    /**
+     * random branches with the edge cases of the delta encoding: far jumps back and forth, 64 bit addresses
+     * and opcodes which need the escape
+     */
+    private static final class Records {
+        final long[] addresses = new long[BRANCHES];
+        final long[] jumps = new long[BRANCHES];
+        final int[] opcodes = new int[BRANCHES];
+        final boolean[] taken = new boolean[BRANCHES];
+
+        Records(long seed) {
+            Random random = new Random(seed);
+            long[] special = {0L, 1L, -1L, Long.MAX_VALUE, Long.MIN_VALUE, 0x7FFFFFFFL, 0xFFFFFFFFL};
+            int[] opcodes = {0, 1, 126, 127, 128, 1 << 20, Integer.MAX_VALUE};
+            long address = 0x400000L;
+            for (int i = 0; i < BRANCHES; i++) {
+                if (random.nextInt(50) == 0) address = special[random.nextInt(special.length)];
+                else address += random.nextInt(256) - 64;
+                addresses[i] = address;
+                jumps[i] = random.nextInt(20) == 0 ? random.nextLong() : address + random.nextInt(4096) - 2048;
+                this.opcodes[i] = random.nextInt(10) == 0 ? opcodes[random.nextInt(opcodes.length)] : random.nextInt(100);
+                taken[i] = random.nextBoolean();
+            }
+        }
+
+        void write(CompactTraceWriter out) throws IOException {
+            for (int i = 0; i < BRANCHES; i++) out.write(addresses[i], jumps[i], opcodes[i], taken[i]);
+        }
+
+        void check(TraceReader in, int i) {
+            assertEquals(addresses[i], in.getInstructionAddress(), "address of branch " + i);
+            assertEquals(jumps[i], in.getJumpAddress(), "jump of branch " + i);
+            assertEquals(opcodes[i], in.getOpcode(), "opcode of branch " + i);
+            assertEquals(taken[i], in.isTaken(), "branch " + i);
+        }
+    }
+
+    @Test
+    public void branchesAreReadBackInOrder() throws IOException {
+        Records records = new Records(1);
+        for (int blockSize : new int[]{1, 7, CompactTraceFormat.DEFAULT_BLOCK_SIZE, BRANCHES * 2}) {
+            Path file = Files.createTempFile("trace", ".ctrace");
+            try {
+                try (CompactTraceWriter out = new CompactTraceWriter(file, blockSize)) {
+                    records.write(out);
+                    out.setInstructionCount(123456789L);
+                }
+                // a small window is mapped again for every few blocks
+                for (int windowSize : new int[]{256, CompactTraceReader.DEFAULT_WINDOW_SIZE}) {
+                    try (CompactTraceReader in = new CompactTraceReader(file, windowSize)) {
+                        assertEquals(BRANCHES, in.getBranchCount());
+                        assertEquals(123456789L, in.getInstructionCount());
+                        for (int i = 0; i < BRANCHES; i++) {
+                            assertTrue(in.next());
+                            records.check(in, i);
+                        }
+                        assertFalse(in.next());
+                    }
+                }
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void seekStartsAtAnyBranch() throws IOException {
+        Records records = new Records(2);
+        Path file = Files.createTempFile("trace", ".ctrace");
+        try {
+            try (CompactTraceWriter out = new CompactTraceWriter(file, 100)) {
+                records.write(out);
+            }
+            Random random = new Random(2);
+            try (CompactTraceReader in = new CompactTraceReader(file, 512)) {
+                for (int n = 0; n < 200; n++) {
+                    int branch = random.nextInt(BRANCHES);
+                    in.seek(branch);
+                    for (int i = branch; i < Math.min(branch + 150, BRANCHES); i++) {
+                        assertTrue(in.next());
+                        records.check(in, i);
+                    }
+                }
+                in.seek(BRANCHES);
+                assertFalse(in.next());
+                assertThrows(IndexOutOfBoundsException.class, () -> in.seek(BRANCHES + 1));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void compactAndRawTracesDecodeTheSame() throws IOException {
+        Records records = new Records(3);
+        Path compact = Files.createTempFile("trace", ".ctrace");
+        Path raw = Files.createTempFile("trace", ".trace");
+        try {
+            try (CompactTraceWriter out = new CompactTraceWriter(compact)) {
+                records.write(out);
+                out.setInstructionCount(5 * BRANCHES);
+            }
+            try (RawTraceWriter out = new RawTraceWriter(raw)) {
+                for (int i = 0; i < BRANCHES; i++)
+                    out.write(records.addresses[i], records.jumps[i], records.opcodes[i], records.taken[i]);
+                out.setInstructionCount(5 * BRANCHES);
+            }
+            assertTrue(Files.size(compact) < Files.size(raw));
+
+            DecodedTrace fromCompact;
+            DecodedTrace fromRaw;
+            try (TraceReader in = Traces.open(compact)) {
+                assertTrue(in instanceof CompactTraceReader);
+                fromCompact = DecodedTrace.load(in);
+            }
+            try (TraceReader in = Traces.open(raw)) {
+                assertTrue(in instanceof RawTraceReader);
+                fromRaw = DecodedTrace.load(in);
+            }
+            assertEquals(BRANCHES, fromCompact.length());
+            assertEquals(5L * BRANCHES, fromCompact.getInstructionCount());
+            for (int i = 0; i < BRANCHES; i++) {
+                assertEquals(records.addresses[i], fromCompact.getInstructionAddress(i));
+                assertEquals(fromRaw.getInstructionAddress(i), fromCompact.getInstructionAddress(i));
+                assertEquals(fromRaw.isTaken(i), fromCompact.isTaken(i));
+            }
+        } finally {
+            Files.delete(compact);
+            Files.delete(raw);
+        }
+    }
+
+    @Test
+    public void emptyTrace() throws IOException {
+        Path file = Files.createTempFile("trace", ".ctrace");
+        try {
+            new CompactTraceWriter(file).close();
+            try (CompactTraceReader in = new CompactTraceReader(file)) {
+                assertEquals(0, in.getBranchCount());
+                assertFalse(in.next());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void textTraceIsConverted() throws IOException {
+        String text = "# pc target opcode taken\n"
+                + "0x400100 0x400180 3 T\n"
+                + "\n"
+                + "4194560 4194304 200 0\n"
+                + "0xFFFFFFFFFFFFFFF0 0x10 0 TAKEN\n";
+        Path file = Files.createTempFile("trace", ".ctrace");
+        try {
+            try (CompactTraceWriter out = new CompactTraceWriter(file)) {
+                assertEquals(3, TraceConverter.convert(new BufferedReader(new StringReader(text)), out, false));
+            }
+            try (CompactTraceReader in = new CompactTraceReader(file)) {
+                assertTrue(in.next());
+                assertEquals(0x400100L, in.getInstructionAddress());
+                assertEquals(0x400180L, in.getJumpAddress());
+                assertEquals(3, in.getOpcode());
+                assertTrue(in.isTaken());
+                assertTrue(in.next());
+                assertEquals(4194560L, in.getInstructionAddress());
+                assertEquals(200, in.getOpcode());
+                assertFalse(in.isTaken());
+                assertTrue(in.next());
+                assertEquals(0xFFFFFFFFFFFFFFF0L, in.getInstructionAddress());
+                assertEquals(0x10L, in.getJumpAddress());
+                assertFalse(in.next());
+            }
+
+            try (CompactTraceWriter out = new CompactTraceWriter(file)) {
+                assertThrows(IOException.class,
+                        () -> TraceConverter.convert(new BufferedReader(new StringReader("1 2 3 maybe\n")), out, false));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void varintAndZigzagRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        for (long value : new long[]{0L, 1L, -1L, 63L, -64L, 64L, Long.MAX_VALUE, Long.MIN_VALUE, 1L << 35}) {
+            assertEquals(value, CompactTraceFormat.unzigzag(CompactTraceFormat.zigzag(value)));
+            buffer.clear();
+            CompactTraceFormat.putVarint(buffer, CompactTraceFormat.zigzag(value));
+            assertTrue(buffer.position() <= 10);
+        }
+        assertEquals(1, varintLength(CompactTraceFormat.zigzag(-64L)));
+        assertEquals(2, varintLength(CompactTraceFormat.zigzag(64L)));
+    }
+
+    private static int varintLength(long value) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        CompactTraceFormat.putVarint(buffer, value);
+        return buffer.position();
+    }
+}
@@ -0,0 +1,25 @@
+package hardwar.branch.prediction.trace;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayResultTest {
+
+    @Test
+    public void MPKIIsPerKiloInstructions() {
+        ReplayResult result = new ReplayResult(1000, 50, 10000);
+        assertEquals(5.0, result.getMPKI());
+        assertEquals(50.0, result.getMispredictionsPerKiloBranch());
+        assertTrue(result.toString().contains("MPKI=5.000"), result.toString());
+    }
+
+    @Test
+    public void MPKIIsUnknownWithoutTheInstructionCount() {
+        ReplayResult result = new ReplayResult(1000, 50, 0);
+        assertTrue(Double.isNaN(result.getMPKI()));
+        assertEquals(50.0, result.getMispredictionsPerKiloBranch());
+        assertTrue(result.toString().contains("MPKB=50.000"), result.toString());
+        assertFalse(result.toString().contains("MPKI"), result.toString());
+    }
+}